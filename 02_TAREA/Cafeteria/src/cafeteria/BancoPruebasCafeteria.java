@@ -0,0 +1,310 @@
+/**
+ * Clase BancoPruebasCafeteria
+ *
+ * Banco de pruebas para medir el coste del reparto de pedidos de la cafetera,
+ * sin el tiempo de preparacin de las bebidas (que es un sleep y tapara todo lo
+ * dems).
+ *
+ * Tiene dos partes:
+ * 1-Micro pruebas: se mide en nanosegundos por operacin el paso de un cliente de
+ *   un hilo a otro por la ColaPedidos con cada poltica, el semforo de las
+ *   mquinas con varios hilos a la vez, la creacin de clientes y el coste de los
+ *   registros (Registrologs y el mensaje del cliente por consola, con el println
+ *   directo de antes y con la ConsolaAsincrona en cada modo). Cada prueba se
+ *   repite varias veces para calentar la JVM antes de medir.
+ * 2-Prueba de estrs: se pasan muchos pedidos por la cola con 1 a 256 mquinas
+ *   y se muestra para cada poltica de cola y forma de reparto (cola compartida
+ *   o despachador) los pedidos por segundo y la espera p50, p99, p99.9 y mxima
+ *   de los clientes. La prueba utiliza las clases de la aplicacin (Maquina,
+ *   Despachador, ColaPedidos) con un TurnoCafeteria propio, las mquinas con
+ *   escala de tiempo 0 para no esperar en la preparacin. Como en la cafetera
+ *   las mquinas compiten por un semforo, pero con la mitad de permisos que
+ *   mquinas para que la espera en el semforo forme parte de la medida.
+ *
+ * Los mensajes de la aplicacin se descartan y los resultados se escriben en la
+ * salida estndar original. La prueba de registros escribe en src/cafeteria_logs
+ * como la aplicacin.
+ *
+ * Uso: BancoPruebasCafeteria [micro|estres|todo] [pedidos] [mximo de mquinas]
+ * Por defecto se ejecuta todo con 200000 pedidos y hasta 256 mquinas. La prueba
+ * de estrs con 200000 pedidos ya tarda ms de un minuto, para medir con ms
+ * pedidos se indica el nmero, por ejemplo 1000000.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class BancoPruebasCafeteria {
+
+    //repeticiones de calentamiento y de medida de cada micro prueba
+    private static final int CALENTAMIENTO = 3;
+    private static final int REPETICIONES = 5;
+    //salida de los resultados, se guarda porque los mensajes de la aplicacin se descartan
+    private static final PrintStream RESULTADOS = System.out;
+    //tamao de la cola de clientes en la prueba de estrs, el de la aplicacin por defecto
+    private static final int CAPACIDAD_COLA = 90;
+
+    /**
+     * Interfaz de una micro prueba, ejecuta el nmero de operaciones indicado.
+     */
+    private interface Operacion {
+        void ejecutar(int operaciones) throws Exception;
+    }
+
+    /**
+     * Ejecuta la micro prueba y muestra el mejor y el tiempo medio por operacin.
+     * @param nombre
+     * @param operaciones
+     * @param operacion
+     * @throws Exception
+     */
+    private static void medir(String nombre, int operaciones, Operacion operacion) throws Exception{
+        for(int i = 0; i < CALENTAMIENTO; i++){
+            operacion.ejecutar(operaciones);
+        }
+        long mejor = Long.MAX_VALUE;
+        long total = 0;
+        for(int i = 0; i < REPETICIONES; i++){
+            long inicio = System.nanoTime();
+            operacion.ejecutar(operaciones);
+            long tiempo = System.nanoTime() - inicio;
+            mejor = Math.min(mejor, tiempo);
+            total += tiempo;
+        }
+        RESULTADOS.println(String.format("%-45s %10.1f ns/op (media %.1f ns/op)", nombre,
+                (double) mejor / operaciones, (double) total / REPETICIONES / operaciones));
+    }
+
+    /**
+     * Micro pruebas del ncleo de la cafetera.
+     * @param pedidos
+     * @throws Exception
+     */
+    public static void microPruebas(int pedidos) throws Exception{
+        RESULTADOS.println("== Micro pruebas ==");
+        //creacin de clientes
+        medir("Crear cliente", pedidos, n -> {
+            for(int i = 0; i < n; i++){
+                new Cliente();
+            }
+        });
+
+        //paso de clientes de un hilo a otro por la cola con cada poltica
+        Cliente[] clientes = new Cliente[pedidos];
+        for(int i = 0; i < pedidos; i++){
+            clientes[i] = new Cliente();
+        }
+        for(PoliticaCola politica : PoliticaCola.values()){
+            medir("Cola " + politica + " productor -> mquina", pedidos, n -> {
+                ColaPedidos cola = new ColaPedidos(politica, 90);
+                Thread productor = new Thread(() -> {
+                    try{
+                        for(int i = 0; i < n; i++){
+                            cola.put(clientes[i]);
+                        }
+                    }catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                productor.start();
+                for(int i = 0; i < n; i++){
+                    cola.take();
+                }
+                productor.join();
+            });
+        }
+
+        //semforo de las mquinas, con la mitad de permisos que hilos para que haya esperas
+        for(int hilos : new int[]{2, 4, 16, 64}){
+            int permisos = hilos / 2;
+            Semaphore semaforo = new Semaphore(permisos);
+            medir("Semforo " + permisos + " permisos con " + hilos + " hilos", pedidos, n -> {
+                int porHilo = Math.max(1, n / hilos);
+                List<Thread> lista = new ArrayList<>();
+                for(int h = 0; h < hilos; h++){
+                    Thread hilo = new Thread(() -> {
+                        try{
+                            for(int i = 0; i < porHilo; i++){
+                                semaforo.acquire();
+                                semaforo.release();
+                            }
+                        }catch(InterruptedException e){
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                    lista.add(hilo);
+                    hilo.start();
+                }
+                for(Thread hilo : lista){
+                    hilo.join();
+                }
+            });
+        }
+
+        //coste de los registros de cada pedido, se hacen menos porque escriben en fichero
+        int registros = Math.max(1, pedidos / 50);
+        Registrologs registro = new Registrologs();
+        medir("Registrologs inicio + fin de pedido", registros, n -> {
+            for(int i = 0; i < n; i++){
+                registro.regInicioPedido(clientes[i]);
+                registro.regFinPedido(clientes[i]);
+            }
+        });
+        //mensaje del cliente, la salida est descartada para medir solo el formato y la escritura
+        //como se haca antes, String.format y println sincronizado en cada pedido
+        medir("Mensaje del cliente con String.format+println", registros, n -> {
+            for(int i = 0; i < n; i++){
+                System.out.println(String.format("Cliente id: %s. Estoy siendo atendido en la mquina nmero %s y me esta preparando un %s",
+                        clientes[i].getId(), 1, clientes[i].getPedido().getNombre()));
+            }
+        });
+        //con la consola asncrona, que escribe en la salida descartada
+        for(ModoConsola modo : ModoConsola.values()){
+            ConsolaAsincrona.configurar(modo);
+            medir("Mensaje del cliente con consola " + modo, registros, n -> {
+                for(int i = 0; i < n; i++){
+                    clientes[i].mensaje(1);
+                }
+                ConsolaAsincrona.vaciar();
+            });
+        }
+    }
+
+    /**
+     * Prueba de estrs, pasa los pedidos por las mquinas de la aplicacin con la
+     * poltica y forma de reparto indicadas y muestra el resultado.
+     * @param politica
+     * @param reparto true para repartir con despachador, false con cola compartida
+     * @param maquinas
+     * @param pedidos
+     * @param tamanoLote
+     * @throws InterruptedException
+     */
+    public static void estres(PoliticaCola politica, boolean reparto, int maquinas, long pedidos, int tamanoLote)
+            throws InterruptedException{
+        //cada prueba tiene su propio turno, con la cola y las mtricas vacas
+        TurnoCafeteria turno = new TurnoCafeteria(new ColaPedidos(politica, CAPACIDAD_COLA));
+        turno.setGenerando(true);
+        //menos permisos que mquinas, las mquinas se esperan en el semforo
+        Semaphore semaforo = new Semaphore(Math.max(1, maquinas / 2));
+        Despachador despachador = reparto ? new Despachador(turno) : null;
+
+        List<Maquina> lista = new ArrayList<>();
+        List<Thread> hilos = new ArrayList<>();
+        for(int m = 0; m < maquinas; m++){
+            Maquina maquina = new Maquina(semaforo, PerfilMaquina.generalista(), despachador, turno);
+            maquina.configurarLotes(tamanoLote, 0);
+            //sin tiempo de preparacin, se mide solo el reparto de los pedidos
+            maquina.configurarEscala(0);
+            if(despachador != null){
+                despachador.agregarMaquina(maquina);
+            }
+            lista.add(maquina);
+            hilos.add(new Thread(maquina, "maquina-" + (m + 1)));
+        }
+
+        //productor de clientes, como el generador con la poltica BLOQUEAR
+        Thread productor = new Thread(() -> {
+            try{
+                for(long i = 0; i < pedidos; i++){
+                    turno.getCola().put(new Cliente());
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }finally{
+                //ya no van a llegar ms clientes
+                turno.setGenerando(false);
+            }
+        }, "productor");
+
+        long inicio = System.nanoTime();
+        for(Thread hilo : hilos){
+            hilo.start();
+        }
+        if(despachador != null){
+            new Thread(despachador, "despachador").start();
+        }
+        productor.start();
+        productor.join();
+        for(Thread hilo : hilos){
+            hilo.join();
+        }
+        long tiempo = System.nanoTime() - inicio;
+
+        long servidos = 0;
+        for(Maquina maquina : lista){
+            servidos += maquina.getBebidasPreparadas();
+        }
+        //con escala 0 la espera en la cola es casi toda la latencia del cliente
+        HistogramaLatencia espera = turno.getCola().getEspera();
+        double porSegundo = servidos * (double) TimeUnit.SECONDS.toNanos(1) / tiempo;
+        RESULTADOS.println(String.format("%-12s %-18s %8d %14.0f %10.1f %10.1f %10.1f %12.1f",
+                reparto ? "despachador" : "compartida", politica, maquinas, porSegundo,
+                aMicros(espera.getPercentil(50)), aMicros(espera.getPercentil(99)),
+                aMicros(espera.getPercentil(99.9)), aMicros(espera.getMaximo())));
+    }
+
+    /**
+     * Convierte nanosegundos a microsegundos.
+     * @param nanos
+     * @return
+     */
+    private static double aMicros(double nanos){
+        return nanos / 1_000.0;
+    }
+
+    /**
+     * Prueba de estrs con todas las polticas y formas de reparto, doblando el
+     * nmero de mquinas hasta el mximo.
+     * @param pedidos
+     * @param maxMaquinas
+     * @param tamanoLote
+     * @throws InterruptedException
+     */
+    public static void pruebaEstres(long pedidos, int maxMaquinas, int tamanoLote) throws InterruptedException{
+        RESULTADOS.println(String.format("== Prueba de estrs: %d pedidos, lote %d ==", pedidos, tamanoLote));
+        RESULTADOS.println(String.format("%-12s %-18s %8s %14s %10s %10s %10s %12s", "reparto", "poltica",
+                "mquinas", "pedidos/s", "p50 s", "p99 s", "p99.9 s", "mx s"));
+        for(PoliticaCola politica : PoliticaCola.values()){
+            for(int maquinas = 1; maquinas <= maxMaquinas; maquinas *= 2){
+                estres(politica, false, maquinas, pedidos, tamanoLote);
+            }
+        }
+        //con despachador la poltica solo afecta a la cola de entrada, se usa FIFO
+        for(int maquinas = 1; maquinas <= maxMaquinas; maquinas *= 2){
+            estres(PoliticaCola.FIFO, true, maquinas, pedidos, tamanoLote);
+        }
+    }
+
+    /**
+     * Funcin main del banco de pruebas.
+     * @param args modo (micro, estres o todo), pedidos y mximo de mquinas (opcionales)
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception{
+        String modo = args.length > 0 ? args[0] : "todo";
+        int pedidos = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int maxMaquinas = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        //se utiliza el tamao de lote de la configuracin
+        int tamanoLote = Math.max(1, new ConfigCafeteria().getTamanoLote());
+        //se descartan los mensajes de la aplicacin, los resultados van a RESULTADOS
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ConsolaAsincrona.configurar(ModoConsola.SILENCIOSO);
+
+        if(modo.equals("micro") || modo.equals("todo")){
+            microPruebas(pedidos);
+        }
+        if(modo.equals("estres") || modo.equals("todo")){
+            pruebaEstres(pedidos, maxMaquinas, tamanoLote);
+        }
+    }
+}
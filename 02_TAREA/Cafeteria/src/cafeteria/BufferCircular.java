@@ -0,0 +1,83 @@
+/**
+ * Clase BufferCircular
+ *
+ * Buffer de capacidad fija que, cuando est lleno, sobrescribe el elemento ms
+ * antiguo. Se utiliza para guardar en memoria los ltimos registros de cada
+ * mquina sin que la memoria crezca con la duracin del turno.
+ *
+ * Adems de los elementos, cuenta cuntos se han sobrescrito para poder
+ * informar de ello al mostrar el registro.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BufferCircular<T> {
+
+    //Atributos principales
+    private final Object[] elementos; //array donde se guardan los elementos
+    private int inicio = 0; //posicin del elemento ms antiguo
+    private int cantidad = 0; //elementos guardados
+    private long sobrescritos = 0; //elementos que se han perdido por estar lleno
+
+    /**
+     * Constructor del buffer con la capacidad indicada.
+     * @param capacidad
+     */
+    public BufferCircular(int capacidad){
+        if(capacidad <= 0){
+            throw new IllegalArgumentException("La capacidad debe ser mayor que 0: " + capacidad);
+        }
+        this.elementos = new Object[capacidad];
+    }
+
+    /**
+     * Aade un elemento, si el buffer est lleno se sobrescribe el ms antiguo.
+     * @param elemento
+     */
+    public synchronized void add(T elemento){
+        int fin = (inicio + cantidad) % elementos.length;
+        elementos[fin] = elemento;
+        if(cantidad < elementos.length){
+            cantidad++;
+        }else{
+            //se ha sobrescrito el ms antiguo, se avanza el inicio
+            inicio = (inicio + 1) % elementos.length;
+            sobrescritos++;
+        }
+    }
+
+    /**
+     * Devuelve una copia de los elementos del ms antiguo al ms reciente.
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<T> elementos(){
+        List<T> copia = new ArrayList<>(cantidad);
+        for(int i = 0; i < cantidad; i++){
+            copia.add((T) elementos[(inicio + i) % elementos.length]);
+        }
+        return copia;
+    }
+
+    /**
+     * Devuelve el nmero de elementos guardados.
+     * @return
+     */
+    public synchronized int size(){
+        return cantidad;
+    }
+
+    /**
+     * Devuelve el nmero de elementos que se han sobrescrito.
+     * @return
+     */
+    public synchronized long getSobrescritos(){
+        return sobrescritos;
+    }
+}
@@ -18,6 +18,37 @@
  * Por ltimo, la aplicacin una vez haya finalizado el trabajo, mostrar por consola un
  * el registro de las actividades almacenadas en el registro de las mquinas.
  * 
+ * La cola de clientes se ordena segn la poltica configurada en cafeteria.properties
+ * (por orden de llegada, primero el pedido ms corto o primero el plazo ms cercano),
+ * y al terminar se muestra la espera media y el percentil 99 de los clientes.
+ * 
+ * Si se configuran mquinas especializadas, un Despachador reparte cada cliente a
+ * la mquina libre que terminara antes su pedido, y rechaza los pedidos que no
+ * puede preparar ninguna mquina.
+ * 
+ * Si se activa el generador de clientes, en lugar de la generacin inicial y la
+ * rfaga adicional, los clientes llegan durante un tiempo con la tasa y el proceso
+ * de llegadas configurados (ver GeneradorClientes). Mientras se estn generando
+ * clientes, las mquinas no terminan el turno aunque la cola est vaca.
+ * 
+ * Las mtricas de la cafetera (pedidos servidos, ritmo, profundidad de la cola y
+ * latencias por bebida) se pueden consultar en cualquier momento con metricas(), y
+ * si se configura un intervalo se muestran por consola mientras se trabaja.
+ * 
+ * Si se activa el diario de pedidos, cada cliente que entra en la cola se anota en
+ * un DiarioPedidos y al servirlo se anota su fin. Al iniciar, los pedidos que
+ * quedaron pendientes en la ejecucin anterior se vuelven a poner en la cola. Si
+ * se cierra la aplicacin (Ctrl+C) se dejan de aceptar clientes, las mquinas
+ * terminan el pedido que estn preparando y los que quedan en la cola se
+ * conservan en el diario para la siguiente ejecucin.
+ * 
+ * Los mensajes de las mquinas se escriben por la ConsolaAsincrona, un nico hilo
+ * escritor, para que la consola no obligue a las mquinas a esperarse entre ellas.
+ * 
+ * Si se activa el autoescalado, un ControladorMaquinas aade mquinas cuando la
+ * cola o la espera de los clientes crecen y las retira cuando sobran, entre el
+ * mnimo y el mximo configurados.
+ * 
  * @author dmiaper (Digenes Miaja Prez)
  * fecha: 21/12/2024
  * versin: 1.0
@@ -25,29 +56,43 @@
 package cafeteria;
 
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class Cafeteria {
 
     //Atributos principales de la clase
-    //Se instancia el nmero de mquinas que se pueden utilizar, se declar esta
-    //variable por si en un futuro hay que introducir ms mquinas
-    private static final int numMaquinas = 3;
-    //Se instancia un BlokingQueue del objeto cliente con una capacidad maxima de 90 clientes
-    private static final BlockingQueue<Cliente> colaClientes = new ArrayBlockingQueue<>(90);
+    //Se lee la configuracin de la cafetera
+    private static final ConfigCafeteria config = new ConfigCafeteria();
+    //Se instancia el nmero de mquinas que se pueden utilizar, se obtiene de la 
+    //configuracin (3 por defecto) por si en un futuro hay que introducir ms mquinas.
+    //Con autoescalado es el nmero inicial, dentro del mnimo y el mximo
+    private static final int numMaquinas = config.isAutoescaladoActivo()
+            ? Math.max(config.getAutoescaladoMinimo(), Math.min(config.getAutoescaladoMaximo(), config.getNumMaquinas()))
+            : config.getNumMaquinas();
+    //Se instancia la cola de clientes con la poltica y la capacidad configuradas (90 clientes por defecto)
+    private static final ColaPedidos colaClientes = new ColaPedidos(config.getPolitica(), config.getCapacidadCola());
     //Se crea un semforo con el nmero de permisos igual al nmero de mquinas declaradas.
-    private static final Semaphore semaforo = new Semaphore(numMaquinas);
+    //Se pueden aadir y quitar permisos si cambia el nmero de mquinas
+    private static final SemaforoAjustable semaforo = new SemaforoAjustable(numMaquinas);
+    //Se instancia el turno de trabajo, con la cola de clientes, las mtricas y el diario
+    private static final TurnoCafeteria turno = new TurnoCafeteria(colaClientes);
+    //Se instancian las mtricas que se pueden consultar mientras se trabaja
+    private static final MetricasCafeteria metricas = turno.getMetricas();
     //Se instancia el objeto random para generar nmero aleatorios.
     private static Random random = new Random();    
     //Variable booleana para gestionar la creacin de ms clientes.
     private static boolean generarClientes = false;
     //Variable que almacena la cantidad total de clientes
     private static int cliTotales;
+    //Diario donde se anotan los pedidos, null si no est activo
+    private static DiarioPedidos diario;
+    //Variable que indica que las mquinas han terminado el turno normalmente
+    private static volatile boolean terminado = false;
     
     /**
      * Funcin para generar los primeros clientes.
@@ -92,9 +137,9 @@ public class Cafeteria {
                 //se llama a la funcin generarClientes pasando como parmetro los el nuevo nmero de clientes
                 gernerarClientes(clientesNuevos);
                 //Mensaje que informa que se han generado los nuevos clientes.
-                System.out.println("************************************************");
-                System.out.println("Se van a generar "+clientesNuevos+" para simular el acceso de nuevos clientes");
-                System.out.println("************************************************");
+                ConsolaAsincrona.linea("************************************************");
+                ConsolaAsincrona.linea("Se van a generar "+clientesNuevos+" para simular el acceso de nuevos clientes");
+                ConsolaAsincrona.linea("************************************************");
                 //se cambia el valor a true cuando se hayuan generado los nuevos clientes.
                 generarClientes = true;
             }
@@ -109,8 +154,8 @@ public class Cafeteria {
     public static Thread crearMonitorClientes(int cliTotales){
         //se devuelve el hilo
         return new Thread(()->{
-            //bucle while que finaliza cuando se generarClientes sea cierto
-            while(!generarClientes){
+            //bucle while que finaliza cuando se generarClientes sea cierto o se cierre la cafetera
+            while(!generarClientes && !turno.isCerrando()){
                 //controlamos las excepciones
                 try{
                     //se congela el hilo un segundo
@@ -130,12 +175,121 @@ public class Cafeteria {
     
     /**
      * Funcin que devuelve el siguiente cliente.
+     * Se espera como mucho 200 ms, si no llega ningn cliente se devuelve null.
      * @return
      * @throws InterruptedException 
      */
     public static Cliente siguienteCliente() throws InterruptedException{
-        //se devuelve el ltimo cliente de forma bloqueante
-        return colaClientes.take();
+        //se devuelve el ltimo cliente esperando un tiempo mximo
+        return turno.siguienteCliente();
+    }
+    
+    /**
+     * Funcin que devuelve si se est cerrando la aplicacin, en ese caso las 
+     * mquinas terminan despus del pedido que estn preparando.
+     * @return 
+     */
+    public static boolean isCerrando(){
+        return turno.isCerrando();
+    }
+    
+    /**
+     * Funcin que devuelve el turno de trabajo de la cafetera, sobre el que 
+     * trabajan las mquinas y el despachador.
+     * @return 
+     */
+    public static TurnoCafeteria getTurno(){
+        return turno;
+    }
+    
+    /**
+     * Funcin que abre el diario de pedidos y lo asigna a la cola de clientes.
+     * Si no se puede abrir la cafetera trabaja sin diario.
+     */
+    private static void abrirDiario(){
+        try{
+            diario = new DiarioPedidos(config.getFicheroDiario(), config.getCapacidadDiario());
+            turno.setDiario(diario);
+        }catch(IOException e){
+            //se muestra el error y se sigue sin diario
+            System.out.println("Error al abrir el diario de pedidos: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Funcin que vuelve a poner en la cola los pedidos pendientes del diario.
+     * Se llama con las mquinas ya trabajando, por si no caben todos en la cola.
+     * @throws InterruptedException 
+     */
+    private static void restaurarPedidos() throws InterruptedException{
+        List<Cliente> pendientes = diario.getRecuperados();
+        if(pendientes.isEmpty()){
+            return;
+        }
+        System.out.println("************************************************");
+        System.out.println("Se recuperan "+pendientes.size()+" pedidos pendientes del diario");
+        System.out.println("************************************************");
+        for(Cliente cliente : pendientes){
+            colaClientes.restaurar(cliente);
+        }
+    }
+    
+    /**
+     * Funcin que se ejecuta al cerrar la aplicacin antes de que terminen las
+     * mquinas. Se dejan de aceptar clientes, se espera a que las mquinas 
+     * terminen el pedido actual y se guarda el diario en disco.
+     * @param ejecutor
+     * @param hiloClientes 
+     */
+    private static void cerrarOrdenadamente(ExecutorService ejecutor, Thread hiloClientes){
+        //si las mquinas ya han terminado no hay nada que hacer
+        if(terminado){
+            return;
+        }
+        ConsolaAsincrona.linea("Cerrando la cafetera, se terminan los pedidos en preparacin...");
+        turno.cerrar();
+        hiloClientes.interrupt();
+        //con autoescalado el pool todava no se ha cerrado
+        ejecutor.shutdown();
+        try{
+            if(!ejecutor.awaitTermination(config.getEsperaCierre(), TimeUnit.SECONDS)){
+                System.out.println("Las mquinas no han terminado a tiempo, sus pedidos se repetirn al reiniciar");
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        //se escriben los mensajes pendientes antes de terminar
+        ConsolaAsincrona.vaciar();
+        if(diario != null){
+            System.out.println("Quedan "+diario.getPendientes()+" pedidos pendientes en el diario");
+            diario.cerrar();
+        }
+    }
+    
+    /**
+     * Funcin que crea la mquina de la posicin indicada con su perfil y la
+     * registra en el despachador si lo hay.
+     * @param indice
+     * @param despachador
+     * @return 
+     */
+    private static Maquina crearMaquina(int indice, Despachador despachador){
+        //se crean las mquinas con su perfil
+        Maquina maquina = new Maquina(semaforo, config.getPerfil(indice), despachador, turno);
+        maquina.configurarLotes(config.getTamanoLote(), config.getIncrementoLote());
+        maquina.configurarEscala(config.getEscalaTiempo());
+        if(despachador != null){
+            despachador.agregarMaquina(maquina);
+        }
+        return maquina;
+    }
+    
+    /**
+     * Funcin que devuelve una foto de las mtricas de la cafetera en este momento.
+     * @return 
+     */
+    public static InstantaneaMetricas metricas(){
+        return metricas.instantanea();
     }
     
     /**
@@ -153,28 +307,122 @@ public class Cafeteria {
      */
     public static void main(String[] args) {
         
-        //se crea un pool del nmero de mquinas que se haya declarado.
-        ExecutorService ejecutorSevicios = Executors.newFixedThreadPool(numMaquinas);
+        //hasta que termine la generacin de clientes las mquinas no finalizan el turno
+        turno.setGenerando(true);
+        
+        //si se ha configurado un intervalo se muestran las mtricas mientras se trabaja
+        if(config.getIntervaloMetricas() > 0){
+            metricas.iniciarInforme(config.getIntervaloMetricas());
+        }
+        
+        //se configura el modo de los mensajes de las mquinas por consola
+        ConsolaAsincrona.configurar(config.getModoConsola());
+        
+        //se abre el diario de pedidos antes de que lleguen clientes
+        if(config.isDiarioActivo()){
+            abrirDiario();
+        }
+        
+        //se configura el registro de las mquinas antes de crearlas
+        Registrologs.configurar(config.getCapacidadRegistro(), config.isVolcadoRegistro());
+        
+        //se crea un pool del nmero de mquinas que se haya declarado (con autoescalado, del mximo).
+        ExecutorService ejecutorSevicios = Executors.newFixedThreadPool(
+                config.isAutoescaladoActivo() ? Math.max(numMaquinas, config.getAutoescaladoMaximo()) : numMaquinas);
+        
+        //si hay mquinas especializadas se crea el despachador que reparte los pedidos
+        Despachador despachador = config.isEnrutado() ? new Despachador(turno) : null;
         
         //se crean las mquina de hacer bebidas
-        for(int i=0; i<numMaquinas; i++){
-            //se crean las mquinas
-            ejecutorSevicios.submit(new Maquina(semaforo));
+        ControladorMaquinas controlador = null;
+        if(config.isAutoescaladoActivo()){
+            //el controlador crea las mquinas iniciales y las que se aadan despus
+            controlador = new ControladorMaquinas(config, colaClientes, semaforo, ejecutorSevicios,
+                    despachador, indice -> crearMaquina(indice, despachador));
+            controlador.iniciarMaquinas(numMaquinas);
+            controlador.iniciar(config.getAutoescaladoIntervalo());
+        }else{
+            for(int i=0; i<numMaquinas; i++){
+                ejecutorSevicios.submit(crearMaquina(i, despachador));
+            }
         }
 
-        //se van a crear aleatoriamente el nmero de cliente entre 10 y 40
-        cliTotales = random.nextInt(30)+10;
-        gernerarClientes(cliTotales);
+        //se inicia el hilo del despachador
+        if(despachador != null){
+            new Thread(despachador, "despachador").start();
+        }
         
-        //se crea el hilo para monitorizar la cantidad de clientes.
-        Thread monitorClientes = crearMonitorClientes(cliTotales);
-        monitorClientes.start();
+        //se vuelven a poner en la cola los pedidos pendientes de la ejecucin anterior
+        if(diario != null){
+            try{
+                restaurarPedidos();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                System.out.println("Error al recuperar los pedidos: " + e.getMessage());
+            }
+        }
+        
+        //hilo que genera los clientes, el generador de carga o el monitor de clientes
+        Thread hiloClientes;
+        GeneradorClientes generador = null;
+        if(config.isGeneradorActivo()){
+            //se crea el generador de clientes con la configuracin
+            generador = new GeneradorClientes(colaClientes, config.getProcesoLlegadas(), config.getTasaLlegadas(),
+                    config.getTamanoRafaga(), config.getDuracionGenerador(), config.getSaturacion(), config.getEsperaSaturacion());
+            hiloClientes = new Thread(generador, "generador");
+        }else{
+            //se van a crear aleatoriamente el nmero de cliente entre 10 y 40
+            cliTotales = random.nextInt(30)+10;
+            gernerarClientes(cliTotales);
+            //se crea el hilo para monitorizar la cantidad de clientes.
+            hiloClientes = crearMonitorClientes(cliTotales);
+        }
+        hiloClientes.start();
+        
+        //si se cierra la aplicacin antes de terminar se cierra de forma ordenada
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> cerrarOrdenadamente(ejecutorSevicios, hiloClientes), "cierre"));
         
         try{
-            //se incia la finalizacin del pool de los hilos creados
-            ejecutorSevicios.shutdown();
+            //se incia la finalizacin del pool de los hilos creados, con autoescalado
+            //se pueden aadir mquinas hasta que terminen de llegar clientes
+            if(controlador == null){
+                ejecutorSevicios.shutdown();
+            }
             //Se espera a qu el hilo finalice
-            monitorClientes.join();
+            hiloClientes.join();
+            //ya no van a llegar ms clientes
+            turno.setGenerando(false);
+            if(controlador != null){
+                controlador.detener();
+                ejecutorSevicios.shutdown();
+            }
+            if(generador != null){
+                ConsolaAsincrona.linea(generador.resumen());
+            }
+            //se espera a que las mquinas terminen los pedidos
+            ejecutorSevicios.awaitTermination(1, TimeUnit.HOURS);
+            terminado = !turno.isCerrando();
+            //se guarda el diario en disco
+            if(diario != null && !turno.isCerrando()){
+                diario.cerrar();
+            }
+            //se escriben los mensajes pendientes de las mquinas antes de los resmenes
+            ConsolaAsincrona.vaciar();
+            //se muestra el tiempo de espera de los clientes con la poltica utilizada
+            System.out.println("Espera de los clientes con la poltica " + colaClientes.getPolitica()
+                    + ": " + colaClientes.getEspera().resumen());
+            //se muestra la latencia de cada bebida
+            for(TipoBebida bebida : TipoBebida.values()){
+                System.out.println("Latencia de " + bebida + ": " + metricas.getLatencia(bebida).resumen());
+            }
+            //se muestran los pedidos que no ha podido preparar ninguna mquina
+            if(metricas.getRechazados() > 0){
+                System.out.println("Pedidos rechazados porque ninguna mquina los puede preparar: " + metricas.getRechazados());
+            }
+            //se muestran los cambios de mquinas del autoescalado
+            if(controlador != null){
+                System.out.println(controlador.resumen());
+            }
         }catch(InterruptedException e){
             //se controlan las excepciones
             Thread.currentThread().interrupt();
@@ -18,6 +18,8 @@ package cafeteria;
 
 import java.util.logging.Logger;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -25,18 +27,44 @@ import java.util.Random;
  */
 public class Cliente {
    
-    //contador para generar el ID de forma automtica del cliente
-    private static int contadorID=0  ;
+    //contador para generar el ID de forma automtica del cliente, es atmico
+    //porque los clientes se crean desde varios hilos (generador y monitor)
+    private static final AtomicInteger contadorID = new AtomicInteger();
           
     //Attributos principales
     private final int id; // nmero para identificar al cliente
     private final TipoBebida pedido;//se almacena el pedido que solicitar el cliente
+    private final long llegada;//instante de llegada (System.nanoTime) para medir la espera
     //log para mostrar la informacin de por consola. 
     
     //Contructor del cliente
     public Cliente(){
-        this.id = ++contadorID;
+        this(System.nanoTime());
+    }
+    
+    /**
+     * Constructor del cliente con un instante de llegada concreto, se utiliza 
+     * en la simulacin, donde el tiempo es virtual.
+     * @param llegada 
+     */
+    public Cliente(long llegada){
+        this.id = contadorID.incrementAndGet();
         this.pedido = TipoBebida.values()[new Random().nextInt(TipoBebida.values().length)];
+        this.llegada = llegada;
+    }
+    
+    /**
+     * Constructor de un cliente recuperado del diario de pedidos, mantiene su 
+     * id, su pedido y su llegada. El contador se adelanta para no repetir ids.
+     * @param id
+     * @param pedido 
+     * @param llegada 
+     */
+    public Cliente(int id, TipoBebida pedido, long llegada){
+        this.id = id;
+        this.pedido = pedido;
+        this.llegada = llegada;
+        contadorID.accumulateAndGet(id, Math::max);
     }
    
     /**
@@ -51,24 +79,31 @@ public class Cliente {
         return id;
     } 
     
-    public void mensaje(int idMaquina, TipoBebida bebida){
-        
-        String mensaje =null; 
-        switch(bebida){
-            case CAFE ->{
-                mensaje = String.format("Cliente id: %s. Estoy siendo atendido en la mquina nmero %s y me esta preparando un caf", id ,idMaquina);
-            }
-            case TE ->{
-             mensaje = String.format("Cliente id: %s. Estoy siendo atendido en la mquina nmero %s y me esta preparando un t", id ,idMaquina);
-            }
-            case CHOCOLATE_CALIENTE ->{
-             mensaje = String.format("Cliente id: %s. Estoy siendo atendido en la mquina nmero %s y me esta preparando un chocolate calietne", id ,idMaquina);
-            }
-        }
-        if(mensaje!=null){
-            System.out.println(mensaje);
-        }
-        
+    /**
+     * Devuelve el instante de llegada del cliente en nanosegundos
+     * @return 
+     */
+    public long getLlegada(){
+        return llegada;
+    }
+    
+    /**
+     * Devuelve el instante lmite en el que se debera servir el pedido, 
+     * segn la espera mxima de la bebida.
+     * @return 
+     */
+    public long getPlazo(){
+        return llegada + TimeUnit.MILLISECONDS.toNanos(pedido.getEsperaMaxima());
+    }
+    
+    /**
+     * Muestra que el cliente est siendo atendido en la mquina. El mensaje se
+     * construye con el texto ya preparado de la bebida y lo escribe la consola
+     * asncrona, segn el modo configurado.
+     * @param idMaquina 
+     */
+    public void mensaje(int idMaquina){
+        ConsolaAsincrona.atendiendo(idMaquina, this);
     }
     
     
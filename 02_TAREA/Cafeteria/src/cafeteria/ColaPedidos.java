@@ -0,0 +1,309 @@
+/**
+ * Clase ColaPedidos
+ *
+ * Cola de clientes de la cafetera con una poltica de ordenacin configurable
+ * (ver PoliticaCola) y una capacidad mxima.
+ *
+ * Las colas con prioridad de Java (PriorityBlockingQueue) no tienen lmite, por
+ * eso la capacidad se controla con un semforo de huecos libres: al aadir un
+ * cliente se adquiere un hueco y al sacarlo se libera. De este modo todas las
+ * polticas se comportan igual que la cola original de 90 clientes.
+ *
+ * Si se le asigna un DiarioPedidos, cada cliente que entra en la cola se anota
+ * en el diario para poder recuperarlo si la cafetera se cierra.
+ *
+ * Cuando una mquina empieza a preparar un pedido se registra el tiempo que ha
+ * estado esperando el cliente en un HistogramaLatencia, para poder comparar la
+ * espera media y el percentil 99 de cada poltica.
+ *
+ * El Despachador no saca los clientes con poll(), busca con primero() el cliente
+ * que le toca segn la poltica entre los que puede preparar alguna mquina libre
+ * y lo saca con quitar(). Para no tener que consultar la cola continuamente, se
+ * registra como observador y la cola le despierta cada vez que entra un cliente.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+public class ColaPedidos {
+
+    //poltica de ordenacin de la cola
+    private final PoliticaCola politica;
+    //cola donde se almacenan los clientes
+    private final BlockingQueue<Cliente> cola;
+    //huecos libres de la cola
+    private final Semaphore huecos;
+    //histograma con el tiempo de espera de los clientes
+    private final HistogramaLatencia espera;
+    //diario donde se anotan los clientes que entran, null si no se usa
+    private volatile DiarioPedidos diario;
+    //hilo al que se despierta cuando entra un cliente, null si no hay
+    private volatile Thread observador;
+
+    /**
+     * Constructor de la cola, recibe la poltica y la capacidad mxima.
+     * @param politica
+     * @param capacidad
+     */
+    public ColaPedidos(PoliticaCola politica, int capacidad){
+        this.politica = politica;
+        this.cola = politica.crearCola(capacidad);
+        this.huecos = new Semaphore(capacidad);
+        this.espera = new HistogramaLatencia();
+    }
+
+    /**
+     * Aade un cliente a la cola, se bloquea si la cola est llena.
+     * @param cliente
+     * @throws InterruptedException
+     */
+    public void put(Cliente cliente) throws InterruptedException{
+        //se espera a que haya un hueco libre
+        huecos.acquire();
+        anotar(cliente);
+        cola.put(cliente);
+        avisar();
+    }
+
+    /**
+     * Aade un cliente a la cola si hay hueco, esperando como mucho el tiempo
+     * indicado. Devuelve false si la cola sigue llena.
+     * @param cliente
+     * @param espera
+     * @param unidad
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean offer(Cliente cliente, long espera, TimeUnit unidad) throws InterruptedException{
+        //se intenta conseguir un hueco libre
+        if(!huecos.tryAcquire(espera, unidad)){
+            return false;
+        }
+        anotar(cliente);
+        cola.put(cliente);
+        avisar();
+        return true;
+    }
+
+    /**
+     * Vuelve a aadir a la cola un cliente recuperado del diario, sin anotarlo
+     * otra vez. Se bloquea si la cola est llena.
+     * @param cliente
+     * @throws InterruptedException
+     */
+    public void restaurar(Cliente cliente) throws InterruptedException{
+        huecos.acquire();
+        cola.put(cliente);
+        avisar();
+    }
+
+    /**
+     * Devuelve a la cola un cliente que una mquina ha sacado pero no va a
+     * atender, sin anotarlo otra vez. Se bloquea si la cola est llena.
+     * @param cliente
+     * @throws InterruptedException
+     */
+    public void devolver(Cliente cliente) throws InterruptedException{
+        restaurar(cliente);
+    }
+
+    /**
+     * Asigna el diario donde se anotan los clientes que entran en la cola.
+     * @param diario
+     */
+    public void setDiario(DiarioPedidos diario){
+        this.diario = diario;
+    }
+
+    /**
+     * Asigna el hilo al que se despierta cada vez que entra un cliente en la
+     * cola, null para ninguno.
+     * @param hilo
+     */
+    public void setObservador(Thread hilo){
+        this.observador = hilo;
+    }
+
+    /**
+     * Despierta al observador, si lo hay, porque ha entrado un cliente.
+     */
+    private void avisar(){
+        Thread hilo = observador;
+        if(hilo != null){
+            LockSupport.unpark(hilo);
+        }
+    }
+
+    /**
+     * Anota el cliente en el diario, antes de que una mquina lo pueda atender.
+     * @param cliente
+     */
+    private void anotar(Cliente cliente){
+        DiarioPedidos actual = diario;
+        if(actual != null){
+            actual.alta(cliente);
+        }
+    }
+
+    /**
+     * Devuelve el siguiente cliente segn la poltica, esperando como mucho el
+     * tiempo indicado. Devuelve null si no llega ningn cliente.
+     * @param espera
+     * @param unidad
+     * @return
+     * @throws InterruptedException
+     */
+    public Cliente poll(long espera, TimeUnit unidad) throws InterruptedException{
+        Cliente cliente = cola.poll(espera, unidad);
+        if(cliente != null){
+            //se libera el hueco
+            huecos.release();
+        }
+        return cliente;
+    }
+
+    /**
+     * Devuelve el siguiente cliente segn la poltica, se bloquea si la cola
+     * est vaca.
+     * @return
+     * @throws InterruptedException
+     */
+    public Cliente take() throws InterruptedException{
+        Cliente cliente = cola.take();
+        //se libera el hueco
+        huecos.release();
+        return cliente;
+    }
+
+    /**
+     * Devuelve, sin sacarlo, el primer cliente segn la poltica de los que
+     * cumplen la condicin, o null si no hay ninguno. Normalmente es la cabeza
+     * de la cola y solo se recorre la cola si la cabeza no cumple la condicin.
+     * @param condicion
+     * @return
+     */
+    public Cliente primero(Predicate<Cliente> condicion){
+        Cliente cabeza = cola.peek();
+        if(cabeza == null || condicion.test(cabeza)){
+            return cabeza;
+        }
+        //el iterador de la cola con prioridad no sigue el orden, se compara con la poltica
+        Comparator<Cliente> orden = politica.getOrden();
+        Cliente primero = null;
+        for(Cliente cliente : cola){
+            if(!condicion.test(cliente)){
+                continue;
+            }
+            //por orden de llegada el primero que se recorre es el ms antiguo
+            if(orden == null){
+                return cliente;
+            }
+            if(primero == null || orden.compare(cliente, primero) < 0){
+                primero = cliente;
+            }
+        }
+        return primero;
+    }
+
+    /**
+     * Saca de la cola el cliente indicado. Devuelve false si ya no est en la
+     * cola porque se lo ha llevado otra mquina.
+     * @param cliente
+     * @return
+     */
+    public boolean quitar(Cliente cliente){
+        if(cola.remove(cliente)){
+            //se libera el hueco
+            huecos.release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Saca de la cola hasta un mximo de clientes que hayan pedido la bebida
+     * indicada, sin esperar. Se utiliza para formar lotes de bebidas iguales.
+     * Los clientes se sacan en el orden de la poltica, de modo que el lote lo
+     * forman los que antes habra atendido la cola.
+     * @param bebida
+     * @param maximo
+     * @return
+     */
+    public List<Cliente> drenar(TipoBebida bebida, int maximo){
+        List<Cliente> lote = new ArrayList<>();
+        //el iterador de la cola con prioridad no sigue el orden, se ordenan los candidatos
+        List<Cliente> candidatos = new ArrayList<>();
+        for(Cliente cliente : cola){
+            if(cliente.getPedido() == bebida){
+                candidatos.add(cliente);
+            }
+        }
+        Comparator<Cliente> orden = politica.getOrden();
+        if(orden != null){
+            candidatos.sort(orden);
+        }
+        for(Cliente cliente : candidatos){
+            if(lote.size() >= maximo){
+                break;
+            }
+            //remove devuelve false si otra mquina ya se ha llevado el cliente
+            if(cola.remove(cliente)){
+                huecos.release();
+                lote.add(cliente);
+            }
+        }
+        return lote;
+    }
+
+    /**
+     * Registra el tiempo que ha esperado el cliente hasta que se empieza a
+     * preparar su pedido.
+     * @param cliente
+     */
+    public void registrarEspera(Cliente cliente){
+        espera.registrar(System.nanoTime() - cliente.getLlegada());
+    }
+
+    /**
+     * Devuelve si la cola est vaca.
+     * @return
+     */
+    public boolean isEmpty(){
+        return cola.isEmpty();
+    }
+
+    /**
+     * Devuelve la cantidad de clientes que hay en la cola.
+     * @return
+     */
+    public int size(){
+        return cola.size();
+    }
+
+    /**
+     * Devuelve la poltica de la cola.
+     * @return
+     */
+    public PoliticaCola getPolitica(){
+        return politica;
+    }
+
+    /**
+     * Devuelve el histograma de tiempos de espera.
+     * @return
+     */
+    public HistogramaLatencia getEspera(){
+        return espera;
+    }
+}
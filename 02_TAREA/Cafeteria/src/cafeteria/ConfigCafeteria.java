@@ -0,0 +1,567 @@
+/**
+ * Clase ConfigCafeteria
+ *
+ * Esta clase leer el fichero cafeteria.properties, que se encuentra en la carpeta
+ * del proyecto, y utilizar sus datos para configurar la cafetera. Si el fichero
+ * no existe o falta algn parmetro se utilizarn los valores por defecto, que son
+ * los del comportamiento original de la aplicacin.
+ *
+ * Parmetros:
+ * - cola.politica: poltica de la cola de clientes (FIFO, MAS_CORTO_PRIMERO, PLAZO_MAS_CERCANO).
+ * - cola.capacidad: nmero mximo de clientes en la cola.
+ * - maquinas.numero: nmero de mquinas de la cafetera.
+ * - maquina.N: perfil de la mquina N (empezando en 1), por ejemplo CAFE:1.5,TE:1.0.
+ *   Las mquinas sin perfil preparan todas las bebidas a velocidad normal. Si alguna
+ *   mquina tiene perfil, los pedidos se reparten mediante un Despachador.
+ * - lote.tamano: mximo de bebidas iguales que prepara una mquina en un ciclo (1 sin lotes).
+ * - lote.incremento: milisegundos que se aaden al ciclo por cada bebida adicional del lote.
+ * - generador.activo: si es true los clientes los crea el GeneradorClientes.
+ * - generador.proceso: proceso de llegadas (CONSTANTE, POISSON, RAFAGAS).
+ * - generador.tasa: clientes por segundo.
+ * - generador.rafaga: clientes por rfaga con el proceso RAFAGAS.
+ * - generador.duracion: segundos durante los que llegan clientes.
+ * - generador.saturacion: qu hacer con la cola llena (BLOQUEAR, ESPERA_ACOTADA, DESCARTAR).
+ * - generador.espera: milisegundos de espera con ESPERA_ACOTADA.
+ * - metricas.intervalo: segundos entre cada informe de mtricas por consola (0 sin informe).
+ * - registro.capacidad: registros que guarda en memoria cada mquina (se descartan los ms antiguos).
+ * - registro.volcado: si es true cada mquina escribe todos sus registros en su propio fichero.
+ *   Est activo por defecto, porque los registros de cada pedido ya no van al logs_cafeteria.txt
+ *   en el momento y sin volcado solo se conservan los ltimos registro.capacidad de cada mquina.
+ * - diario.activo: si es true los pedidos se anotan en un diario para recuperarlos al reiniciar.
+ * - diario.fichero: ruta del diario de pedidos.
+ * - diario.capacidad: registros que caben en el diario antes de compactarlo.
+ * - cierre.espera: segundos que se espera a las mquinas al cerrar la aplicacin.
+ * - tiempo.escala: factor que se aplica al tiempo de preparacin (1 real, 0 sin espera).
+ * - consola.modo: mensajes de cada pedido por consola (NORMAL, SILENCIOSO, ESTRUCTURADO).
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class ConfigCafeteria {
+
+    //nombre del fichero de configuracin
+    private static final String FICHERO = "cafeteria.properties";
+
+    //Atributos principales, con los valores por defecto
+    private final Properties propiedades;
+    private PoliticaCola politica = PoliticaCola.FIFO;
+    private int capacidadCola = 90;
+    private int numMaquinas = 3;
+    private final List<PerfilMaquina> perfiles = new ArrayList<>();
+    private boolean enrutado = false;
+    private int tamanoLote = 1;
+    private long incrementoLote = 500;
+    private boolean generadorActivo = false;
+    private ProcesoLlegadas procesoLlegadas = ProcesoLlegadas.POISSON;
+    private double tasaLlegadas = 1.0;
+    private int tamanoRafaga = 10;
+    private long duracionGenerador = 60;
+    private PoliticaSaturacion saturacion = PoliticaSaturacion.BLOQUEAR;
+    private long esperaSaturacion = 1000;
+    private long intervaloMetricas = 0;
+    private int capacidadRegistro = 1000;
+    private boolean volcadoRegistro = true;
+    private boolean diarioActivo = false;
+    private String ficheroDiario = "src" + File.separator + "cafeteria_logs" + File.separator + "pedidos.diario";
+    private int capacidadDiario = 4096;
+    private long esperaCierre = 10;
+    private double escalaTiempo = 1.0;
+    private ModoConsola modoConsola = ModoConsola.NORMAL;
+    private boolean autoescaladoActivo = false;
+    private int autoescaladoMinimo = 1;
+    private int autoescaladoMaximo = 8;
+    private long autoescaladoIntervalo = 1;
+    private int autoescaladoColaSubida = 10;
+    private int autoescaladoColaBajada = 1;
+    private long autoescaladoEsperaObjetivo = 5000;
+    private int autoescaladoConfirmaciones = 3;
+    private long autoescaladoEnfriamiento = 5;
+
+    /**
+     * Constructor de la configuracin, se lee el fichero al crear el objeto.
+     */
+    public ConfigCafeteria(){
+        this.propiedades = new Properties();
+        configurar();
+    }
+
+    /**
+     * Funcin que lee el fichero de configuracin y asigna los valores. Cada
+     * parmetro se lee por separado, as un valor errneo solo afecta a ese
+     * parmetro, que mantiene su valor por defecto.
+     */
+    private void configurar(){
+        File fichero = new File(FICHERO);
+        //si no existe el fichero se mantienen los valores por defecto
+        if(!fichero.exists()){
+            return;
+        }
+        //se controla el cierre automtico del fichero
+        try(FileInputStream entrada = new FileInputStream(fichero)){
+            propiedades.load(entrada);
+        }catch(IOException | IllegalArgumentException e){
+            //se muestra el error y se mantienen los valores por defecto
+            System.err.println("Error al leer la configuracin de la cafetera: " + e.getMessage());
+            return;
+        }
+        //se obtienen los valores de los parmetros
+        politica = leerEnum("cola.politica", PoliticaCola.class, politica);
+        capacidadCola = leerEntero("cola.capacidad", capacidadCola, 1);
+        tamanoLote = leerEntero("lote.tamano", tamanoLote);
+        incrementoLote = leerLargo("lote.incremento", incrementoLote);
+        generadorActivo = leerBooleano("generador.activo", generadorActivo);
+        procesoLlegadas = leerEnum("generador.proceso", ProcesoLlegadas.class, procesoLlegadas);
+        tasaLlegadas = leerPositivo("generador.tasa", tasaLlegadas);
+        tamanoRafaga = leerEntero("generador.rafaga", tamanoRafaga);
+        duracionGenerador = leerLargo("generador.duracion", duracionGenerador);
+        saturacion = leerEnum("generador.saturacion", PoliticaSaturacion.class, saturacion);
+        esperaSaturacion = leerLargo("generador.espera", esperaSaturacion);
+        intervaloMetricas = leerLargo("metricas.intervalo", intervaloMetricas);
+        capacidadRegistro = leerEntero("registro.capacidad", capacidadRegistro, 1);
+        volcadoRegistro = leerBooleano("registro.volcado", volcadoRegistro);
+        diarioActivo = leerBooleano("diario.activo", diarioActivo);
+        ficheroDiario = propiedades.getProperty("diario.fichero", ficheroDiario).trim();
+        capacidadDiario = leerEntero("diario.capacidad", capacidadDiario, 1);
+        esperaCierre = leerLargo("cierre.espera", esperaCierre);
+        escalaTiempo = leerDecimal("tiempo.escala", escalaTiempo);
+        modoConsola = leerEnum("consola.modo", ModoConsola.class, modoConsola);
+        autoescaladoActivo = leerBooleano("autoescalado.activo", autoescaladoActivo);
+        autoescaladoMinimo = leerEntero("autoescalado.minimo", autoescaladoMinimo, 1);
+        autoescaladoMaximo = leerEntero("autoescalado.maximo", autoescaladoMaximo, 1);
+        //el mnimo no puede superar el mximo, se utiliza el mnimo por defecto (1)
+        if(autoescaladoMinimo > autoescaladoMaximo){
+            errorParametro("autoescalado.minimo", new IllegalArgumentException("el mnimo (" + autoescaladoMinimo
+                    + ") es mayor que el mximo (" + autoescaladoMaximo + ")"));
+            autoescaladoMinimo = 1;
+        }
+        autoescaladoIntervalo = leerLargo("autoescalado.intervalo", autoescaladoIntervalo, 1);
+        int subidaDefecto = autoescaladoColaSubida;
+        int bajadaDefecto = autoescaladoColaBajada;
+        autoescaladoColaSubida = leerEntero("autoescalado.cola.subida", autoescaladoColaSubida, 1);
+        autoescaladoColaBajada = leerEntero("autoescalado.cola.bajada", autoescaladoColaBajada, 0);
+        //para retirar una mquina la cola tiene que estar por debajo del umbral de subida,
+        //si no se utilizan los umbrales por defecto
+        if(autoescaladoColaSubida <= autoescaladoColaBajada){
+            errorParametro("autoescalado.cola.subida", new IllegalArgumentException("la subida ("
+                    + autoescaladoColaSubida + ") debe ser mayor que la bajada (" + autoescaladoColaBajada + ")"));
+            autoescaladoColaSubida = subidaDefecto;
+            autoescaladoColaBajada = bajadaDefecto;
+        }
+        autoescaladoEsperaObjetivo = leerLargo("autoescalado.espera.objetivo", autoescaladoEsperaObjetivo, 1);
+        autoescaladoConfirmaciones = leerEntero("autoescalado.confirmaciones", autoescaladoConfirmaciones, 1);
+        autoescaladoEnfriamiento = leerLargo("autoescalado.enfriamiento", autoescaladoEnfriamiento, 0);
+        numMaquinas = leerEntero("maquinas.numero", numMaquinas, 1);
+        //se obtiene el perfil de cada mquina, con autoescalado hasta el mximo de mquinas
+        perfiles.clear();
+        int numPerfiles = autoescaladoActivo ? Math.max(numMaquinas, autoescaladoMaximo) : numMaquinas;
+        for(int i = 1; i <= numPerfiles; i++){
+            String perfil = propiedades.getProperty("maquina." + i);
+            PerfilMaquina leido = PerfilMaquina.generalista();
+            if(perfil != null && !perfil.isBlank()){
+                try{
+                    leido = PerfilMaquina.desdeTexto(perfil);
+                    enrutado = true;
+                }catch(IllegalArgumentException e){
+                    errorParametro("maquina." + i, e);
+                }
+            }
+            perfiles.add(leido);
+        }
+    }
+
+    /**
+     * Funcin que muestra el error de un parmetro, que mantiene su valor por defecto.
+     * @param clave
+     * @param e
+     */
+    private static void errorParametro(String clave, IllegalArgumentException e){
+        System.err.println("Error en el parmetro " + clave + " de la configuracin de la cafetera, se utiliza el valor por defecto: " + e.getMessage());
+    }
+
+    /**
+     * Funcin que lee un parmetro entero.
+     * @param clave
+     * @param defecto valor si no est o no es vlido
+     * @return
+     */
+    private int leerEntero(String clave, int defecto){
+        try{
+            return Integer.parseInt(propiedades.getProperty(clave, String.valueOf(defecto)).trim());
+        }catch(NumberFormatException e){
+            errorParametro(clave, e);
+            return defecto;
+        }
+    }
+
+    /**
+     * Funcin que lee un parmetro entero que no puede ser menor que un mnimo.
+     * @param clave
+     * @param defecto valor si no est o no es vlido
+     * @param minimo valor mnimo del parmetro
+     * @return
+     */
+    private int leerEntero(String clave, int defecto, int minimo){
+        int valor = leerEntero(clave, defecto);
+        if(valor < minimo){
+            errorParametro(clave, new IllegalArgumentException("debe ser como mnimo " + minimo + ": " + valor));
+            return defecto;
+        }
+        return valor;
+    }
+
+    /**
+     * Funcin que lee un parmetro entero largo.
+     * @param clave
+     * @param defecto valor si no est o no es vlido
+     * @return
+     */
+    private long leerLargo(String clave, long defecto){
+        try{
+            return Long.parseLong(propiedades.getProperty(clave, String.valueOf(defecto)).trim());
+        }catch(NumberFormatException e){
+            errorParametro(clave, e);
+            return defecto;
+        }
+    }
+
+    /**
+     * Funcin que lee un parmetro entero largo que no puede ser menor que un mnimo.
+     * @param clave
+     * @param defecto valor si no est o no es vlido
+     * @param minimo valor mnimo del parmetro
+     * @return
+     */
+    private long leerLargo(String clave, long defecto, long minimo){
+        long valor = leerLargo(clave, defecto);
+        if(valor < minimo){
+            errorParametro(clave, new IllegalArgumentException("debe ser como mnimo " + minimo + ": " + valor));
+            return defecto;
+        }
+        return valor;
+    }
+
+    /**
+     * Funcin que lee un parmetro decimal.
+     * @param clave
+     * @param defecto valor si no est o no es vlido
+     * @return
+     */
+    private double leerDecimal(String clave, double defecto){
+        try{
+            return Double.parseDouble(propiedades.getProperty(clave, String.valueOf(defecto)).trim());
+        }catch(NumberFormatException e){
+            errorParametro(clave, e);
+            return defecto;
+        }
+    }
+
+    /**
+     * Funcin que lee un parmetro decimal que tiene que ser mayor que 0 y finito.
+     * @param clave
+     * @param defecto valor si no est o no es vlido
+     * @return
+     */
+    private double leerPositivo(String clave, double defecto){
+        double valor = leerDecimal(clave, defecto);
+        if(!(valor > 0) || Double.isInfinite(valor)){
+            errorParametro(clave, new IllegalArgumentException("debe ser mayor que 0: " + valor));
+            return defecto;
+        }
+        return valor;
+    }
+
+    /**
+     * Funcin que lee un parmetro booleano.
+     * @param clave
+     * @param defecto valor si no est
+     * @return
+     */
+    private boolean leerBooleano(String clave, boolean defecto){
+        return Boolean.parseBoolean(propiedades.getProperty(clave, String.valueOf(defecto)).trim());
+    }
+
+    /**
+     * Funcin que lee un parmetro con una de las constantes de un enum.
+     * @param <T>
+     * @param clave
+     * @param tipo enum del parmetro
+     * @param defecto valor si no est o no es vlido
+     * @return
+     */
+    private <T extends Enum<T>> T leerEnum(String clave, Class<T> tipo, T defecto){
+        try{
+            return Enum.valueOf(tipo, propiedades.getProperty(clave, defecto.name()).trim());
+        }catch(IllegalArgumentException e){
+            errorParametro(clave, e);
+            return defecto;
+        }
+    }
+
+    /**
+     * Devuelve la poltica de la cola de clientes.
+     * @return
+     */
+    public PoliticaCola getPolitica(){
+        return politica;
+    }
+
+    /**
+     * Devuelve la capacidad de la cola de clientes.
+     * @return
+     */
+    public int getCapacidadCola(){
+        return capacidadCola;
+    }
+
+    /**
+     * Devuelve el nmero de mquinas.
+     * @return
+     */
+    public int getNumMaquinas(){
+        return numMaquinas;
+    }
+
+    /**
+     * Devuelve el perfil de la mquina indicada (empezando en 0).
+     * @param indice
+     * @return
+     */
+    public PerfilMaquina getPerfil(int indice){
+        return indice < perfiles.size() ? perfiles.get(indice) : PerfilMaquina.generalista();
+    }
+
+    /**
+     * Devuelve el tamao mximo de los lotes.
+     * @return
+     */
+    public int getTamanoLote(){
+        return tamanoLote;
+    }
+
+    /**
+     * Devuelve los milisegundos que se aaden por cada bebida adicional del lote.
+     * @return
+     */
+    public long getIncrementoLote(){
+        return incrementoLote;
+    }
+
+    /**
+     * Devuelve si los clientes los crea el generador de carga.
+     * @return
+     */
+    public boolean isGeneradorActivo(){
+        return generadorActivo;
+    }
+
+    /**
+     * Devuelve el proceso de llegadas del generador.
+     * @return
+     */
+    public ProcesoLlegadas getProcesoLlegadas(){
+        return procesoLlegadas;
+    }
+
+    /**
+     * Devuelve la tasa de llegadas en clientes por segundo.
+     * @return
+     */
+    public double getTasaLlegadas(){
+        return tasaLlegadas;
+    }
+
+    /**
+     * Devuelve el nmero de clientes de cada rfaga.
+     * @return
+     */
+    public int getTamanoRafaga(){
+        return tamanoRafaga;
+    }
+
+    /**
+     * Devuelve los segundos durante los que se generan clientes.
+     * @return
+     */
+    public long getDuracionGenerador(){
+        return duracionGenerador;
+    }
+
+    /**
+     * Devuelve la poltica cuando la cola est llena.
+     * @return
+     */
+    public PoliticaSaturacion getSaturacion(){
+        return saturacion;
+    }
+
+    /**
+     * Devuelve los milisegundos de espera con ESPERA_ACOTADA.
+     * @return
+     */
+    public long getEsperaSaturacion(){
+        return esperaSaturacion;
+    }
+
+    /**
+     * Devuelve los segundos entre cada informe de mtricas, 0 si no se muestran.
+     * @return
+     */
+    public long getIntervaloMetricas(){
+        return intervaloMetricas;
+    }
+
+    /**
+     * Devuelve los registros que guarda en memoria cada mquina.
+     * @return
+     */
+    public int getCapacidadRegistro(){
+        return capacidadRegistro;
+    }
+
+    /**
+     * Devuelve si cada mquina vuelca sus registros a su propio fichero.
+     * @return
+     */
+    public boolean isVolcadoRegistro(){
+        return volcadoRegistro;
+    }
+
+    /**
+     * Devuelve si los pedidos se anotan en el diario.
+     * @return
+     */
+    public boolean isDiarioActivo(){
+        return diarioActivo;
+    }
+
+    /**
+     * Devuelve la ruta del diario de pedidos.
+     * @return
+     */
+    public String getFicheroDiario(){
+        return ficheroDiario;
+    }
+
+    /**
+     * Devuelve los registros que caben en el diario antes de compactarlo.
+     * @return
+     */
+    public int getCapacidadDiario(){
+        return capacidadDiario;
+    }
+
+    /**
+     * Devuelve los segundos que se espera a las mquinas al cerrar la aplicacin.
+     * @return
+     */
+    public long getEsperaCierre(){
+        return esperaCierre;
+    }
+
+    /**
+     * Devuelve el factor que se aplica al tiempo de preparacin.
+     * @return
+     */
+    public double getEscalaTiempo(){
+        return escalaTiempo;
+    }
+
+    /**
+     * Devuelve el modo de los mensajes de cada pedido por consola.
+     * @return
+     */
+    public ModoConsola getModoConsola(){
+        return modoConsola;
+    }
+
+    /**
+     * Devuelve si se aaden y retiran mquinas segn la carga.
+     * @return
+     */
+    public boolean isAutoescaladoActivo(){
+        return autoescaladoActivo;
+    }
+
+    /**
+     * Devuelve el nmero mnimo de mquinas con autoescalado.
+     * @return
+     */
+    public int getAutoescaladoMinimo(){
+        return autoescaladoMinimo;
+    }
+
+    /**
+     * Devuelve el nmero mximo de mquinas con autoescalado.
+     * @return
+     */
+    public int getAutoescaladoMaximo(){
+        return autoescaladoMaximo;
+    }
+
+    /**
+     * Devuelve los segundos entre comprobaciones del autoescalado.
+     * @return
+     */
+    public long getAutoescaladoIntervalo(){
+        return autoescaladoIntervalo;
+    }
+
+    /**
+     * Devuelve los clientes en cola por mquina a partir de los que se aade una mquina.
+     * @return
+     */
+    public int getAutoescaladoColaSubida(){
+        return autoescaladoColaSubida;
+    }
+
+    /**
+     * Devuelve los clientes en cola por mquina por debajo de los que se puede retirar una mquina.
+     * @return
+     */
+    public int getAutoescaladoColaBajada(){
+        return autoescaladoColaBajada;
+    }
+
+    /**
+     * Devuelve el p99 de la espera (ms) a partir del que se aade una mquina.
+     * @return
+     */
+    public long getAutoescaladoEsperaObjetivo(){
+        return autoescaladoEsperaObjetivo;
+    }
+
+    /**
+     * Devuelve las comprobaciones seguidas necesarias para aadir una mquina.
+     * @return
+     */
+    public int getAutoescaladoConfirmaciones(){
+        return autoescaladoConfirmaciones;
+    }
+
+    /**
+     * Devuelve los segundos que se espera despus de cada cambio de mquinas.
+     * @return
+     */
+    public long getAutoescaladoEnfriamiento(){
+        return autoescaladoEnfriamiento;
+    }
+
+    /**
+     * Devuelve si los pedidos se reparten con despachador porque hay mquinas
+     * especializadas.
+     * @return
+     */
+    public boolean isEnrutado(){
+        return enrutado;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Clase ConsolaAsincrona
+ *
+ * Escritor nico de la consola. System.out est sincronizado, por lo que si cada
+ * mquina escribe directamente, todas las mquinas se esperan entre ellas para
+ * mostrar sus mensajes y la consola se convierte en un cerrojo global.
+ *
+ * Con esta clase las mquinas solo dejan el mensaje en una cola y un nico hilo
+ * los saca en bloques y los escribe de una vez. Los mensajes de cada pedido se
+ * construyen con los textos ya preparados de TipoBebida, segn el ModoConsola:
+ * normal, silencioso (no se muestran) o estructurado (clave=valor).
+ *
+ * Las lneas que no son de un pedido (por ejemplo el registro del turno) se
+ * muestran en todos los modos, por la misma cola para mantener el orden.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+public class ConsolaAsincrona {
+
+    //capacidad de la cola de mensajes, si se llena las mquinas esperan
+    private static final int CAPACIDAD = 8192;
+
+    //Atributos principales
+    private static volatile ModoConsola modo = ModoConsola.NORMAL;
+    //cola de mensajes, un CountDownLatch es una marca para avisar a vaciar() de que se ha llegado a ella
+    private static final BlockingQueue<Object> mensajes = new ArrayBlockingQueue<>(CAPACIDAD);
+    private static final PrintStream salida = System.out;
+    private static Thread escritor;
+
+    /**
+     * Asigna el modo de la consola.
+     * @param modoConsola
+     */
+    public static void configurar(ModoConsola modoConsola){
+        modo = modoConsola;
+    }
+
+    /**
+     * Devuelve el modo de la consola.
+     * @return
+     */
+    public static ModoConsola getModo(){
+        return modo;
+    }
+
+    /**
+     * Muestra que la mquina ha empezado a atender al cliente.
+     * @param idMaquina
+     * @param cliente
+     */
+    public static void atendiendo(int idMaquina, Cliente cliente){
+        switch(modo){
+            case NORMAL -> encolar("Cliente id: " + cliente.getId() + ". Estoy siendo atendido en la mquina nmero "
+                    + idMaquina + cliente.getPedido().getFinMensajeCliente());
+            case ESTRUCTURADO -> encolar("evento=inicio maquina=" + idMaquina + " cliente=" + cliente.getId()
+                    + " bebida=" + cliente.getPedido());
+            default ->{
+                //en modo silencioso no se muestra nada
+            }
+        }
+    }
+
+    /**
+     * Muestra que la bebida del cliente est lista.
+     * @param idMaquina
+     * @param cliente
+     */
+    public static void listo(int idMaquina, Cliente cliente){
+        switch(modo){
+            case NORMAL -> encolar(cliente.getPedido().getMensajeListo());
+            case ESTRUCTURADO -> encolar("evento=fin maquina=" + idMaquina + " cliente=" + cliente.getId()
+                    + " bebida=" + cliente.getPedido());
+            default ->{
+                //en modo silencioso no se muestra nada
+            }
+        }
+    }
+
+    /**
+     * Muestra una lnea en todos los modos.
+     * @param linea
+     */
+    public static void linea(String linea){
+        encolar(linea);
+    }
+
+    /**
+     * Deja el mensaje en la cola, iniciando el escritor la primera vez.
+     * @param mensaje
+     */
+    private static void encolar(Object mensaje){
+        iniciar();
+        try{
+            mensajes.put(mensaje);
+        }catch(InterruptedException e){
+            //se restablece la interrupcin y se escribe directamente
+            Thread.currentThread().interrupt();
+            salida.println(mensaje);
+        }
+    }
+
+    /**
+     * Inicia el hilo escritor si no est iniciado.
+     */
+    private static synchronized void iniciar(){
+        if(escritor != null){
+            return;
+        }
+        escritor = new Thread(ConsolaAsincrona::escribir, "consola");
+        //el hilo no impide que termine la aplicacin
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Funcin del hilo escritor, saca los mensajes en bloques y los escribe de
+     * una vez.
+     */
+    private static void escribir(){
+        List<Object> bloque = new ArrayList<>();
+        StringBuilder texto = new StringBuilder();
+        String separador = System.lineSeparator();
+        try{
+            while(true){
+                bloque.add(mensajes.take());
+                mensajes.drainTo(bloque);
+                List<CountDownLatch> marcas = new ArrayList<>();
+                for(Object mensaje : bloque){
+                    if(mensaje instanceof CountDownLatch marca){
+                        marcas.add(marca);
+                    }else{
+                        texto.append(mensaje).append(separador);
+                    }
+                }
+                salida.print(texto);
+                salida.flush();
+                texto.setLength(0);
+                bloque.clear();
+                //se avisa a los que esperan en vaciar() despus de escribir
+                for(CountDownLatch marca : marcas){
+                    marca.countDown();
+                }
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Espera a que se hayan escrito todos los mensajes anteriores. Se utiliza
+     * antes de escribir directamente por System.out, para no desordenar la salida.
+     */
+    public static void vaciar(){
+        synchronized(ConsolaAsincrona.class){
+            if(escritor == null){
+                return;
+            }
+        }
+        CountDownLatch marca = new CountDownLatch(1);
+        try{
+            mensajes.put(marca);
+            marca.await();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Clase ControladorMaquinas
+ *
+ * Controlador del autoescalado de las mquinas. Cada cierto tiempo comprueba la
+ * profundidad de la cola de clientes (ms los pedidos repartidos por el
+ * despachador que no se han empezado) y el percentil 99 de la espera de los
+ * clientes atendidos desde la comprobacin anterior, y decide si hay que aadir
+ * o retirar una mquina.
+ *
+ * - Se aade una mquina si la cola tiene ms clientes por mquina que el umbral
+ *   de subida o si el p99 de la espera supera el objetivo.
+ * - Se retira una mquina si la cola tiene como mucho el umbral de bajada por
+ *   mquina y el p99 de la espera est por debajo de la mitad del objetivo.
+ *
+ * Para no estar aadiendo y retirando mquinas continuamente (histresis), la
+ * condicin se tiene que cumplir en varias comprobaciones seguidas (el doble
+ * para retirar que para aadir), despus de cada cambio se espera un tiempo de
+ * enfriamiento y el nmero de mquinas se mantiene entre el mnimo y el mximo.
+ *
+ * Las mquinas nuevas se crean con la funcin que recibe el controlador (con el
+ * perfil configurado de su posicin) y se ejecutan en el pool de la cafetera.
+ * Una mquina nueva ocupa la primera posicin libre, as al retirar y volver a
+ * aadir mquinas se reutilizan los perfiles configurados.
+ *
+ * Se retira la mquina de la posicin ms alta cuyas bebidas puedan seguir
+ * preparando las dems mquinas activas; si ninguna cumple la condicin no se
+ * retira ninguna, para que no queden bebidas que no pueda preparar nadie. La
+ * mquina retirada termina el pedido que est preparando (y los que ya tenga
+ * asignados por el despachador) y deja el turno.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+public class ControladorMaquinas implements Runnable {
+
+    //Atributos principales
+    private final ColaPedidos cola;
+    private final SemaforoAjustable semaforo;
+    private final ExecutorService ejecutor;
+    private final Despachador despachador; //null si las mquinas cogen los pedidos de la cola
+    private final IntFunction<Maquina> fabrica; //crea la mquina de la posicin indicada
+    //lmites y umbrales del autoescalado
+    private final int minimo;
+    private final int maximo;
+    private final int colaSubida;
+    private final int colaBajada;
+    private final long esperaObjetivo; //nanosegundos
+    private final int confirmaciones;
+    private final long enfriamiento; //nanosegundos
+    //mquinas activas por su posicin, que indica el perfil configurado de la mquina
+    private final TreeMap<Integer, Maquina> activas = new TreeMap<>();
+    //comprobaciones seguidas en las que se cumple cada condicin
+    private int seguidasSubida = 0;
+    private int seguidasBajada = 0;
+    private long ultimoCambio;
+    private long[] anterior; //contadores de la espera en la comprobacin anterior
+    //nmero de cambios y mximo de mquinas que se ha alcanzado
+    private int anadidas = 0;
+    private int retiradas = 0;
+    private int pico = 0;
+    private ScheduledExecutorService planificador;
+
+    /**
+     * Constructor del controlador.
+     * @param config
+     * @param cola
+     * @param semaforo
+     * @param ejecutor
+     * @param despachador
+     * @param fabrica
+     */
+    public ControladorMaquinas(ConfigCafeteria config, ColaPedidos cola, SemaforoAjustable semaforo,
+            ExecutorService ejecutor, Despachador despachador, IntFunction<Maquina> fabrica){
+        this.cola = cola;
+        this.semaforo = semaforo;
+        this.ejecutor = ejecutor;
+        this.despachador = despachador;
+        this.fabrica = fabrica;
+        this.minimo = config.getAutoescaladoMinimo();
+        this.maximo = config.getAutoescaladoMaximo();
+        this.colaSubida = config.getAutoescaladoColaSubida();
+        this.colaBajada = config.getAutoescaladoColaBajada();
+        this.esperaObjetivo = TimeUnit.MILLISECONDS.toNanos(config.getAutoescaladoEsperaObjetivo());
+        this.confirmaciones = Math.max(1, config.getAutoescaladoConfirmaciones());
+        this.enfriamiento = TimeUnit.SECONDS.toNanos(config.getAutoescaladoEnfriamiento());
+        this.ultimoCambio = System.nanoTime() - enfriamiento;
+        this.anterior = cola.getEspera().copiarContadores();
+    }
+
+    /**
+     * Crea e inicia las mquinas iniciales.
+     * @param numero
+     */
+    public synchronized void iniciarMaquinas(int numero){
+        for(int i = 0; i < numero; i++){
+            ejecutor.submit(crear());
+        }
+        pico = activas.size();
+    }
+
+    /**
+     * Inicia las comprobaciones peridicas en un hilo que no impide terminar
+     * la aplicacin.
+     * @param intervalo segundos entre comprobaciones
+     */
+    public synchronized void iniciar(long intervalo){
+        planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "autoescalado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(this, intervalo, intervalo, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Detiene las comprobaciones, las mquinas activas siguen trabajando.
+     */
+    public synchronized void detener(){
+        if(planificador != null){
+            planificador.shutdownNow();
+            planificador = null;
+        }
+    }
+
+    /**
+     * Comprobacin peridica de la cola y de la espera de los clientes.
+     */
+    @Override
+    public void run(){
+        //si se est cerrando la cafetera no se cambian las mquinas
+        if(Cafeteria.isCerrando()){
+            return;
+        }
+        try{
+            comprobar();
+        }catch(RuntimeException e){
+            //un error no debe parar las comprobaciones siguientes
+            System.err.println("Error en el autoescalado de las mquinas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decide si se aade o se retira una mquina.
+     */
+    private synchronized void comprobar(){
+        int numero = activas.size();
+        //con despachador los pedidos estn repartidos en las colas de las mquinas
+        int profundidad = cola.size() + (despachador != null ? despachador.getPendientes() : 0);
+        //p99 de la espera de los clientes atendidos desde la comprobacin anterior
+        long[] actual = cola.getEspera().copiarContadores();
+        long p99 = HistogramaLatencia.percentilEntre(anterior, actual, 99);
+        anterior = actual;
+        //se cuentan las comprobaciones seguidas que cumplen cada condicin
+        if(profundidad > colaSubida * numero || p99 > esperaObjetivo){
+            seguidasSubida++;
+            seguidasBajada = 0;
+        }else if(profundidad <= colaBajada * numero && p99 < esperaObjetivo / 2){
+            seguidasBajada++;
+            seguidasSubida = 0;
+        }else{
+            seguidasSubida = 0;
+            seguidasBajada = 0;
+        }
+        //despus de un cambio se espera el enfriamiento
+        if(System.nanoTime() - ultimoCambio < enfriamiento){
+            return;
+        }
+        if(seguidasSubida >= confirmaciones && numero < maximo){
+            anadir(profundidad, p99);
+        }else if(seguidasBajada >= 2 * confirmaciones && numero > minimo){
+            retirar(profundidad, p99);
+        }
+    }
+
+    /**
+     * Crea la mquina de la primera posicin libre y la aade a las activas.
+     * @return
+     */
+    private Maquina crear(){
+        int posicion = 0;
+        while(activas.containsKey(posicion)){
+            posicion++;
+        }
+        Maquina maquina = fabrica.apply(posicion);
+        activas.put(posicion, maquina);
+        return maquina;
+    }
+
+    /**
+     * Aade una mquina y un permiso del semforo.
+     * @param profundidad
+     * @param p99
+     */
+    private void anadir(int profundidad, long p99){
+        Maquina maquina = crear();
+        semaforo.aumentar(1);
+        ejecutor.submit(maquina);
+        anadidas++;
+        pico = Math.max(pico, activas.size());
+        cambio("Se aade la mquina " + maquina.getId(), profundidad, p99);
+    }
+
+    /**
+     * Devuelve si las dems mquinas activas pueden preparar todas las bebidas
+     * que prepara la mquina.
+     * @param maquina
+     * @return
+     */
+    private boolean sustituible(Maquina maquina){
+        for(TipoBebida bebida : TipoBebida.values()){
+            if(!maquina.puedePreparar(bebida)){
+                continue;
+            }
+            boolean cubierta = false;
+            for(Maquina otra : activas.values()){
+                if(otra != maquina && otra.puedePreparar(bebida)){
+                    cubierta = true;
+                    break;
+                }
+            }
+            if(!cubierta){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retira la mquina de la posicin ms alta que se puede retirar sin dejar
+     * bebidas sin preparar, y un permiso del semforo.
+     * @param profundidad
+     * @param p99
+     */
+    private void retirar(int profundidad, long p99){
+        Maquina maquina = null;
+        for(Map.Entry<Integer, Maquina> entrada : activas.descendingMap().entrySet()){
+            if(sustituible(entrada.getValue())){
+                maquina = entrada.getValue();
+                activas.remove(entrada.getKey());
+                break;
+            }
+        }
+        //si todas las mquinas son necesarias no se retira ninguna y se vuelve a contar
+        if(maquina == null){
+            seguidasBajada = 0;
+            return;
+        }
+        if(despachador != null){
+            //el despachador deja de asignarle pedidos y la detiene
+            despachador.retirarMaquina(maquina);
+        }else{
+            maquina.parar();
+        }
+        //si la mquina tiene el permiso, se quita cuando lo devuelva
+        semaforo.reducir(1);
+        retiradas++;
+        cambio("Se retira la mquina " + maquina.getId(), profundidad, p99);
+    }
+
+    /**
+     * Actualiza las mtricas despus de un cambio y lo muestra por consola.
+     * @param texto
+     * @param profundidad
+     * @param p99
+     */
+    private void cambio(String texto, int profundidad, long p99){
+        ultimoCambio = System.nanoTime();
+        seguidasSubida = 0;
+        seguidasBajada = 0;
+        ConsolaAsincrona.linea(String.format("[autoescalado] %s (cola=%d, espera p99=%.1f ms), mquinas activas: %d",
+                texto, profundidad, p99 / 1_000_000.0, activas.size()));
+    }
+
+    /**
+     * Devuelve el nmero de mquinas activas.
+     * @return
+     */
+    public synchronized int getActivas(){
+        return activas.size();
+    }
+
+    /**
+     * Devuelve un resumen de los cambios realizados.
+     * @return
+     */
+    public synchronized String resumen(){
+        return "Autoescalado: " + anadidas + " mquinas aadidas, " + retiradas + " retiradas, mximo de "
+                + pico + " mquinas a la vez, " + activas.size() + " activas al terminar";
+    }
+}
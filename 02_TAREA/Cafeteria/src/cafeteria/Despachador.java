@@ -0,0 +1,234 @@
+/**
+ * Clase Despachador
+ *
+ * Cuando las mquinas estn especializadas (no todas preparan todas las bebidas o
+ * no lo hacen a la misma velocidad) no basta con que cada mquina coja el siguiente
+ * cliente de la cola. El despachador es un hilo que reparte los clientes de la cola
+ * de la cafetera entre las mquinas.
+ *
+ * Los clientes se quedan en la cola de la cafetera hasta que hay una mquina libre
+ * que puede preparar su bebida, as se mantiene el orden de la poltica de la cola
+ * (un pedido corto o con el plazo ms cercano no se queda detrs de otros en la cola
+ * de una mquina) y la cola sigue limitando la entrada de clientes. Cuando se libera
+ * una mquina se elige el primer cliente, segn la poltica, que puede preparar
+ * alguna mquina libre, y se asigna a la mquina libre que lo terminara antes segn
+ * su perfil.
+ *
+ * Los pedidos que no puede preparar ninguna de las mquinas activas se rechazan: el
+ * cliente se va, como con la saturacin DESCARTAR, y se cuenta en las mtricas.
+ *
+ * Mientras el despachador est activo, las mquinas siguen esperando pedidos en su
+ * cola propia aunque est vaca.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class Despachador implements Runnable {
+
+    //tiempo mximo que se espera a que llegue un cliente o se libere una mquina
+    private static final long ESPERA = TimeUnit.MILLISECONDS.toNanos(200);
+
+    //turno de la cafetera y su cola, de la que se reparten los clientes
+    private final TurnoCafeteria turno;
+    private final ColaPedidos cola;
+    //mquinas entre las que se reparten los pedidos
+    private final List<Maquina> maquinas = new CopyOnWriteArrayList<>();
+    //mquinas que esperan un pedido
+    private final Set<Maquina> libres = ConcurrentHashMap.newKeySet();
+    //indica si el despachador sigue repartiendo pedidos
+    private volatile boolean activo = true;
+    //hilo del despachador, para despertarlo cuando se libera una mquina
+    private volatile Thread hilo;
+    //mquinas que se han pedido retirar y todava no se han quitado del reparto
+    private final Queue<Maquina> retiradas = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor del despachador, recibe el turno de cuya cola reparte los clientes.
+     * @param turno
+     */
+    public Despachador(TurnoCafeteria turno){
+        this.turno = turno;
+        this.cola = turno.getCola();
+    }
+
+    /**
+     * Aade una mquina al reparto de pedidos.
+     * @param maquina
+     */
+    public void agregarMaquina(Maquina maquina){
+        maquinas.add(maquina);
+    }
+
+    /**
+     * Pide retirar una mquina del reparto. La retira el hilo del despachador
+     * entre un pedido y el siguiente, as no se le puede asignar un pedido
+     * despus de pararla.
+     * @param maquina
+     */
+    public void retirarMaquina(Maquina maquina){
+        retiradas.add(maquina);
+    }
+
+    /**
+     * Quita del reparto y para las mquinas que se han pedido retirar.
+     */
+    private void procesarRetiradas(){
+        Maquina retirada;
+        while((retirada = retiradas.poll()) != null){
+            maquinas.remove(retirada);
+            libres.remove(retirada);
+            retirada.parar();
+        }
+    }
+
+    /**
+     * La mquina indica que est libre y espera un pedido, se despierta al
+     * despachador.
+     * @param maquina
+     */
+    public void libre(Maquina maquina){
+        if(libres.add(maquina)){
+            Thread despachador = hilo;
+            if(despachador != null){
+                LockSupport.unpark(despachador);
+            }
+        }
+    }
+
+    /**
+     * Devuelve si el despachador sigue repartiendo pedidos.
+     * @return
+     */
+    public boolean isActivo(){
+        return activo;
+    }
+
+    /**
+     * Devuelve el nmero de pedidos repartidos que las mquinas todava no han
+     * empezado.
+     * @return
+     */
+    public int getPendientes(){
+        int pendientes = 0;
+        for(Maquina maquina : maquinas){
+            pendientes += maquina.getPendientes();
+        }
+        return pendientes;
+    }
+
+    /**
+     * Devuelve la mquina libre que terminara antes el pedido del cliente, o
+     * null si ninguna mquina libre puede preparar la bebida.
+     * @param cliente
+     * @return
+     */
+    public Maquina elegirMaquina(Cliente cliente){
+        Maquina elegida = null;
+        long mejorTiempo = Long.MAX_VALUE;
+        //se recorren las mquinas libres buscando el menor tiempo estimado
+        for(Maquina maquina : libres){
+            long tiempo = maquina.tiempoEstimadoFin(cliente);
+            if(tiempo < mejorTiempo){
+                mejorTiempo = tiempo;
+                elegida = maquina;
+            }
+        }
+        return elegida;
+    }
+
+    /**
+     * Devuelve si alguna de las mquinas activas, libre u ocupada, puede
+     * preparar el pedido del cliente.
+     * @param cliente
+     * @return
+     */
+    private boolean puedePreparar(Cliente cliente){
+        for(Maquina maquina : maquinas){
+            if(maquina.puedePreparar(cliente.getPedido())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Asigna a una mquina libre el primer cliente de la cola que puede
+     * preparar. Devuelve false si no se ha asignado ningn cliente.
+     * @return
+     */
+    private boolean repartir(){
+        if(libres.isEmpty()){
+            return false;
+        }
+        Cliente cliente = cola.primero(c -> elegirMaquina(c) != null);
+        if(cliente == null){
+            return false;
+        }
+        Maquina maquina = elegirMaquina(cliente);
+        //si una mquina se ha llevado el cliente en un lote se busca el siguiente
+        if(cola.quitar(cliente)){
+            libres.remove(maquina);
+            maquina.asignar(cliente);
+        }
+        return true;
+    }
+
+    /**
+     * Rechaza los pedidos de la cola que no puede preparar ninguna mquina
+     * activa, para que no se queden en la cola para siempre.
+     */
+    private void rechazarImposibles(){
+        Cliente cliente;
+        while((cliente = cola.primero(c -> !puedePreparar(c))) != null){
+            if(cola.quitar(cliente)){
+                turno.rechazarPedido(cliente);
+            }
+        }
+    }
+
+    /**
+     * Funcin ejecutable del hilo, reparte los pedidos mientras haya clientes en la cola.
+     */
+    @Override
+    public void run(){
+        hilo = Thread.currentThread();
+        //la cola despierta al despachador cuando entra un cliente
+        cola.setObservador(hilo);
+        try{
+            //se reparten los clientes mientras queden pedidos
+            while(turno.hayPedidos() && !turno.isCerrando()){
+                procesarRetiradas();
+                if(repartir()){
+                    continue;
+                }
+                rechazarImposibles();
+                //se espera a que llegue un cliente o se libere una mquina
+                LockSupport.parkNanos(this, ESPERA);
+                if(Thread.interrupted()){
+                    throw new InterruptedException("despachador interrumpido");
+                }
+            }
+        }catch(InterruptedException e){
+            //se restablece el estado de interrupcin del hilo
+            Thread.currentThread().interrupt();
+            System.out.println("Error en el despachador de pedidos: " + e.getMessage());
+        }finally{
+            //se indica a las mquinas que ya no se van a repartir ms pedidos
+            cola.setObservador(null);
+            activo = false;
+            procesarRetiradas();
+        }
+    }
+}
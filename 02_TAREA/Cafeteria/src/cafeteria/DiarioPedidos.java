@@ -0,0 +1,394 @@
+/**
+ * Clase DiarioPedidos
+ *
+ * Diario de pedidos en disco, para no perder los clientes de la cola si la
+ * cafetera se cierra antes de atenderlos.
+ *
+ * Es un diario en el que solo se aaden registros: cuando un cliente entra en
+ * la cola se escribe un registro ALTA y cuando se sirve su bebida un registro
+ * FIN. Los pedidos pendientes son los que tienen ALTA y no tienen FIN.
+ *
+ * El fichero se proyecta en memoria (MappedByteBuffer), por lo que escribir un
+ * registro es copiar 16 bytes en memoria, sin llamadas al sistema; el sistema
+ * operativo se encarga de llevarlos a disco aunque la aplicacin termine mal.
+ *
+ * Formato de cada registro (16 bytes):
+ * - tipo (1 byte): 0 libre, 1 ALTA, 2 FIN.
+ * - bebida (1 byte): ordinal del TipoBebida.
+ * - 2 bytes sin uso.
+ * - id del cliente (4 bytes).
+ * - fecha en milisegundos: en ALTA la llegada del cliente, en FIN el momento en
+ *   que se sirve (8 bytes).
+ *
+ * Al abrir el diario se leen los registros y se guardan los pedidos pendientes
+ * para volver a atenderlos, con su instante de llegada original para que su
+ * espera siga contando desde que llegaron y no desde que se reinicia.
+ *
+ * Cuando el fichero llega a las tres cuartas partes se compacta, dejando solo las
+ * altas de los pedidos pendientes (si siguen sin caber se duplica su tamao). La
+ * compactacin la hace el hilo que ha llenado el fichero, fuera del bloqueo del
+ * diario: copia los pendientes y los escribe en el otro fichero mientras las
+ * mquinas siguen anotando en el fichero activo. Lo que se anota mientras tanto
+ * se guarda tambin en memoria y se aade al fichero nuevo al cambiar de uno a
+ * otro, que es lo nico que se hace dentro del bloqueo.
+ *
+ * Para que un cierre a mitad de la compactacin no deje el diario a medias se
+ * utilizan dos ficheros (ruta.0 y ruta.1) con una cabecera que tiene un nmero
+ * de secuencia. Se compacta en el fichero que no est en uso y, cuando est
+ * escrito en disco, se marca su cabecera con la secuencia siguiente. Al abrir se
+ * utiliza el fichero con la cabecera vlida de mayor secuencia. Los ficheros no
+ * se renombran ni se borran, porque en Windows no se puede hacer con un fichero
+ * proyectado en memoria.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class DiarioPedidos {
+
+    //tamao de cada registro y tipos de registro
+    private static final int TAMANO_REGISTRO = 16;
+    private static final byte LIBRE = 0;
+    private static final byte ALTA = 1;
+    private static final byte FIN = 2;
+    private static final byte CABECERA = 3;
+
+    /**
+     * Clase interna con los datos de un registro del diario.
+     */
+    private static final class Registro {
+        private final byte tipo;
+        private final int id;
+        private final TipoBebida bebida;
+        private final long fecha; //milisegundos desde la poca
+
+        private Registro(byte tipo, int id, TipoBebida bebida, long fecha){
+            this.tipo = tipo;
+            this.id = id;
+            this.bebida = bebida;
+            this.fecha = fecha;
+        }
+    }
+
+    //Atributos principales
+    private final Path[] ficheros = new Path[2]; //los dos ficheros del diario
+    private final MappedByteBuffer[] buffers = new MappedByteBuffer[2];
+    private final int[] capacidades = new int[2]; //registros que caben en cada fichero
+    private final int[] usados = new int[2]; //ltimo registro que se ha escrito en cada fichero
+    private int activo = 0; //fichero en el que se escribe
+    private long secuencia = 0; //secuencia de la cabecera del fichero activo
+    private int posicion = 1; //siguiente registro libre, el 0 es la cabecera
+    //altas de los pedidos sin FIN, en orden de llegada
+    private final Map<Integer, Registro> pendientes = new LinkedHashMap<>();
+    //clientes pendientes que haba en el diario al abrirlo
+    private final List<Cliente> recuperados = new ArrayList<>();
+    //indica si hay una compactacin en marcha
+    private boolean compactando = false;
+    //registros anotados durante la compactacin, se aaden al fichero nuevo
+    private final List<Registro> durante = new ArrayList<>();
+    private boolean cerrado = false;
+
+    /**
+     * Constructor del diario, abre (o crea) los ficheros y recupera los pedidos
+     * pendientes.
+     * @param ruta
+     * @param capacidad registros que caben en cada fichero
+     * @throws IOException
+     */
+    public DiarioPedidos(String ruta, int capacidad) throws IOException{
+        Path base = Path.of(ruta);
+        Path carpeta = base.toAbsolutePath().getParent();
+        if(carpeta != null){
+            Files.createDirectories(carpeta);
+        }
+        for(int i = 0; i < 2; i++){
+            ficheros[i] = base.resolveSibling(base.getFileName() + "." + i);
+            //si el fichero es mayor que la capacidad se usa su tamao
+            long existente = Files.exists(ficheros[i]) ? Files.size(ficheros[i]) / TAMANO_REGISTRO - 1 : 0;
+            mapear(i, (int) Math.max(Math.max(1, capacidad), existente));
+            //no se sabe hasta dnde se escribi, al compactar se borra todo
+            usados[i] = capacidades[i];
+        }
+        //se utiliza el fichero con la cabecera vlida de mayor secuencia
+        long secuencia0 = leerCabecera(0);
+        long secuencia1 = leerCabecera(1);
+        activo = secuencia1 > secuencia0 ? 1 : 0;
+        secuencia = Math.max(0, Math.max(secuencia0, secuencia1));
+        if(secuencia > 0){
+            leer();
+        }
+        //se crean los clientes pendientes, con su id y su llegada originales
+        long ahora = System.currentTimeMillis();
+        long reloj = System.nanoTime();
+        for(Registro alta : pendientes.values()){
+            long esperado = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ahora - alta.fecha));
+            recuperados.add(new Cliente(alta.id, alta.bebida, reloj - esperado));
+        }
+        //se empieza con un fichero que solo tiene los pedidos pendientes
+        compactando = true;
+        compactar();
+        if(cerrado){
+            throw new IOException("no se ha podido compactar el diario " + ruta);
+        }
+    }
+
+    /**
+     * Proyecta en memoria el fichero indicado con la capacidad indicada. La
+     * proyeccin sigue siendo vlida despus de cerrar el canal.
+     * @param indice
+     * @param capacidad
+     * @throws IOException
+     */
+    private void mapear(int indice, int capacidad) throws IOException{
+        try(FileChannel canal = FileChannel.open(ficheros[indice], StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            buffers[indice] = canal.map(FileChannel.MapMode.READ_WRITE, 0, (long) (capacidad + 1) * TAMANO_REGISTRO);
+            capacidades[indice] = capacidad;
+        }
+    }
+
+    /**
+     * Devuelve la secuencia de la cabecera del fichero, o -1 si no es vlida.
+     * @param indice
+     * @return
+     */
+    private long leerCabecera(int indice){
+        MappedByteBuffer buffer = buffers[indice];
+        return buffer.get(0) == CABECERA ? buffer.getLong(8) : -1;
+    }
+
+    /**
+     * Lee los registros del fichero activo hasta el primero libre.
+     */
+    private void leer(){
+        MappedByteBuffer buffer = buffers[activo];
+        TipoBebida[] bebidas = TipoBebida.values();
+        posicion = 1;
+        while(posicion <= capacidades[activo]){
+            int inicio = posicion * TAMANO_REGISTRO;
+            byte tipo = buffer.get(inicio);
+            if(tipo == LIBRE){
+                break;
+            }
+            int bebida = buffer.get(inicio + 1);
+            int id = buffer.getInt(inicio + 4);
+            if(tipo == ALTA && bebida >= 0 && bebida < bebidas.length){
+                pendientes.put(id, new Registro(ALTA, id, bebidas[bebida], buffer.getLong(inicio + 8)));
+            }else if(tipo == FIN){
+                pendientes.remove(id);
+            }
+            posicion++;
+        }
+    }
+
+    /**
+     * Devuelve los clientes que estaban pendientes al abrir el diario.
+     * @return
+     */
+    public List<Cliente> getRecuperados(){
+        return recuperados;
+    }
+
+    /**
+     * Devuelve el nmero de pedidos pendientes.
+     * @return
+     */
+    public synchronized int getPendientes(){
+        return pendientes.size();
+    }
+
+    /**
+     * Registra que el cliente ha entrado en la cola, con la fecha de su llegada.
+     * @param cliente
+     */
+    public void alta(Cliente cliente){
+        //la llegada del cliente (System.nanoTime) se pasa a milisegundos desde la poca
+        long esperado = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cliente.getLlegada());
+        Registro alta = new Registro(ALTA, cliente.getId(), cliente.getPedido(), System.currentTimeMillis() - esperado);
+        boolean compactar;
+        synchronized(this){
+            if(cerrado){
+                return;
+            }
+            pendientes.put(alta.id, alta);
+            compactar = escribir(alta);
+        }
+        if(compactar){
+            compactar();
+        }
+    }
+
+    /**
+     * Registra que se ha servido el pedido del cliente.
+     * @param cliente
+     */
+    public void fin(Cliente cliente){
+        boolean compactar;
+        synchronized(this){
+            //si no estaba pendiente no hace falta registrarlo
+            if(cerrado || pendientes.remove(cliente.getId()) == null){
+                return;
+            }
+            compactar = escribir(new Registro(FIN, cliente.getId(), cliente.getPedido(), System.currentTimeMillis()));
+        }
+        if(compactar){
+            compactar();
+        }
+    }
+
+    /**
+     * Escribe un registro en la siguiente posicin libre del fichero activo. Si
+     * hay una compactacin en marcha se guarda tambin para el fichero nuevo.
+     * Se llama con el bloqueo del diario y devuelve true si el hilo tiene que
+     * compactar el diario al soltarlo.
+     * @param registro
+     * @return
+     */
+    private boolean escribir(Registro registro){
+        //si el fichero se llena durante la compactacin el registro solo va al fichero nuevo
+        if(posicion <= capacidades[activo]){
+            escribirRegistro(buffers[activo], posicion++, registro);
+        }
+        if(compactando){
+            durante.add(registro);
+            return false;
+        }
+        //se compacta al llegar a las tres cuartas partes, el resto queda para mientras tanto
+        if(posicion > capacidades[activo] - capacidades[activo] / 4){
+            compactando = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Escribe un registro en la posicin indicada del buffer. El tipo se escribe
+     * el ltimo, un registro con tipo est completo.
+     * @param buffer
+     * @param indice
+     * @param registro
+     */
+    private static void escribirRegistro(MappedByteBuffer buffer, int indice, Registro registro){
+        int inicio = indice * TAMANO_REGISTRO;
+        buffer.put(inicio + 1, (byte) registro.bebida.ordinal());
+        buffer.putInt(inicio + 4, registro.id);
+        buffer.putLong(inicio + 8, registro.fecha);
+        buffer.put(inicio, registro.tipo);
+    }
+
+    /**
+     * Escribe en el fichero que no est en uso las altas de los pedidos
+     * pendientes y, cuando estn en disco, lo marca como fichero activo. Solo
+     * se bloquea el diario para copiar los pendientes y para cambiar de fichero,
+     * la escritura en disco se hace fuera. Si falla se deja de escribir en el
+     * diario.
+     */
+    private void compactar(){
+        int destino;
+        int capacidad;
+        List<Registro> copia;
+        synchronized(this){
+            if(cerrado){
+                compactando = false;
+                return;
+            }
+            destino = 1 - activo;
+            copia = new ArrayList<>(pendientes.values());
+            //si los pendientes y lo que cabe an en el fichero activo ocupan ms de la mitad se duplica el tamao
+            int reserva = Math.max(0, capacidades[activo] - posicion + 1);
+            capacidad = Math.max(capacidades[activo], capacidades[destino]);
+            while((copia.size() + reserva) * 2 > capacidad){
+                capacidad *= 2;
+            }
+        }
+        MappedByteBuffer buffer;
+        try{
+            //el fichero destino no lo utiliza nadie hasta que se cambia de fichero
+            if(capacidad > capacidades[destino]){
+                mapear(destino, capacidad);
+            }
+            buffer = buffers[destino];
+            //la cabecera del destino tiene una secuencia menor que el activo, as
+            //que no se utiliza al abrir aunque el cierre lo deje a medias
+            buffer.put(0, LIBRE);
+            int indice = 1;
+            for(Registro alta : copia){
+                escribirRegistro(buffer, indice++, alta);
+            }
+            //se borran los registros antiguos que quedaran en el fichero, solo hasta
+            //donde se lleg a escribir para no tener que llevar a disco todo el fichero
+            for(int i = indice; i <= usados[destino]; i++){
+                buffer.put(i * TAMANO_REGISTRO, LIBRE);
+            }
+            buffer.force();
+            synchronized(this){
+                if(cerrado){
+                    compactando = false;
+                    durante.clear();
+                    return;
+                }
+                //se aade lo anotado durante la compactacin
+                if(indice + durante.size() > capacidades[destino]){
+                    mapear(destino, 2 * (indice + durante.size()));
+                    buffer = buffers[destino];
+                }
+                for(Registro registro : durante){
+                    escribirRegistro(buffer, indice++, registro);
+                }
+                durante.clear();
+                //se marca la cabecera con la secuencia siguiente
+                buffer.putLong(8, secuencia + 1);
+                buffer.put(0, CABECERA);
+                secuencia++;
+                usados[activo] = Math.min(posicion - 1, capacidades[activo]);
+                activo = destino;
+                posicion = indice;
+                compactando = false;
+            }
+            buffer.force();
+        }catch(IOException e){
+            //si no se puede compactar se deja de escribir en el diario
+            System.err.println("Error al compactar el diario de pedidos: " + e.getMessage());
+            synchronized(this){
+                cerrado = true;
+                compactando = false;
+                durante.clear();
+            }
+        }
+    }
+
+    /**
+     * Fuerza la escritura en disco de los registros.
+     */
+    public synchronized void forzar(){
+        if(!cerrado){
+            buffers[activo].force();
+        }
+    }
+
+    /**
+     * Escribe en disco los registros y cierra el diario. Se puede llamar ms de
+     * una vez.
+     */
+    public synchronized void cerrar(){
+        if(cerrado){
+            return;
+        }
+        cerrado = true;
+        buffers[activo].force();
+    }
+}
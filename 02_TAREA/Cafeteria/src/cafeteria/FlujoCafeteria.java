@@ -0,0 +1,482 @@
+/**
+ * Clase FlujoCafeteria
+ *
+ * Variante de la cafetera construida como un flujo reactivo con
+ * java.util.concurrent.Flow: pedidos -> mquinas -> pedidos servidos.
+ *
+ * En la aplicacin normal los clientes esperan en una cola bloqueante y cada
+ * mquina es un hilo que coge el siguiente cliente cuando el semforo se lo
+ * permite. Aqu no hay cola bloqueante ni semforo, se utiliza la demanda de
+ * Flow: la estacin de mquinas solo pide un pedido ms cuando tiene una mquina
+ * libre, y el SubmissionPublisher de los pedidos guarda los que todava no se han
+ * pedido hasta su capacidad (la capacidad de la cola). Si se llena, el generador
+ * espera, espera un tiempo o descarta el cliente segn la PoliticaSaturacion.
+ *
+ * Las etapas son:
+ * 1-Publicador de pedidos (SubmissionPublisher de Cliente).
+ * 2-EstacionMaquinas: procesador que asigna cada pedido a una mquina libre que
+ *   pueda prepararlo (la ms rpida) y, pasado el tiempo de preparacin, publica
+ *   el pedido servido. La preparacin no ocupa un hilo mientras tanto, se programa
+ *   su fin con un ejecutor retardado.
+ * 3-Suscriptores de los pedidos servidos: RegistroServidos (mensajes por consola y
+ *   latencia) y Facturacion (importe por bebida). Se pueden aadir ms etapas sin
+ *   crear hilos, todas se ejecutan en el ejecutor comn de los publicadores.
+ *
+ * Se utiliza la configuracin de cafeteria.properties (mquinas, perfiles, cola,
+ * generador, escala de tiempo y modo de consola). No se preparan lotes.
+ *
+ * Uso: FlujoCafeteria [clientes por segundo] [segundos]
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class FlujoCafeteria {
+
+    /**
+     * Pedido servido, es lo que publica la estacin de mquinas.
+     */
+    public static final class PedidoServido {
+        private final Cliente cliente;
+        private final int idMaquina;
+        private final long fin; //instante (nanoTime) en el que se ha servido
+
+        private PedidoServido(Cliente cliente, int idMaquina, long fin){
+            this.cliente = cliente;
+            this.idMaquina = idMaquina;
+            this.fin = fin;
+        }
+
+        public Cliente getCliente(){
+            return cliente;
+        }
+
+        public int getIdMaquina(){
+            return idMaquina;
+        }
+
+        public long getFin(){
+            return fin;
+        }
+    }
+
+    /**
+     * Mquina de la estacin, solo guarda su perfil y lo que ha preparado.
+     */
+    private static final class MaquinaFlujo {
+        private final int id;
+        private final PerfilMaquina perfil;
+        private long bebidas;
+
+        private MaquinaFlujo(int id, PerfilMaquina perfil){
+            this.id = id;
+            this.perfil = perfil;
+        }
+    }
+
+    /**
+     * Procesador que reparte los pedidos entre las mquinas libres. Pide al
+     * publicador un pedido por cada mquina libre.
+     */
+    public static final class EstacionMaquinas extends SubmissionPublisher<PedidoServido>
+            implements Flow.Processor<Cliente, PedidoServido> {
+
+        //cerrojo propio, el publicador utiliza sus propios cerrojos
+        private final Object cerrojo = new Object();
+        private final List<MaquinaFlujo> maquinas = new ArrayList<>();
+        private final List<MaquinaFlujo> libres = new ArrayList<>();
+        private final int numMaquinas;
+        private final List<PerfilMaquina> perfiles = new ArrayList<>();
+        private final double escalaTiempo;
+        //pedidos que solo pueden preparar mquinas ocupadas
+        private final ArrayDeque<Cliente> retenidos = new ArrayDeque<>();
+        private final int maxRetenidos;
+        private int sinPedir = 0; //pedidos que no se han pedido por tener demasiados retenidos
+        private final HistogramaLatencia espera = new HistogramaLatencia();
+        private Flow.Subscription suscripcion;
+        private int preparando = 0;
+        private boolean entradaTerminada = false;
+        private final AtomicLong descartados = new AtomicLong();
+
+        /**
+         * Constructor de la estacin con la configuracin.
+         * @param config
+         */
+        public EstacionMaquinas(ConfigCafeteria config){
+            this.numMaquinas = config.getNumMaquinas();
+            for(int i = 0; i < numMaquinas; i++){
+                PerfilMaquina perfil = config.getPerfil(i);
+                perfiles.add(perfil);
+                maquinas.add(new MaquinaFlujo(i + 1, perfil));
+            }
+            this.escalaTiempo = config.getEscalaTiempo();
+            this.maxRetenidos = Math.max(1, config.getCapacidadCola());
+            libres.addAll(maquinas);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription){
+            this.suscripcion = subscription;
+            //se pide un pedido por cada mquina libre
+            subscription.request(numMaquinas);
+        }
+
+        @Override
+        public void onNext(Cliente cliente){
+            synchronized(cerrojo){
+                //si ninguna mquina puede preparar la bebida se descarta el pedido
+                boolean alguna = false;
+                for(PerfilMaquina perfil : perfiles){
+                    alguna |= perfil.puedePreparar(cliente.getPedido());
+                }
+                if(!alguna){
+                    descartados.incrementAndGet();
+                    ConsolaAsincrona.linea("Ninguna mquina puede preparar el pedido " + cliente.getPedido()
+                            + " del cliente id# " + cliente.getId());
+                    suscripcion.request(1);
+                    return;
+                }
+                if(!asignar(cliente)){
+                    //la preparan mquinas ocupadas, se retiene y se sigue pidiendo para la mquina libre
+                    retenidos.add(cliente);
+                    if(retenidos.size() < maxRetenidos){
+                        suscripcion.request(1);
+                    }else{
+                        sinPedir++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Asigna el pedido a la mquina libre ms rpida que pueda prepararlo.
+         * Se llama con el cerrojo de la estacin.
+         * @param cliente
+         * @return false si no hay ninguna mquina libre que pueda prepararlo
+         */
+        private boolean asignar(Cliente cliente){
+            MaquinaFlujo elegida = null;
+            for(MaquinaFlujo maquina : libres){
+                if(maquina.perfil.puedePreparar(cliente.getPedido()) && (elegida == null
+                        || maquina.perfil.tiempoPreparacion(cliente.getPedido()) < elegida.perfil.tiempoPreparacion(cliente.getPedido()))){
+                    elegida = maquina;
+                }
+            }
+            if(elegida == null){
+                return false;
+            }
+            libres.remove(elegida);
+            preparando++;
+            ConsolaAsincrona.atendiendo(elegida.id, cliente);
+            espera.registrar(System.nanoTime() - cliente.getLlegada());
+            //el fin de la preparacin se programa sin ocupar un hilo mientras tanto
+            long tiempo = Math.round(elegida.perfil.tiempoPreparacion(cliente.getPedido()) * escalaTiempo);
+            MaquinaFlujo maquina = elegida;
+            CompletableFuture.runAsync(() -> terminar(maquina, cliente),
+                    CompletableFuture.delayedExecutor(tiempo, TimeUnit.MILLISECONDS));
+            return true;
+        }
+
+        /**
+         * Termina la preparacin: publica el pedido servido y deja la mquina libre
+         * para un pedido retenido o para pedir uno nuevo.
+         * @param maquina
+         * @param cliente
+         */
+        private void terminar(MaquinaFlujo maquina, Cliente cliente){
+            submit(new PedidoServido(cliente, maquina.id, System.nanoTime()));
+            synchronized(cerrojo){
+                maquina.bebidas++;
+                preparando--;
+                libres.add(maquina);
+                //primero se atienden los pedidos retenidos que pueda preparar la mquina
+                boolean asignado = false;
+                for(Iterator<Cliente> it = retenidos.iterator(); it.hasNext();){
+                    Cliente retenido = it.next();
+                    if(maquina.perfil.puedePreparar(retenido.getPedido())){
+                        it.remove();
+                        asignado = asignar(retenido);
+                        break;
+                    }
+                }
+                if(!entradaTerminada){
+                    if(!asignado){
+                        suscripcion.request(1);
+                    }
+                    //si ya hay sitio para retener se piden los que quedaron sin pedir
+                    if(sinPedir > 0 && retenidos.size() < maxRetenidos){
+                        suscripcion.request(sinPedir);
+                        sinPedir = 0;
+                    }
+                }
+                comprobarFin();
+            }
+        }
+
+        /**
+         * Si no llegan ms pedidos y no queda ninguno en preparacin, se cierra la
+         * estacin para que terminen los suscriptores. Se llama con el cerrojo.
+         */
+        private void comprobarFin(){
+            if(entradaTerminada && preparando == 0 && retenidos.isEmpty()){
+                close();
+            }
+        }
+
+        @Override
+        public void onError(Throwable error){
+            closeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete(){
+            synchronized(cerrojo){
+                entradaTerminada = true;
+                comprobarFin();
+            }
+        }
+
+        /**
+         * Devuelve los pedidos descartados porque ninguna mquina los prepara.
+         * @return
+         */
+        public long getDescartados(){
+            return descartados.get();
+        }
+
+        /**
+         * Devuelve el histograma de la espera de los clientes hasta que una
+         * mquina empieza su pedido.
+         * @return
+         */
+        public HistogramaLatencia getEspera(){
+            return espera;
+        }
+
+        /**
+         * Devuelve una lnea con las bebidas de cada mquina.
+         * @return
+         */
+        public String resumen(){
+            StringBuilder texto = new StringBuilder("Bebidas por mquina:");
+            synchronized(cerrojo){
+                for(MaquinaFlujo maquina : maquinas){
+                    texto.append(String.format(" %d (%s)=%d", maquina.id, maquina.perfil, maquina.bebidas));
+                }
+            }
+            return texto.toString();
+        }
+    }
+
+    /**
+     * Suscriptor que muestra cada pedido servido por consola y registra su
+     * latencia. Pide los pedidos de uno en uno.
+     */
+    public static final class RegistroServidos implements Flow.Subscriber<PedidoServido> {
+        private final EnumMap<TipoBebida, HistogramaLatencia> latencias = new EnumMap<>(TipoBebida.class);
+        private final CountDownLatch terminado;
+        private Flow.Subscription suscripcion;
+
+        public RegistroServidos(CountDownLatch terminado){
+            this.terminado = terminado;
+            for(TipoBebida bebida : TipoBebida.values()){
+                latencias.put(bebida, new HistogramaLatencia());
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription){
+            this.suscripcion = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(PedidoServido servido){
+            Cliente cliente = servido.getCliente();
+            ConsolaAsincrona.listo(servido.getIdMaquina(), cliente);
+            latencias.get(cliente.getPedido()).registrar(servido.getFin() - cliente.getLlegada());
+            suscripcion.request(1);
+        }
+
+        @Override
+        public void onError(Throwable error){
+            ConsolaAsincrona.linea("Error en el registro de pedidos: " + error.getMessage());
+            terminado.countDown();
+        }
+
+        @Override
+        public void onComplete(){
+            terminado.countDown();
+        }
+
+        public HistogramaLatencia getLatencia(TipoBebida bebida){
+            return latencias.get(bebida);
+        }
+    }
+
+    /**
+     * Suscriptor que factura los pedidos servidos con un precio de ejemplo por
+     * bebida. Pide los pedidos en bloques.
+     */
+    public static final class Facturacion implements Flow.Subscriber<PedidoServido> {
+        //precio de cada bebida en cntimos
+        private static final Map<TipoBebida, Integer> PRECIOS = new EnumMap<>(Map.of(
+                TipoBebida.CAFE, 150, TipoBebida.TE, 120, TipoBebida.CHOCOLATE_CALIENTE, 200));
+        private static final int BLOQUE = 32;
+
+        private final EnumMap<TipoBebida, LongAdder> importes = new EnumMap<>(TipoBebida.class);
+        private final CountDownLatch terminado;
+        private Flow.Subscription suscripcion;
+        private int recibidos = 0;
+
+        public Facturacion(CountDownLatch terminado){
+            this.terminado = terminado;
+            for(TipoBebida bebida : TipoBebida.values()){
+                importes.put(bebida, new LongAdder());
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription){
+            this.suscripcion = subscription;
+            subscription.request(BLOQUE);
+        }
+
+        @Override
+        public void onNext(PedidoServido servido){
+            TipoBebida bebida = servido.getCliente().getPedido();
+            importes.get(bebida).add(PRECIOS.get(bebida));
+            //se pide el siguiente bloque al terminar el anterior
+            if(++recibidos == BLOQUE){
+                recibidos = 0;
+                suscripcion.request(BLOQUE);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error){
+            ConsolaAsincrona.linea("Error en la facturacin: " + error.getMessage());
+            terminado.countDown();
+        }
+
+        @Override
+        public void onComplete(){
+            terminado.countDown();
+        }
+
+        /**
+         * Devuelve una lnea con lo facturado de cada bebida.
+         * @return
+         */
+        public String resumen(){
+            StringBuilder texto = new StringBuilder("Facturacin:");
+            long total = 0;
+            for(Map.Entry<TipoBebida, LongAdder> importe : importes.entrySet()){
+                long centimos = importe.getValue().sum();
+                total += centimos;
+                texto.append(String.format(" %s=%.2f EUR,", importe.getKey(), centimos / 100.0));
+            }
+            texto.append(String.format(" total=%.2f EUR", total / 100.0));
+            return texto.toString();
+        }
+    }
+
+    /**
+     * Publica los clientes durante la duracin indicada con el proceso de
+     * llegadas, aplicando la poltica de saturacin si el publicador est lleno.
+     * @param pedidos
+     * @param config
+     * @param tasa
+     * @param segundos
+     * @return clientes descartados
+     */
+    private static long generar(SubmissionPublisher<Cliente> pedidos, ConfigCafeteria config, double tasa, long segundos){
+        ProcesoLlegadas proceso = config.getProcesoLlegadas();
+        Random random = new Random();
+        long inicio = System.nanoTime();
+        long duracion = TimeUnit.SECONDS.toNanos(segundos);
+        long siguiente = inicio;
+        long descartados = 0;
+        for(long indice = 0; ; indice++){
+            siguiente += proceso.intervalo(tasa, config.getTamanoRafaga(), indice, random);
+            if(siguiente - inicio >= duracion){
+                break;
+            }
+            long restante;
+            while((restante = siguiente - System.nanoTime()) > 0){
+                LockSupport.parkNanos(restante);
+            }
+            Cliente cliente = new Cliente();
+            //si el publicador est lleno se aplica la poltica de saturacin
+            int resultado = switch(config.getSaturacion()){
+                case ESPERA_ACOTADA -> pedidos.offer(cliente, config.getEsperaSaturacion(), TimeUnit.MILLISECONDS,
+                        (suscriptor, descartado) -> false);
+                case DESCARTAR -> pedidos.offer(cliente, (suscriptor, descartado) -> false);
+                default -> pedidos.submit(cliente);
+            };
+            if(resultado < 0){
+                descartados++;
+            }
+        }
+        return descartados;
+    }
+
+    /**
+     * Funcin main de la variante con flujo reactivo.
+     * @param args clientes por segundo y segundos (opcionales)
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException{
+        ConfigCafeteria config = new ConfigCafeteria();
+        double tasa = args.length > 0 ? Double.parseDouble(args[0]) : config.getTasaLlegadas();
+        long segundos = args.length > 1 ? Long.parseLong(args[1]) : config.getDuracionGenerador();
+        ConsolaAsincrona.configurar(config.getModoConsola());
+
+        //se montan las etapas: pedidos -> mquinas -> registro y facturacin
+        CountDownLatch terminado = new CountDownLatch(2);
+        SubmissionPublisher<Cliente> pedidos = new SubmissionPublisher<>(
+                ForkJoinPool.commonPool(), Math.max(1, config.getCapacidadCola()));
+        EstacionMaquinas estacion = new EstacionMaquinas(config);
+        RegistroServidos registro = new RegistroServidos(terminado);
+        Facturacion facturacion = new Facturacion(terminado);
+        pedidos.subscribe(estacion);
+        estacion.subscribe(registro);
+        estacion.subscribe(facturacion);
+
+        ConsolaAsincrona.linea(String.format("Flujo de %.2f clientes/s durante %d s con %d mquinas (%s)",
+                tasa, segundos, config.getNumMaquinas(), config.getSaturacion()));
+        long descartados = generar(pedidos, config, tasa, segundos);
+        //no llegan ms pedidos, las etapas terminan cuando se sirvan los pendientes
+        pedidos.close();
+        terminado.await();
+
+        ConsolaAsincrona.vaciar();
+        System.out.println("Clientes descartados por saturacin: " + descartados
+                + ", sin mquina que los prepare: " + estacion.getDescartados());
+        System.out.println(estacion.resumen());
+        System.out.println("Espera de los clientes: " + estacion.getEspera().resumen());
+        System.out.println(facturacion.resumen());
+        for(TipoBebida bebida : TipoBebida.values()){
+            System.out.println("Latencia de " + bebida + ": " + registro.getLatencia(bebida).resumen());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Clase GeneradorClientes
+ *
+ * Generador de carga para la cafetera. A diferencia de la funcin gernerarClientes,
+ * que mete de golpe un nmero de clientes, este generador crea clientes durante un
+ * tiempo con una tasa de llegada y un proceso de llegadas (ProcesoLlegadas)
+ * configurables.
+ *
+ * El generador funciona en bucle abierto: cada llegada tiene programado su instante
+ * desde el inicio, y no depende de lo rpido que se atiendan los pedidos. Cuando
+ * la cola est llena se aplica la PoliticaSaturacion configurada, de este modo se
+ * puede probar cmo se comporta la cafetera cuando est saturada. La llegada
+ * de cada cliente es su instante programado, as el tiempo que el generador se
+ * retrase tambin cuenta como espera del cliente.
+ *
+ * Al terminar se pueden consultar los clientes generados, los que han entrado en
+ * la cola y los que se han ido por estar llena.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class GeneradorClientes implements Runnable {
+
+    //Atributos principales
+    private final ColaPedidos cola; //cola donde se dejan los clientes
+    private final ProcesoLlegadas proceso; //modelo de llegadas
+    private final double tasa; //clientes por segundo
+    private final int tamanoRafaga; //clientes por rfaga
+    private final long duracionNanos; //tiempo que se generan clientes
+    private final PoliticaSaturacion saturacion; //qu hacer con la cola llena
+    private final long esperaMaxima; //milisegundos de espera con ESPERA_ACOTADA
+    private final Random random = new Random();
+
+    //contadores de clientes
+    private final AtomicLong generados = new AtomicLong();
+    private final AtomicLong aceptados = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+
+    /**
+     * Constructor del generador.
+     * @param cola
+     * @param proceso
+     * @param tasa clientes por segundo
+     * @param tamanoRafaga clientes por rfaga
+     * @param duracionSegundos segundos que se generan clientes
+     * @param saturacion
+     * @param esperaMaxima milisegundos de espera con ESPERA_ACOTADA
+     */
+    public GeneradorClientes(ColaPedidos cola, ProcesoLlegadas proceso, double tasa, int tamanoRafaga,
+            long duracionSegundos, PoliticaSaturacion saturacion, long esperaMaxima){
+        this.cola = cola;
+        this.proceso = proceso;
+        this.tasa = tasa;
+        this.tamanoRafaga = tamanoRafaga;
+        this.duracionNanos = TimeUnit.SECONDS.toNanos(duracionSegundos);
+        this.saturacion = saturacion;
+        this.esperaMaxima = esperaMaxima;
+    }
+
+    /**
+     * Funcin ejecutable del hilo, genera clientes hasta que pasa la duracin.
+     */
+    @Override
+    public void run(){
+        long inicio = System.nanoTime();
+        //instante programado de la siguiente llegada
+        long siguiente = inicio;
+        long indice = 0;
+        try{
+            while(true){
+                siguiente += proceso.intervalo(tasa, tamanoRafaga, indice++, random);
+                if(siguiente - inicio >= duracionNanos){
+                    break;
+                }
+                //se espera hasta el instante de la llegada
+                long restante;
+                while((restante = siguiente - System.nanoTime()) > 0){
+                    LockSupport.parkNanos(restante);
+                    if(Thread.interrupted()){
+                        throw new InterruptedException("generador interrumpido");
+                    }
+                }
+                //la espera se mide desde la llegada programada y no desde que el
+                //generador consigue crear el cliente, para no ocultar sus retrasos
+                entregar(new Cliente(siguiente));
+            }
+        }catch(InterruptedException e){
+            //se restablece el estado de interrupcin del hilo
+            Thread.currentThread().interrupt();
+            System.out.println("Error en el generador de clientes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deja el cliente en la cola aplicando la poltica de saturacin.
+     * @param cliente
+     * @throws InterruptedException
+     */
+    private void entregar(Cliente cliente) throws InterruptedException{
+        generados.incrementAndGet();
+        boolean entra;
+        switch(saturacion){
+            case ESPERA_ACOTADA -> entra = cola.offer(cliente, esperaMaxima, TimeUnit.MILLISECONDS);
+            case DESCARTAR -> entra = cola.offer(cliente, 0, TimeUnit.MILLISECONDS);
+            default ->{
+                cola.put(cliente);
+                entra = true;
+            }
+        }
+        if(entra){
+            aceptados.incrementAndGet();
+        }else{
+            descartados.incrementAndGet();
+        }
+    }
+
+    /**
+     * Devuelve los clientes generados.
+     * @return
+     */
+    public long getGenerados(){
+        return generados.get();
+    }
+
+    /**
+     * Devuelve los clientes que han entrado en la cola.
+     * @return
+     */
+    public long getAceptados(){
+        return aceptados.get();
+    }
+
+    /**
+     * Devuelve los clientes que se han ido por estar la cola llena.
+     * @return
+     */
+    public long getDescartados(){
+        return descartados.get();
+    }
+
+    /**
+     * Devuelve un resumen de la carga generada.
+     * @return
+     */
+    public String resumen(){
+        return String.format("Generador %s a %.2f clientes/s con saturacin %s: %d generados, %d aceptados en cola, %d descartados.",
+                proceso, tasa, saturacion, getGenerados(), getAceptados(), getDescartados());
+    }
+}
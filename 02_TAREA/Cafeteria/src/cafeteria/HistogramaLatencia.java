@@ -0,0 +1,190 @@
+/**
+ * Clase HistogramaLatencia
+ *
+ * Histograma para registrar tiempos (en nanosegundos) y poder obtener la media
+ * y los percentiles sin tener que guardar todos los valores.
+ *
+ * Los valores se agrupan en intervalos log-lineales: para cada potencia de dos
+ * se utilizan 32 subintervalos, de este modo el error de cada percentil es como
+ * mucho de un 3% y la memoria es fija (2048 contadores) sea cual sea el nmero de
+ * valores registrados.
+ *
+ * Los contadores son atmicos, por lo que varios hilos pueden registrar valores
+ * a la vez sin necesidad de sincronizar. La cuenta y la suma utilizan LongAdder
+ * para que no se conviertan en un punto de contencin con muchas mquinas.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HistogramaLatencia {
+
+    //bits de la mantisa que se usan para los subintervalos (32 subintervalos)
+    private static final int BITS_SUB = 5;
+    private static final int SUBINTERVALOS = 1 << BITS_SUB;
+
+    //contadores de cada intervalo
+    private final AtomicLongArray contadores = new AtomicLongArray(64 * SUBINTERVALOS);
+    //nmero total de valores, suma y mximo
+    private final LongAdder cuenta = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * Registra un valor en nanosegundos.
+     * @param nanos
+     */
+    public void registrar(long nanos){
+        //los valores negativos se tratan como cero
+        long valor = Math.max(0, nanos);
+        contadores.incrementAndGet(indice(valor));
+        cuenta.increment();
+        suma.add(valor);
+        maximo.accumulateAndGet(valor, Math::max);
+    }
+
+    /**
+     * Calcula el intervalo que corresponde a un valor.
+     * @param valor
+     * @return
+     */
+    private static int indice(long valor){
+        //los valores pequeos tienen su propio intervalo
+        if(valor < SUBINTERVALOS){
+            return (int) valor;
+        }
+        //se obtiene la potencia de dos y los bits ms altos de la mantisa
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        int sub = (int) (valor >>> (exponente - BITS_SUB)) & (SUBINTERVALOS - 1);
+        return (exponente - BITS_SUB + 1) * SUBINTERVALOS + sub;
+    }
+
+    /**
+     * Devuelve el valor ms alto que se incluye en un intervalo.
+     * @param indice
+     * @return
+     */
+    private static long limiteSuperior(int indice){
+        if(indice < SUBINTERVALOS){
+            return indice;
+        }
+        int exponente = indice / SUBINTERVALOS + BITS_SUB - 1;
+        int sub = indice % SUBINTERVALOS;
+        long ancho = 1L << (exponente - BITS_SUB);
+        return ((long) (SUBINTERVALOS + sub) << (exponente - BITS_SUB)) + ancho - 1;
+    }
+
+    /**
+     * Devuelve el nmero de valores registrados.
+     * @return
+     */
+    public long getCuenta(){
+        return cuenta.sum();
+    }
+
+    /**
+     * Devuelve la media en nanosegundos.
+     * @return
+     */
+    public double getMedia(){
+        long n = cuenta.sum();
+        return n == 0 ? 0 : (double) suma.sum() / n;
+    }
+
+    /**
+     * Devuelve el valor mximo registrado en nanosegundos.
+     * @return
+     */
+    public long getMaximo(){
+        return maximo.get();
+    }
+
+    /**
+     * Devuelve el percentil indicado (entre 0 y 100) en nanosegundos.
+     * @param percentil
+     * @return
+     */
+    public long getPercentil(double percentil){
+        long n = cuenta.sum();
+        if(n == 0){
+            return 0;
+        }
+        //posicin del valor buscado dentro de los valores ordenados
+        long objetivo = Math.max(1, (long) Math.ceil(percentil / 100.0 * n));
+        long acumulado = 0;
+        for(int i = 0; i < contadores.length(); i++){
+            acumulado += contadores.get(i);
+            if(acumulado >= objetivo){
+                return Math.min(limiteSuperior(i), maximo.get());
+            }
+        }
+        return maximo.get();
+    }
+
+    /**
+     * Devuelve una copia de los contadores, para calcular despus los 
+     * percentiles de los valores registrados desde ese momento.
+     * @return
+     */
+    public long[] copiarContadores(){
+        long[] copia = new long[contadores.length()];
+        for(int i = 0; i < copia.length; i++){
+            copia[i] = contadores.get(i);
+        }
+        return copia;
+    }
+
+    /**
+     * Devuelve el percentil indicado (entre 0 y 100) en nanosegundos de los
+     * valores registrados entre dos copias de los contadores, o 0 si no se ha
+     * registrado ninguno.
+     * @param anterior
+     * @param actual
+     * @param percentil
+     * @return
+     */
+    public static long percentilEntre(long[] anterior, long[] actual, double percentil){
+        long n = 0;
+        for(int i = 0; i < actual.length; i++){
+            n += actual[i] - anterior[i];
+        }
+        if(n == 0){
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(percentil / 100.0 * n));
+        long acumulado = 0;
+        for(int i = 0; i < actual.length; i++){
+            acumulado += actual[i] - anterior[i];
+            if(acumulado >= objetivo){
+                return limiteSuperior(i);
+            }
+        }
+        return limiteSuperior(actual.length - 1);
+    }
+
+    /**
+     * Devuelve un resumen con la media, el p50, el p99 y el mximo en milisegundos.
+     * @return
+     */
+    public String resumen(){
+        return String.format("n=%d, media=%.1f ms, p50=%.1f ms, p99=%.1f ms, mx=%.1f ms",
+                getCuenta(), aMilis(getMedia()), aMilis(getPercentil(50)),
+                aMilis(getPercentil(99)), aMilis(getMaximo()));
+    }
+
+    /**
+     * Convierte nanosegundos a milisegundos con decimales.
+     * @param nanos
+     * @return
+     */
+    private static double aMilis(double nanos){
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
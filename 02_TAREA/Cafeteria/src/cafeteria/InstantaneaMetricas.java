@@ -0,0 +1,137 @@
+/**
+ * Clase InstantaneaMetricas
+ *
+ * Foto inmutable de las mtricas de la cafetera en un momento concreto, la
+ * devuelve MetricasCafeteria.instantanea(). Al ser inmutable se puede pasar a
+ * otros hilos o guardar para compararla con una foto posterior.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public final class InstantaneaMetricas {
+
+    //Atributos de la foto
+    private final long transcurrido; //nanosegundos desde el inicio de las mtricas
+    private final Map<TipoBebida, Long> servidos; //pedidos servidos de cada bebida
+    private final Map<TipoBebida, Long> latenciaP99; //percentil 99 de la latencia de cada bebida
+    private final int profundidadCola; //clientes esperando en la cola
+    private final int maquinasOcupadas; //mquinas preparando un pedido
+    private final long esperaP99; //percentil 99 de la espera
+
+    /**
+     * Constructor de la foto.
+     * @param transcurrido
+     * @param servidos
+     * @param latenciaP99
+     * @param profundidadCola
+     * @param maquinasOcupadas
+     * @param esperaP99
+     */
+    public InstantaneaMetricas(long transcurrido, EnumMap<TipoBebida, Long> servidos, EnumMap<TipoBebida, Long> latenciaP99,
+            int profundidadCola, int maquinasOcupadas, long esperaP99){
+        this.transcurrido = transcurrido;
+        this.servidos = Collections.unmodifiableMap(new EnumMap<>(servidos));
+        this.latenciaP99 = Collections.unmodifiableMap(new EnumMap<>(latenciaP99));
+        this.profundidadCola = profundidadCola;
+        this.maquinasOcupadas = maquinasOcupadas;
+        this.esperaP99 = esperaP99;
+    }
+
+    /**
+     * Devuelve los nanosegundos desde el inicio de las mtricas.
+     * @return
+     */
+    public long getTranscurrido(){
+        return transcurrido;
+    }
+
+    /**
+     * Devuelve los pedidos servidos de cada bebida.
+     * @return
+     */
+    public Map<TipoBebida, Long> getServidos(){
+        return servidos;
+    }
+
+    /**
+     * Devuelve el total de pedidos servidos.
+     * @return
+     */
+    public long getTotalServidos(){
+        long total = 0;
+        for(long cantidad : servidos.values()){
+            total += cantidad;
+        }
+        return total;
+    }
+
+    /**
+     * Devuelve el percentil 99 de la latencia de cada bebida en nanosegundos.
+     * @return
+     */
+    public Map<TipoBebida, Long> getLatenciaP99(){
+        return latenciaP99;
+    }
+
+    /**
+     * Devuelve los clientes que esperan en la cola.
+     * @return
+     */
+    public int getProfundidadCola(){
+        return profundidadCola;
+    }
+
+    /**
+     * Devuelve las mquinas que estn preparando un pedido.
+     * @return
+     */
+    public int getMaquinasOcupadas(){
+        return maquinasOcupadas;
+    }
+
+    /**
+     * Devuelve el percentil 99 de la espera en nanosegundos.
+     * @return
+     */
+    public long getEsperaP99(){
+        return esperaP99;
+    }
+
+    /**
+     * Devuelve los pedidos por segundo servidos desde la foto anterior.
+     * @param anterior
+     * @return
+     */
+    public double ritmoDesde(InstantaneaMetricas anterior){
+        long nanos = transcurrido - anterior.transcurrido;
+        if(nanos <= 0){
+            return 0;
+        }
+        return (getTotalServidos() - anterior.getTotalServidos()) * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Devuelve una lnea con el resumen de la foto comparada con la anterior.
+     * @param anterior
+     * @return
+     */
+    public String resumen(InstantaneaMetricas anterior){
+        StringBuilder texto = new StringBuilder();
+        texto.append(String.format("[mtricas %ds] servidos=%d, ritmo=%.2f pedidos/s, cola=%d, mquinas ocupadas=%d, espera p99=%d ms",
+                TimeUnit.NANOSECONDS.toSeconds(transcurrido), getTotalServidos(), ritmoDesde(anterior),
+                profundidadCola, maquinasOcupadas, TimeUnit.NANOSECONDS.toMillis(esperaP99)));
+        for(Map.Entry<TipoBebida, Long> entrada : servidos.entrySet()){
+            texto.append(String.format(", %s=%d (p99 %d ms)", entrada.getKey(), entrada.getValue(),
+                    TimeUnit.NANOSECONDS.toMillis(latenciaP99.get(entrada.getKey()))));
+        }
+        return texto.toString();
+    }
+}
@@ -28,13 +28,31 @@
  * se irn recibiendo los clientes para ir procesando sus pedidos as como registrandolos.
  * Una vez finalice el turno se imprimir por pantalla los registros. 
  * 
+ * Cada mquina tiene un PerfilMaquina con las bebidas que puede preparar y su 
+ * velocidad. Si se le indica un Despachador, la mquina no coge los clientes de 
+ * la cola de la cafetera: cuando est libre se lo indica al despachador, que le
+ * asigna en su cola propia el siguiente pedido que puede preparar.
+ * 
+ * Si se configura un tamao de lote mayor que 1, al atender un cliente la mquina
+ * saca tambin de la cola los pedidos de la misma bebida (hasta completar el lote)
+ * y los prepara todos en un nico ciclo. El nmero de lotes y su tamao se muestran
+ * en el resumen del turno.
+ * 
  * @author dmiaper (Digenes Miaja Prez)
  * fecha: 21/12/2024
  * versin: 1.0
  */
 package cafeteria;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Clase que implementa la interfaz Runnable, permitiendo definir la lgica que 
@@ -43,16 +61,36 @@ import java.util.concurrent.Semaphore;
 public class Maquina implements Runnable{
 
     //Contador esttico para generar el nmero de id de las mquinas.
-    private static int contadorId=0;
+    //Es atmico porque las mquinas se pueden crear desde varios hilos.
+    private static final AtomicInteger contadorId = new AtomicInteger();
     //variables que contarn la cantidad que bebebidas por tipos que realizan las mquinas.
-    private int cafe = 0;
-    private int te = 0;
-    private int chocolate = 0;
+    //Se usan LongAdder para poder leerlas mientras la mquina est trabajando.
+    private final LongAdder cafe = new LongAdder();
+    private final LongAdder te = new LongAdder();
+    private final LongAdder chocolate = new LongAdder();
+    //variables que cuentan los lotes preparados y el tamao del mayor lote.
+    private final LongAdder lotes = new LongAdder();
+    private final AtomicInteger loteMaximo = new AtomicInteger();
     
     //Atriburtos principales.
     private int id;  //se almacena el id de la mquina
     private Semaphore semaforo; //se instacia un semaforo para controlar el proceso
     private Registrologs registros;
+    private final PerfilMaquina perfil; //bebidas que puede preparar la mquina y su velocidad
+    private final TurnoCafeteria turno; //turno de la cafetera del que se atienden los pedidos
+    
+    //Atributos para el reparto de pedidos con despachador.
+    private final Despachador despachador; //despachador que asigna los pedidos, null si no se usa
+    private final BlockingQueue<Cliente> colaAsignada; //pedidos asignados a esta mquina
+    private final AtomicLong trabajoPendiente = new AtomicLong(); //milisegundos de pedidos asignados sin terminar
+    private volatile long inicioActual; //instante (nanoTime) en el que se inici el pedido actual
+    private volatile long duracionActual; //duracin en milisegundos del pedido actual, 0 si no hay ninguno
+    
+    //Atributos para la preparacin por lotes.
+    private int tamanoLote = 1; //mximo de bebidas iguales que se preparan juntas, 1 sin lotes
+    private long incrementoLote = 0; //milisegundos que se aaden por cada bebida adicional del lote
+    private double escalaTiempo = 1.0; //factor del tiempo de preparacin, 0 para medir sin esperas
+    private volatile boolean parada = false; //la mquina se ha retirado y termina el turno
     
     /**
      * Constructor para el objeto mquinam que recibe un semforo para sincronizar 
@@ -60,12 +98,141 @@ public class Maquina implements Runnable{
      * @param s 
      */
     public Maquina(Semaphore s){
+        this(s, PerfilMaquina.generalista(), null);
+    }
+    
+    /**
+     * Constructor para una mquina con un perfil de bebidas concreto. Si se indica
+     * un despachador, la mquina atender los pedidos que este le asigne.
+     * @param s
+     * @param perfil
+     * @param despachador 
+     */
+    public Maquina(Semaphore s, PerfilMaquina perfil, Despachador despachador){
+        this(s, perfil, despachador, Cafeteria.getTurno());
+    }
+    
+    /**
+     * Constructor para una mquina que atiende los pedidos de un turno concreto,
+     * por ejemplo el de una prueba del banco de pruebas.
+     * @param s
+     * @param perfil
+     * @param despachador
+     * @param turno 
+     */
+    public Maquina(Semaphore s, PerfilMaquina perfil, Despachador despachador, TurnoCafeteria turno){
         //se genera el id automticamente
-        this.id = ++contadorId;
+        this.id = contadorId.incrementAndGet();
         //se instancia el semforo.
         this.semaforo = s;
         //se instancia el objeto Registrologs
         this.registros = new Registrologs();       
+        this.perfil = perfil;
+        this.turno = turno;
+        this.despachador = despachador;
+        this.colaAsignada = despachador == null ? null : new LinkedBlockingQueue<>();
+    }
+    
+    /**
+     * Configura la preparacin por lotes de la mquina.
+     * @param tamano mximo de bebidas iguales por lote
+     * @param incremento milisegundos que se aaden por cada bebida adicional
+     */
+    public void configurarLotes(int tamano, long incremento){
+        this.tamanoLote = Math.max(1, tamano);
+        this.incrementoLote = Math.max(0, incremento);
+    }
+    
+    /**
+     * Configura el factor que se aplica al tiempo que la mquina espera al 
+     * preparar un lote. Con 0 no se espera, para medir el coste del reparto.
+     * @param escala 
+     */
+    public void configurarEscala(double escala){
+        this.escalaTiempo = Math.max(0, escala);
+    }
+    
+    /**
+     * Retira la mquina: termina el turno despus del pedido que est 
+     * preparando. Con despachador termina antes los pedidos que tiene asignados.
+     */
+    public void parar(){
+        this.parada = true;
+    }
+    
+    /**
+     * Devuelve el tiempo estimado en milisegundos en el que la mquina terminara 
+     * el pedido del cliente, teniendo en cuenta el trabajo que tiene pendiente.
+     * Si la mquina no puede preparar la bebida se devuelve Long.MAX_VALUE.
+     * @param cliente
+     * @return 
+     */
+    public long tiempoEstimadoFin(Cliente cliente){
+        if(!perfil.puedePreparar(cliente.getPedido())){
+            return Long.MAX_VALUE;
+        }
+        //se descuenta lo que ya se ha avanzado del pedido actual
+        long avanzado = 0;
+        long duracion = duracionActual;
+        if(duracion > 0){
+            avanzado = Math.min(duracion, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioActual));
+        }
+        return trabajoPendiente.get() - avanzado + perfil.tiempoPreparacion(cliente.getPedido());
+    }
+    
+    /**
+     * Devuelve si la mquina puede preparar la bebida.
+     * @param bebida
+     * @return 
+     */
+    public boolean puedePreparar(TipoBebida bebida){
+        return perfil.puedePreparar(bebida);
+    }
+    
+    /**
+     * Asigna un pedido a la cola propia de la mquina.
+     * @param cliente 
+     */
+    public void asignar(Cliente cliente){
+        trabajoPendiente.addAndGet(perfil.tiempoPreparacion(cliente.getPedido()));
+        colaAsignada.add(cliente);
+    }
+    
+    /**
+     * Devuelve si quedan pedidos que pueda atender la mquina.
+     * @return 
+     */
+    private boolean hayPedidos(){
+        //si se est cerrando la cafetera se termina despus del pedido actual
+        if(turno.isCerrando()){
+            return false;
+        }
+        //si se ha retirado la mquina solo se terminan los pedidos asignados
+        if(parada){
+            return despachador != null && !colaAsignada.isEmpty();
+        }
+        //sin despachador se mira la cola de la cafetera
+        if(despachador == null){
+            return turno.hayPedidos();
+        }
+        return despachador.isActivo() || !colaAsignada.isEmpty();
+    }
+    
+    /**
+     * Devuelve el siguiente pedido, de la cola de la cafetera o de la cola propia.
+     * Con despachador se espera como mucho 200 ms y puede devolver null.
+     * @return
+     * @throws InterruptedException 
+     */
+    private Cliente siguientePedido() throws InterruptedException{
+        if(despachador == null){
+            return turno.siguienteCliente();
+        }
+        //se indica al despachador que la mquina est libre para que le asigne un pedido
+        if(colaAsignada.isEmpty() && !parada){
+            despachador.libre(this);
+        }
+        return colaAsignada.poll(200, TimeUnit.MILLISECONDS);
     }
     
     /**
@@ -75,58 +242,130 @@ public class Maquina implements Runnable{
      * @throws InterruptedException 
      */
     public void preparacionPedido(Cliente cliente)throws InterruptedException{
+        //un pedido suelto se prepara como un lote de un nico cliente
+        preparacionLote(List.of(cliente));
+    }
+    
+    /**
+     * Funcin para procesar un lote de pedidos de la misma bebida en un nico 
+     * ciclo de la mquina. El tiempo del lote es el de una bebida ms el 
+     * incremento configurado por cada bebida adicional.
+     * @param lote
+     * @throws InterruptedException 
+     */
+    public void preparacionLote(List<Cliente> lote)throws InterruptedException{
 
-        //se obtiene el tipo de bebida que ha pedido el cliente
-        TipoBebida pedido = cliente.getPedido();
+        //se obtiene el tipo de bebida que han pedido los clientes del lote
+        TipoBebida pedido = lote.get(0).getPedido();
+        //se obtiene el tiempo que tarda esta mquina en preparar una bebida y el lote completo
+        long tiempoUnidad = perfil.tiempoPreparacion(pedido);
+        long tiempo = perfil.tiempoLote(pedido, lote.size(), incrementoLote);
+        inicioActual = System.nanoTime();
+        duracionActual = tiempo;
         
-        /**
-         * se llama a la funcin de mensaje de cliente para se muestre por pantalla 
-         * se envia el id de la mquina y el pedido
-         */
-        cliente.mensaje(id, pedido);
+        for(Cliente cliente : lote){
+            //se registra lo que ha esperado el cliente hasta ser atendido
+            turno.registrarEspera(cliente);
+            /**
+             * se llama a la funcin de mensaje de cliente para se muestre por pantalla 
+             * se envia el id de la mquina y el pedido
+             */
+            cliente.mensaje(id);
+            //se registra el incio del pedido, se envia el objeto cliente
+            registros.regInicioPedido(cliente);
+        }
         
-        //Estructura switch que procesar un pedido segn el pedido que almacena la variable pedido
-        switch(pedido){
-            case CAFE->{
-                //se registra el incio del pedido, se envia el objeto cliente
-                registros.regInicioPedido(cliente);
-                //se congela el proceso para simular el tiempo de preparacin. 
-                //el tiempo esta definido por el objeto indicado por el pedido.
-                Thread.sleep(pedido.getTiempoPreparacion());
-                //se incrementa el cafe en 1 
-                cafe++;
-                //mensaje que indica que se ha preparado un caf.
-                System.out.println("Caf listo.");
-                //se registra la finalizacin del proceso.
-                registros.regFinPedido(cliente);
-            }
-            case TE->{
-                //se registra el inicio del pedido, se enviar el objeto cliente.
-                registros.regInicioPedido(cliente);
-                //se congela el proceso para simular el tiempo de preparacin.
-                Thread.sleep(pedido.getTiempoPreparacion());
-                //se incrementa en 1 la variable te
-                te++;
-                //mensaje que indica que se ha preparado un t
-                System.out.println("T listo.");
-                //se registra la finalizacin del pedido
-                registros.regFinPedido(cliente);
+        //se congela el proceso para simular el tiempo de preparacin. 
+        //el tiempo esta definido por el pedido, el perfil de la mquina y el tamao del lote.
+        long espera = Math.round(tiempo * escalaTiempo);
+        //la mquina cuenta como ocupada en las mtricas mientras prepara el lote
+        turno.inicioPreparacion();
+        try{
+            if(espera > 0){
+                Thread.sleep(espera);
             }
-            case CHOCOLATE_CALIENTE->{
-                //se regisrtra el incio del pedido, se enviar el objeto cliente
-                registros.regInicioPedido(cliente);
-                //se congela el proceso para simular el tiempo de preparacin.
-                Thread.sleep(pedido.getTiempoPreparacion());
-                //se incrementa en 1 el chocolate caliente.
-                chocolate++;
-                //mensaje que indica que se ha preparado un chocolante caliente
-                System.out.println("Chocolate calietne listo.");
-                //ase registra la finalizacin del pedido.
-                registros.regFinPedido(cliente);
+        }finally{
+            turno.finPreparacion();
+        }
+        
+        for(Cliente cliente : lote){
+            //Estructura switch que contar el pedido segn el pedido que almacena la variable pedido
+            switch(pedido){
+                case CAFE->{
+                    //se incrementa el cafe en 1 
+                    cafe.increment();
+                }
+                case TE->{
+                    //se incrementa en 1 la variable te
+                    te.increment();
+                }
+                case CHOCOLATE_CALIENTE->{
+                    //se incrementa en 1 el chocolate caliente.
+                    chocolate.increment();
+                }
             }
+            //mensaje que indica que se ha preparado la bebida, con el texto ya preparado de la bebida.
+            ConsolaAsincrona.listo(id, cliente);
+            //se registra la finalizacin del pedido.
+            registros.regFinPedido(cliente);
+            //se registra el pedido servido en las mtricas de la cafetera
+            turno.registrarServido(cliente);
+        }
+        //se cuenta el lote para el resumen del turno
+        lotes.increment();
+        loteMaximo.accumulateAndGet(lote.size(), Math::max);
+        
+        //se descuenta del trabajo pendiente el pedido asignado por el despachador,
+        //el resto del lote sale directamente de la cola de la cafetera
+        duracionActual = 0;
+        if(despachador != null){
+            trabajoPendiente.addAndGet(-tiempoUnidad);
         }
     }
+    
+    /**
+     * Funcin que saca de la cola los pedidos de la misma bebida que el cliente
+     * que se va a atender, hasta completar el tamao mximo del lote. Tambin 
+     * con despachador, porque la mquina puede preparar la bebida del cliente.
+     * @param cliente
+     * @return 
+     */
+    private List<Cliente> formarLote(Cliente cliente){
+        List<Cliente> lote = new ArrayList<>();
+        lote.add(cliente);
+        int restantes = tamanoLote - 1;
+        if(restantes > 0){
+            lote.addAll(turno.drenarPedidos(cliente.getPedido(), restantes));
+        }
+        return lote;
+    }
         
+    /**
+     * Devuelve el nmero de pedidos asignados por el despachador que la mquina
+     * todava no ha empezado.
+     * @return
+     */
+    public int getPendientes(){
+        return colaAsignada == null ? 0 : colaAsignada.size();
+    }
+
+    /**
+     * Devuelve el id de la mquina.
+     * @return 
+     */
+    public int getId(){
+        return id;
+    }
+    
+    /**
+     * Devuelve el total de bebidas preparadas hasta el momento, se puede 
+     * consultar mientras la mquina est trabajando.
+     * @return 
+     */
+    public long getBebidasPreparadas(){
+        return cafe.sum() + te.sum() + chocolate.sum();
+    }
+    
     /**
      * Funcin para indicar que se ha finalizado el turno de trabajo.
      * Esta funcin enviar los mensaje de las bebidas que se han preparado 
@@ -137,8 +376,12 @@ public class Maquina implements Runnable{
         String cafesMsg = String.format("Se han preparado %s cafs.", cafe);
         String tesMsg = String.format("Se han preparado %s ts.", te);
         String chocosMsg = String.format("Se han preparado %s chocolates calientes.", chocolate);
+        long bebidas = getBebidasPreparadas();
+        long numLotes = lotes.sum();
+        String lotesMsg = String.format("Se han preparado %s lotes, con un tamao medio de %.2f y mximo de %s bebidas.",
+                numLotes, numLotes == 0 ? 0.0 : (double) bebidas / numLotes, loteMaximo.get());
         //se envian los mensajes al registro
-        registros.regFinTurno(cafesMsg, tesMsg, chocosMsg);
+        registros.regFinTurno(cafesMsg, tesMsg, chocosMsg, lotesMsg);
         //se muestra el registro completo de eventos que ha realizado la mquina durante el turno
         registros.mostarRegistro();
     }
@@ -151,22 +394,37 @@ public class Maquina implements Runnable{
         //se inciar el registro de turno, se envia el id de la mquina
         registros.regInicioTurno(id);
         //Se muestra el mensaje de que la mquina a comenzado a trabajar.
-        System.out.println("Se va a inciar el proceso de trabajo de la mquina n. "+id);
+        ConsolaAsincrona.linea("Se va a inciar el proceso de trabajo de la mquina n. "+id+" ("+perfil+")");
         
         //controlamos las excepciones 
         try {
-            //Buclce while que se ejecutar mientras la cola de clientes no este vacia.
-            while (!Cafeteria.colaVacia()) {  
+            //Buclce while que se ejecutar mientras queden pedidos que atender.
+            while (hayPedidos()) {  
                 //se adquiere el semformo para empezar a trabajar.
                 semaforo.acquire();
+                //si se ha retirado la mquina o se est cerrando mientras esperaba el
+                //permiso, se termina el turno sin coger otro pedido
+                if (!hayPedidos()) {
+                    semaforo.release();
+                    break;
+                }
                 // Se obtiene el cliente que este a al cabeza de la cola de clietnes.
-                Cliente cliente = Cafeteria.siguienteCliente();
+                Cliente cliente = siguientePedido();
+                //si se ha retirado la mquina mientras esperaba el pedido, se devuelve a la cola
+                if (cliente != null && parada && despachador == null) {
+                    turno.devolverPedido(cliente);
+                    cliente = null;
+                }
                 //si el cliente no es null
                 if (cliente != null) {
-                    //registramos el incio del pedido, se envia el id de la mquina y el objeto cliente
-                    registros.regInicio(id, cliente);
-                    //se procesa el pedido
-                    preparacionPedido(cliente);
+                    //se juntan los pedidos de la misma bebida que haya en la cola
+                    List<Cliente> lote = formarLote(cliente);
+                    for (Cliente asignado : lote) {
+                        //registramos el incio del pedido, se envia el id de la mquina y el objeto cliente
+                        registros.regInicio(id, asignado);
+                    }
+                    //se procesa el lote de pedidos
+                    preparacionLote(lote);
                 }
                 //se libera el semforo si no se esta atendiendo al cliente
                 semaforo.release();
@@ -0,0 +1,145 @@
+/**
+ * Clase MetricasCafeteria
+ *
+ * Mtricas de la cafetera que se pueden consultar mientras las mquinas estn
+ * trabajando, no solo al terminar el turno.
+ *
+ * Por cada TipoBebida se cuentan los pedidos servidos con un LongAdder y se
+ * registra la latencia (desde la llegada del cliente hasta que su bebida est
+ * lista) en un HistogramaLatencia. Ninguna de las dos operaciones utiliza
+ * bloqueos, por lo que las mquinas no se esperan entre ellas al registrar.
+ *
+ * Las mquinas ocupadas se cuentan explcitamente: cada mquina suma una al
+ * empezar a preparar un lote y la resta al terminarlo. No se calculan con los
+ * permisos del semforo porque una mquina libre tambin tiene un permiso
+ * mientras espera un pedido, y el autoescalado cambia el nmero de permisos.
+ *
+ * La funcin instantanea() devuelve una foto de las mtricas en ese momento
+ * (pedidos servidos, profundidad de la cola, mquinas ocupadas y latencias), y
+ * la funcin iniciarInforme() muestra esa foto por consola cada cierto tiempo
+ * junto con el ritmo de pedidos por segundo desde la foto anterior.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.EnumMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MetricasCafeteria {
+
+    //pedidos servidos y latencias de cada bebida
+    private final EnumMap<TipoBebida, LongAdder> servidos = new EnumMap<>(TipoBebida.class);
+    private final EnumMap<TipoBebida, HistogramaLatencia> latencias = new EnumMap<>(TipoBebida.class);
+    //cola de clientes, para la profundidad
+    private final ColaPedidos cola;
+    //mquinas que estn preparando un lote
+    private final AtomicInteger ocupadas = new AtomicInteger();
+    //pedidos que no ha podido preparar ninguna mquina
+    private final LongAdder rechazados = new LongAdder();
+    //instante en el que se empiezan a tomar las mtricas
+    private final long inicio = System.nanoTime();
+
+    /**
+     * Constructor de las mtricas.
+     * @param cola
+     */
+    public MetricasCafeteria(ColaPedidos cola){
+        this.cola = cola;
+        for(TipoBebida bebida : TipoBebida.values()){
+            servidos.put(bebida, new LongAdder());
+            latencias.put(bebida, new HistogramaLatencia());
+        }
+    }
+
+    /**
+     * Registra que se ha servido el pedido del cliente.
+     * @param cliente
+     */
+    public void registrarServido(Cliente cliente){
+        servidos.get(cliente.getPedido()).increment();
+        latencias.get(cliente.getPedido()).registrar(System.nanoTime() - cliente.getLlegada());
+    }
+
+    /**
+     * Registra que se ha rechazado un pedido porque ninguna mquina lo puede
+     * preparar.
+     */
+    public void registrarRechazado(){
+        rechazados.increment();
+    }
+
+    /**
+     * Devuelve los pedidos rechazados porque ninguna mquina los puede preparar.
+     * @return
+     */
+    public long getRechazados(){
+        return rechazados.sum();
+    }
+
+    /**
+     * Registra que una mquina empieza a preparar un lote.
+     */
+    public void inicioPreparacion(){
+        ocupadas.incrementAndGet();
+    }
+
+    /**
+     * Registra que una mquina ha terminado de preparar un lote.
+     */
+    public void finPreparacion(){
+        ocupadas.decrementAndGet();
+    }
+
+    /**
+     * Devuelve el histograma de latencia de una bebida.
+     * @param bebida
+     * @return
+     */
+    public HistogramaLatencia getLatencia(TipoBebida bebida){
+        return latencias.get(bebida);
+    }
+
+    /**
+     * Devuelve una foto de las mtricas en este momento.
+     * @return
+     */
+    public InstantaneaMetricas instantanea(){
+        EnumMap<TipoBebida, Long> porBebida = new EnumMap<>(TipoBebida.class);
+        EnumMap<TipoBebida, Long> p99 = new EnumMap<>(TipoBebida.class);
+        for(TipoBebida bebida : TipoBebida.values()){
+            porBebida.put(bebida, servidos.get(bebida).sum());
+            p99.put(bebida, latencias.get(bebida).getPercentil(99));
+        }
+        return new InstantaneaMetricas(System.nanoTime() - inicio, porBebida, p99, cola.size(), ocupadas.get(),
+                cola.getEspera().getPercentil(99));
+    }
+
+    /**
+     * Inicia un hilo que muestra las mtricas por consola cada intervalo de
+     * segundos. Se devuelve el ejecutor para poder pararlo.
+     * @param intervalo
+     * @return
+     */
+    public ScheduledExecutorService iniciarInforme(long intervalo){
+        ScheduledExecutorService ejecutor = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "metricas");
+            //el hilo no impide que termine la aplicacin
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        InstantaneaMetricas[] anterior = { instantanea() };
+        ejecutor.scheduleAtFixedRate(() -> {
+            InstantaneaMetricas actual = instantanea();
+            System.out.println(actual.resumen(anterior[0]));
+            anterior[0] = actual;
+        }, intervalo, intervalo, TimeUnit.SECONDS);
+        return ejecutor;
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Clase ModoConsola
+ *
+ * Enumeracin con los modos en los que la ConsolaAsincrona muestra los mensajes
+ * de cada pedido.
+ *
+ * 1-NORMAL: se muestran los mensajes de siempre (el cliente atendido y la bebida lista).
+ * 2-SILENCIOSO: no se muestran los mensajes de cada pedido, solo los resmenes.
+ * 3-ESTRUCTURADO: se muestra una lnea por evento con campos clave=valor, fcil de
+ *   procesar con otras herramientas.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+public enum ModoConsola {
+    NORMAL,
+    SILENCIOSO,
+    ESTRUCTURADO
+}
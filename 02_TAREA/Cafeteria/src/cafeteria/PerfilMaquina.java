@@ -0,0 +1,128 @@
+/**
+ * Clase PerfilMaquina
+ *
+ * Define qu bebidas puede preparar una mquina y a qu velocidad.
+ *
+ * Para cada TipoBebida que admite la mquina se guarda un factor de velocidad,
+ * 1.0 es la velocidad normal, 2.0 prepara la bebida en la mitad de tiempo y 0.5
+ * tarda el doble. Si una bebida no aparece en el perfil, la mquina no la puede
+ * preparar.
+ *
+ * El perfil generalista, que es el que se usa por defecto, prepara todas las
+ * bebidas a la velocidad normal, igual que las mquinas originales.
+ *
+ * El formato de texto del perfil es el que se usa en cafeteria.properties:
+ * CAFE:1.5,TE:1.0
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+public class PerfilMaquina {
+
+    //factor de velocidad de cada bebida que puede preparar la mquina
+    private final EnumMap<TipoBebida, Double> velocidades;
+
+    /**
+     * Constructor del perfil, recibe las velocidades de cada bebida.
+     * @param velocidades
+     */
+    public PerfilMaquina(Map<TipoBebida, Double> velocidades){
+        this.velocidades = new EnumMap<>(TipoBebida.class);
+        //solo se guardan las bebidas con velocidad positiva
+        for(Map.Entry<TipoBebida, Double> entrada : velocidades.entrySet()){
+            if(entrada.getValue() != null && entrada.getValue() > 0){
+                this.velocidades.put(entrada.getKey(), entrada.getValue());
+            }
+        }
+    }
+
+    /**
+     * Devuelve el perfil que prepara todas las bebidas a velocidad normal.
+     * @return
+     */
+    public static PerfilMaquina generalista(){
+        EnumMap<TipoBebida, Double> todas = new EnumMap<>(TipoBebida.class);
+        for(TipoBebida bebida : TipoBebida.values()){
+            todas.put(bebida, 1.0);
+        }
+        return new PerfilMaquina(todas);
+    }
+
+    /**
+     * Crea un perfil a partir del texto de configuracin, por ejemplo CAFE:1.5,TE:1.0
+     * @param texto
+     * @return
+     */
+    public static PerfilMaquina desdeTexto(String texto){
+        EnumMap<TipoBebida, Double> velocidades = new EnumMap<>(TipoBebida.class);
+        //se separan las bebidas por comas
+        for(String parte : texto.split(",")){
+            if(parte.isBlank()){
+                continue;
+            }
+            //se separa la bebida de su velocidad, si no se indica se usa la velocidad normal
+            String[] campos = parte.trim().split(":");
+            TipoBebida bebida = TipoBebida.valueOf(campos[0].trim());
+            double velocidad = campos.length > 1 ? Double.parseDouble(campos[1].trim()) : 1.0;
+            velocidades.put(bebida, velocidad);
+        }
+        return new PerfilMaquina(velocidades);
+    }
+
+    /**
+     * Devuelve si la mquina puede preparar la bebida.
+     * @param bebida
+     * @return
+     */
+    public boolean puedePreparar(TipoBebida bebida){
+        return velocidades.containsKey(bebida);
+    }
+
+    /**
+     * Devuelve el tiempo en milisegundos que tarda la mquina en preparar la bebida.
+     * @param bebida
+     * @return
+     */
+    public long tiempoPreparacion(TipoBebida bebida){
+        Double velocidad = velocidades.get(bebida);
+        if(velocidad == null){
+            throw new IllegalArgumentException("La mquina no puede preparar " + bebida);
+        }
+        return Math.round(bebida.getTiempoPreparacion() / velocidad);
+    }
+
+    /**
+     * Devuelve el tiempo en milisegundos que tarda la mquina en preparar un lote
+     * de bebidas iguales: el tiempo de una bebida ms el incremento por cada
+     * bebida adicional.
+     * @param bebida
+     * @param cantidad
+     * @param incremento
+     * @return
+     */
+    public long tiempoLote(TipoBebida bebida, int cantidad, long incremento){
+        return tiempoPreparacion(bebida) + (cantidad - 1) * incremento;
+    }
+
+    /**
+     * Devuelve el perfil en el mismo formato que el fichero de configuracin.
+     * @return
+     */
+    @Override
+    public String toString(){
+        StringBuilder texto = new StringBuilder();
+        for(Map.Entry<TipoBebida, Double> entrada : velocidades.entrySet()){
+            if(texto.length() > 0){
+                texto.append(',');
+            }
+            texto.append(entrada.getKey()).append(':').append(entrada.getValue());
+        }
+        return texto.toString();
+    }
+}
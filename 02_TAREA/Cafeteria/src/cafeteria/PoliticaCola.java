@@ -0,0 +1,69 @@
+/**
+ * Clase PoliticaCola
+ *
+ * Enumeracin con las polticas de ordenacin que se pueden utilizar en la cola
+ * de clientes de la cafetera.
+ *
+ * Se definen tres polticas:
+ * 1-FIFO: los clientes se atienden por orden de llegada (comportamiento original).
+ * 2-MAS_CORTO_PRIMERO: se atiende primero el pedido con menor tiempo de preparacin,
+ *   as un t no tiene que esperar detrs de un chocolate caliente.
+ * 3-PLAZO_MAS_CERCANO: se atiende primero el pedido cuyo plazo (llegada ms espera
+ *   mxima de la bebida) vence antes.
+ *
+ * En caso de empate se respeta el orden de llegada usando el id del cliente.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+
+public enum PoliticaCola {
+    //constante 1 - por orden de llegada
+    FIFO(null),
+    //constante 2 - primero el pedido ms corto
+    MAS_CORTO_PRIMERO(Comparator.comparingInt((Cliente c) -> c.getPedido().getTiempoPreparacion())
+            .thenComparingInt(Cliente::getId)),
+    //constante 3 - primero el plazo ms cercano
+    PLAZO_MAS_CERCANO(Comparator.comparingLong(Cliente::getPlazo)
+            .thenComparingInt(Cliente::getId));
+
+    //comparador que ordena la cola, null para el orden de llegada.
+    private final Comparator<Cliente> orden;
+
+    /**
+     * Constructor de la poltica
+     * @param orden
+     */
+    PoliticaCola(Comparator<Cliente> orden){
+        this.orden = orden;
+    }
+
+    /**
+     * Devuelve el comparador de la poltica, null si es por orden de llegada.
+     * @return
+     */
+    public Comparator<Cliente> getOrden(){
+        return orden;
+    }
+
+    /**
+     * Crea la cola que corresponde a la poltica con la capacidad indicada.
+     * Las colas con prioridad no tienen lmite, la capacidad la controla ColaPedidos.
+     * @param capacidad
+     * @return
+     */
+    public BlockingQueue<Cliente> crearCola(int capacidad){
+        //si no hay comparador se mantiene la cola original
+        if(orden == null){
+            return new ArrayBlockingQueue<>(capacidad);
+        }
+        return new PriorityBlockingQueue<>(capacidad, orden);
+    }
+}
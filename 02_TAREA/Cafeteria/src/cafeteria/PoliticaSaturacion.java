@@ -0,0 +1,22 @@
+/**
+ * Clase PoliticaSaturacion
+ *
+ * Enumeracin con lo que hace el generador de clientes cuando la cola de la
+ * cafetera est llena.
+ *
+ * 1-BLOQUEAR: el generador espera hasta que haya hueco (comportamiento original).
+ * 2-ESPERA_ACOTADA: el generador espera como mucho el tiempo configurado y, si no
+ *   hay hueco, el cliente se va.
+ * 3-DESCARTAR: si la cola est llena el cliente se va sin esperar.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+public enum PoliticaSaturacion {
+    BLOQUEAR,
+    ESPERA_ACOTADA,
+    DESCARTAR
+}
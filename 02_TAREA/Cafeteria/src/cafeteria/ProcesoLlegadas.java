@@ -0,0 +1,54 @@
+/**
+ * Clase ProcesoLlegadas
+ *
+ * Enumeracin con los modelos de llegada de clientes que puede utilizar el
+ * generador de clientes.
+ *
+ * Se definen tres procesos, todos con la misma tasa media de llegadas:
+ * 1-CONSTANTE: los clientes llegan separados siempre por el mismo tiempo.
+ * 2-POISSON: el tiempo entre llegadas sigue una distribucin exponencial, que es
+ *   el modelo habitual de clientes independientes.
+ * 3-RAFAGAS: los clientes llegan en grupos del tamao indicado a la vez, y entre
+ *   grupo y grupo se deja el tiempo necesario para mantener la tasa media.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.Random;
+
+public enum ProcesoLlegadas {
+    CONSTANTE,
+    POISSON,
+    RAFAGAS;
+
+    /**
+     * Devuelve los nanosegundos que pasan desde la llegada anterior hasta la
+     * llegada nmero indice.
+     * @param tasa clientes por segundo
+     * @param tamanoRafaga clientes de cada rfaga
+     * @param indice nmero de la llegada, empezando en 0
+     * @param random generador de nmeros aleatorios
+     * @return
+     */
+    public long intervalo(double tasa, int tamanoRafaga, long indice, Random random){
+        //tiempo medio entre llegadas en nanosegundos
+        double media = 1_000_000_000.0 / tasa;
+        switch(this){
+            case POISSON ->{
+                //distribucin exponencial con la media indicada
+                return Math.round(-Math.log(1.0 - random.nextDouble()) * media);
+            }
+            case RAFAGAS ->{
+                //solo la primera llegada de cada rfaga espera
+                int tamano = Math.max(1, tamanoRafaga);
+                return indice % tamano == 0 ? Math.round(media * tamano) : 0;
+            }
+            default ->{
+                return Math.round(media);
+            }
+        }
+    }
+}
@@ -15,6 +15,20 @@
  * - Mostrar el resgitro completo.
  * - Escrbir en un fichero los registros para consultas posteriores.
  * 
+ * Los registros se guardan en memoria en un BufferCircular de capacidad fija
+ * (registro.capacidad), cuando se llena se sobrescriben los ms antiguos, as la
+ * memoria no crece con la duracin del turno. Con registro.volcado (activo por
+ * defecto) cada mquina escribe adems todos sus registros en su propio fichero
+ * (maquina_<id>.log) para conservar el historial completo. Sin volcado, de cada
+ * mquina solo se conservan los ltimos registros que caben en el buffer.
+ * 
+ * Los registros de cada pedido (asignacin, inicio y fin) no pasan por el Logger
+ * compartido, cuyo FileHandler est sincronizado y hara que todas las mquinas
+ * se esperasen entre ellas en cada pedido. Solo se guardan en el buffer y en el
+ * fichero propio de la mquina, y el buffer se aade a logs_cafeteria.txt al
+ * terminar el turno (guardarRegArchivo). Los eventos del turno y los errores s
+ * se escriben en el Logger en el momento.
+ * 
  * @author dmiaper (Digenes Miaja Prez)
  * fecha: 21/12/2024
  * versin: 1.0
@@ -22,13 +36,11 @@
 
 package cafeteria;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.*;
 
 public class Registrologs {
@@ -38,21 +50,58 @@ public class Registrologs {
      * Se declara el format de fecha que se va utilizar en los registros, ejemplo:
      * viernes, 27 de diciembre de 2024, 06:02:58 p.m.
      */
-    DateTimeFormatter formato = DateTimeFormatter.ofPattern("EEEE, dd 'de' MMMM 'de' yyyy, hh:mm:ss a");
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("EEEE, dd 'de' MMMM 'de' yyyy, hh:mm:ss a");
+    /**
+     * Reloj compartido por todas las mquinas, guarda el segundo ya formateado
+     * para no tener que formatear la fecha en cada mensaje.
+     */
+    private static final RelojRegistro reloj = new RelojRegistro(FORMATO_FECHA);
+
+    //carpeta donde se guardan los ficheros de registro
+    private static final String CARPETA = "src"+File.separator+"cafeteria_logs";
 
     //Se declara un Logger para capturar y manejar los registros
     private static Logger log;
+    //capacidad del buffer y volcado a fichero de cada mquina, se asignan con configurar()
+    private static int capacidad = 1000;
+    private static boolean volcado = true;
     /**
-     * Se declara una lista para guardar y poder mostrar los registros ms al 
-     * final de la ejecucin del programa.
+     * Se declara un buffer circular para guardar y poder mostrar los ltimos
+     * registros al final de la ejecucin del programa.
      */
-    private List<String> registros;
+    private final BufferCircular<String> registros;
+    //fichero propio de la mquina cuando el volcado est activo
+    private BufferedWriter segmento;
 
     // Constructor del registro.
     public Registrologs() {
-        String ruta = "src"+File.separator+"cafeteria_logs"+File.separator+"logs_cafeteria.txt";
-        //se declara una lista para almacenar los registros.
-        this.registros = new ArrayList<>();
+        //se declara un buffer para almacenar los registros.
+        this.registros = new BufferCircular<>(capacidad);
+        //se configura el logger la primera vez que se crea un registro.
+        configurarLogger();
+    }
+
+    /**
+     * Asigna la capacidad del buffer de registros y si cada mquina vuelca sus
+     * registros a su propio fichero. Se debe llamar antes de crear las mquinas.
+     * @param capacidadRegistro
+     * @param volcadoRegistro
+     */
+    public static void configurar(int capacidadRegistro, boolean volcadoRegistro){
+        capacidad = capacidadRegistro;
+        volcado = volcadoRegistro;
+    }
+
+    /**
+     * Configura el logger compartido una sola vez, si cada registro aadiera su
+     * FileHandler cada mensaje se escribira en el fichero una vez por mquina.
+     */
+    private static synchronized void configurarLogger() {
+        //si ya est configurado no se hace nada
+        if(log != null){
+            return;
+        }
+        String ruta = CARPETA+File.separator+"logs_cafeteria.txt";
         //se declara un logger parqa escribir los mensajes de registro que se generen.
         log = Logger.getLogger(Registrologs.class.getName());
 
@@ -95,15 +144,6 @@ public class Registrologs {
         }
     }
 
-    /**
-     * Devuelve la fecha y hora actuales a ser llamada.
-     * @return 
-     */
-    public LocalDateTime fechaActual() {
-        // Se devuelve la fecha y hora.
-        return LocalDateTime.now();
-    }
-
     
     /**
      * Funcin para registrar el inicio del turn, se recibe como parmetro 
@@ -112,18 +152,22 @@ public class Registrologs {
      * @param idMaquina 
      */
     public void regInicioTurno(int idMaquina) {
+        //si el volcado est activo se abre el fichero propio de la mquina
+        if(volcado && segmento == null){
+            abrirSegmento(idMaquina);
+        }
         /**
          * Mensaje que se almacenar para el incio de turno de la mquina.
          * Se obtiene la fecha actual, y el id de la mquina.
          */
-        String mensaje = String.format("[%s] - Inicio del turno de mquina id# %s", fechaActual().format(formato), idMaquina);
+        String mensaje = String.format("[%s] - Inicio del turno de mquina id# %s", reloj.marca(), idMaquina);
         //se almacena el mensaje en el array.
-        registros.add(mensaje);
+        guardar(mensaje);
         //se muestra el mensaje 
         log.info(mensaje);
         //Mensaje separacin
         mensaje = "----------------------------------------------------------";
-        registros.add(mensaje);
+        guardar(mensaje);
         //se muestra el mensaje
         log.info(mensaje);
     }
@@ -138,11 +182,9 @@ public class Registrologs {
         /**
          * Mensaje que obtiene la fecha, el id de cliente y el de la mquina
          */
-        String mensaje = String.format("[%s] - Cliente id# %s asignado a la mquina %s", fechaActual().format(formato), cliente.getId(), id);
-        //se registra el mensaje
-        registros.add(mensaje);
-        //se muestra el mensaje
-        log.info(mensaje);
+        String mensaje = String.format("[%s] - Cliente id# %s asignado a la mquina %s", reloj.marca(), cliente.getId(), id);
+        //se registra el mensaje, sin pasar por el Logger compartido
+        guardar(mensaje);
     }
 
     /**
@@ -151,27 +193,12 @@ public class Registrologs {
      * @param cliente 
      */
     public void regInicioPedido(Cliente cliente) {
-        //variable que se instancia en null, para almacenar el tipo de bebida.
-        String bebida = null;
-        /**
-         * Estructura de control switch para asignar el valor correspondiente 
-         * segun el pedido que haga el cliente.
-         */
-        switch (cliente.getPedido()) {
-            case CAFE -> bebida = "caf";
-            case TE -> bebida = "t";
-            case CHOCOLATE_CALIENTE -> bebida = "chocolate caliente";
-        }
-
-        //Condicin para evitar que registre en caso de que no haya bebida.
-        if (bebida != null) {
-            //Mensaje que registra la fecha actual y el pedido que se va realizar
-            String mensaje = String.format("[%s] - Se ha iniciado la preparacin del pedido %s.", fechaActual().format(formato), bebida);
-            //se almacena el mensaje
-            registros.add(mensaje);
-            //se muestra el mensaje
-            log.info(mensaje);
-        }
+        //se obtiene el nombre ya preparado de la bebida que ha pedido el cliente.
+        String bebida = cliente.getPedido().getNombre();
+        //Mensaje que registra la fecha actual y el pedido que se va realizar
+        String mensaje = String.format("[%s] - Se ha iniciado la preparacin del pedido %s.", reloj.marca(), bebida);
+        //se almacena el mensaje, sin pasar por el Logger compartido
+        guardar(mensaje);
     }
     
     /**
@@ -180,67 +207,58 @@ public class Registrologs {
      * @param cliente 
      */
     public void regFinPedido(Cliente cliente) {
-        //variable que se instancia en null, para almacenar el tipo de bebida.
-        String bebida = null;
-        /**
-         * Estructura de control switch para asignar el valor correspondiente 
-         * segun el pedido que haga el cliente.
-         */
-        switch (cliente.getPedido()) {
-            case CAFE -> bebida = "caf";
-            case TE -> bebida = "t";
-            case CHOCOLATE_CALIENTE -> bebida = "chocolate caliente";
-        }
-        //Condicin para evitar que registre en caso de que no haya bebida.
-        if(bebida!=null){
-            //Mensaje que registra la fecha actual y el pedido que se a finalizado
-            String mensaje = String.format("[%s] - Se ha finalizado la preparacin del pedido %s.", fechaActual().format(formato), bebida);
-            //se registra el mensaje
-            registros.add(mensaje);
-            //se muestra el mensaje
-            log.info(mensaje);
-        }
+        //se obtiene el nombre ya preparado de la bebida que ha pedido el cliente.
+        String bebida = cliente.getPedido().getNombre();
+        //Mensaje que registra la fecha actual y el pedido que se a finalizado
+        String mensaje = String.format("[%s] - Se ha finalizado la preparacin del pedido %s.", reloj.marca(), bebida);
+        //se registra el mensaje, sin pasar por el Logger compartido
+        guardar(mensaje);
     }
 
     /**
      * Fucnin para finalizar el turno, se ejecuta al finalizar la aplicacin.
      * Se Reciben como parmetro los cafs, ts y chocolates calientes, que ha
-     * realizado la mquina.
+     * realizado la mquina, y el resumen de los lotes preparados.
      * @param cafes
      * @param tes
      * @param chocos 
+     * @param lotes 
      */
-    public void regFinTurno(String cafes, String tes, String chocos) {
+    public void regFinTurno(String cafes, String tes, String chocos, String lotes) {
         //Mensaje decorativo
         String mensaje = "----------------------------------------------------------";
         //se registra el mensaje
-        registros.add(mensaje);
+        guardar(mensaje);
         //se muestra el mensaje
         log.info(mensaje);
         
         //Mensaje que almacen la fecha en la que se finaliza el turno.
-        mensaje = String.format("[%s] - Se ha finalizado el turno.", fechaActual().format(formato));
+        mensaje = String.format("[%s] - Se ha finalizado el turno.", reloj.marca());
         //Se registra el mensaje
-        registros.add(mensaje);
+        guardar(mensaje);
         //se muestra el mensaje
         log.info(mensaje);
         //se registran el string con el mensaje de las bebidas realizadas.
-        registros.add(cafes);
-        registros.add(tes);
-        registros.add(chocos);
+        guardar(cafes);
+        guardar(tes);
+        guardar(chocos);
+        guardar(lotes);
         //se muestran los mensajes recibidos.
         log.info(cafes);
         log.info(tes);
         log.info(chocos);
+        log.info(lotes);
         
         //se mensaje decorativo
         mensaje = "----------------------------------------------------------";
         //se registra el mensaje
-        registros.add(mensaje);
+        guardar(mensaje);
         //se muestra el mensaje
         log.info(mensaje);
         //se llama a la funcin para almacenar los datos registrados el un archivo.
         guardarRegArchivo();
+        //se cierra el fichero propio de la mquina
+        cerrarSegmento();
     }
 
     /**
@@ -251,21 +269,77 @@ public class Registrologs {
      */
     public void regError(int id, String men) {
         //Mensaje que almacena la fecha en la que se ha producido el error, el id de la mquina y el mensaje del error.
-        String mensaje = String.format("[%s] - Mquina id# [%s] - Se ha producido un ERROR: [%s]", fechaActual().format(formato), id, men);
+        String mensaje = String.format("[%s] - Mquina id# [%s] - Se ha producido un ERROR: [%s]", reloj.marca(), id, men);
         //se registra el mensaje
-        registros.add(mensaje);
+        guardar(mensaje);
         //se muestre con advertencia el error-
         log.severe(mensaje);
     }
 
     /**
-     * Funcin para mostrar los registros que se han almacenado en el Array
+     * Almacena el mensaje en el buffer y, si el volcado est activo, en el
+     * fichero de la mquina.
+     * @param mensaje 
+     */
+    private void guardar(String mensaje) {
+        registros.add(mensaje);
+        if(segmento != null){
+            try {
+                segmento.write(mensaje);
+                segmento.newLine();
+            } catch (IOException e) {
+                //si falla la escritura se deja de volcar y se sigue en memoria
+                System.err.println("Error al volcar el registro: " + e.getMessage());
+                cerrarSegmento();
+            }
+        }
+    }
+
+    /**
+     * Abre en modo aadir el fichero de registros de la mquina.
+     * @param idMaquina 
+     */
+    private void abrirSegmento(int idMaquina) {
+        String ruta = CARPETA+File.separator+"maquina_"+idMaquina+".log";
+        try {
+            segmento = new BufferedWriter(new FileWriter(ruta, true));
+        } catch (IOException e) {
+            //Controlamos el error, los registros solo se guardan en memoria
+            System.err.println("Error al abrir el fichero de registros de la mquina: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cierra el fichero de registros de la mquina si est abierto.
+     */
+    private void cerrarSegmento() {
+        if(segmento == null){
+            return;
+        }
+        try {
+            segmento.close();
+        } catch (IOException e) {
+            //Controlamos el error
+            System.err.println("Error al cerrar el fichero de registros de la mquina: " + e.getMessage());
+        }
+        segmento = null;
+    }
+
+    /**
+     * Funcin para mostrar los registros que se han almacenado en el buffer, se
+     * escriben por la consola asncrona para no desordenarlos con los mensajes
+     * de las otras mquinas.
      */
     public void mostarRegistro() {
-        //bucle for para recorre el Array de registros
-        for (String registro : registros) {
+        //si el buffer se ha llenado se avisa de los registros que ya no estn
+        if (registros.getSobrescritos() > 0) {
+            ConsolaAsincrona.linea(String.format("(Se han descartado %d registros antiguos, solo se muestran los %d ltimos)",
+                    registros.getSobrescritos(), registros.size()));
+        }
+        //bucle for para recorre el buffer de registros
+        for (String registro : registros.elementos()) {
             //se muestra el mensaje que contiene el registro
-            System.out.println(registro);
+            ConsolaAsincrona.linea(registro);
         }
     }
 
@@ -276,11 +350,11 @@ public class Registrologs {
      */
     public void guardarRegArchivo() {
         //Ruta del fichero.
-        String rutaArchivo = "src"+File.separator+"cafeteria_logs"+File.separator+"logs_cafeteria.txt";
+        String rutaArchivo = CARPETA+File.separator+"logs_cafeteria.txt";
         //se controla el cierre automtico del ficehro
         try (FileWriter writer = new FileWriter(rutaArchivo, true)) {
-            //Bucle para obtener los registros dentro del array.
-            for (String registro : registros) {
+            //Bucle para obtener los registros dentro del buffer.
+            for (String registro : registros.elementos()) {
                 //se escribe el registro con un salto de linea
                 writer.write(registro + System.lineSeparator());
             }
@@ -0,0 +1,46 @@
+/**
+ * Clase SemaforoAjustable
+ *
+ * Semforo de las mquinas cuyo nmero de permisos se puede reducir. Semaphore
+ * permite aadir permisos con release(), pero el mtodo para quitarlos
+ * (reducePermits) es protegido, por eso se extiende la clase.
+ *
+ * Se utiliza cuando el ControladorMaquinas aade o retira mquinas mientras la
+ * cafetera est trabajando.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.concurrent.Semaphore;
+
+public class SemaforoAjustable extends Semaphore {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor del semforo con los permisos iniciales.
+     * @param permisos
+     */
+    public SemaforoAjustable(int permisos){
+        super(permisos);
+    }
+
+    /**
+     * Aade permisos al semforo.
+     * @param permisos
+     */
+    public void aumentar(int permisos){
+        release(permisos);
+    }
+
+    /**
+     * Quita permisos al semforo, sin esperar a que estn libres.
+     * @param permisos
+     */
+    public void reducir(int permisos){
+        reducePermits(permisos);
+    }
+}
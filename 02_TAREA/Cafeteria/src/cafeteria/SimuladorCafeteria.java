@@ -0,0 +1,363 @@
+/**
+ * Clase SimuladorCafeteria
+ *
+ * Simulacin de eventos discretos de la cafetera para planificar la capacidad,
+ * por ejemplo para saber cuntas mquinas hacen falta para atender 500 clientes
+ * por minuto.
+ *
+ * La aplicacin normal duerme de verdad el tiempo de preparacin de cada bebida,
+ * por lo que simular una hora de trabajo tarda una hora. El simulador utiliza un
+ * reloj virtual y una cola de eventos ordenada por tiempo: en lugar de esperar,
+ * salta directamente al siguiente evento (llegada de un cliente o fin de una
+ * preparacin). As se pueden simular horas de trabajo en milisegundos.
+ *
+ * Se reutilizan los mismos modelos que la aplicacin: Cliente, TipoBebida, el
+ * PerfilMaquina de cada mquina (bebidas, velocidades y lotes), la PoliticaCola,
+ * el ProcesoLlegadas y la configuracin de cafeteria.properties.
+ *
+ * Los clientes esperan en una nica cola ordenada por la poltica, como la
+ * ColaPedidos de la aplicacin. Cada vez que llega un cliente o termina un lote
+ * se reparten los pedidos igual que el Despachador: se elige el primer cliente,
+ * segn la poltica, que puede preparar alguna mquina libre, y se asigna a la
+ * mquina libre que lo terminara antes. Los pedidos que no puede preparar
+ * ninguna mquina se rechazan al llegar. Para encontrar rpido el primer cliente
+ * de una bebida, la cola se guarda como una subcola por bebida con el orden de
+ * la poltica, y el lote de una mquina se forma con los primeros clientes de la
+ * subcola de su bebida.
+ *
+ * Si la cola est llena el cliente se va, salvo con la poltica BLOQUEAR, con la
+ * que el cliente espera fuera de la cola (la cola crece sin lmite).
+ *
+ * Al terminar se muestra la utilizacin de cada mquina y la distribucin de la
+ * espera y de la latencia total de los clientes.
+ *
+ * Uso: SimuladorCafeteria [clientes por minuto] [nmero de mquinas] [horas]
+ * Los parmetros que no se indiquen se obtienen de la configuracin.
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class SimuladorCafeteria {
+
+    /**
+     * Clase interna con un evento de la simulacin. Si la mquina es null el
+     * evento es la llegada de un cliente, si no, el fin de un lote.
+     */
+    private static final class Evento implements Comparable<Evento> {
+        private final long tiempo;
+        private final long secuencia;
+        private final EstadoMaquina maquina;
+        private final List<Cliente> lote;
+
+        private Evento(long tiempo, long secuencia, EstadoMaquina maquina, List<Cliente> lote){
+            this.tiempo = tiempo;
+            this.secuencia = secuencia;
+            this.maquina = maquina;
+            this.lote = lote;
+        }
+
+        @Override
+        public int compareTo(Evento otro){
+            int orden = Long.compare(tiempo, otro.tiempo);
+            return orden != 0 ? orden : Long.compare(secuencia, otro.secuencia);
+        }
+    }
+
+    /**
+     * Clase interna con el estado de una mquina simulada.
+     */
+    private static final class EstadoMaquina {
+        private final int id;
+        private final PerfilMaquina perfil;
+        private boolean ocupada;
+        private long tiempoOcupada; //nanosegundos trabajando
+        private long bebidas;
+        private long lotes;
+
+        private EstadoMaquina(int id, PerfilMaquina perfil){
+            this.id = id;
+            this.perfil = perfil;
+        }
+    }
+
+    //Atributos de la simulacin
+    private final PriorityQueue<Evento> eventos = new PriorityQueue<>();
+    private final List<EstadoMaquina> maquinas = new ArrayList<>();
+    //cola de clientes, una subcola por bebida con el orden de la poltica
+    private final Map<TipoBebida, Queue<Cliente>> cola = new EnumMap<>(TipoBebida.class);
+    //orden de la poltica entre las cabezas de las subcolas
+    private final Comparator<Cliente> orden;
+    private int enCola = 0;
+    private final int capacidad;
+    private final boolean limitarCola;
+    private final int tamanoLote;
+    private final long incrementoLote;
+    private final HistogramaLatencia espera = new HistogramaLatencia();
+    private final HistogramaLatencia latencia = new HistogramaLatencia();
+    private long reloj = 0; //reloj virtual en nanosegundos
+    private long secuencia = 0;
+    private long llegados = 0;
+    private long descartados = 0;
+    private long rechazados = 0;
+    //Atributos de las llegadas
+    private final Random random = new Random();
+    private ProcesoLlegadas proceso;
+    private double tasa;
+    private int tamanoRafaga;
+    private long finLlegadas;
+    private long indiceLlegada = 0;
+
+    /**
+     * Constructor del simulador con la configuracin y el nmero de mquinas.
+     * @param config
+     * @param numMaquinas
+     */
+    public SimuladorCafeteria(ConfigCafeteria config, int numMaquinas){
+        PoliticaCola politica = config.getPolitica();
+        for(TipoBebida bebida : TipoBebida.values()){
+            cola.put(bebida, politica.getOrden() == null ? new ArrayDeque<>() : new PriorityQueue<>(politica.getOrden()));
+        }
+        //por orden de llegada se comparan el instante de llegada y el id
+        this.orden = politica.getOrden() != null ? politica.getOrden()
+                : Comparator.comparingLong(Cliente::getLlegada).thenComparingInt(Cliente::getId);
+        this.capacidad = config.getCapacidadCola();
+        this.limitarCola = config.getSaturacion() != PoliticaSaturacion.BLOQUEAR;
+        this.tamanoLote = Math.max(1, config.getTamanoLote());
+        this.incrementoLote = config.getIncrementoLote();
+        for(int i = 0; i < numMaquinas; i++){
+            maquinas.add(new EstadoMaquina(i + 1, config.getPerfil(i)));
+        }
+    }
+
+    /**
+     * Configura las llegadas de clientes durante la duracin indicada y programa
+     * la primera. Cada llegada programa la siguiente, as la cola de eventos no
+     * crece con la duracin de la simulacin.
+     * @param proceso
+     * @param tasaPorSegundo
+     * @param tamanoRafaga
+     * @param duracion nanosegundos
+     */
+    public void programarLlegadas(ProcesoLlegadas proceso, double tasaPorSegundo, int tamanoRafaga, long duracion){
+        this.proceso = proceso;
+        this.tasa = tasaPorSegundo;
+        this.tamanoRafaga = tamanoRafaga;
+        this.finLlegadas = duracion;
+        programarSiguienteLlegada();
+    }
+
+    /**
+     * Programa la siguiente llegada si no se ha superado la duracin.
+     */
+    private void programarSiguienteLlegada(){
+        long instante = reloj + proceso.intervalo(tasa, tamanoRafaga, indiceLlegada++, random);
+        if(instante < finLlegadas){
+            eventos.add(new Evento(instante, secuencia++, null, null));
+        }
+    }
+
+    /**
+     * Ejecuta la simulacin hasta que no quedan eventos.
+     */
+    public void ejecutar(){
+        Evento evento;
+        while((evento = eventos.poll()) != null){
+            //se avanza el reloj virtual hasta el evento
+            reloj = evento.tiempo;
+            if(evento.maquina == null){
+                programarSiguienteLlegada();
+                llegada(new Cliente(reloj));
+            }else{
+                finLote(evento.maquina, evento.lote);
+            }
+        }
+    }
+
+    /**
+     * Procesa la llegada de un cliente.
+     * @param cliente
+     */
+    private void llegada(Cliente cliente){
+        llegados++;
+        //el pedido que no puede preparar ninguna mquina se rechaza, como en el despachador
+        if(!puedePreparar(cliente.getPedido())){
+            rechazados++;
+            return;
+        }
+        //se descarta el cliente si la cola est llena
+        if(limitarCola && enCola >= capacidad){
+            descartados++;
+            return;
+        }
+        cola.get(cliente.getPedido()).add(cliente);
+        enCola++;
+        repartir();
+    }
+
+    /**
+     * Devuelve si alguna mquina puede preparar la bebida.
+     * @param bebida
+     * @return
+     */
+    private boolean puedePreparar(TipoBebida bebida){
+        for(EstadoMaquina maquina : maquinas){
+            if(maquina.perfil.puedePreparar(bebida)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reparte los pedidos como el despachador: mientras haya mquinas libres se
+     * elige el primer cliente, segn la poltica, que puede preparar alguna de
+     * ellas y se asigna a la mquina libre que lo terminara antes.
+     */
+    private void repartir(){
+        while(true){
+            Cliente elegido = null;
+            EstadoMaquina maquinaElegida = null;
+            //el primer cliente de cada bebida es la cabeza de su subcola
+            for(Queue<Cliente> subcola : cola.values()){
+                Cliente cabeza = subcola.peek();
+                if(cabeza == null || (elegido != null && orden.compare(cabeza, elegido) >= 0)){
+                    continue;
+                }
+                EstadoMaquina maquina = elegirMaquina(cabeza.getPedido());
+                if(maquina != null){
+                    elegido = cabeza;
+                    maquinaElegida = maquina;
+                }
+            }
+            if(elegido == null){
+                return;
+            }
+            iniciar(maquinaElegida, elegido.getPedido());
+        }
+    }
+
+    /**
+     * Devuelve la mquina libre que terminara antes una bebida, o null si
+     * ninguna mquina libre la puede preparar.
+     * @param bebida
+     * @return
+     */
+    private EstadoMaquina elegirMaquina(TipoBebida bebida){
+        EstadoMaquina elegida = null;
+        long mejor = Long.MAX_VALUE;
+        for(EstadoMaquina maquina : maquinas){
+            if(maquina.ocupada || !maquina.perfil.puedePreparar(bebida)){
+                continue;
+            }
+            long tiempo = duracion(maquina, bebida, 1);
+            if(tiempo < mejor){
+                mejor = tiempo;
+                elegida = maquina;
+            }
+        }
+        return elegida;
+    }
+
+    /**
+     * Empieza en la mquina un lote con los primeros clientes, segn la
+     * poltica, que han pedido la bebida.
+     * @param maquina
+     * @param bebida
+     */
+    private void iniciar(EstadoMaquina maquina, TipoBebida bebida){
+        Queue<Cliente> subcola = cola.get(bebida);
+        List<Cliente> lote = new ArrayList<>();
+        while(lote.size() < tamanoLote && !subcola.isEmpty()){
+            lote.add(subcola.poll());
+        }
+        enCola -= lote.size();
+        for(Cliente cliente : lote){
+            espera.registrar(reloj - cliente.getLlegada());
+        }
+        long tiempo = duracion(maquina, bebida, lote.size());
+        maquina.ocupada = true;
+        maquina.tiempoOcupada += tiempo;
+        eventos.add(new Evento(reloj + tiempo, secuencia++, maquina, lote));
+    }
+
+    /**
+     * Procesa el fin de un lote.
+     * @param maquina
+     * @param lote
+     */
+    private void finLote(EstadoMaquina maquina, List<Cliente> lote){
+        for(Cliente cliente : lote){
+            latencia.registrar(reloj - cliente.getLlegada());
+        }
+        maquina.bebidas += lote.size();
+        maquina.lotes++;
+        maquina.ocupada = false;
+        repartir();
+    }
+
+    /**
+     * Devuelve en nanosegundos lo que tarda la mquina en preparar el lote.
+     * @param maquina
+     * @param bebida
+     * @param cantidad
+     * @return
+     */
+    private long duracion(EstadoMaquina maquina, TipoBebida bebida, int cantidad){
+        return TimeUnit.MILLISECONDS.toNanos(maquina.perfil.tiempoLote(bebida, cantidad, incrementoLote));
+    }
+
+    /**
+     * Muestra el resultado de la simulacin.
+     */
+    public void mostrarResultados(){
+        double horas = reloj / (double) TimeUnit.HOURS.toNanos(1);
+        System.out.println("----------------------------------------------------------");
+        System.out.println(String.format("Tiempo simulado: %.2f h. Clientes: %d llegados, %d atendidos, %d descartados, %d rechazados.",
+                horas, llegados, latencia.getCuenta(), descartados, rechazados));
+        for(EstadoMaquina maquina : maquinas){
+            double utilizacion = reloj == 0 ? 0 : 100.0 * maquina.tiempoOcupada / reloj;
+            System.out.println(String.format("Mquina %d (%s): utilizacin %.1f%%, %d bebidas en %d lotes.",
+                    maquina.id, maquina.perfil, utilizacion, maquina.bebidas, maquina.lotes));
+        }
+        System.out.println("Espera:   " + espera.resumen());
+        System.out.println("Latencia: " + latencia.resumen());
+        System.out.println("----------------------------------------------------------");
+    }
+
+    /**
+     * Funcin main del simulador.
+     * @param args clientes por minuto, nmero de mquinas y horas (opcionales)
+     */
+    public static void main(String[] args){
+        ConfigCafeteria config = new ConfigCafeteria();
+        //se obtienen los parmetros o los valores de la configuracin
+        double porMinuto = args.length > 0 ? Double.parseDouble(args[0]) : config.getTasaLlegadas() * 60;
+        int numMaquinas = args.length > 1 ? Integer.parseInt(args[1]) : config.getNumMaquinas();
+        double horas = args.length > 2 ? Double.parseDouble(args[2]) : config.getDuracionGenerador() / 3600.0;
+
+        SimuladorCafeteria simulador = new SimuladorCafeteria(config, numMaquinas);
+        simulador.programarLlegadas(config.getProcesoLlegadas(), porMinuto / 60.0, config.getTamanoRafaga(),
+                Math.round(horas * TimeUnit.HOURS.toNanos(1)));
+        long inicio = System.nanoTime();
+        simulador.ejecutar();
+        long real = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+
+        System.out.println(String.format("Simulacin de %.0f clientes/min con %d mquinas (%s), calculada en %d ms.",
+                porMinuto, numMaquinas, config.getPolitica(), real));
+        simulador.mostrarResultados();
+    }
+}
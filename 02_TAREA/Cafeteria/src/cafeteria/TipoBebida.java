@@ -11,6 +11,13 @@
  * 2-TE(1500) le agregamos como parmetro el tiempo de preparacin de la bebida.
  * 3-CHOCOLATE_CALIENTE (2500) le agregamos como parmetro el tiempo de preparacin de la bebida.
  * 
+ * Cada bebida tiene adems un tiempo mximo de espera (SLA), que es el tiempo que
+ * se compromete la cafetera a servir el pedido desde que llega el cliente. Se
+ * utiliza para ordenar la cola por el plazo ms cercano.
+ * 
+ * Tambin se guardan ya construidos los textos de cada bebida que se muestran por
+ * consola y en los registros, para no construirlos con String.format en cada pedido.
+ * 
  * @author dmiaper (Digenes Miaja Prez)
  * fecha: 21/12/2024
  * versin: 1.0
@@ -20,22 +27,36 @@ package cafeteria;
 
 //Se sustituye la palabra reservada class por enum
 public enum TipoBebida {
-    //constante 1 - caf con un parmetro de 2000 milisegundos
-    CAFE(2000),
-    //constante 2 - t con un parmetro de 1500 milisegundos
-    TE(1500),
-    //constante 3 - chocolate caliente con un parmetro de 2500 milisegundos
-    CHOCOLATE_CALIENTE(2500);
+    //constante 1 - caf con un parmetro de 2000 milisegundos y 20 segundos de espera mxima
+    CAFE(2000, 20000, "caf", "Caf listo.", "caf"),
+    //constante 2 - t con un parmetro de 1500 milisegundos y 15 segundos de espera mxima
+    TE(1500, 15000, "t", "T listo.", "t"),
+    //constante 3 - chocolate caliente con un parmetro de 2500 milisegundos y 30 segundos de espera mxima
+    CHOCOLATE_CALIENTE(2500, 30000, "chocolate caliente", "Chocolate calietne listo.", "chocolate calietne");
     
     //variable para almacenar el tiempo de praracin que se mantendr durante todo sus uso el valor.
     private final int tiempoPreparacion;
+    //variable para almacenar el tiempo mximo de espera comprometido (SLA) en milisegundos.
+    private final int esperaMaxima;
+    //textos de la bebida que se construyen una sola vez.
+    private final String nombre; //nombre de la bebida en los mensajes
+    private final String mensajeListo; //mensaje de bebida lista
+    private final String finMensajeCliente; //final del mensaje del cliente atendido
     
     /**
      * Funcin construir el tiempo de la bebida
      * @param tiempoPreparacion 
+     * @param esperaMaxima 
+     * @param nombre 
+     * @param mensajeListo 
+     * @param nombreCliente nombre de la bebida en el mensaje del cliente
      */
-    TipoBebida(int tiempoPreparacion){        
+    TipoBebida(int tiempoPreparacion, int esperaMaxima, String nombre, String mensajeListo, String nombreCliente){        
         this.tiempoPreparacion = tiempoPreparacion;
+        this.esperaMaxima = esperaMaxima;
+        this.nombre = nombre;
+        this.mensajeListo = mensajeListo;
+        this.finMensajeCliente = " y me esta preparando un " + nombreCliente;
     }
     
     /**
@@ -45,4 +66,36 @@ public enum TipoBebida {
     public int getTiempoPreparacion(){
         return tiempoPreparacion;
     }    
+    
+    /**
+     * Se devuelve el tiempo mximo de espera comprometido para la bebida
+     * @return 
+     */
+    public int getEsperaMaxima(){
+        return esperaMaxima;
+    }
+    
+    /**
+     * Se devuelve el nombre de la bebida que se utiliza en los mensajes
+     * @return 
+     */
+    public String getNombre(){
+        return nombre;
+    }
+    
+    /**
+     * Se devuelve el mensaje que se muestra cuando la bebida est lista
+     * @return 
+     */
+    public String getMensajeListo(){
+        return mensajeListo;
+    }
+    
+    /**
+     * Se devuelve el final del mensaje del cliente cuando se le atiende
+     * @return 
+     */
+    public String getFinMensajeCliente(){
+        return finMensajeCliente;
+    }
 }
@@ -0,0 +1,184 @@
+/**
+ * Clase TurnoCafeteria
+ *
+ * Estado compartido de un turno de trabajo de la cafetera: la cola de clientes,
+ * las mtricas, el diario de pedidos y si todava pueden llegar clientes o se
+ * est cerrando. Las mquinas y el despachador trabajan sobre un turno, as el
+ * banco de pruebas puede ejecutar las clases de la aplicacin con un turno propio
+ * en cada prueba en lugar de repetir su lgica.
+ *
+ * La aplicacin utiliza un nico turno, el de la clase Cafeteria (getTurno()).
+ *
+ * @author dmiaper (Digenes Miaja Prez)
+ * fecha: 21/12/2024
+ * versin: 1.0
+ */
+package cafeteria;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TurnoCafeteria {
+
+    //cola de clientes del turno
+    private final ColaPedidos cola;
+    //mtricas del turno
+    private final MetricasCafeteria metricas;
+    //diario donde se anotan los pedidos, null si no est activo
+    private volatile DiarioPedidos diario;
+    //indica si todava pueden llegar clientes nuevos
+    private volatile boolean generando = false;
+    //indica que se est cerrando la aplicacin antes de terminar
+    private volatile boolean cerrando = false;
+
+    /**
+     * Constructor del turno, recibe la cola de clientes.
+     * @param cola
+     */
+    public TurnoCafeteria(ColaPedidos cola){
+        this.cola = cola;
+        this.metricas = new MetricasCafeteria(cola);
+    }
+
+    /**
+     * Funcin que devuelve el siguiente cliente.
+     * Se espera como mucho 200 ms, si no llega ningn cliente se devuelve null.
+     * @return
+     * @throws InterruptedException
+     */
+    public Cliente siguienteCliente() throws InterruptedException{
+        return cola.poll(200, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Funcin que devuelve si quedan pedidos por atender, porque hay clientes en
+     * la cola o porque todava pueden llegar clientes nuevos.
+     * @return
+     */
+    public boolean hayPedidos(){
+        return generando || !cola.isEmpty();
+    }
+
+    /**
+     * Funcin que devuelve los clientes de la cola que han pedido la misma bebida,
+     * hasta un mximo, para preparar los pedidos por lotes.
+     * @param bebida
+     * @param maximo
+     * @return
+     */
+    public List<Cliente> drenarPedidos(TipoBebida bebida, int maximo){
+        return cola.drenar(bebida, maximo);
+    }
+
+    /**
+     * Funcin para devolver a la cola el pedido de un cliente que la mquina no
+     * va a atender porque se ha retirado.
+     * @param cliente
+     * @throws InterruptedException
+     */
+    public void devolverPedido(Cliente cliente) throws InterruptedException{
+        cola.devolver(cliente);
+    }
+
+    /**
+     * Funcin para registrar la espera del cliente cuando una mquina empieza
+     * su pedido.
+     * @param cliente
+     */
+    public void registrarEspera(Cliente cliente){
+        cola.registrarEspera(cliente);
+    }
+
+    /**
+     * Funcin para registrar que una mquina empieza a preparar un lote.
+     */
+    public void inicioPreparacion(){
+        metricas.inicioPreparacion();
+    }
+
+    /**
+     * Funcin para registrar que una mquina ha terminado de preparar un lote.
+     */
+    public void finPreparacion(){
+        metricas.finPreparacion();
+    }
+
+    /**
+     * Funcin para registrar que se ha servido el pedido de un cliente.
+     * @param cliente
+     */
+    public void registrarServido(Cliente cliente){
+        metricas.registrarServido(cliente);
+        //se anota en el diario que el pedido ya est servido
+        DiarioPedidos actual = diario;
+        if(actual != null){
+            actual.fin(cliente);
+        }
+    }
+
+    /**
+     * Funcin para rechazar el pedido de un cliente que no puede preparar
+     * ninguna mquina, el cliente se va sin su bebida.
+     * @param cliente
+     */
+    public void rechazarPedido(Cliente cliente){
+        metricas.registrarRechazado();
+        //el pedido no se tiene que repetir al reiniciar
+        DiarioPedidos actual = diario;
+        if(actual != null){
+            actual.fin(cliente);
+        }
+        ConsolaAsincrona.linea("Ninguna mquina puede preparar el pedido " + cliente.getPedido()
+                + " del cliente id# " + cliente.getId() + ", se rechaza el pedido");
+    }
+
+    /**
+     * Funcin que devuelve si se est cerrando la aplicacin, en ese caso las
+     * mquinas terminan despus del pedido que estn preparando.
+     * @return
+     */
+    public boolean isCerrando(){
+        return cerrando;
+    }
+
+    /**
+     * Indica que se est cerrando la aplicacin.
+     */
+    public void cerrar(){
+        cerrando = true;
+        generando = false;
+    }
+
+    /**
+     * Indica si todava pueden llegar clientes nuevos.
+     * @param generando
+     */
+    public void setGenerando(boolean generando){
+        this.generando = generando;
+    }
+
+    /**
+     * Asigna el diario de pedidos del turno, tambin a la cola de clientes.
+     * @param diario
+     */
+    public void setDiario(DiarioPedidos diario){
+        this.diario = diario;
+        cola.setDiario(diario);
+    }
+
+    /**
+     * Devuelve la cola de clientes del turno.
+     * @return
+     */
+    public ColaPedidos getCola(){
+        return cola;
+    }
+
+    /**
+     * Devuelve las mtricas del turno.
+     * @return
+     */
+    public MetricasCafeteria getMetricas(){
+        return metricas;
+    }
+}
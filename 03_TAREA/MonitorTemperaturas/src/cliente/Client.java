@@ -10,6 +10,14 @@
  * Una vez se haya generado la temperatura aleatoria se enviará al servidor, y estará a la escucha hasta 
  * que el servidor le devuelva algún mensaje.
  * 
+ * Si en el cliente.properties se indica protocolo=BINARIO, el cliente envía la cabecera del protocolo binario
+ * con un id aleatorio y las temperaturas en tramas de tamaño fijo (servidor.ProtocoloBinario) en lugar de líneas
+ * de texto.
+ * 
+ * Si en el cliente.properties se indica tam_lote mayor que 1, el cliente simula una pasarela con ese número de
+ * sensores: cada vez genera una temperatura por sensor y las envía todas en un único mensaje, una línea con las
+ * temperaturas separadas por ';' o un lote de tramas con el protocolo binario.
+ * 
  * 
  */
 package cliente;
@@ -19,12 +27,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.util.Properties;
 import java.util.Random;
 
+import servidor.ProtocoloBinario;
+
 public class Client {
 
     /**
@@ -37,13 +49,18 @@ public class Client {
 
         final String HOST = "localhost"; // Se instancia una variable con el HOST al que se conectará el clietne
         final int PORT = configurar(); // Se instncia el PUERTO utilizando la configuración del properties.
+        final boolean BINARIO = "BINARIO".equalsIgnoreCase(leerPropiedad("protocolo", "TEXTO")); // Protocolo
+        // Número de temperaturas que se envían en cada mensaje
+        final int TAM_LOTE = Math.max(1, Math.min(ProtocoloBinario.MAX_LOTE,
+                Integer.parseInt(leerPropiedad("tam_lote", "1"))));
         Random random = new Random(); // Se instancia un método Random.
         DecimalFormat df = new DecimalFormat("#.##"); // Se instancia el formato que tendrá las temperaturas
         // Se crear el socket con los parámetros
         try (Socket socket = new Socket(HOST, PORT);
                 // Se instancian los métodos para enviar y recibir datos
                 BufferedReader serverInput = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                PrintWriter serverOutput = new PrintWriter(socket.getOutputStream(), true);) {
+                OutputStream salida = socket.getOutputStream();
+                PrintWriter serverOutput = new PrintWriter(salida, true);) {
 
             // Si esta conectado el cliente
             if (socket.isConnected()) {
@@ -67,16 +84,31 @@ public class Client {
                     }
                     // Se ejecuta el error.
                 }).start();
+                // Si se utiliza el protocolo binario se envía la cabecera con el id del sensor
+                int idSensor = random.nextInt(Integer.MAX_VALUE - ProtocoloBinario.MAX_LOTE);
+                ByteBuffer buffer = ByteBuffer
+                        .allocate(ProtocoloBinario.TAM_INICIO_LOTE + TAM_LOTE * ProtocoloBinario.TAM_TRAMA);
+                if (BINARIO) {
+                    enviarCabecera(salida, buffer, idSensor, TAM_LOTE);
+                }
+                int[] temperaturas = new int[TAM_LOTE];
                 // Bucle while para enviar los datos generados al servidor.
                 while (true) {
 
                     // Método para comprobar que el servidor sigua funcionando si se envía un valo
                     // no númerico
                     // char temperatura = (char) ('A' + random.nextInt(26));
-                    int temperatura = random.nextInt(50); // Se genera una temperatura
+                    for (int i = 0; i < TAM_LOTE; i++) {
+                        temperaturas[i] = random.nextInt(50); // Se genera una temperatura
+                    }
                     // Se muestra la temperatura generda por consola
-                    System.out.println("La temperatura es " + df.format(temperatura) + " ºC");
-                    serverOutput.println(temperatura); // Se envia la temperatura al servidor
+                    if (TAM_LOTE == 1) {
+                        System.out.println("La temperatura es " + df.format(temperaturas[0]) + " ºC");
+                    } else {
+                        System.out.println("Se envían " + TAM_LOTE + " temperaturas");
+                    }
+                    // Se envian las temperaturas al servidor
+                    enviarTemperaturas(salida, serverOutput, buffer, BINARIO, idSensor, temperaturas);
                     Thread.sleep(10000); // Se duerme el hilo 10 segundos, antes de generar la nueva temperatura
                 }
 
@@ -119,4 +151,78 @@ public class Client {
         // Se devuelve el puerto de la conexión.
         return port;
     }
+
+    /**
+     * Método para enviar la cabecera del protocolo binario, con lotes si se envía
+     * más de una temperatura en cada mensaje
+     * 
+     * @param salida   salida del socket
+     * @param buffer   buffer en el que se escribe la cabecera
+     * @param idSensor id del sensor o de la pasarela
+     * @param tamLote  número de temperaturas de cada mensaje
+     * @throws IOException si no se puede enviar
+     */
+    public static void enviarCabecera(OutputStream salida, ByteBuffer buffer, int idSensor, int tamLote)
+            throws IOException {
+        buffer.clear();
+        ProtocoloBinario.escribirCabecera(buffer, idSensor,
+                tamLote > 1 ? ProtocoloBinario.VERSION_LOTES : ProtocoloBinario.VERSION);
+        salida.write(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * Método para enviar las temperaturas al servidor en un único mensaje: una
+     * trama o un lote de tramas con el protocolo binario, o una línea con las
+     * temperaturas separadas por ';' con el protocolo de texto. Con el protocolo
+     * binario la temperatura i es del sensor idSensor + i.
+     * 
+     * @param salida       salida del socket para el protocolo binario
+     * @param serverOutput salida del socket para el protocolo de texto
+     * @param buffer       buffer en el que se escribe el mensaje binario
+     * @param binario      true si se utiliza el protocolo binario
+     * @param idSensor     id del sensor o de la pasarela
+     * @param temperaturas temperaturas que se envían
+     * @throws IOException si no se puede enviar
+     */
+    public static void enviarTemperaturas(OutputStream salida, PrintWriter serverOutput, ByteBuffer buffer,
+            boolean binario, int idSensor, int[] temperaturas) throws IOException {
+        if (binario) {
+            buffer.clear();
+            long ahora = System.currentTimeMillis();
+            if (temperaturas.length > 1) {
+                ProtocoloBinario.escribirInicioLote(buffer, temperaturas.length);
+            }
+            for (int i = 0; i < temperaturas.length; i++) {
+                ProtocoloBinario.escribirTrama(buffer, idSensor + i, ahora, temperaturas[i]);
+            }
+            salida.write(buffer.array(), 0, buffer.position());
+        } else {
+            StringBuilder linea = new StringBuilder();
+            for (int i = 0; i < temperaturas.length; i++) {
+                if (i > 0) {
+                    linea.append(ProtocoloBinario.SEPARADOR_LOTE);
+                }
+                linea.append(temperaturas[i]);
+            }
+            serverOutput.println(linea);
+        }
+    }
+
+    /**
+     * Método para obtener una propiedad opcional del cliente.properties
+     * 
+     * @param clave   nombre de la propiedad
+     * @param defecto valor si no existe la propiedad o el fichero
+     * @return se devuelve el valor de la propiedad
+     */
+    public static String leerPropiedad(String clave, String defecto) {
+        Properties propiedades = new Properties();
+        try (FileInputStream fichero = new FileInputStream(new File("cliente.properties"))) {
+            propiedades.load(fichero);
+        } catch (IOException e) {
+            // Si no se puede leer el fichero se utiliza el valor por defecto
+            return defecto;
+        }
+        return propiedades.getProperty(clave, defecto).trim();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+/**
+ * Clase PruebaCarga (main para probar el servidor con muchos sensores)
+ *
+ * Simula miles de sensores conectados a la vez al servidor, para comprobar que el servidor
+ * en modo VIRTUALES (o NIO) los atiende con la memoria acotada.
+ *
+ * Cada sensor es como el Client: se conecta al localhost y al puerto del cliente.properties,
+ * envía una temperatura aleatoria cada cierto tiempo y lee las respuestas del servidor. Para
+ * no necesitar miles de hilos del sistema operativo, cada sensor utiliza dos hilos virtuales,
+ * uno para enviar y otro para recibir.
+ *
+ * Parámetros (opcionales):
+ *  - número de sensores (10000 por defecto).
+ *  - duración de la prueba en segundos (60 por defecto).
+ *  - milisegundos entre temperaturas de cada sensor (5000 por defecto).
+ *
+ * Si en el cliente.properties se indica protocolo=BINARIO, los sensores envían las temperaturas con el
+ * protocolo binario (servidor.ProtocoloBinario) en lugar de líneas de texto. Si se indica tam_lote mayor que
+ * 1, cada sensor simula una pasarela que envía ese número de temperaturas en cada mensaje.
+ *
+ * Cada segundo se muestran los sensores conectados, las temperaturas enviadas, las respuestas
+ * recibidas y los errores. Para ver la memoria del servidor, se configura intervalo_estado en
+ * su config.properties.
+ *
+ * Cada sensor ocupa un descriptor de fichero en la prueba y otro en el servidor, por lo que el
+ * número de sensores está limitado por el límite de ficheros abiertos de cada proceso (ulimit -n).
+ * Al superarlo fallan las conexiones nuevas. Como todos los sensores se conectan desde la misma
+ * dirección, también están limitados por los puertos locales del sistema
+ * (/proc/sys/net/ipv4/ip_local_port_range, unos 28000 por defecto en Linux).
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+package cliente;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import servidor.ProtocoloBinario;
+
+public class PruebaCarga {
+
+    // Contadores de la prueba
+    private static final LongAdder conectados = new LongAdder();
+    private static final LongAdder enviadas = new LongAdder();
+    private static final LongAdder recibidas = new LongAdder();
+    private static final LongAdder errores = new LongAdder();
+    // Variable que indica que la prueba sigue en marcha
+    private static volatile boolean activa = true;
+    // Variable que indica si los sensores utilizan el protocolo binario
+    private static boolean binario;
+    // Número de temperaturas de cada mensaje
+    private static int tamLote;
+
+    /**
+     * Método main para ejecutar la prueba
+     *
+     * @param args número de sensores, segundos y milisegundos entre temperaturas
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final String HOST = "localhost"; // Host del servidor
+        final int PORT = Client.configurar(); // Puerto del cliente.properties
+        // Se obtienen los parámetros de la prueba
+        int sensores = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        long segundos = args.length > 1 ? Long.parseLong(args[1]) : 60;
+        long intervalo = Math.max(0, args.length > 2 ? Long.parseLong(args[2]) : 5000);
+        binario = "BINARIO".equalsIgnoreCase(Client.leerPropiedad("protocolo", "TEXTO"));
+        tamLote = Math.max(1, Math.min(ProtocoloBinario.MAX_LOTE,
+                Integer.parseInt(Client.leerPropiedad("tam_lote", "1"))));
+
+        System.out.println("Se inicia la prueba con " + sensores + " sensores durante " + segundos + " segundos"
+                + (binario ? " con el protocolo binario" : "") + (tamLote > 1 ? " y lotes de " + tamLote : ""));
+        // Se crea un hilo virtual por cada tarea
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        // Se conectan los sensores
+        for (int i = 0; i < sensores; i++) {
+            executor.submit(() -> sensor(executor, HOST, PORT, intervalo));
+        }
+
+        // Se muestra el estado de la prueba cada segundo
+        long maxConectados = 0;
+        for (long s = 1; s <= segundos; s++) {
+            Thread.sleep(1000);
+            maxConectados = Math.max(maxConectados, conectados.sum());
+            System.out.println("[" + s + " s] conectados: " + conectados.sum() + ", enviadas: " + enviadas.sum()
+                    + ", respuestas: " + recibidas.sum() + ", errores: " + errores.sum());
+        }
+        // Se finaliza la prueba
+        activa = false;
+        executor.shutdownNow();
+        System.out.println("Fin de la prueba: máximo de " + maxConectados + " sensores conectados a la vez, "
+                + enviadas.sum() + " temperaturas enviadas, " + recibidas.sum() + " respuestas y "
+                + errores.sum() + " errores");
+        System.exit(0);
+    }
+
+    /**
+     * Método que simula un sensor, envía temperaturas hasta que finaliza la prueba.
+     *
+     * @param executor  executor para el hilo que recibe las respuestas
+     * @param host      host del servidor
+     * @param port      puerto del servidor
+     * @param intervalo milisegundos entre temperaturas
+     */
+    private static void sensor(ExecutorService executor, String host, int port, long intervalo) {
+        Random random = new Random();
+        boolean conectado = false;
+        // Se crear el socket con los parámetros
+        try (Socket socket = new Socket(host, port);
+                BufferedReader serverInput = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                OutputStream salida = socket.getOutputStream();
+                PrintWriter serverOutput = new PrintWriter(salida, true)) {
+            conectados.increment();
+            conectado = true;
+            // Se reciben las respuestas en otro hilo virtual
+            executor.submit(() -> {
+                try {
+                    while (serverInput.readLine() != null) {
+                        recibidas.increment();
+                    }
+                } catch (IOException e) {
+                    // La conexión se ha cerrado
+                }
+            });
+            // Si se utiliza el protocolo binario se envía la cabecera con el id del sensor
+            int idSensor = random.nextInt(Integer.MAX_VALUE - ProtocoloBinario.MAX_LOTE);
+            ByteBuffer buffer = ByteBuffer
+                    .allocate(ProtocoloBinario.TAM_INICIO_LOTE + tamLote * ProtocoloBinario.TAM_TRAMA);
+            if (binario) {
+                Client.enviarCabecera(salida, buffer, idSensor, tamLote);
+            }
+            int[] temperaturas = new int[tamLote];
+            // Se espera un tiempo aleatorio para que no envíen todos los sensores a la vez,
+            // con intervalo 0 se envía sin esperas
+            if (intervalo > 0) {
+                Thread.sleep(random.nextLong(intervalo));
+            }
+            while (activa && !serverOutput.checkError()) {
+                for (int i = 0; i < tamLote; i++) {
+                    temperaturas[i] = random.nextInt(50);
+                }
+                // Se envian las temperaturas al servidor
+                Client.enviarTemperaturas(salida, serverOutput, buffer, binario, idSensor, temperaturas);
+                enviadas.add(tamLote);
+                Thread.sleep(intervalo);
+            }
+            if (serverOutput.checkError()) {
+                errores.increment();
+            }
+        } catch (IOException e) {
+            // No se ha podido conectar el sensor
+            errores.increment();
+        } catch (InterruptedException e) {
+            // Se ha finalizado la prueba
+            Thread.currentThread().interrupt();
+        } finally {
+            if (conectado) {
+                conectados.decrement();
+            }
+        }
+    }
+}
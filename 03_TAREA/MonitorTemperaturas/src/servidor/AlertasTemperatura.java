@@ -0,0 +1,400 @@
+/**
+ * Clase AlertasTemperatura
+ *
+ * Etapa asíncrona de las alertas de temperatura. Antes cada temperatura fuera de rango se mostraba y se escribía en
+ * el registro desde el hilo del sensor, por lo que un sensor que se quedaba por encima de temp_max escribía una
+ * alerta por lectura y frenaba la recepción de las temperaturas. Ahora el hilo del sensor solo actualiza el estado
+ * del sensor y, si hay que registrar una alerta, la deja en una cola; un único hilo "alertas" la escribe.
+ *
+ *  - Estado: cada sensor está NORMAL, BAJA o ALTA, y solo se registra una alerta cuando cambia el estado, así las
+ *    lecturas repetidas del mismo sensor en el mismo estado no generan alertas. El estado se guarda por el id de
+ *    serie del sensor (el mismo del AlmacenTemperaturas), que no cambia al reconectarse, así una reconexión no
+ *    repite la alerta de un sensor que sigue fuera de rango. Los estados de los sensores que no envían temperaturas
+ *    durante CADUCIDAD se eliminan, y dejan de contarse como fuera de rango.
+ *  - Histéresis: un sensor en ALTA no vuelve a NORMAL hasta que baja de temp_max - histeresis, y uno en BAJA hasta
+ *    que sube de temp_min + histeresis, así una temperatura que oscila en el límite no genera una alerta por lectura.
+ *  - Límite: cada sensor puede registrar como mucho porMinuto alertas por minuto (cubeta de fichas). Un cambio de
+ *    estado que supera el límite no se pierde: el estado registrado del sensor no cambia hasta que se deja la alerta
+ *    en la cola, y con cada lectura se vuelve a intentar registrar el estado actual, así al recargarse las fichas se
+ *    registra el estado en el que está el sensor. Los cambios intermedios que no se llegan a registrar (por ejemplo
+ *    ALTA y la vuelta a NORMAL) se cuentan y se indican en la siguiente alerta del sensor. El hilo "alertas" también
+ *    intenta registrar los estados pendientes cada REVISION milisegundos, así se registran aunque el sensor deje de
+ *    enviar temperaturas.
+ *  - Lotes: el hilo "alertas" espera a que haya alertas en la cola y escribe todas las que haya, hasta TAM_LOTE, con
+ *    una única escritura en la consola y en el registro.
+ *
+ * Si la cola se llena las alertas se descartan sin bloquear al sensor, y se indica cuántas en el siguiente lote.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class AlertasTemperatura {
+
+    /**
+     * Estado de un sensor respecto al rango de temperaturas.
+     */
+    public enum Estado {
+        NORMAL, BAJA, ALTA
+    }
+
+    // Tamaño de la cola de alertas pendientes de escribir
+    private static final int CAPACIDAD_COLA = 10_000;
+    // Número máximo de alertas que se escriben de una vez
+    private static final int TAM_LOTE = 256;
+    // Milisegundos de un minuto
+    private static final long MINUTO = 60 * 1000L;
+    // Milisegundos entre cada revisión de los estados pendientes y caducados
+    private static final long REVISION = 1000L;
+    // Milisegundos sin temperaturas tras los que se elimina el estado de un sensor
+    private static final long CADUCIDAD = 10 * MINUTO;
+
+    // Se instancian los atributos de la clase
+    private final double histeresis;
+    private final int porMinuto;
+    private final RegistroLogs logger;
+    // Estado de los sensores por su id de serie, solo de los que han salido del rango
+    private final Map<String, EstadoSensor> estados = new ConcurrentHashMap<>();
+    // Alertas pendientes de escribir
+    private final BlockingQueue<Alerta> cola = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+    // Contadores de las alertas que no se han escrito
+    private final LongAdder suprimidas = new LongAdder();
+    private final LongAdder descartadas = new LongAdder();
+    // Hilo que escribe las alertas
+    private final Thread escritor;
+    private volatile boolean cerrado = false;
+
+    /**
+     * Constructor de la clase, inicia el hilo que escribe las alertas.
+     *
+     * @param histeresis grados que debe volver una temperatura dentro del rango
+     *                   para que el sensor vuelva a NORMAL
+     * @param porMinuto  número máximo de alertas por minuto de cada sensor, 0 sin
+     *                   límite
+     * @param logger     registro de las alertas
+     */
+    public AlertasTemperatura(double histeresis, int porMinuto, RegistroLogs logger) {
+        this.histeresis = histeresis;
+        this.porMinuto = porMinuto;
+        this.logger = logger;
+        this.escritor = new Thread(this::escribir, "alertas");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Método que comprueba una temperatura de un sensor y, si cambia el estado del
+     * sensor, deja la alerta en la cola. No bloquea ni escribe nada.
+     *
+     * @param serie       id de serie del sensor, con el que se guarda su estado
+     * @param sensor      id con el que se registran las alertas
+     * @param temperatura temperatura comprobada
+     * @param umbrales    temperaturas mínima y máxima del rango
+     */
+    public void comprobar(String serie, String sensor, double temperatura, UmbralesTemperatura umbrales) {
+        double minimo = umbrales.getMinimo();
+        double maximo = umbrales.getMaximo();
+        Alerta alerta;
+        while (true) {
+            EstadoSensor estado = estados.get(serie);
+            // Si el sensor no está fuera de rango y la temperatura está dentro no hay nada
+            // que hacer
+            if (estado == null) {
+                if (temperatura >= minimo && temperatura <= maximo) {
+                    return;
+                }
+                estado = estados.computeIfAbsent(serie, clave -> new EstadoSensor(porMinuto));
+            }
+            synchronized (estado) {
+                // Si el hilo "alertas" acaba de eliminar el estado caducado se busca otra vez
+                if (estado.eliminado) {
+                    continue;
+                }
+                estado.sensor = sensor;
+                estado.temperatura = temperatura;
+                estado.minimo = minimo;
+                estado.maximo = maximo;
+                estado.ultimaLectura = System.currentTimeMillis();
+                Estado nuevo = siguiente(estado.actual, temperatura, minimo, maximo);
+                boolean cambia = nuevo != estado.actual;
+                if (cambia) {
+                    estado.actual = nuevo;
+                    estado.cambios++;
+                }
+                alerta = registrar(estado);
+                if (alerta == null && cambia && nuevo != estado.registrado) {
+                    suprimidas.increment();
+                }
+            }
+            break;
+        }
+        encolar(alerta);
+    }
+
+    /**
+     * Método que devuelve la alerta del estado actual del sensor si no es el
+     * registrado y el límite de alertas lo permite, y lo marca como registrado. Se
+     * llama con el estado sincronizado.
+     *
+     * @param estado estado del sensor
+     * @return se devuelve la Alerta, null si no hay nada que registrar o el estado
+     *         queda pendiente por el límite
+     */
+    private Alerta registrar(EstadoSensor estado) {
+        // No hay ningún estado pendiente de registrar
+        if (estado.actual == estado.registrado) {
+            return null;
+        }
+        // Se comprueba el límite de alertas del sensor, el estado queda pendiente
+        if (porMinuto > 0) {
+            long ahora = System.currentTimeMillis();
+            estado.fichas = Math.min(porMinuto,
+                    estado.fichas + (ahora - estado.ultimaRecarga) * porMinuto / (double) MINUTO);
+            estado.ultimaRecarga = ahora;
+            if (estado.fichas < 1) {
+                return null;
+            }
+            estado.fichas -= 1;
+        }
+        // La alerta registra el último cambio, los anteriores no se han registrado
+        Alerta alerta = new Alerta(estado.sensor, estado.registrado, estado.actual, estado.temperatura,
+                estado.minimo, estado.maximo, estado.cambios - 1);
+        estado.registrado = estado.actual;
+        estado.cambios = 0;
+        return alerta;
+    }
+
+    /**
+     * Método que deja una alerta en la cola, si está llena la alerta se descarta
+     * y el sensor no espera.
+     *
+     * @param alerta alerta que se deja en la cola, null si no hay alerta
+     */
+    private void encolar(Alerta alerta) {
+        if (alerta != null && !cola.offer(alerta)) {
+            descartadas.increment();
+        }
+    }
+
+    /**
+     * Método que ejecuta el hilo "alertas" cada REVISION milisegundos: registra
+     * los estados pendientes que ya permite el límite y elimina los estados de
+     * los sensores que llevan CADUCIDAD sin enviar temperaturas.
+     */
+    private void revisar() {
+        long ahora = System.currentTimeMillis();
+        for (Map.Entry<String, EstadoSensor> entrada : estados.entrySet()) {
+            EstadoSensor estado = entrada.getValue();
+            Alerta alerta;
+            synchronized (estado) {
+                alerta = registrar(estado);
+                if (alerta == null && estado.actual == estado.registrado
+                        && ahora - estado.ultimaLectura > CADUCIDAD) {
+                    estado.eliminado = true;
+                    estados.remove(entrada.getKey(), estado);
+                }
+            }
+            encolar(alerta);
+        }
+    }
+
+    /**
+     * Método que devuelve el estado siguiente de un sensor, con la histéresis.
+     *
+     * @param actual      estado actual del sensor
+     * @param temperatura temperatura comprobada
+     * @param minimo      temperatura mínima del rango
+     * @param maximo      temperatura máxima del rango
+     * @return se devuelve el Estado
+     */
+    private Estado siguiente(Estado actual, double temperatura, double minimo, double maximo) {
+        if (temperatura > maximo) {
+            return Estado.ALTA;
+        }
+        if (temperatura < minimo) {
+            return Estado.BAJA;
+        }
+        // Dentro del rango solo se vuelve a NORMAL si se supera la histéresis
+        if (actual == Estado.ALTA && temperatura > maximo - histeresis) {
+            return Estado.ALTA;
+        }
+        if (actual == Estado.BAJA && temperatura < minimo + histeresis) {
+            return Estado.BAJA;
+        }
+        return Estado.NORMAL;
+    }
+
+    /**
+     * Método que ejecuta el hilo "alertas": espera las alertas y las escribe por
+     * lotes hasta que se cierra y se vacía la cola.
+     */
+    private void escribir() {
+        // El formato solo lo utiliza este hilo
+        DecimalFormat df = new DecimalFormat("#.##");
+        List<Alerta> lote = new ArrayList<>(TAM_LOTE);
+        long ultimaRevision = System.currentTimeMillis();
+        while (true) {
+            if (System.currentTimeMillis() - ultimaRevision >= REVISION) {
+                ultimaRevision = System.currentTimeMillis();
+                revisar();
+            }
+            Alerta primera;
+            try {
+                primera = cerrado ? cola.poll() : cola.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // Se interrumpe al cerrar, se escriben las alertas que queden
+                continue;
+            }
+            if (primera == null) {
+                if (cerrado) {
+                    return;
+                }
+                continue;
+            }
+            lote.add(primera);
+            cola.drainTo(lote, TAM_LOTE - 1);
+            escribirLote(lote, df);
+            lote.clear();
+        }
+    }
+
+    /**
+     * Método que escribe un lote de alertas con una única escritura en la consola
+     * y en el registro.
+     *
+     * @param lote alertas que se escriben
+     * @param df   formato de las temperaturas
+     */
+    private void escribirLote(List<Alerta> lote, DecimalFormat df) {
+        List<String> mensajes = new ArrayList<>(lote.size() + 1);
+        for (Alerta alerta : lote) {
+            mensajes.add(alerta.texto(df));
+        }
+        long perdidas = descartadas.sumThenReset();
+        if (perdidas > 0) {
+            mensajes.add("Se han descartado " + perdidas + " alertas, la cola de alertas está llena");
+        }
+        System.err.println(String.join(System.lineSeparator(), mensajes));
+        logger.regAlertasTemp(mensajes);
+    }
+
+    /**
+     * Método que devuelve el estado de las alertas: sensores fuera de rango,
+     * alertas pendientes y alertas suprimidas por el límite.
+     *
+     * @return se devuelve un string
+     */
+    public String getEstado() {
+        int fueraDeRango = 0;
+        for (EstadoSensor estado : estados.values()) {
+            if (estado.actual != Estado.NORMAL) {
+                fueraDeRango++;
+            }
+        }
+        return fueraDeRango + " sensores fuera de rango, " + cola.size() + " pendientes, " + suprimidas.sum()
+                + " suprimidas";
+    }
+
+    /**
+     * Método que escribe las alertas pendientes y finaliza el hilo "alertas".
+     */
+    public void cerrar() {
+        cerrado = true;
+        escritor.interrupt();
+        try {
+            escritor.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Clase interna con el estado de un sensor y su cubeta de fichas, se accede
+     * sincronizando el objeto.
+     */
+    private static final class EstadoSensor {
+        // Estado actual del sensor, con la histéresis
+        private Estado actual = Estado.NORMAL;
+        // Último estado registrado con una alerta
+        private Estado registrado = Estado.NORMAL;
+        private double fichas;
+        private long ultimaRecarga = System.currentTimeMillis();
+        // Cambios del estado actual desde el último registrado
+        private int cambios = 0;
+        // Última temperatura del sensor, para registrar el estado pendiente desde el hilo "alertas"
+        private String sensor;
+        private double temperatura;
+        private double minimo;
+        private double maximo;
+        private long ultimaLectura;
+        // Se marca al eliminar el estado caducado del mapa
+        private boolean eliminado = false;
+
+        EstadoSensor(int porMinuto) {
+            this.fichas = porMinuto;
+        }
+    }
+
+    /**
+     * Clase interna con una alerta pendiente de escribir, el texto se forma en el
+     * hilo "alertas".
+     */
+    private static final class Alerta {
+        private final String sensor;
+        private final Estado anterior;
+        private final Estado estado;
+        private final double temperatura;
+        private final double minimo;
+        private final double maximo;
+        private final int suprimidas;
+
+        Alerta(String sensor, Estado anterior, Estado estado, double temperatura, double minimo, double maximo,
+                int suprimidas) {
+            this.sensor = sensor;
+            this.anterior = anterior;
+            this.estado = estado;
+            this.temperatura = temperatura;
+            this.minimo = minimo;
+            this.maximo = maximo;
+            this.suprimidas = suprimidas;
+        }
+
+        /**
+         * Método que devuelve el texto de la alerta.
+         */
+        String texto(DecimalFormat df) {
+            String texto;
+            switch (estado) {
+                case ALTA:
+                    texto = "El sensor " + sensor + " ha superado la temperatura máxima establecida en "
+                            + df.format(maximo) + " ºC";
+                    break;
+                case BAJA:
+                    texto = "El sensor " + sensor + " esta por debajo de la temperatura mínima establecida en "
+                            + df.format(minimo) + " ºC";
+                    break;
+                default:
+                    texto = "El sensor " + sensor + " ha vuelto al rango establecido tras estar en " + anterior;
+                    break;
+            }
+            texto += " (" + df.format(temperatura) + " ºC)";
+            if (suprimidas > 0) {
+                texto += ", " + suprimidas + " cambios de estado sin registrar por el límite de alertas";
+            }
+            return texto;
+        }
+    }
+}
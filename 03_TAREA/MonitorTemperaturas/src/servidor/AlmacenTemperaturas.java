@@ -0,0 +1,752 @@
+/**
+ * Clase AlmacenTemperaturas
+ *
+ * Almacén de series temporales en el disco local para consultar el histórico de temperaturas de cada sensor. Las
+ * lecturas de cada serie (sensor) se van comprimiendo en memoria en un BloqueGorilla por cada periodo de dos
+ * horas, y cuando termina el periodo el bloque se sella: se añade al SegmentoDia (fichero proyectado en memoria)
+ * del día del bloque junto a su resumen de intervalos de cinco minutos. Solo se añaden datos al final de los
+ * ficheros, nunca se modifican.
+ *
+ * Índice: para cada serie se guarda en memoria la lista de sus bloques (cabeceras), que al arrancar el servidor se
+ * reconstruye recorriendo los segmentos. Una consulta solo lee los bloques de la serie que se solapan con el
+ * intervalo consultado. Las consultas de resumen (consultarResumen y resumir) solo leen los resúmenes de cinco
+ * minutos, con sus histogramas, por lo que calcular la mínima, la máxima, la media y los percentiles de un mes no
+ * descomprime ninguna lectura.
+ *
+ * Agregados por día: al indexar o sellar un bloque, sus intervalos de cinco minutos se acumulan también en un
+ * Resumen por cada día de la serie, en memoria (uno por día guardado, no por hora, para que la memoria no crezca
+ * con el número de sensores por cada hora de retención). El método resumir() utiliza los días completos del
+ * intervalo consultado y solo lee los intervalos de cinco minutos de los días incompletos de los extremos y del
+ * bloque abierto, así el coste de resumir un año es de unos cientos de agregados y no de cien mil intervalos.
+ *
+ * Los segmentos que no se pueden abrir al arrancar (por ejemplo los de una versión anterior del formato, sin los
+ * histogramas de los intervalos) se renombran con la extensión EXT_DESCARTADO y el almacén arranca sin ellos.
+ *
+ * Reducción de resolución: los días con más de diasBrutos días de antigüedad se compactan, se escribe un fichero
+ * nuevo solo con los resúmenes de cinco minutos y se elimina el fichero con las lecturas. Los días con más de
+ * diasResumen días de antigüedad se eliminan (0 para no eliminarlos nunca).
+ *
+ * Lecturas fuera de plazo: cada serie solo tiene un bloque abierto, el de su último periodo. Las lecturas de un
+ * periodo anterior o de un periodo cuyo bloque ya se ha sellado (llegan tarde), o posterior al periodo actual del
+ * servidor (reloj del sensor adelantado), se descartan y se cuentan en el estado, así una lectura desordenada no
+ * sella el bloque abierto antes de tiempo ni llena el día de bloques pequeños.
+ *
+ * El método mantenimiento() sella los bloques cuyo periodo ha terminado, compacta y elimina los días antiguos, el
+ * ServerManager lo ejecuta cada minuto. Los bloques se añaden a su segmento con el almacén bloqueado, y un día se
+ * copia y se cambia por el compactado también con el almacén bloqueado, por lo que no se pierde ningún bloque
+ * sellado mientras se compacta. Al cerrar el almacén (solo la primera vez que se llama a cerrar()) se sellan todos
+ * los bloques abiertos, las lecturas de los bloques abiertos se pierden si el servidor termina sin cerrar el
+ * almacén.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AlmacenTemperaturas {
+
+    // Milisegundos de un día
+    private static final long DIA = 24 * 60 * 60 * 1000L;
+    // Extensión que se añade a los segmentos que no se pueden abrir
+    private static final String EXT_DESCARTADO = ".descartado";
+
+    /**
+     * Interfaz para recibir los intervalos del resumen en una consulta.
+     */
+    public interface ConsumidorResumen {
+        /**
+         * Método que recibe un intervalo del resumen
+         *
+         * @param inicio inicio del intervalo, milisegundos desde la época
+         * @param cuenta número de lecturas del intervalo
+         * @param minimo temperatura mínima
+         * @param maximo temperatura máxima
+         * @param suma   suma de las temperaturas
+         */
+        void aceptar(long inicio, int cuenta, double minimo, double maximo, double suma);
+    }
+
+    // Se instancian los atributos de la clase
+    private final Path directorio;
+    private final int diasBrutos;
+    private final int diasResumen;
+    private final RegistroLogs logger;
+    // Series del almacén
+    private final Map<String, Serie> series = new ConcurrentHashMap<>();
+    // Segmentos abiertos por día, se accede sincronizando el almacén
+    private final TreeMap<Long, SegmentoDia> segmentos = new TreeMap<>();
+    private final AtomicBoolean cerrado = new AtomicBoolean(false);
+    // Lecturas descartadas por llegar fuera de plazo
+    private final LongAdder descartadas = new LongAdder();
+
+    /**
+     * Constructor del almacén, abre los segmentos del directorio y reconstruye el
+     * índice.
+     *
+     * @param directorio  directorio de los segmentos, se crea si no existe
+     * @param diasBrutos  días que se guardan las lecturas antes de compactarlas, 0
+     *                    para no compactarlas
+     * @param diasResumen días que se guardan los resúmenes, 0 para no eliminarlos
+     * @param logger      registro de los errores
+     * @throws IOException si no se puede abrir el directorio o renombrar un segmento
+     */
+    public AlmacenTemperaturas(Path directorio, int diasBrutos, int diasResumen, RegistroLogs logger)
+            throws IOException {
+        this.directorio = directorio;
+        this.diasBrutos = diasBrutos;
+        this.diasResumen = diasResumen;
+        this.logger = logger;
+        Files.createDirectories(directorio);
+        // Se buscan los días que hay en el directorio, si un día está compactado se
+        // elimina el fichero con las lecturas que haya quedado
+        TreeSet<Long> dias = new TreeSet<>();
+        try (DirectoryStream<Path> ficheros = Files.newDirectoryStream(directorio, "*{" + SegmentoDia.EXT_BRUTO + ","
+                + SegmentoDia.EXT_RESUMEN + "}")) {
+            for (Path fichero : ficheros) {
+                String nombre = fichero.getFileName().toString();
+                try {
+                    dias.add(LocalDate.parse(nombre.substring(0, nombre.lastIndexOf('.'))).toEpochDay());
+                } catch (DateTimeParseException e) {
+                    // No es un fichero del almacén
+                }
+            }
+        }
+        for (long dia : dias) {
+            Path resumen = ruta(dia, true);
+            boolean compactado = Files.exists(resumen);
+            if (compactado) {
+                Files.deleteIfExists(ruta(dia, false));
+            }
+            Path fichero = compactado ? resumen : ruta(dia, false);
+            SegmentoDia segmento;
+            try {
+                segmento = SegmentoDia.abrir(fichero, dia, compactado);
+            } catch (IOException e) {
+                // El segmento se aparta para que no se vuelva a abrir ni se añadan bloques
+                Path descartado = fichero.resolveSibling(fichero.getFileName() + EXT_DESCARTADO);
+                Files.move(fichero, descartado, StandardCopyOption.REPLACE_EXISTING);
+                // Mensaje de error
+                String mensaje = "No se puede abrir el segmento:-> " + e.getMessage() + ", se ha renombrado a "
+                        + descartado.getFileName();
+                logger.alertServer(mensaje);
+                System.err.println(mensaje);
+                continue;
+            }
+            segmentos.put(dia, segmento);
+            segmento.recorrer(this::indexar);
+        }
+    }
+
+    /**
+     * Método que devuelve la ruta del fichero de un día.
+     *
+     * @param dia       días desde la época
+     * @param resumenes true para el fichero compactado
+     * @return se devuelve un Path
+     */
+    private Path ruta(long dia, boolean resumenes) {
+        return directorio.resolve(LocalDate.ofEpochDay(dia)
+                + (resumenes ? SegmentoDia.EXT_RESUMEN : SegmentoDia.EXT_BRUTO));
+    }
+
+    /**
+     * Método que añade un bloque al índice de su serie.
+     *
+     * @param bloque bloque del segmento
+     */
+    private void indexar(SegmentoDia.Bloque bloque) {
+        Serie serie = series.computeIfAbsent(bloque.getSerie(), Serie::new);
+        synchronized (serie) {
+            if (bloque.getTipo() == SegmentoDia.BRUTO) {
+                serie.brutos.add(bloque);
+            } else {
+                serie.resumenes.add(bloque);
+                agregar(serie, bloque);
+            }
+        }
+    }
+
+    /**
+     * Método que acumula los intervalos del resumen de un bloque en el agregado
+     * de su día, se llama con la serie sincronizada.
+     *
+     * @param serie  serie del bloque
+     * @param bloque bloque de resumen, empieza al inicio de su periodo
+     */
+    private static void agregar(Serie serie, SegmentoDia.Bloque bloque) {
+        // Un periodo no pasa de un día a otro
+        Resumen agregado = serie.dias.computeIfAbsent(Math.floorDiv(bloque.getInicio(), DIA) * DIA,
+                d -> new Resumen());
+        leerResumen(bloque.getDatos(), bloque.getInicio(), Long.MIN_VALUE, Long.MAX_VALUE, agregado,
+                agregado.histograma);
+    }
+
+    /**
+     * Método que registra una lectura de una serie.
+     *
+     * @param nombre      serie (sensor) de la lectura
+     * @param marcaTiempo milisegundos desde la época
+     * @param temperatura temperatura leída
+     */
+    public void registrar(String nombre, long marcaTiempo, double temperatura) {
+        if (cerrado.get()) {
+            return;
+        }
+        Serie serie = series.computeIfAbsent(nombre, Serie::new);
+        long periodo = BloqueGorilla.periodoDe(marcaTiempo);
+        synchronized (serie) {
+            // Se vuelve a comprobar con la serie bloqueada, cerrar() ya puede haber sellado su bloque
+            if (cerrado.get()) {
+                return;
+            }
+            // Las lecturas de un periodo anterior al último de la serie, del último si su
+            // bloque ya se ha sellado, o posterior al actual se descartan
+            if (periodo < serie.ultimoPeriodo || (periodo == serie.ultimoPeriodo && serie.abierto == null)
+                    || periodo > BloqueGorilla.periodoDe(System.currentTimeMillis())) {
+                descartadas.increment();
+                return;
+            }
+            // Si la lectura es de un periodo posterior se sella el bloque abierto
+            if (serie.abierto != null && serie.abierto.getPeriodo() != periodo) {
+                sellar(serie);
+            }
+            if (serie.abierto == null) {
+                serie.abierto = new BloqueGorilla(periodo);
+                serie.ultimoPeriodo = periodo;
+            }
+            serie.abierto.anadir(marcaTiempo, temperatura);
+        }
+    }
+
+    /**
+     * Método que sella el bloque abierto de la serie, se llama con la serie
+     * sincronizada.
+     *
+     * @param serie serie con un bloque abierto
+     */
+    private void sellar(Serie serie) {
+        BloqueGorilla bloque = serie.abierto;
+        serie.abierto = null;
+        try {
+            // El bloque se añade con el almacén bloqueado, así no se puede añadir a un
+            // segmento que se está compactando
+            synchronized (this) {
+                SegmentoDia segmento = segmento(Math.floorDiv(bloque.getPeriodo(), DIA));
+                // En un día compactado solo se guarda el resumen
+                if (!segmento.isCompactado()) {
+                    serie.brutos.add(segmento.anadir(SegmentoDia.BRUTO, serie.nombre, bloque.getInicio(),
+                            bloque.getFin(), bloque.getCuenta(), bloque.getMinimo(), bloque.getMaximo(),
+                            bloque.getSuma(), bloque.getBytes()));
+                }
+                SegmentoDia.Bloque resumen = segmento.anadir(SegmentoDia.RESUMEN, serie.nombre,
+                        bloque.getPeriodo(), bloque.getFin(), bloque.getCuenta(), bloque.getMinimo(),
+                        bloque.getMaximo(), bloque.getSuma(), bloque.getResumen());
+                serie.resumenes.add(resumen);
+                agregar(serie, resumen);
+            }
+        } catch (IOException e) {
+            // Mensaje de error
+            String mensaje = "Error al guardar las temperaturas de " + serie.nombre + ":-> " + e.getMessage();
+            // Se registra el error
+            logger.alertServer(mensaje);
+            System.err.println(mensaje);
+        }
+    }
+
+    /**
+     * Método que devuelve el segmento de un día, si no existe se crea.
+     *
+     * @param dia días desde la época
+     * @return se devuelve el SegmentoDia
+     * @throws IOException si no se puede crear el fichero
+     */
+    private synchronized SegmentoDia segmento(long dia) throws IOException {
+        SegmentoDia segmento = segmentos.get(dia);
+        if (segmento == null) {
+            segmento = SegmentoDia.abrir(ruta(dia, false), dia, false);
+            segmentos.put(dia, segmento);
+        }
+        return segmento;
+    }
+
+    /**
+     * Método que devuelve las lecturas de una serie entre dos marcas de tiempo,
+     * ordenadas por bloques. Si los días ya están compactados no se devuelven
+     * lecturas, se deben consultar los resúmenes.
+     *
+     * @param nombre     serie (sensor)
+     * @param desde      marca de tiempo inicial, incluida
+     * @param hasta      marca de tiempo final, excluida
+     * @param consumidor recibe las lecturas
+     */
+    public void consultar(String nombre, long desde, long hasta, BloqueGorilla.Consumidor consumidor) {
+        Serie serie = series.get(nombre);
+        if (serie == null) {
+            return;
+        }
+        List<SegmentoDia.Bloque> bloques;
+        ByteBuffer abierto = null;
+        long inicioAbierto = 0;
+        int cuentaAbierto = 0;
+        synchronized (serie) {
+            bloques = solapados(serie.brutos, desde, hasta);
+            if (serie.abierto != null && serie.abierto.getInicio() < hasta && serie.abierto.getFin() >= desde) {
+                abierto = ByteBuffer.wrap(serie.abierto.getBytes());
+                inicioAbierto = serie.abierto.getInicio();
+                cuentaAbierto = serie.abierto.getCuenta();
+            }
+        }
+        // Solo se pasan las lecturas del intervalo
+        BloqueGorilla.Consumidor filtro = (t, temperatura) -> {
+            if (t >= desde && t < hasta) {
+                consumidor.aceptar(t, temperatura);
+            }
+        };
+        for (SegmentoDia.Bloque bloque : bloques) {
+            BloqueGorilla.descomprimir(bloque.getDatos(), bloque.getInicio(), bloque.getCuenta(), filtro);
+        }
+        if (abierto != null) {
+            BloqueGorilla.descomprimir(abierto, inicioAbierto, cuentaAbierto, filtro);
+        }
+    }
+
+    /**
+     * Método que devuelve los intervalos de cinco minutos del resumen de una serie
+     * entre dos marcas de tiempo, ordenados por bloques. Incluye el bloque abierto.
+     *
+     * @param nombre     serie (sensor)
+     * @param desde      marca de tiempo inicial, incluida
+     * @param hasta      marca de tiempo final, excluida
+     * @param consumidor recibe los intervalos que empiezan entre las dos marcas
+     */
+    public void consultarResumen(String nombre, long desde, long hasta, ConsumidorResumen consumidor) {
+        recorrerResumen(nombre, desde, hasta, consumidor, null);
+    }
+
+    /**
+     * Método que acumula en el resumen los intervalos de cinco minutos de una serie
+     * entre dos marcas de tiempo, con sus histogramas para calcular los
+     * percentiles. Solo se leen los resúmenes, nunca las lecturas, y de los días
+     * completos del intervalo solo sus agregados.
+     *
+     * @param nombre  serie (sensor)
+     * @param desde   marca de tiempo inicial, incluida
+     * @param hasta   marca de tiempo final, excluida
+     * @param resumen acumula los intervalos que empiezan entre las dos marcas, se
+     *                puede utilizar con varias series
+     */
+    public void resumir(String nombre, long desde, long hasta, Resumen resumen) {
+        // Días completos del intervalo
+        long desdeDia = -Math.floorDiv(-desde, DIA) * DIA;
+        long hastaDia = Math.floorDiv(hasta, DIA) * DIA;
+        if (desdeDia >= hastaDia) {
+            recorrerResumen(nombre, desde, hasta, resumen, resumen.histograma);
+            return;
+        }
+        Serie serie = series.get(nombre);
+        if (serie == null) {
+            return;
+        }
+        List<SegmentoDia.Bloque> primeros;
+        List<SegmentoDia.Bloque> ultimos;
+        ByteBuffer abierto = null;
+        long periodoAbierto = 0;
+        synchronized (serie) {
+            // Los agregados solo tienen los bloques sellados
+            for (Resumen agregado : serie.dias.subMap(desdeDia, hastaDia).values()) {
+                resumen.combinar(agregado);
+            }
+            // De los extremos sin un día completo se leen los intervalos
+            primeros = solapados(serie.resumenes, desde, desdeDia);
+            ultimos = solapados(serie.resumenes, hastaDia, hasta);
+            if (serie.abierto != null && serie.abierto.getPeriodo() < hasta && serie.abierto.getFin() >= desde) {
+                abierto = ByteBuffer.wrap(serie.abierto.getResumen());
+                periodoAbierto = serie.abierto.getPeriodo();
+            }
+        }
+        for (SegmentoDia.Bloque bloque : primeros) {
+            leerResumen(bloque.getDatos(), bloque.getInicio(), desde, desdeDia, resumen, resumen.histograma);
+        }
+        for (SegmentoDia.Bloque bloque : ultimos) {
+            leerResumen(bloque.getDatos(), bloque.getInicio(), hastaDia, hasta, resumen, resumen.histograma);
+        }
+        if (abierto != null) {
+            leerResumen(abierto, periodoAbierto, desde, hasta, resumen, resumen.histograma);
+        }
+    }
+
+    /**
+     * Método que recorre los intervalos del resumen de una serie.
+     */
+    private void recorrerResumen(String nombre, long desde, long hasta, ConsumidorResumen consumidor,
+            HistogramaTemperaturas histograma) {
+        Serie serie = series.get(nombre);
+        if (serie == null) {
+            return;
+        }
+        List<SegmentoDia.Bloque> bloques;
+        ByteBuffer abierto = null;
+        long periodoAbierto = 0;
+        synchronized (serie) {
+            bloques = solapados(serie.resumenes, desde, hasta);
+            if (serie.abierto != null && serie.abierto.getPeriodo() < hasta && serie.abierto.getFin() >= desde) {
+                abierto = ByteBuffer.wrap(serie.abierto.getResumen());
+                periodoAbierto = serie.abierto.getPeriodo();
+            }
+        }
+        for (SegmentoDia.Bloque bloque : bloques) {
+            leerResumen(bloque.getDatos(), bloque.getInicio(), desde, hasta, consumidor, histograma);
+        }
+        if (abierto != null) {
+            leerResumen(abierto, periodoAbierto, desde, hasta, consumidor, histograma);
+        }
+    }
+
+    /**
+     * Método que lee los intervalos de un resumen y, si se indica el histograma, le
+     * suma los histogramas de los intervalos.
+     */
+    private static void leerResumen(ByteBuffer datos, long periodo, long desde, long hasta,
+            ConsumidorResumen consumidor, HistogramaTemperaturas histograma) {
+        int tam = BloqueGorilla.TAM_INTERVALO;
+        int p = datos.position();
+        while (p + tam <= datos.limit()) {
+            long inicio = periodo + datos.getShort(p) * BloqueGorilla.RESOLUCION_RESUMEN;
+            boolean dentro = inicio >= desde && inicio < hasta;
+            if (dentro) {
+                consumidor.aceptar(inicio, datos.getInt(p + 2), datos.getFloat(p + 6), datos.getFloat(p + 10),
+                        datos.getDouble(p + 14));
+            }
+            p += tam + HistogramaTemperaturas.leer(datos, p + tam, dentro ? histograma : null);
+        }
+    }
+
+    /**
+     * Método que devuelve los bloques que se solapan con un intervalo, ordenados
+     * por su inicio. Se llama con la serie sincronizada.
+     */
+    private static List<SegmentoDia.Bloque> solapados(List<SegmentoDia.Bloque> bloques, long desde, long hasta) {
+        List<SegmentoDia.Bloque> resultado = new ArrayList<>();
+        for (SegmentoDia.Bloque bloque : bloques) {
+            if (bloque.getInicio() < hasta && bloque.getFin() >= desde) {
+                resultado.add(bloque);
+            }
+        }
+        resultado.sort(Comparator.comparingLong(SegmentoDia.Bloque::getInicio));
+        return resultado;
+    }
+
+    /**
+     * Método que devuelve los nombres de las series del almacén.
+     *
+     * @return se devuelve un Set con los nombres
+     */
+    public Set<String> getSeries() {
+        return new TreeSet<>(series.keySet());
+    }
+
+    /**
+     * Método que sella los bloques cuyo periodo ha terminado, compacta los días con
+     * más de diasBrutos días y elimina los días con más de diasResumen días.
+     */
+    public void mantenimiento() {
+        long ahora = System.currentTimeMillis();
+        long periodoActual = BloqueGorilla.periodoDe(ahora);
+        for (Serie serie : series.values()) {
+            synchronized (serie) {
+                if (serie.abierto != null && serie.abierto.getPeriodo() < periodoActual) {
+                    sellar(serie);
+                }
+            }
+        }
+        long hoy = Math.floorDiv(ahora, DIA);
+        List<SegmentoDia> antiguos = new ArrayList<>();
+        synchronized (this) {
+            antiguos.addAll(segmentos.headMap(hoy).values());
+        }
+        for (SegmentoDia segmento : antiguos) {
+            try {
+                if (diasResumen > 0 && segmento.getDia() < hoy - diasResumen) {
+                    eliminar(segmento);
+                } else if (diasBrutos > 0 && segmento.getDia() < hoy - diasBrutos && !segmento.isCompactado()) {
+                    compactar(segmento);
+                }
+            } catch (IOException e) {
+                // Mensaje de error
+                String mensaje = "Error en el mantenimiento de " + segmento.getRuta() + ":-> " + e.getMessage();
+                logger.alertServer(mensaje);
+                System.err.println(mensaje);
+            }
+        }
+    }
+
+    /**
+     * Método que reduce un día a sus resúmenes: se escribe el fichero compactado, se
+     * cambia el índice y se elimina el fichero con las lecturas. La copia y el
+     * cambio de segmento se hacen con el almacén bloqueado, así no se puede sellar
+     * un bloque en el segmento antiguo después de copiarlo.
+     *
+     * @param segmento segmento del día
+     * @throws IOException si no se puede escribir el fichero compactado
+     */
+    private void compactar(SegmentoDia segmento) throws IOException {
+        long dia = segmento.getDia();
+        List<SegmentoDia.Bloque> copiados;
+        synchronized (this) {
+            Path temporal = directorio.resolve(ruta(dia, true).getFileName() + ".tmp");
+            Files.deleteIfExists(temporal);
+            SegmentoDia compactado = SegmentoDia.abrir(temporal, dia, true);
+            for (SegmentoDia.Bloque bloque : segmento.getBloques()) {
+                if (bloque.getTipo() == SegmentoDia.RESUMEN) {
+                    ByteBuffer datos = bloque.getDatos();
+                    byte[] bytes = new byte[datos.remaining()];
+                    datos.get(bytes);
+                    compactado.anadir(SegmentoDia.RESUMEN, bloque.getSerie(), bloque.getInicio(), bloque.getFin(),
+                            bloque.getCuenta(), bloque.getMinimo(), bloque.getMaximo(), bloque.getSuma(), bytes);
+                }
+            }
+            compactado.cerrar();
+            Files.move(temporal, ruta(dia, true), StandardCopyOption.ATOMIC_MOVE);
+            compactado = SegmentoDia.abrir(ruta(dia, true), dia, true);
+            segmentos.put(dia, compactado);
+            // Los bloques que se sellen a partir de ahora se añaden al índice al sellarlos
+            copiados = compactado.getBloques();
+        }
+        // El índice se cambia sin bloquear el almacén, las series se bloquean antes que el almacén
+        quitarDelIndice(segmento);
+        for (SegmentoDia.Bloque bloque : copiados) {
+            indexar(bloque);
+        }
+        segmento.cerrar();
+        borrar(segmento.getRuta());
+        System.out.println("Se han compactado las temperaturas del " + LocalDate.ofEpochDay(dia));
+    }
+
+    /**
+     * Método que elimina un día del almacén.
+     *
+     * @param segmento segmento del día
+     */
+    private void eliminar(SegmentoDia segmento) {
+        synchronized (this) {
+            segmentos.remove(segmento.getDia());
+        }
+        quitarDelIndice(segmento);
+        segmento.cerrar();
+        borrar(segmento.getRuta());
+        System.out.println("Se han eliminado las temperaturas del " + LocalDate.ofEpochDay(segmento.getDia()));
+    }
+
+    /**
+     * Método que quita del índice los bloques de un segmento.
+     *
+     * @param segmento segmento que se quita
+     */
+    private void quitarDelIndice(SegmentoDia segmento) {
+        for (Serie serie : series.values()) {
+            synchronized (serie) {
+                serie.brutos.removeIf(bloque -> bloque.getSegmento() == segmento);
+                if (serie.resumenes.removeIf(bloque -> bloque.getSegmento() == segmento)) {
+                    // Se vuelve a calcular el agregado del día con los bloques que quedan, los
+                    // que se han sellado en el segmento compactado
+                    long dia = segmento.getDia() * DIA;
+                    serie.dias.remove(dia);
+                    for (SegmentoDia.Bloque bloque : serie.resumenes) {
+                        if (bloque.getInicio() >= dia && bloque.getInicio() < dia + DIA) {
+                            agregar(serie, bloque);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Método que borra un fichero, si no se puede (en algunos sistemas un fichero
+     * proyectado no se puede borrar) se borrará al volver a arrancar el servidor.
+     *
+     * @param ruta fichero que se borra
+     */
+    private void borrar(Path ruta) {
+        try {
+            Files.deleteIfExists(ruta);
+        } catch (IOException e) {
+            System.err.println("No se ha podido borrar " + ruta + ", se borrará al reiniciar el servidor");
+        }
+    }
+
+    /**
+     * Método que devuelve el estado del almacén: series, bloques, lecturas y tamaño
+     * en el disco.
+     *
+     * @return se devuelve un string
+     */
+    public String getEstado() {
+        long bloques = 0;
+        long lecturas = 0;
+        for (Serie serie : series.values()) {
+            synchronized (serie) {
+                bloques += serie.brutos.size();
+                for (SegmentoDia.Bloque bloque : serie.resumenes) {
+                    lecturas += bloque.getCuenta();
+                }
+                if (serie.abierto != null) {
+                    lecturas += serie.abierto.getCuenta();
+                }
+            }
+        }
+        long bytes = 0;
+        synchronized (this) {
+            for (SegmentoDia segmento : segmentos.values()) {
+                bytes += segmento.getTamano();
+            }
+        }
+        return series.size() + " series, " + bloques + " bloques, " + lecturas + " lecturas, " + (bytes / 1024)
+                + " KB, " + descartadas.sum() + " lecturas fuera de plazo descartadas";
+    }
+
+    /**
+     * Método que sella los bloques abiertos y cierra los segmentos. Solo se cierra
+     * la primera vez que se llama.
+     */
+    public void cerrar() {
+        if (!cerrado.compareAndSet(false, true)) {
+            return;
+        }
+        for (Serie serie : series.values()) {
+            synchronized (serie) {
+                if (serie.abierto != null) {
+                    sellar(serie);
+                }
+            }
+        }
+        synchronized (this) {
+            for (SegmentoDia segmento : segmentos.values()) {
+                segmento.cerrar();
+            }
+            segmentos.clear();
+        }
+    }
+
+    /**
+     * Clase con el resumen de una consulta: número de lecturas, mínima, máxima,
+     * media y percentiles de los intervalos acumulados.
+     */
+    public static class Resumen implements ConsumidorResumen {
+        private long cuenta = 0;
+        private double minimo = Double.POSITIVE_INFINITY;
+        private double maximo = Double.NEGATIVE_INFINITY;
+        private double suma = 0;
+        private final HistogramaTemperaturas histograma = new HistogramaTemperaturas();
+
+        @Override
+        public void aceptar(long inicio, int cuenta, double minimo, double maximo, double suma) {
+            this.cuenta += cuenta;
+            this.minimo = Math.min(this.minimo, minimo);
+            this.maximo = Math.max(this.maximo, maximo);
+            this.suma += suma;
+        }
+
+        /**
+         * Método que suma a este resumen otro resumen, con su histograma.
+         *
+         * @param otro resumen que se suma
+         */
+        public void combinar(Resumen otro) {
+            this.cuenta += otro.cuenta;
+            this.minimo = Math.min(this.minimo, otro.minimo);
+            this.maximo = Math.max(this.maximo, otro.maximo);
+            this.suma += otro.suma;
+            this.histograma.combinar(otro.histograma);
+        }
+
+        /**
+         * Getter para devolver el número de lecturas
+         *
+         * @return se devuelve un valor de tipo long
+         */
+        public long getCuenta() {
+            return cuenta;
+        }
+
+        /**
+         * Getter para devolver la temperatura mínima
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay lecturas
+         */
+        public double getMinimo() {
+            return cuenta == 0 ? Double.NaN : minimo;
+        }
+
+        /**
+         * Getter para devolver la temperatura máxima
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay lecturas
+         */
+        public double getMaximo() {
+            return cuenta == 0 ? Double.NaN : maximo;
+        }
+
+        /**
+         * Getter para devolver la temperatura media
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay lecturas
+         */
+        public double getMedia() {
+            return cuenta == 0 ? Double.NaN : suma / cuenta;
+        }
+
+        /**
+         * Getter para devolver un percentil de las temperaturas, con el error del
+         * ancho de las cubetas del histograma y limitado a la mínima y la máxima
+         *
+         * @param percentil percentil entre 0 y 100
+         * @return se devuelve un valor de tipo double, NaN si no hay lecturas
+         */
+        public double getPercentil(double percentil) {
+            if (cuenta == 0) {
+                return Double.NaN;
+            }
+            return Math.max(minimo, Math.min(maximo, histograma.percentil(percentil)));
+        }
+    }
+
+    /**
+     * Clase interna con una serie: su bloque abierto y el índice de sus bloques.
+     */
+    private static class Serie {
+        private final String nombre;
+        private BloqueGorilla abierto;
+        // Periodo del último bloque abierto, las lecturas anteriores se descartan
+        private long ultimoPeriodo = Long.MIN_VALUE;
+        private final List<SegmentoDia.Bloque> brutos = new ArrayList<>();
+        private final List<SegmentoDia.Bloque> resumenes = new ArrayList<>();
+        // Agregados por día de los bloques sellados, por su inicio
+        private final TreeMap<Long, Resumen> dias = new TreeMap<>();
+
+        Serie(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+}
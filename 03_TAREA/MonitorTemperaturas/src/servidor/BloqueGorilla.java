@@ -0,0 +1,412 @@
+/**
+ * Clase BloqueGorilla
+ *
+ * Bloque comprimido con las temperaturas de un sensor durante un periodo (PERIODO, dos horas), con la compresión
+ * Gorilla: las marcas de tiempo y las temperaturas se guardan como una secuencia de bits en la que cada lectura
+ * ocupa muy poco porque se parece mucho a la anterior.
+ *
+ * Marcas de tiempo (delta-of-delta): la primera se guarda en la cabecera del bloque, de las siguientes solo se
+ * guarda la diferencia entre su intervalo y el intervalo anterior. Si el sensor envía con un intervalo fijo la
+ * diferencia es 0 y ocupa un bit:
+ *  - '0'                  diferencia 0
+ *  - '10'   + 7 bits      diferencia entre -64 y 63 ms
+ *  - '110'  + 9 bits      diferencia entre -256 y 255 ms
+ *  - '1110' + 12 bits     diferencia entre -2048 y 2047 ms
+ *  - '1111' + 32 bits     cualquier otra diferencia
+ *
+ * Temperaturas (XOR): la primera se guarda con sus 64 bits, de las siguientes se guarda el XOR con la anterior.
+ * Si la temperatura se repite ocupa un bit, si no solo se guardan los bits significativos del XOR:
+ *  - '0'                                  misma temperatura
+ *  - '10' + bits significativos           los bits caben en la ventana del XOR anterior
+ *  - '11' + 5 bits ceros a la izquierda + 6 bits longitud + bits significativos
+ *
+ * Además, mientras se añaden las lecturas se calculan su número, mínima, máxima y suma, y los mismos valores
+ * por intervalos de RESOLUCION_RESUMEN (cinco minutos) junto a un HistogramaTemperaturas de cada intervalo, que el
+ * AlmacenTemperaturas guarda junto al bloque para poder reducir la resolución de los datos antiguos y responder
+ * a las consultas sin descomprimir las lecturas.
+ *
+ * El bloque no está sincronizado, lo utiliza un único hilo a la vez.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.nio.ByteBuffer;
+
+public class BloqueGorilla {
+
+    // Duración del periodo de un bloque, divide al día en periodos iguales
+    public static final long PERIODO = 2 * 60 * 60 * 1000L;
+    // Duración de cada intervalo del resumen
+    public static final long RESOLUCION_RESUMEN = 5 * 60 * 1000L;
+    // Número de intervalos del resumen de un bloque
+    public static final int NUM_INTERVALOS = (int) (PERIODO / RESOLUCION_RESUMEN);
+    // Tamaño de un intervalo del resumen en bytes, sin su histograma
+    public static final int TAM_INTERVALO = 22;
+
+    /**
+     * Interfaz para recibir las lecturas de un bloque al descomprimirlo.
+     */
+    public interface Consumidor {
+        /**
+         * Método que recibe una lectura
+         *
+         * @param marcaTiempo milisegundos desde la época
+         * @param temperatura temperatura leída
+         */
+        void aceptar(long marcaTiempo, double temperatura);
+    }
+
+    // Inicio del periodo del bloque
+    private final long periodo;
+    // Bits del bloque, se van añadiendo de izquierda a derecha
+    private long[] palabras = new long[16];
+    private long numBits = 0;
+    // Estado de la compresión
+    private int cuenta = 0;
+    private long tInicio;
+    private long tAnterior;
+    private long deltaAnterior = 0;
+    private long valorAnterior;
+    private int cerosIzqAnterior = -1; // -1 si todavía no hay ventana del XOR
+    private int cerosDerAnterior;
+    // Resumen del bloque
+    private double minimo = Double.POSITIVE_INFINITY;
+    private double maximo = Double.NEGATIVE_INFINITY;
+    private double suma = 0;
+    // Resumen por intervalos
+    private final int[] cuentas = new int[NUM_INTERVALOS];
+    private final double[] minimos = new double[NUM_INTERVALOS];
+    private final double[] maximos = new double[NUM_INTERVALOS];
+    private final double[] sumas = new double[NUM_INTERVALOS];
+    private final HistogramaTemperaturas[] histogramas = new HistogramaTemperaturas[NUM_INTERVALOS];
+
+    /**
+     * Constructor del bloque
+     *
+     * @param periodo inicio del periodo, múltiplo de PERIODO
+     */
+    public BloqueGorilla(long periodo) {
+        this.periodo = periodo;
+    }
+
+    /**
+     * Método que devuelve el inicio del periodo de una marca de tiempo.
+     *
+     * @param marcaTiempo milisegundos desde la época
+     * @return se devuelve un valor de tipo long
+     */
+    public static long periodoDe(long marcaTiempo) {
+        return Math.floorDiv(marcaTiempo, PERIODO) * PERIODO;
+    }
+
+    /**
+     * Método que añade una lectura al bloque, la marca de tiempo debe estar dentro
+     * del periodo del bloque.
+     *
+     * @param marcaTiempo milisegundos desde la época
+     * @param temperatura temperatura leída
+     */
+    public void anadir(long marcaTiempo, double temperatura) {
+        long bits = Double.doubleToRawLongBits(temperatura);
+        if (cuenta == 0) {
+            // La primera marca de tiempo va en la cabecera y la primera temperatura completa
+            tInicio = marcaTiempo;
+            escribir(bits, 64);
+        } else {
+            escribirMarcaTiempo(marcaTiempo);
+            escribirTemperatura(bits);
+        }
+        tAnterior = marcaTiempo;
+        valorAnterior = bits;
+        cuenta++;
+        // Se actualiza el resumen del bloque y el del intervalo
+        minimo = Math.min(minimo, temperatura);
+        maximo = Math.max(maximo, temperatura);
+        suma += temperatura;
+        int i = (int) ((marcaTiempo - periodo) / RESOLUCION_RESUMEN);
+        if (cuentas[i] == 0) {
+            minimos[i] = temperatura;
+            maximos[i] = temperatura;
+            histogramas[i] = new HistogramaTemperaturas();
+        } else {
+            minimos[i] = Math.min(minimos[i], temperatura);
+            maximos[i] = Math.max(maximos[i], temperatura);
+        }
+        cuentas[i]++;
+        sumas[i] += temperatura;
+        histogramas[i].anadir(temperatura);
+    }
+
+    /**
+     * Método que escribe la diferencia del intervalo con el intervalo anterior.
+     *
+     * @param marcaTiempo milisegundos desde la época
+     */
+    private void escribirMarcaTiempo(long marcaTiempo) {
+        long delta = marcaTiempo - tAnterior;
+        long dod = delta - deltaAnterior;
+        deltaAnterior = delta;
+        if (dod == 0) {
+            escribir(0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            escribir(0b10, 2);
+            escribir(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            escribir(0b110, 3);
+            escribir(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            escribir(0b1110, 4);
+            escribir(dod, 12);
+        } else {
+            // Dentro de un periodo la diferencia siempre cabe en 32 bits
+            escribir(0b1111, 4);
+            escribir(dod, 32);
+        }
+    }
+
+    /**
+     * Método que escribe el XOR de la temperatura con la anterior.
+     *
+     * @param bits bits de la temperatura
+     */
+    private void escribirTemperatura(long bits) {
+        long xor = bits ^ valorAnterior;
+        if (xor == 0) {
+            escribir(0, 1);
+            return;
+        }
+        int cerosIzq = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int cerosDer = Long.numberOfTrailingZeros(xor);
+        if (cerosIzqAnterior >= 0 && cerosIzq >= cerosIzqAnterior && cerosDer >= cerosDerAnterior) {
+            // Se reutiliza la ventana del XOR anterior
+            escribir(0b10, 2);
+            escribir(xor >>> cerosDerAnterior, 64 - cerosIzqAnterior - cerosDerAnterior);
+        } else {
+            int significativos = 64 - cerosIzq - cerosDer;
+            escribir(0b11, 2);
+            escribir(cerosIzq, 5);
+            escribir(significativos - 1, 6);
+            escribir(xor >>> cerosDer, significativos);
+            cerosIzqAnterior = cerosIzq;
+            cerosDerAnterior = cerosDer;
+        }
+    }
+
+    /**
+     * Método que añade los n bits de menor peso del valor.
+     *
+     * @param valor valor que se escribe
+     * @param n     número de bits, de 1 a 64
+     */
+    private void escribir(long valor, int n) {
+        if (n < 64) {
+            valor &= (1L << n) - 1;
+        }
+        int indice = (int) (numBits >>> 6);
+        int libres = 64 - (int) (numBits & 63);
+        if (indice + 2 > palabras.length) {
+            long[] nuevas = new long[palabras.length * 2];
+            System.arraycopy(palabras, 0, nuevas, 0, palabras.length);
+            palabras = nuevas;
+        }
+        if (n <= libres) {
+            palabras[indice] |= valor << (libres - n);
+        } else {
+            palabras[indice] |= valor >>> (n - libres);
+            palabras[indice + 1] |= valor << (64 - (n - libres));
+        }
+        numBits += n;
+    }
+
+    /**
+     * Método que devuelve los bytes comprimidos del bloque.
+     *
+     * @return se devuelve una copia de los bytes
+     */
+    public byte[] getBytes() {
+        int numPalabras = (int) ((numBits + 63) >>> 6);
+        ByteBuffer buffer = ByteBuffer.allocate(numPalabras * 8);
+        buffer.asLongBuffer().put(palabras, 0, numPalabras);
+        byte[] bytes = new byte[(int) ((numBits + 7) >>> 3)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Método que devuelve el resumen por intervalos del bloque, cada intervalo con
+     * lecturas ocupa TAM_INTERVALO bytes: índice (short), número de lecturas (int),
+     * mínima y máxima (float) y suma (double), seguidos de su histograma.
+     *
+     * @return se devuelven los bytes del resumen
+     */
+    public byte[] getResumen() {
+        int tamano = 0;
+        for (int i = 0; i < NUM_INTERVALOS; i++) {
+            if (cuentas[i] > 0) {
+                tamano += TAM_INTERVALO + histogramas[i].getTamanoBytes();
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(tamano);
+        for (int i = 0; i < NUM_INTERVALOS; i++) {
+            if (cuentas[i] > 0) {
+                buffer.putShort((short) i).putInt(cuentas[i]).putFloat((float) minimos[i])
+                        .putFloat((float) maximos[i]).putDouble(sumas[i]);
+                histogramas[i].escribir(buffer);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Método que descomprime las lecturas de un bloque.
+     *
+     * @param datos      buffer con los bytes del bloque desde su posición actual,
+     *                   no se mueve
+     * @param tInicio    marca de tiempo de la primera lectura
+     * @param cuenta     número de lecturas del bloque
+     * @param consumidor recibe las lecturas en el orden en que se añadieron
+     */
+    public static void descomprimir(ByteBuffer datos, long tInicio, int cuenta, Consumidor consumidor) {
+        if (cuenta == 0) {
+            return;
+        }
+        LectorBits lector = new LectorBits(datos);
+        long t = tInicio;
+        long delta = 0;
+        long valor = lector.leer(64);
+        consumidor.aceptar(t, Double.longBitsToDouble(valor));
+        int cerosIzq = 0;
+        int cerosDer = 0;
+        for (int i = 1; i < cuenta; i++) {
+            // Se lee la diferencia del intervalo
+            long dod;
+            if (lector.leer(1) == 0) {
+                dod = 0;
+            } else if (lector.leer(1) == 0) {
+                dod = extenderSigno(lector.leer(7), 7);
+            } else if (lector.leer(1) == 0) {
+                dod = extenderSigno(lector.leer(9), 9);
+            } else if (lector.leer(1) == 0) {
+                dod = extenderSigno(lector.leer(12), 12);
+            } else {
+                dod = extenderSigno(lector.leer(32), 32);
+            }
+            delta += dod;
+            t += delta;
+            // Se lee el XOR con la temperatura anterior
+            if (lector.leer(1) == 1) {
+                if (lector.leer(1) == 1) {
+                    cerosIzq = (int) lector.leer(5);
+                    int significativos = (int) lector.leer(6) + 1;
+                    cerosDer = 64 - cerosIzq - significativos;
+                }
+                valor ^= lector.leer(64 - cerosIzq - cerosDer) << cerosDer;
+            }
+            consumidor.aceptar(t, Double.longBitsToDouble(valor));
+        }
+    }
+
+    /**
+     * Método que convierte los n bits leídos en un número con signo.
+     */
+    private static long extenderSigno(long valor, int n) {
+        return (valor << (64 - n)) >> (64 - n);
+    }
+
+    /**
+     * Clase interna que lee los bits de un buffer de izquierda a derecha.
+     */
+    private static class LectorBits {
+        private final ByteBuffer datos;
+        private final int inicio;
+        private long posicion = 0;
+
+        LectorBits(ByteBuffer datos) {
+            this.datos = datos;
+            this.inicio = datos.position();
+        }
+
+        /**
+         * Método que lee n bits, de 1 a 64.
+         */
+        long leer(int n) {
+            long resultado = 0;
+            while (n > 0) {
+                int b = datos.get(inicio + (int) (posicion >>> 3)) & 0xFF;
+                int disponibles = 8 - (int) (posicion & 7);
+                int tomar = Math.min(disponibles, n);
+                resultado = (resultado << tomar) | ((b >>> (disponibles - tomar)) & ((1 << tomar) - 1));
+                n -= tomar;
+                posicion += tomar;
+            }
+            return resultado;
+        }
+    }
+
+    /**
+     * Getter para devolver el inicio del periodo del bloque
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getPeriodo() {
+        return periodo;
+    }
+
+    /**
+     * Getter para devolver la marca de tiempo de la primera lectura
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getInicio() {
+        return tInicio;
+    }
+
+    /**
+     * Getter para devolver la marca de tiempo de la última lectura
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getFin() {
+        return tAnterior;
+    }
+
+    /**
+     * Getter para devolver el número de lecturas
+     *
+     * @return se devuelve un valor de tipo int
+     */
+    public int getCuenta() {
+        return cuenta;
+    }
+
+    /**
+     * Getter para devolver la temperatura mínima
+     *
+     * @return se devuelve un valor de tipo double
+     */
+    public double getMinimo() {
+        return minimo;
+    }
+
+    /**
+     * Getter para devolver la temperatura máxima
+     *
+     * @return se devuelve un valor de tipo double
+     */
+    public double getMaximo() {
+        return maximo;
+    }
+
+    /**
+     * Getter para devolver la suma de las temperaturas
+     *
+     * @return se devuelve un valor de tipo double
+     */
+    public double getSuma() {
+        return suma;
+    }
+}
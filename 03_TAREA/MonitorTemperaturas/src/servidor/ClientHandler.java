@@ -6,7 +6,8 @@
  * Esta clase es el hilo que se ejecutará para interactuar con el cliente.
  * 
  * Se intanciará una lista de la clase ClientRegistry que recibirá la lista que almacenará la cola de hilos.
- * También se instanciará una lista para almacenar las temperaturas y poder calcular la temperatura media.
+ * También se instanciarán unas estadísticas por ventanas de tiempo (VentanasTemperatura) para acumular las temperaturas
+ * y poder calcular la temperatura media del último minuto, de los últimos cinco minutos y de la última hora.
  * Además, se creará un DecimalFormat con el formato que se mostrarán las temperaturas, con un máximo de dos
  * decimales.
  * 
@@ -19,14 +20,21 @@
  *  - Método para genera el ID del cliente.
  *  - Método para calcular la media de temperatura que ha registrado el sensor.
  *  - Método para enviar los mensajes al cliente que ha enviado la información para comporbarla.
+ *  - Método para dejar los mensajes de otros hilos (temas del ClientRegistry) en una cola limitada, que se envían
+ *    desde un hilo virtual que solo existe mientras hay mensajes pendientes, así un cliente lento no bloquea al
+ *    hilo que publica.
+ *  - Método para almacenar la temperatura recibida.
+ *  - Métodos para leer las líneas del protocolo de texto o las tramas del protocolo binario (ProtocoloBinario).
  *  - Getter para delvolver el ID del sensor.
  *  - @Overide del método Runnable:
  *      - Con la modificación de este método se recibe la temperatura generada por cliente y se envia al servidor
- *        para que esté comprueba que la temperatura esta dentro de los parámetros que tiene la configuración.
+ *        (procesarLinea, o procesarTrama si el sensor ha negociado el protocolo binario) para que esté comprueba que la temperatura esta dentro de los parámetros que tiene la
+ *        configuración.
  *        También se llamará a los métodos para crear el ID, y para calcular la media de la temperatura que ha 
  *        detectado el sensor.
- *        Para el cálculo de la temperatura media se añadirá a la lista que se a instanciado para almacenar todas
- *        las temperaturas que a enviado el sensor.
+ *        Para el cálculo de la temperatura media se añadirá a las ventanas que se han instanciado para acumular
+ *        las temperaturas recientes que a enviado el sensor.
+ *        Cuando el cliente se desconecta se elimina del ClientRegistry y se cierra el socket.
  * 
  * @author DMIAPER (Diógenes Miaja Pérez)
  * Fecha: 24-02-2025
@@ -35,29 +43,46 @@
 
 package servidor;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.PushbackInputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, ConexionSensor {
+    // Tamaño de los buffers de lectura y escritura, los mensajes son líneas cortas y
+    // con miles de sensores los buffers de 8 KB por defecto ocupan la mayor parte de
+    // la memoria del servidor.
+    private static final int TAM_BUFFER = 256;
     // Se instancia los atributos de la clase.
     private final Socket socket; // Socket del cliente
     private ClientRegistry listaClientes; // Lista que recibe el la lista donde se almacenan los clientes
     private ServerManager server; // Se almacenará el servidor
-    private String idSensor; // Variable para almacenar el id del cliente
-    private List<Double> listaTemp; // Lista para almacenar las temperaturas
-    private BufferedReader input; // Se instancia un input para obtener los datos que envie el cliente
+    private final String idConexion; // Id con el que se registra el cliente, no cambia
+    private volatile String idSensor; // Variable para almacenar el id del cliente
+    private volatile String idSerie; // Id con el que se guardan las temperaturas del sensor
+    private VentanasTemperatura ventanas; // Estadísticas de las temperaturas recientes del sensor
+    private PushbackInputStream entrada; // Datos que envía el cliente, permite ver el primer byte para saber el
+                                         // protocolo
+    private BufferedReader input; // Se instancia un input para obtener las líneas que envie el cliente
     private PrintWriter output; // Se instanacia un output para enviar los mensajes al cliente
-    private double temperatura; // Variable para almacenar la temperatura que se recibe del cliente
-    private double tempMedia; // Variable para calcular almacenar la temperatura media actual.
     private DecimalFormat df = new DecimalFormat("#.##"); // Se declará el formato que se utilizará para mostrar la
                                                           // temperatura
     private RegistroLogs logger;
+    // Mensajes de otros hilos pendientes de enviar y si hay un hilo enviándolos
+    private final BlockingQueue<String> pendientes = new ArrayBlockingQueue<>(ClientRegistry.MAX_PENDIENTES);
+    private final AtomicBoolean enviando = new AtomicBoolean(false);
 
     // Contructor del cliente
     public ClientHandler(Socket socket, ClientRegistry listaclientes, RegistroLogs logger, ServerManager server) {
@@ -65,15 +90,19 @@ public class ClientHandler implements Runnable {
         this.socket = socket;
         this.listaClientes = listaclientes;
         this.server = server;
-        this.idSensor = generaID();
-        this.listaTemp = new ArrayList<>();
+        this.idConexion = generaID();
+        this.idSensor = idConexion;
+        this.idSerie = "IP:_" + socket.getInetAddress().getHostAddress();
+        this.ventanas = new VentanasTemperatura(1);
 
         // Se contorla la lectura y envío de datos
         try {
-            // Se inicializa la lectura de datos
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // Se inicializa la lectura de datos, el lector de líneas o de tramas se crea al
+            // conocer el protocolo
+            entrada = new PushbackInputStream(socket.getInputStream());
             // Se inicializa el envío de datos
-            output = new PrintWriter(socket.getOutputStream(), true);
+            output = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()), TAM_BUFFER),
+                    true);
         } catch (IOException e) {
             // Mensaje del error
             String mensaje = "Error en la lectura y envío de datos: ->" + e.getMessage();
@@ -98,29 +127,73 @@ public class ClientHandler implements Runnable {
      * 
      * @param message cadena que se recibe para enviarla al cliente
      */
+    @Override
     public void sendMessage(String message) {
         output.println(message);
     }
 
     /**
-     * Método para calcular la media actual de temperatura
+     * Método para dejar un mensaje de otro hilo en la cola de salida, si no hay un
+     * hilo enviando los mensajes pendientes se inicia uno virtual
+     * 
+     * @param mensaje cadena que se envía al cliente
+     * @return se devuelve false si la cola está llena y se descarta el mensaje
      */
-    public void calcTemMedia() {
-        // Si la lista esta vacía se finaliza el método
-        if (listaTemp.isEmpty()) {
-            return;
+    @Override
+    public boolean encolarMensaje(String mensaje) {
+        if (!pendientes.offer(mensaje)) {
+            return false;
         }
-        // Se instancia una variable auxiliar para sumar el total de las temperaturas
-        double sumTotal = 0;
-        // Se itera la lista de temperaturas almacenadas
-        for (double temp : listaTemp) {
-            // Se suman las temperaturas
-            sumTotal += temp;
+        if (enviando.compareAndSet(false, true)) {
+            Thread.startVirtualThread(this::enviarPendientes);
         }
-        // Se calucla la media de temperaturas.
-        tempMedia = sumTotal / listaTemp.size();
-        // Se muestra un mensaje para informar de la temperatura media
-        sendMessage("La temperatura media actual es de: " + df.format(tempMedia) + " ºC");
+        return true;
+    }
+
+    /**
+     * Método que envía los mensajes pendientes hasta vaciar la cola. Si llega un
+     * mensaje mientras termina, lo envía este mismo hilo.
+     */
+    private void enviarPendientes() {
+        do {
+            String mensaje;
+            while ((mensaje = pendientes.poll()) != null) {
+                sendMessage(mensaje);
+            }
+            enviando.set(false);
+        } while (!pendientes.isEmpty() && enviando.compareAndSet(false, true));
+    }
+
+    /**
+     * Método para calcular la media actual de temperatura
+     * 
+     * @return se devuelve el mensaje con la temperatura media de cada ventana
+     */
+    @Override
+    public String calcTemMedia() {
+        return "Temperatura media del sensor (" + ventanas.textoMedias(df) + ")";
+    }
+
+    /**
+     * Método para almacenar la temperatura recibida, el servidor responde con la
+     * media al terminar de procesar el mensaje
+     * 
+     * @param temperatura temperatura recibida del sensor
+     */
+    @Override
+    public void registrarTemperatura(double temperatura) {
+        // Se agrega la temperatura recibida a las ventanas
+        ventanas.registrar(temperatura);
+    }
+
+    /**
+     * Getter para las estadísticas por ventanas de tiempo del sensor
+     * 
+     * @return se devuelven las VentanasTemperatura del sensor
+     */
+    @Override
+    public VentanasTemperatura getVentanas() {
+        return ventanas;
     }
 
     /**
@@ -128,10 +201,112 @@ public class ClientHandler implements Runnable {
      * 
      * @return se devuelve un string
      */
+    @Override
     public String getIdSensor() {
         return idSensor;
     }
 
+    /**
+     * Método que lee las líneas que envía el sensor con el protocolo de texto.
+     * 
+     * @throws IOException si falla la lectura
+     */
+    private void leerLineas() throws IOException {
+        // Variable axuliar
+        String aux;
+        input = new BufferedReader(new InputStreamReader(entrada), TAM_BUFFER);
+        // Se obtiene el mensaje que ha enviado el cliente
+        while ((aux = input.readLine()) != null) {
+            // Se procesa la temperatura recibida en el servidor
+            server.procesarLinea(aux, this);
+        }
+    }
+
+    /**
+     * Método que lee la cabecera y las tramas, o los lotes de tramas, que envía el
+     * sensor con el protocolo binario. Las tramas se leen siempre en el mismo
+     * buffer.
+     * 
+     * @throws IOException si falla la lectura
+     */
+    private void leerTramas() throws IOException {
+        DataInputStream datos = new DataInputStream(new BufferedInputStream(entrada, TAM_BUFFER));
+        byte[] bytes = new byte[ProtocoloBinario.TAM_TRAMA];
+        ByteBuffer trama = ByteBuffer.wrap(bytes);
+        try {
+            // Se comprueba la cabecera, si no es válida se cierra la conexión
+            datos.readFully(bytes, 0, ProtocoloBinario.TAM_CABECERA);
+            if (!ProtocoloBinario.cabeceraValida(trama)) {
+                System.out.println("Error: el sensor " + idSensor + " utiliza un protocolo binario no soportado");
+                sendMessage(ProtocoloBinario.RESPUESTA_RECHAZADO);
+                socket.close();
+                return;
+            }
+            int id = ProtocoloBinario.getIdCabecera(trama);
+            int version = ProtocoloBinario.getVersion(trama);
+            idSensor = idSensor + "_ID:_" + id;
+            idSerie = "ID:_" + id;
+            System.out.println("El sensor " + idSensor + " utiliza el protocolo binario " + version);
+            sendMessage(ProtocoloBinario.getRespuestaAceptado(version));
+            if (version == ProtocoloBinario.VERSION_LOTES) {
+                leerLotes(datos, id);
+                return;
+            }
+            // Se procesan las tramas hasta que el sensor cierra la conexión
+            while (true) {
+                datos.readFully(bytes);
+                server.procesarTrama(trama, id, this);
+            }
+        } catch (EOFException e) {
+            // El sensor ha cerrado la conexión
+        }
+    }
+
+    /**
+     * Método que lee los lotes de tramas que envía una pasarela. Cada lote se lee
+     * completo en el mismo buffer y se procesa de una vez.
+     * 
+     * @param datos datos que envía la pasarela después de la cabecera
+     * @param id    id de la pasarela
+     * @throws IOException si falla la lectura, EOFException si se cierra la conexión
+     */
+    private void leerLotes(DataInputStream datos, int id) throws IOException {
+        byte[] bytes = new byte[ProtocoloBinario.MAX_LOTE * ProtocoloBinario.TAM_TRAMA];
+        ByteBuffer lote = ByteBuffer.wrap(bytes);
+        while (true) {
+            int numTramas = datos.readUnsignedShort();
+            if (numTramas < 1 || numTramas > ProtocoloBinario.MAX_LOTE) {
+                // Si el lote no es válido no se puede saber dónde empieza el siguiente
+                System.out.println("Error: el lote recibido del sensor " + idSensor + " tiene " + numTramas
+                        + " tramas, se cierra la conexión");
+                socket.close();
+                return;
+            }
+            datos.readFully(bytes, 0, numTramas * ProtocoloBinario.TAM_TRAMA);
+            server.procesarLote(lote, numTramas, id, this);
+        }
+    }
+
+    /**
+     * Getter para el id de la conexión
+     * 
+     * @return se devuelve un string
+     */
+    @Override
+    public String getIdConexion() {
+        return idConexion;
+    }
+
+    /**
+     * Getter para el id con el que se guardan las temperaturas del sensor
+     * 
+     * @return se devuelve un string
+     */
+    @Override
+    public String getIdSerie() {
+        return idSerie;
+    }
+
     /**
      * Se modifica el método Runnable para realizar la ejecución del cliente.
      */
@@ -141,36 +316,20 @@ public class ClientHandler implements Runnable {
         listaClientes.addClient(this);
         // Se informa que el cliente se ha conectado con el id
         System.out.println("El sensor " + idSensor + " se ha conectado");
-        // Variable axuliar
-        String aux;
         // Se controlan los errores
         try {
             // Si el socket no esta cerrado
             if (!socket.isClosed()) {
-                // Se obtiene el mensaje que ha enviado el cliente
-                while ((aux = input.readLine()) != null) {
-                    // Se comprueba que el valor recibido se puede convertir en un valor de tipo
-                    // Double
-                    if (aux.matches("-?\\d+(\\d.\\d+)?")) {
-                        // Almacenamos la temperatura que se ha recibido
-                        temperatura = Double.parseDouble(aux);
-                        // Se almacena la temperatura recibida
-                        listaTemp.add(temperatura);
-                        calcTemMedia();
-                        String mensaje;
-                        // Se comprueba la temperatura y si no se devuele un mensaje vacío
-                        if ((mensaje = server.comprobación(temperatura, idSensor)) != null) {
-                            // Se llama al método responderCliente de la clase ClientRegistry
-                            listaClientes.responderCliente(mensaje, this);
-                        }
-                        // Si no se puede convertir se devolverá un mensaje en el servidor
+                // Se lee el primer byte para saber si el sensor utiliza el protocolo binario
+                int primero = entrada.read();
+                if (primero != -1) {
+                    entrada.unread(primero);
+                    if (ProtocoloBinario.esInicioCabecera(primero)) {
+                        leerTramas();
                     } else {
-                        System.out.println("Error: el valor recibido del sensor " + idSensor
-                                + " no es de tipo númerico");
+                        leerLineas();
                     }
-
                 }
-
             }
             // En caso de error
         } catch (IOException e) {
@@ -180,6 +339,15 @@ public class ClientHandler implements Runnable {
             logger.alertServer(mensaje);
             // Se imprime el error
             System.out.println(mensaje);
+        } finally {
+            // Se elimina el cliente de la lista y se cierra la conexión
+            listaClientes.removeClient(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // El socket ya no se puede usar
+            }
+            System.out.println("El sensor " + idSensor + " se ha desconectado");
         }
     }
 
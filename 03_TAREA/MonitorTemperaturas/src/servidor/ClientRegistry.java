@@ -1,53 +1,125 @@
-/**
 /**
  * CLASE ClientRegistry
- * 
- * Clase para gestionar los clientes creado una cola que gestionará los mùltiples hilos de la Clase
- * ClientHandler.
- * 
- * Esta clase cuenta con un método para agregar clientes a la cola QUEUE.
- * También se eliminarán el cliente de la lista cuando este se desconecte.
+ *
+ * Clase para gestionar los clientes creado un mapa que gestionará las conexiones de los sensores
+ * (ConexionSensor), ya sean hilos de la Clase ClientHandler o sensores del NioServer.
+ *
+ * Los clientes se guardan por su id de conexión en un ConcurrentHashMap, así responder a un sensor no recorre todos
+ * los clientes. El cliente se elimina del mapa, y de sus temas, cuando se desconecta.
  * Se crea un método para enviar el mensaje que le corresponde a cada cliente
  * de este modo se evita que el cliente no reciba su respuesta y no el de otro cliente.
  * Por último, se crea un método para devolver la cantidad de clientes que están registrados y
  * así poder asignarles el ID.
- * 
+ *
+ * Temas: un cliente puede suscribirse a un tema enviando la línea "SUSCRIBIR <tema>" (y "CANCELAR <tema>" para dejar
+ * de recibirlo), y el servidor publica mensajes a todos los suscritos, por ejemplo las nuevas temperaturas de control
+ * en el tema TEMA_UMBRALES. Los mensajes publicados se dejan en la cola de salida limitada de cada cliente
+ * (encolarMensaje), por lo que un cliente lento no bloquea la publicación a los demás: si su cola está llena el
+ * mensaje se descarta para ese cliente.
+ *
  * @author DMIAPER (Diógenes Miaja Pérez)
  * Fecha: 24-02-2025
- * Version: 1.0.0 
+ * Version: 1.0.0
  */
 
 package servidor;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 public class ClientRegistry {
 
-    // Se instancia una cola segura para múltiples hilos (ConcurrentLinkedQueue)
-    // que almacena los clientes conectados.
-    private final Queue<ClientHandler> clientes = new ConcurrentLinkedQueue<>();
+    // Comandos para suscribirse a un tema y para cancelar la suscripción
+    public static final String COMANDO_SUSCRIBIR = "SUSCRIBIR";
+    public static final String COMANDO_CANCELAR = "CANCELAR";
+    // Tema en el que se publican las temperaturas de control al actualizarlas
+    public static final String TEMA_UMBRALES = "UMBRALES";
+    // Número máximo de mensajes pendientes de enviar a un cliente
+    public static final int MAX_PENDIENTES = 64;
+
+    // Se instancia un mapa seguro para múltiples hilos (ConcurrentHashMap)
+    // que almacena los clientes conectados por su id de conexión.
+    private final Map<String, ConexionSensor> clientes = new ConcurrentHashMap<>();
+    // Clientes suscritos a cada tema
+    private final Map<String, Set<ConexionSensor>> temas = new ConcurrentHashMap<>();
+    // Mensajes publicados que se han descartado porque la cola del cliente estaba llena
+    private final LongAdder descartados = new LongAdder();
 
     // Método para agregar clientes a la lista de clientes
-    public void addClient(ClientHandler cliente) {
-        clientes.add(cliente);
+    public void addClient(ConexionSensor cliente) {
+        clientes.put(cliente.getIdConexion(), cliente);
     }
 
-    // Método para eliminar clientes de la lista
-    public void removeClient(ClientHandler cliente) {
-        clientes.remove(cliente);
+    // Método para eliminar clientes de la lista y de sus temas
+    public void removeClient(ConexionSensor cliente) {
+        clientes.remove(cliente.getIdConexion(), cliente);
+        for (Set<ConexionSensor> suscritos : temas.values()) {
+            suscritos.remove(cliente);
+        }
     }
 
     // Método para enviar los mensajes al sensor que corresponde
-    public void responderCliente(String mensaje, ClientHandler sender) {
-        // Bucle for que recorre la lista de clientes
-        for (ClientHandler cliente : clientes) {
-            // Si el cliente es igual al que envia el mensaje
-            if (cliente == sender) {
-                // se le envia la respuesta al sensor que ha enviado la temperatura.
-                cliente.sendMessage(mensaje);
+    public void responderCliente(String mensaje, ConexionSensor sender) {
+        // Se busca el cliente por su id, solo se responde si está registrado
+        if (clientes.get(sender.getIdConexion()) == sender) {
+            // se le envia la respuesta al sensor que ha enviado la temperatura.
+            sender.sendMessage(mensaje);
+        }
+    }
+
+    /**
+     * Método que procesa una línea con un comando de suscripción.
+     *
+     * @param linea   línea recibida del cliente
+     * @param cliente cliente que ha enviado la línea
+     * @return se devuelve la respuesta al cliente, null si la línea no es un
+     *         comando de suscripción
+     */
+    public String procesarComando(String linea, ConexionSensor cliente) {
+        boolean suscribir = linea.startsWith(COMANDO_SUSCRIBIR + " ");
+        if (!suscribir && !linea.startsWith(COMANDO_CANCELAR + " ")) {
+            return null;
+        }
+        String tema = linea.substring(linea.indexOf(' ') + 1).trim().toUpperCase();
+        if (tema.isEmpty()) {
+            return "ERROR falta el tema";
+        }
+        if (suscribir) {
+            temas.computeIfAbsent(tema, t -> ConcurrentHashMap.newKeySet()).add(cliente);
+            return "SUSCRITO " + tema;
+        }
+        Set<ConexionSensor> suscritos = temas.get(tema);
+        if (suscritos != null) {
+            suscritos.remove(cliente);
+        }
+        return "CANCELADO " + tema;
+    }
+
+    /**
+     * Método que publica a cada cliente suscrito a un tema su propio mensaje, sin
+     * bloquear.
+     *
+     * @param tema    tema del mensaje
+     * @param mensaje función que devuelve el mensaje de cada cliente
+     * @return se devuelve el número de clientes a los que se ha enviado
+     */
+    public int publicar(String tema, Function<ConexionSensor, String> mensaje) {
+        Set<ConexionSensor> suscritos = temas.get(tema);
+        if (suscritos == null) {
+            return 0;
+        }
+        int enviados = 0;
+        for (ConexionSensor cliente : suscritos) {
+            if (cliente.encolarMensaje(tema + " " + mensaje.apply(cliente))) {
+                enviados++;
+            } else {
+                descartados.increment();
             }
         }
+        return enviados;
     }
 
     // Método que devuelve la cantidad de clientes que hay.
@@ -55,4 +127,14 @@ public class ClientRegistry {
         return clientes.size();
     }
 
-}
\ No newline at end of file
+    /**
+     * Getter para devolver el número de mensajes publicados que se han descartado
+     * porque la cola del cliente estaba llena
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+}
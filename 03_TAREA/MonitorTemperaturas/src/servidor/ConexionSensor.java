@@ -0,0 +1,81 @@
+/**
+ * Interfaz ConexionSensor
+ *
+ * Representa la conexión de un sensor con el servidor, sea cual sea el modo del servidor:
+ *  - ClientHandler: un hilo por sensor que lee con un socket bloqueante.
+ *  - NioServer: los sensores se leen desde uno o varios bucles Selector.
+ *
+ * De este modo el ServerManager y el ClientRegistry tratan igual a todos los sensores.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+public interface ConexionSensor {
+
+    /**
+     * Getter para el id del sensor
+     *
+     * @return se devuelve un string
+     */
+    String getIdSensor();
+
+    /**
+     * Getter para el id de la conexión, con el que se registra en el
+     * ClientRegistry, no cambia mientras dure la conexión
+     *
+     * @return se devuelve un string
+     */
+    String getIdConexion();
+
+    /**
+     * Getter para el id con el que se guardan las temperaturas del sensor en el
+     * AlmacenTemperaturas, no cambia entre conexiones: ID:_n si el sensor utiliza
+     * el protocolo binario o IP:_ip con el protocolo de texto
+     *
+     * @return se devuelve un string
+     */
+    String getIdSerie();
+
+    /**
+     * Método para enviar un mensaje al sensor
+     *
+     * @param message cadena que se envía al sensor
+     */
+    void sendMessage(String message);
+
+    /**
+     * Método para enviar un mensaje al sensor desde otro hilo sin bloquear, el
+     * mensaje se deja en la cola de salida del sensor, de como mucho
+     * ClientRegistry.MAX_PENDIENTES mensajes
+     *
+     * @param mensaje cadena que se envía al sensor
+     * @return se devuelve false si la cola está llena y se descarta el mensaje
+     */
+    boolean encolarMensaje(String mensaje);
+
+    /**
+     * Getter para las estadísticas por ventanas de tiempo del sensor
+     *
+     * @return se devuelven las VentanasTemperatura del sensor
+     */
+    VentanasTemperatura getVentanas();
+
+    /**
+     * Método para almacenar una temperatura del sensor
+     *
+     * @param temperatura temperatura recibida del sensor
+     */
+    void registrarTemperatura(double temperatura);
+
+    /**
+     * Método que devuelve el mensaje con la temperatura media actual del sensor
+     *
+     * @return se devuelve un string con la media de cada ventana de tiempo
+     */
+    String calcTemMedia();
+
+}
@@ -10,6 +10,14 @@
  * El puerto solo se podrá configurar al inciar el servidor, aunqué posteriormente se cambie este datos, no se efecturá el cambio 
  * hasta que se reinicie el servidor.
  * 
+ * El fichero también puede indicar el modo del servidor (modo_servidor): HILOS, un hilo por sensor (por defecto), o NIO,
+ * los sensores se atienden desde num_selectores bucles Selector (si no se indica, uno por procesador), o VIRTUALES, un hilo
+ * virtual por sensor. Con intervalo_estado (segundos) se muestra periódicamente el estado del servidor. Con ventana_alertas
+ * (UN_MINUTO, CINCO_MINUTOS o UNA_HORA) las alertas se comprueban con la media de la ventana en lugar de cada temperatura.
+ * Con alertas_histeresis (grados) y alertas_por_minuto se configuran la histéresis y el límite de alertas de cada sensor.
+ * Con las claves zona.<nombre> y zona.<nombre>.sensores se indican las temperaturas de control de grupos de sensores
+ * (ReglasTemperatura), que se actualizan junto a temp_min y temp_max.
+ * 
  * La clase tambien permitirá realizar cambios en la configuración de los valores de control de temperatura cuando el servidor 
  * se lo indique.
  * 
@@ -28,8 +36,18 @@ public class ConfigServer {
 
     // Se instancia los atributos
     private int port;
-    private double temp_min;
-    private double temp_max;
+    // Temperaturas de control globales y de las zonas, se cambian de una vez al
+    // actualizar el fichero
+    private volatile ReglasTemperatura reglas = ReglasTemperatura.sinZonas(new UmbralesTemperatura(0, 0));
+    private String modoServidor = "HILOS";
+    private int numSelectores = 0;
+    private long intervaloEstado = 0;
+    private VentanaTiempo ventanaAlertas = null;
+    private String directorioAlmacen = "";
+    private int diasBrutos = 7;
+    private int diasResumen = 0;
+    private double histeresis = 0.5;
+    private int alertasPorMinuto = 6;
     private Properties properties;
     private RegistroLogs logger;
 
@@ -58,9 +76,40 @@ public class ConfigServer {
             // Obtenemos los valores de los parámetros y los convertimos en tipo entero.
             // Se asigna el número del puerto que se va a usar para el servidor
             this.port = Integer.parseInt(this.properties.get("num_port").toString());
-            // Se obtienen los rangos de las temperaturas y se convierten a tipo double.
-            this.temp_min = Double.parseDouble(this.properties.get("temp_min").toString());
-            this.temp_max = Double.parseDouble(this.properties.get("temp_max").toString());
+            // Se obtienen los rangos globales de las temperaturas, las zonas se leen al final
+            UmbralesTemperatura globales = leerGlobales(properties);
+            this.reglas = ReglasTemperatura.sinZonas(globales);
+            // Se obtiene el modo del servidor y el número de bucles del modo NIO, son opcionales.
+            this.modoServidor = this.properties.getProperty("modo_servidor", modoServidor).trim().toUpperCase();
+            this.numSelectores = Integer.parseInt(this.properties.getProperty("num_selectores",
+                    String.valueOf(numSelectores)).trim());
+            this.intervaloEstado = Long.parseLong(this.properties.getProperty("intervalo_estado",
+                    String.valueOf(intervaloEstado)).trim());
+            String ventana = this.properties.getProperty("ventana_alertas", "").trim();
+            this.ventanaAlertas = ventana.isEmpty() ? null : VentanaTiempo.valueOf(ventana.toUpperCase());
+            // Se obtiene la configuración del almacén de temperaturas, si no hay directorio no se guardan
+            this.directorioAlmacen = this.properties.getProperty("tsdb_directorio", directorioAlmacen).trim();
+            this.diasBrutos = Integer.parseInt(this.properties.getProperty("tsdb_dias_brutos",
+                    String.valueOf(diasBrutos)).trim());
+            this.diasResumen = Integer.parseInt(this.properties.getProperty("tsdb_dias_resumen",
+                    String.valueOf(diasResumen)).trim());
+            // Se obtiene la histéresis y el límite de las alertas de temperatura
+            this.histeresis = Double.parseDouble(this.properties.getProperty("alertas_histeresis",
+                    String.valueOf(histeresis)).trim());
+            this.alertasPorMinuto = Integer.parseInt(this.properties.getProperty("alertas_por_minuto",
+                    String.valueOf(alertasPorMinuto)).trim());
+            // Las zonas se leen las últimas, si una zona no es válida no se deja de leer el
+            // resto de la configuración y se utilizan solo las temperaturas globales
+            try {
+                this.reglas = ReglasTemperatura.compilar(globales, properties);
+            } catch (RuntimeException e) {
+                // Mensaje de error
+                String mensaje = "Error en las zonas de temperaturas, se utilizan solo las globales:-> "
+                        + e.getMessage();
+                // Se registra el error
+                logger.alertServer(mensaje);
+                System.out.println(mensaje);
+            }
 
         } catch (Exception e) {
             // Mensaje en caso de error
@@ -75,17 +124,25 @@ public class ConfigServer {
 
     /**
      * Método para actualizar la temperatura
+     * 
+     * @return se devuelve true si se han actualizado las temperaturas, false si no
+     *         son válidas y se mantienen las anteriores
      */
-    public void updateTemp() {
+    public boolean updateTemp() {
         // Se obtiene la ruta del fichero para obtener los parámetros de configuración.
         // se utiliza un try-with-Resource para controlar el cierre del fichero
         // automáticamente.
         try (FileInputStream fichero = new FileInputStream(new File("config.properties"))) {
-            properties.load(fichero);
-            // Se obtienen los rangos de las temperaturas para verificar los valores.
-            this.temp_max = Double.parseDouble(this.properties.get("temp_max").toString());
-            this.temp_min = Double.parseDouble(this.properties.get("temp_min").toString());
+            // Se carga el fichero en unas propiedades nuevas, así las zonas eliminadas del
+            // fichero dejan de aplicarse
+            Properties nuevas = new Properties();
+            nuevas.load(fichero);
+            // Se obtienen los rangos de las temperaturas para verificar los valores, si no
+            // son válidos se mantienen los anteriores.
+            this.reglas = leerReglas(nuevas);
+            this.properties = nuevas;
             System.out.println("Se ha cactualizado el servidor");
+            return true;
 
             // En caso de error se devuelve un mensaje
         } catch (Exception e) {
@@ -95,9 +152,34 @@ public class ConfigServer {
             logger.alertServer(mensaje);
             // Se devuelve un mensaje en caso de error.
             System.out.println(mensaje);
+            return false;
         }
     }
 
+    /**
+     * Método que obtiene las temperaturas de control globales y de las zonas y las
+     * compila en unas reglas.
+     * 
+     * @param propiedades propiedades del fichero
+     * @return se devuelven las ReglasTemperatura
+     * @throws IllegalArgumentException si faltan o no son válidas
+     */
+    private static ReglasTemperatura leerReglas(Properties propiedades) {
+        return ReglasTemperatura.compilar(leerGlobales(propiedades), propiedades);
+    }
+
+    /**
+     * Método que obtiene las temperaturas de control globales.
+     * 
+     * @param propiedades propiedades del fichero
+     * @return se devuelven los UmbralesTemperatura globales
+     * @throws IllegalArgumentException si faltan o no son válidas
+     */
+    private static UmbralesTemperatura leerGlobales(Properties propiedades) {
+        return new UmbralesTemperatura(Double.parseDouble(propiedades.get("temp_min").toString().trim()),
+                Double.parseDouble(propiedades.get("temp_max").toString().trim()));
+    }
+
     /**
      * Getter para devolver el puerto configurado
      * 
@@ -108,21 +190,96 @@ public class ConfigServer {
     }
 
     /**
-     * Getter para devolver la temperatura máxima configurada
+     * Getter para devolver el modo del servidor (HILOS, VIRTUALES o NIO)
      * 
-     * @return se devuelve un valor de tipo double
+     * @return se devuelve un String
      */
-    public double getTempMax() {
-        return temp_max;
+    public String getModoServidor() {
+        return modoServidor;
     }
 
     /**
-     * Getter para devolver la temperatura mínima configurada
+     * Getter para devolver el número de bucles Selector del modo NIO
+     * 
+     * @return se devuelve un valor de tipo entero, 0 si es uno por procesador
+     */
+    public int getNumSelectores() {
+        return numSelectores;
+    }
+
+    /**
+     * Getter para devolver los segundos entre cada estado del servidor
+     * 
+     * @return se devuelve un valor de tipo long, 0 si no se muestra
+     */
+    public long getIntervaloEstado() {
+        return intervaloEstado;
+    }
+
+    /**
+     * Getter para devolver la ventana con la que se comprueban las alertas
+     * 
+     * @return se devuelve una VentanaTiempo, null si se comprueba cada temperatura
+     */
+    public VentanaTiempo getVentanaAlertas() {
+        return ventanaAlertas;
+    }
+
+    /**
+     * Getter para devolver el directorio del almacén de temperaturas
+     * 
+     * @return se devuelve un string, vacío si no se guardan las temperaturas
+     */
+    public String getDirectorioAlmacen() {
+        return directorioAlmacen;
+    }
+
+    /**
+     * Getter para devolver los días que se guardan las lecturas antes de reducirlas
+     * a resúmenes
+     * 
+     * @return se devuelve un valor de tipo entero, 0 si no se reducen
+     */
+    public int getDiasBrutos() {
+        return diasBrutos;
+    }
+
+    /**
+     * Getter para devolver los días que se guardan los resúmenes
+     * 
+     * @return se devuelve un valor de tipo entero, 0 si no se eliminan
+     */
+    public int getDiasResumen() {
+        return diasResumen;
+    }
+
+    /**
+     * Getter para devolver los grados que debe volver una temperatura dentro del
+     * rango para que un sensor en alerta vuelva a estar normal
      * 
      * @return se devuelve un valor de tipo double
      */
-    public double getTempMin() {
-        return temp_min;
+    public double getHisteresis() {
+        return histeresis;
+    }
+
+    /**
+     * Getter para devolver el número máximo de alertas por minuto de cada sensor
+     * 
+     * @return se devuelve un valor de tipo entero, 0 sin límite
+     */
+    public int getAlertasPorMinuto() {
+        return alertasPorMinuto;
+    }
+
+    /**
+     * Getter para devolver las temperaturas de control configuradas, globales y de
+     * las zonas
+     * 
+     * @return se devuelven las ReglasTemperatura
+     */
+    public ReglasTemperatura getReglas() {
+        return reglas;
     }
 
 }
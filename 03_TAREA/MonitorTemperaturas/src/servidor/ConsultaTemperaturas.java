@@ -0,0 +1,204 @@
+/**
+ * Clase ConsultaTemperaturas
+ *
+ * Comando de texto para consultar el histórico de temperaturas del AlmacenTemperaturas desde cualquier conexión
+ * con el protocolo de texto, en lugar de enviar una temperatura se envía una línea con el comando:
+ *
+ *  - CONSULTA SERIES                         devuelve las series (sensores) del almacén.
+ *  - CONSULTA <serie|*> [desde] [hasta]      devuelve el número de lecturas, la mínima, la máxima, la media y los
+ *                                            percentiles 50, 90 y 99 de una serie, o de todas con '*'.
+ *
+ * Las marcas de tiempo pueden ser "ahora", una duración hacia atrás (-30s, -15m, -2h, -7d), una fecha (2025-02-24),
+ * una fecha y hora local (2025-02-24T10:30) o milisegundos desde la época. Por defecto desde es -1h y hasta es
+ * ahora.
+ *
+ * La consulta solo utiliza los resúmenes de cinco minutos del almacén (AlmacenTemperaturas.resumir), nunca
+ * descomprime las lecturas, por lo que cuesta lo mismo con los días con lecturas que con los compactados, y de los
+ * días completos solo lee sus agregados. Por ello
+ * se incluyen los intervalos de cinco minutos que empiezan entre desde y hasta, y los percentiles tienen el error
+ * del ancho de las cubetas del HistogramaTemperaturas.
+ *
+ * Para limitar el coste de una consulta, el intervalo no puede ser mayor de MAX_DIAS días y con '*' solo se
+ * pueden consultar hasta MAX_SERIES series, si hay más se debe consultar cada serie. El ServerManager responde las
+ * consultas desde su pool de consultas, no desde el hilo del sensor.
+ *
+ * La respuesta es una única línea: "CONSULTA <serie> <desde> <hasta> lecturas=.. minima=.. maxima=.. media=..
+ * p50=.. p90=.. p99=.." o "CONSULTA ERROR <motivo>".
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+public final class ConsultaTemperaturas {
+
+    // Comando de las consultas
+    public static final String COMANDO = "CONSULTA";
+    // Serie para consultar todas las series
+    public static final String TODAS = "*";
+    // Número máximo de series que se devuelven con CONSULTA SERIES o se acumulan con '*'
+    private static final int MAX_SERIES = 1000;
+    // Número máximo de días entre desde y hasta
+    private static final int MAX_DIAS = 366;
+
+    /**
+     * Constructor privado, la clase solo tiene métodos estáticos
+     */
+    private ConsultaTemperaturas() {
+    }
+
+    /**
+     * Método que comprueba si una línea recibida es una consulta.
+     *
+     * @param linea línea recibida
+     * @return se devuelve true si la línea empieza por COMANDO
+     */
+    public static boolean esConsulta(String linea) {
+        return linea.startsWith(COMANDO);
+    }
+
+    /**
+     * Método que responde a una consulta.
+     *
+     * @param linea   línea con la consulta
+     * @param almacen almacén de temperaturas, null si no está activo
+     * @return se devuelve la respuesta en una única línea
+     */
+    public static String responder(String linea, AlmacenTemperaturas almacen) {
+        if (almacen == null) {
+            return COMANDO + " ERROR el almacén de temperaturas no está activo (tsdb_directorio)";
+        }
+        String[] partes = linea.trim().split("\\s+");
+        if (partes.length < 2 || partes.length > 4) {
+            return COMANDO + " ERROR uso: " + COMANDO + " SERIES | " + COMANDO + " <serie|*> [desde] [hasta]";
+        }
+        if (partes[1].equals("SERIES")) {
+            return series(almacen.getSeries());
+        }
+        long ahora = System.currentTimeMillis();
+        long desde;
+        long hasta;
+        try {
+            desde = marcaTiempo(partes.length > 2 ? partes[2] : "-1h", ahora);
+            hasta = marcaTiempo(partes.length > 3 ? partes[3] : "ahora", ahora);
+        } catch (IllegalArgumentException | DateTimeParseException | ArithmeticException e) {
+            return COMANDO + " ERROR marca de tiempo no válida: " + e.getMessage();
+        }
+        if (desde >= hasta) {
+            return COMANDO + " ERROR desde debe ser anterior a hasta";
+        }
+        if (hasta - desde > ChronoUnit.DAYS.getDuration().toMillis() * MAX_DIAS) {
+            return COMANDO + " ERROR el intervalo no puede ser mayor de " + MAX_DIAS + " días";
+        }
+        // Se acumulan los resúmenes de la serie o de todas las series
+        AlmacenTemperaturas.Resumen resumen = new AlmacenTemperaturas.Resumen();
+        if (partes[1].equals(TODAS)) {
+            Set<String> series = almacen.getSeries();
+            if (series.size() > MAX_SERIES) {
+                return COMANDO + " ERROR hay " + series.size() + " series, con " + TODAS + " se pueden consultar "
+                        + MAX_SERIES + " como mucho";
+            }
+            for (String serie : series) {
+                almacen.resumir(serie, desde, hasta, resumen);
+            }
+        } else {
+            almacen.resumir(partes[1], desde, hasta, resumen);
+        }
+        return COMANDO + " " + partes[1] + " " + texto(desde) + " " + texto(hasta) + " " + texto(resumen);
+    }
+
+    /**
+     * Método que devuelve la respuesta con las series del almacén.
+     *
+     * @param series nombres de las series
+     * @return se devuelve un string
+     */
+    private static String series(Set<String> series) {
+        StringBuilder respuesta = new StringBuilder(COMANDO + " SERIES " + series.size());
+        int n = 0;
+        for (String serie : series) {
+            if (n++ == MAX_SERIES) {
+                respuesta.append(" ...");
+                break;
+            }
+            respuesta.append(' ').append(serie);
+        }
+        return respuesta.toString();
+    }
+
+    /**
+     * Método que convierte el texto de una marca de tiempo en milisegundos desde la
+     * época.
+     *
+     * @param texto texto de la marca de tiempo
+     * @param ahora marca de tiempo actual
+     * @return se devuelve un valor de tipo long
+     */
+    private static long marcaTiempo(String texto, long ahora) {
+        if (texto.equals("ahora")) {
+            return ahora;
+        }
+        if (texto.startsWith("-") && texto.length() > 2) {
+            long cantidad = Long.parseLong(texto.substring(1, texto.length() - 1));
+            ChronoUnit unidad;
+            switch (texto.charAt(texto.length() - 1)) {
+                case 's':
+                    unidad = ChronoUnit.SECONDS;
+                    break;
+                case 'm':
+                    unidad = ChronoUnit.MINUTES;
+                    break;
+                case 'h':
+                    unidad = ChronoUnit.HOURS;
+                    break;
+                case 'd':
+                    unidad = ChronoUnit.DAYS;
+                    break;
+                default:
+                    throw new IllegalArgumentException(texto);
+            }
+            return ahora - unidad.getDuration().multipliedBy(cantidad).toMillis();
+        }
+        if (texto.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(texto);
+        }
+        if (texto.contains("T")) {
+            return LocalDateTime.parse(texto).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return LocalDate.parse(texto).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Método que devuelve el texto de una marca de tiempo en hora local.
+     */
+    private static String texto(long marcaTiempo) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(marcaTiempo), ZoneId.systemDefault())
+                .truncatedTo(ChronoUnit.SECONDS).toString();
+    }
+
+    /**
+     * Método que devuelve el texto de un resumen.
+     */
+    private static String texto(AlmacenTemperaturas.Resumen resumen) {
+        if (resumen.getCuenta() == 0) {
+            return "lecturas=0";
+        }
+        // DecimalFormat no es seguro entre hilos, se crea uno por consulta
+        DecimalFormat df = new DecimalFormat("#.##");
+        return "lecturas=" + resumen.getCuenta() + " minima=" + df.format(resumen.getMinimo()) + " maxima="
+                + df.format(resumen.getMaximo()) + " media=" + df.format(resumen.getMedia()) + " p50="
+                + df.format(resumen.getPercentil(50)) + " p90=" + df.format(resumen.getPercentil(90)) + " p99="
+                + df.format(resumen.getPercentil(99));
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * Clase EstadisticasTemperatura
+ *
+ * Estadísticas de las temperaturas recibidas sin almacenar las temperaturas. Se guardan el número de temperaturas,
+ * la suma, la mínima, la máxima, la media y la varianza, por lo que registrar una temperatura tiene un coste fijo y la
+ * memoria no crece con el tiempo que el servidor está en marcha.
+ *
+ * La media y la varianza se calculan con el método de Welford, que actualiza la media y la suma de los cuadrados de
+ * las diferencias con cada temperatura sin perder precisión.
+ *
+ * Para que muchos sensores puedan registrar temperaturas a la vez sin esperarse entre ellos, las estadísticas se
+ * reparten en varias celdas (striping): cada hilo registra en la celda que le corresponde según su id, y solo se
+ * sincroniza esa celda. Al consultar las estadísticas se combinan las celdas con la fórmula de Chan para juntar
+ * varianzas. Las estadísticas de un único sensor, que solo registra un hilo, utilizan una sola celda.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+public class EstadisticasTemperatura {
+
+    // Se instancian las celdas en las que se registran las temperaturas
+    private final Celda[] celdas;
+    private final int mascara;
+
+    /**
+     * Constructor con una celda por cada dos procesadores, para las estadísticas
+     * que registran muchos hilos a la vez.
+     */
+    public EstadisticasTemperatura() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Constructor con el número de celdas indicado (se redondea a una potencia de
+     * dos).
+     *
+     * @param numCeldas número de celdas, 1 si solo registra un hilo
+     */
+    public EstadisticasTemperatura(int numCeldas) {
+        int tamano = 1;
+        while (tamano < numCeldas) {
+            tamano <<= 1;
+        }
+        this.celdas = new Celda[tamano];
+        for (int i = 0; i < tamano; i++) {
+            celdas[i] = new Celda();
+        }
+        this.mascara = tamano - 1;
+    }
+
+    /**
+     * Método para registrar una temperatura.
+     *
+     * @param temperatura temperatura recibida
+     */
+    public void registrar(double temperatura) {
+        Celda celda = celdas[0];
+        if (mascara != 0) {
+            // Se reparten los hilos entre las celdas mezclando los bits del id
+            long id = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+            celda = celdas[(int) (id >>> 32) & mascara];
+        }
+        synchronized (celda) {
+            celda.registrar(temperatura);
+        }
+    }
+
+    /**
+     * Método que devuelve las estadísticas de todas las temperaturas registradas
+     * hasta este momento.
+     *
+     * @return se devuelve un Resumen con las estadísticas
+     */
+    public Resumen resumen() {
+        Resumen total = new Resumen(0, 0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0);
+        for (Celda celda : celdas) {
+            synchronized (celda) {
+                total = total.combinar(celda.cuenta, celda.suma, celda.media, celda.minimo, celda.maximo, celda.m2);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Método que devuelve la media de las temperaturas registradas.
+     *
+     * @return se devuelve un valor de tipo double, 0 si no hay temperaturas
+     */
+    public double getMedia() {
+        return resumen().getMedia();
+    }
+
+    /**
+     * Clase interna con las estadísticas de una celda, se sincroniza desde fuera.
+     */
+    private static class Celda {
+        private long cuenta = 0;
+        private double suma = 0;
+        private double media = 0;
+        private double m2 = 0; // suma de los cuadrados de las diferencias con la media
+        private double minimo = Double.POSITIVE_INFINITY;
+        private double maximo = Double.NEGATIVE_INFINITY;
+
+        /**
+         * Método que registra una temperatura con el método de Welford.
+         *
+         * @param temperatura temperatura recibida
+         */
+        private void registrar(double temperatura) {
+            cuenta++;
+            suma += temperatura;
+            double diferencia = temperatura - media;
+            media += diferencia / cuenta;
+            m2 += diferencia * (temperatura - media);
+            minimo = Math.min(minimo, temperatura);
+            maximo = Math.max(maximo, temperatura);
+        }
+    }
+
+    /**
+     * Clase interna con las estadísticas en un momento dado, no cambia una vez
+     * creada.
+     */
+    public static final class Resumen {
+        private final long cuenta;
+        private final double suma;
+        private final double media;
+        private final double minimo;
+        private final double maximo;
+        private final double m2;
+
+        /**
+         * Constructor del resumen
+         */
+        private Resumen(long cuenta, double suma, double media, double minimo, double maximo, double m2) {
+            this.cuenta = cuenta;
+            this.suma = suma;
+            this.media = media;
+            this.minimo = minimo;
+            this.maximo = maximo;
+            this.m2 = m2;
+        }
+
+        /**
+         * Método que combina el resumen con las estadísticas de otra celda (fórmula
+         * de Chan).
+         *
+         * @return se devuelve un nuevo Resumen con las dos estadísticas
+         */
+        private Resumen combinar(long n, double s, double m, double min, double max, double otroM2) {
+            if (n == 0) {
+                return this;
+            }
+            if (cuenta == 0) {
+                return new Resumen(n, s, m, min, max, otroM2);
+            }
+            long total = cuenta + n;
+            double diferencia = m - media;
+            double nuevaMedia = media + diferencia * n / total;
+            double nuevoM2 = m2 + otroM2 + diferencia * diferencia * cuenta * n / total;
+            return new Resumen(total, suma + s, nuevaMedia, Math.min(minimo, min), Math.max(maximo, max), nuevoM2);
+        }
+
+        /**
+         * Getter para devolver el número de temperaturas
+         *
+         * @return se devuelve un valor de tipo long
+         */
+        public long getCuenta() {
+            return cuenta;
+        }
+
+        /**
+         * Getter para devolver la suma de las temperaturas
+         *
+         * @return se devuelve un valor de tipo double
+         */
+        public double getSuma() {
+            return suma;
+        }
+
+        /**
+         * Getter para devolver la media de las temperaturas
+         *
+         * @return se devuelve un valor de tipo double, 0 si no hay temperaturas
+         */
+        public double getMedia() {
+            return media;
+        }
+
+        /**
+         * Getter para devolver la temperatura mínima
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay temperaturas
+         */
+        public double getMinimo() {
+            return cuenta == 0 ? Double.NaN : minimo;
+        }
+
+        /**
+         * Getter para devolver la temperatura máxima
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay temperaturas
+         */
+        public double getMaximo() {
+            return cuenta == 0 ? Double.NaN : maximo;
+        }
+
+        /**
+         * Getter para devolver la varianza de las temperaturas (poblacional)
+         *
+         * @return se devuelve un valor de tipo double, 0 si no hay temperaturas
+         */
+        public double getVarianza() {
+            return cuenta == 0 ? 0 : m2 / cuenta;
+        }
+
+        /**
+         * Getter para devolver la desviación típica de las temperaturas
+         *
+         * @return se devuelve un valor de tipo double
+         */
+        public double getDesviacion() {
+            return Math.sqrt(getVarianza());
+        }
+    }
+
+}
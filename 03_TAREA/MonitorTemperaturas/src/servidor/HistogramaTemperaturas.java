@@ -0,0 +1,160 @@
+/**
+ * Clase HistogramaTemperaturas
+ *
+ * Histograma disperso de temperaturas para calcular percentiles sin guardar las temperaturas. Las temperaturas se
+ * cuentan en cubetas de ANCHO_CUBETA grados y solo se guardan las cubetas con temperaturas, ordenadas, por lo que
+ * un histograma de un sensor ocupa unos pocos bytes aunque tenga miles de temperaturas.
+ *
+ * Los histogramas se pueden combinar sumando las cuentas de cada cubeta, así el percentil de un intervalo largo
+ * se calcula combinando los histogramas de los resúmenes de cinco minutos. El percentil es el centro de la cubeta
+ * en la que se alcanza, por lo que el error es como mucho medio ancho de cubeta.
+ *
+ * Formato en bytes: número de cubetas (short) y por cada cubeta su índice (short) y su cuenta (int).
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class HistogramaTemperaturas {
+
+    // Ancho de las cubetas en grados
+    public static final double ANCHO_CUBETA = 0.5;
+
+    // Cubetas con temperaturas ordenadas y sus cuentas
+    private short[] cubetas = new short[4];
+    private long[] cuentas = new long[4];
+    private int tamano = 0;
+    private long total = 0;
+
+    /**
+     * Método que devuelve la cubeta de una temperatura.
+     *
+     * @param temperatura temperatura
+     * @return se devuelve un valor de tipo short
+     */
+    public static short cubetaDe(double temperatura) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.floor(temperatura / ANCHO_CUBETA)));
+    }
+
+    /**
+     * Método que cuenta una temperatura.
+     *
+     * @param temperatura temperatura
+     */
+    public void anadir(double temperatura) {
+        anadir(cubetaDe(temperatura), 1);
+    }
+
+    /**
+     * Método que suma una cuenta a una cubeta.
+     *
+     * @param cubeta índice de la cubeta
+     * @param cuenta número de temperaturas
+     */
+    public void anadir(short cubeta, long cuenta) {
+        int i = Arrays.binarySearch(cubetas, 0, tamano, cubeta);
+        if (i < 0) {
+            // Se inserta la cubeta en su posición
+            i = -i - 1;
+            if (tamano == cubetas.length) {
+                cubetas = Arrays.copyOf(cubetas, tamano * 2);
+                cuentas = Arrays.copyOf(cuentas, tamano * 2);
+            }
+            System.arraycopy(cubetas, i, cubetas, i + 1, tamano - i);
+            System.arraycopy(cuentas, i, cuentas, i + 1, tamano - i);
+            cubetas[i] = cubeta;
+            cuentas[i] = 0;
+            tamano++;
+        }
+        cuentas[i] += cuenta;
+        total += cuenta;
+    }
+
+    /**
+     * Método que suma a este histograma las cuentas de otro.
+     *
+     * @param otro histograma que se suma
+     */
+    public void combinar(HistogramaTemperaturas otro) {
+        for (int i = 0; i < otro.tamano; i++) {
+            anadir(otro.cubetas[i], otro.cuentas[i]);
+        }
+    }
+
+    /**
+     * Getter para devolver el número de temperaturas
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Método que devuelve el percentil de las temperaturas.
+     *
+     * @param percentil percentil entre 0 y 100
+     * @return se devuelve el centro de la cubeta del percentil, NaN si no hay
+     *         temperaturas
+     */
+    public double percentil(double percentil) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(total * percentil / 100.0));
+        long acumulado = 0;
+        int i = 0;
+        while (i < tamano - 1 && acumulado + cuentas[i] < objetivo) {
+            acumulado += cuentas[i];
+            i++;
+        }
+        return (cubetas[i] + 0.5) * ANCHO_CUBETA;
+    }
+
+    /**
+     * Getter para devolver el tamaño del histograma en bytes
+     *
+     * @return se devuelve un valor de tipo int
+     */
+    public int getTamanoBytes() {
+        return 2 + tamano * 6;
+    }
+
+    /**
+     * Método que escribe el histograma en el buffer.
+     *
+     * @param buffer buffer en el que se escribe
+     */
+    public void escribir(ByteBuffer buffer) {
+        buffer.putShort((short) tamano);
+        for (int i = 0; i < tamano; i++) {
+            buffer.putShort(cubetas[i]).putInt((int) Math.min(Integer.MAX_VALUE, cuentas[i]));
+        }
+    }
+
+    /**
+     * Método que lee un histograma escrito con escribir() y lo suma al destino.
+     *
+     * @param buffer  buffer con el histograma
+     * @param p       posición del histograma en el buffer, no se mueve la posición
+     * @param destino histograma al que se suman las cuentas, null para saltar el
+     *                histograma
+     * @return se devuelve el número de bytes del histograma
+     */
+    public static int leer(ByteBuffer buffer, int p, HistogramaTemperaturas destino) {
+        int numCubetas = Short.toUnsignedInt(buffer.getShort(p));
+        if (destino != null) {
+            for (int i = 0; i < numCubetas; i++) {
+                int c = p + 2 + i * 6;
+                destino.anadir(buffer.getShort(c), buffer.getInt(c + 2));
+            }
+        }
+        return 2 + numCubetas * 6;
+    }
+}
@@ -0,0 +1,655 @@
+/**
+ * Clase NioServer, servidor no bloqueante para muchos sensores
+ *
+ * En el modo por defecto (HILOS) cada sensor ocupa un hilo bloqueado en readLine(), con miles de
+ * sensores el número de hilos y la memoria se disparan. En el modo NIO los sensores se atienden
+ * con canales no bloqueantes (SocketChannel) repartidos entre uno o varios bucles Selector, cada
+ * bucle es un único hilo que atiende a todos sus sensores.
+ *
+ * El hilo que llama a start() abre el puerto, inicia los bucles y acepta las conexiones, que reparte por turnos
+ * entre los bucles. Si no se puede abrir el puerto no se queda ningún bucle en marcha. Un error al aceptar o
+ * configurar una conexión solo afecta a esa conexión: se cierra su canal y se siguen aceptando sensores.
+ *
+ * Las conexiones y desconexiones de los sensores no se muestran una a una por consola, se cuentan y el
+ * ServerManager las muestra en la línea de estado periódica.
+ *
+ * Cada bucle lee los datos en un ByteBuffer que reutiliza para todos sus sensores. Los bytes se
+ * van acumulando en la línea de cada sensor hasta encontrar el salto de línea, y la línea
+ * completa se procesa con el mismo método del ServerManager que en el modo HILOS
+ * (procesarLinea), es decir, con la misma comprobación de la temperatura. Si el sensor ha
+ * negociado el protocolo binario (ProtocoloBinario), las tramas y los lotes de tramas se procesan
+ * directamente desde el ByteBuffer con procesarTrama y procesarLote, sin crear cadenas.
+ *
+ * Las respuestas se dejan en la cola de salida del sensor y se escriben sin bloquear, si el
+ * sensor no las puede recibir en ese momento se escriben cuando el canal vuelva a estar
+ * disponible (OP_WRITE). La cola tiene como mucho ClientRegistry.MAX_PENDIENTES mensajes, si un
+ * sensor no lee sus mensajes los nuevos se descartan en lugar de ocupar memoria sin límite.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class NioServer {
+
+    // Tamaño del buffer de lectura de cada bucle
+    private static final int TAM_BUFFER = 16 * 1024;
+    // Longitud máxima de una línea, las líneas más largas se descartan
+    private static final int MAX_LINEA = 1024;
+    // Juego de caracteres de los mensajes, el mismo que usan los sockets del modo HILOS
+    private static final Charset CHARSET = Charset.defaultCharset();
+    // Milisegundos que se espera después de un error al aceptar una conexión
+    private static final long ESPERA_ERROR_ACEPTAR = 100;
+
+    // Se instancian los atributos de la clase
+    private final int port;
+    private final ServerManager server;
+    private final ClientRegistry listaClientes;
+    private final RegistroLogs logger;
+    private final BucleSelector[] bucles;
+    private ServerSocketChannel canalServidor;
+    private volatile boolean activo = true;
+    // Sensores conectados y desconectados desde que se inició el servidor
+    private final LongAdder conexiones = new LongAdder();
+    private final LongAdder desconexiones = new LongAdder();
+
+    /**
+     * Constructor de la clase
+     *
+     * @param port          puerto del servidor
+     * @param numBucles     número de bucles Selector, si es 0 o menos uno por procesador
+     * @param server        servidor que comprueba las temperaturas
+     * @param listaClientes lista de los sensores conectados
+     * @param logger        registro de los errores
+     */
+    public NioServer(int port, int numBucles, ServerManager server, ClientRegistry listaClientes,
+            RegistroLogs logger) {
+        this.port = port;
+        this.server = server;
+        this.listaClientes = listaClientes;
+        this.logger = logger;
+        this.bucles = new BucleSelector[numBucles > 0 ? numBucles : Runtime.getRuntime().availableProcessors()];
+    }
+
+    /**
+     * Método que inicia los bucles y acepta las conexiones hasta que se cierra el servidor.
+     *
+     * @throws IOException si no se puede abrir el servidor
+     */
+    public void start() throws IOException {
+        // Se abre el canal del servidor antes de iniciar los bucles, si no se puede
+        // abrir el puerto no queda ningún bucle en marcha
+        canalServidor = ServerSocketChannel.open();
+        try {
+            canalServidor.bind(new InetSocketAddress(port), 1024);
+            // Se inician los bucles Selector
+            for (int i = 0; i < bucles.length; i++) {
+                bucles[i] = new BucleSelector();
+                Thread hilo = new Thread(bucles[i], "selector-" + i);
+                bucles[i].hilo = hilo;
+                hilo.start();
+            }
+        } catch (IOException e) {
+            // Se cierra el canal y se finalizan los bucles que ya se han iniciado
+            shutdown();
+            throw e;
+        }
+        System.out.println("El servidor NIO atiende a los sensores con " + bucles.length + " bucles Selector");
+        // Siguiente bucle al que se asigna un sensor
+        int siguiente = 0;
+        // Se aceptan las conexiones con el canal en modo bloqueante, solo las usa este hilo
+        while (activo) {
+            SocketChannel canal;
+            try {
+                canal = canalServidor.accept();
+            } catch (ClosedChannelException e) {
+                // Si se ha cerrado el servidor se termina sin error
+                if (activo) {
+                    throw e;
+                }
+                return;
+            } catch (IOException e) {
+                // Un error al aceptar (por ejemplo, demasiados ficheros abiertos) no
+                // finaliza el servidor, se espera un momento y se sigue aceptando
+                errorConexion("Error al aceptar un sensor:-> " + e.getMessage());
+                try {
+                    Thread.sleep(ESPERA_ERROR_ACEPTAR);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            try {
+                canal.configureBlocking(false);
+                canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                // Solo se cierra la conexión de este sensor
+                errorConexion("Error al configurar la conexión del sensor:-> " + e.getMessage());
+                cerrarCanal(canal);
+                continue;
+            }
+            // Se reparte el sensor entre los bucles por turnos
+            bucles[siguiente].registrar(canal);
+            siguiente = (siguiente + 1) % bucles.length;
+        }
+    }
+
+    /**
+     * Método que registra y muestra el error de una conexión.
+     *
+     * @param mensaje mensaje del error
+     */
+    private void errorConexion(String mensaje) {
+        logger.alertServer(mensaje);
+        System.err.println(mensaje);
+    }
+
+    /**
+     * Método que cierra el canal de un sensor sin registrarlo.
+     *
+     * @param canal canal del sensor
+     */
+    private static void cerrarCanal(SocketChannel canal) {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // El canal ya no se puede usar
+        }
+    }
+
+    /**
+     * Getter para devolver el número de sensores que se han conectado desde que se
+     * inició el servidor
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getConexiones() {
+        return conexiones.sum();
+    }
+
+    /**
+     * Getter para devolver el número de sensores que se han desconectado desde que
+     * se inició el servidor
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getDesconexiones() {
+        return desconexiones.sum();
+    }
+
+    /**
+     * Método para finalizar el servidor y los bucles.
+     */
+    public void shutdown() {
+        activo = false;
+        try {
+            if (canalServidor != null) {
+                canalServidor.close();
+            }
+        } catch (IOException e) {
+            // Mensaje de error
+            String mensaje = "Error al cerrar el servidor NIO:-> " + e.getMessage();
+            // Se registra el error
+            logger.alertServer(mensaje);
+            System.err.println(mensaje);
+        }
+        for (BucleSelector bucle : bucles) {
+            if (bucle != null) {
+                bucle.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Clase interna con un bucle Selector, atiende en un único hilo a todos sus sensores.
+     */
+    private class BucleSelector implements Runnable {
+        private final Selector selector;
+        // Buffer de lectura compartido por todos los sensores del bucle
+        private final ByteBuffer lectura = ByteBuffer.allocateDirect(TAM_BUFFER);
+        // Canales aceptados pendientes de registrar en el selector
+        private final Queue<SocketChannel> nuevos = new ConcurrentLinkedQueue<>();
+        // Sensores con mensajes enviados desde otros hilos
+        private final Queue<SensorNio> conMensajes = new ConcurrentLinkedQueue<>();
+        private Thread hilo;
+
+        /**
+         * Constructor del bucle
+         *
+         * @throws IOException si no se puede abrir el selector
+         */
+        BucleSelector() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Método para añadir un sensor al bucle desde el hilo que acepta las conexiones.
+         *
+         * @param canal canal del sensor
+         */
+        void registrar(SocketChannel canal) {
+            nuevos.add(canal);
+            selector.wakeup();
+        }
+
+        /**
+         * Método para avisar al bucle de que un sensor tiene mensajes pendientes de enviar.
+         *
+         * @param sensor sensor con mensajes
+         */
+        void avisarEscritura(SensorNio sensor) {
+            conMensajes.add(sensor);
+            selector.wakeup();
+        }
+
+        /**
+         * Bucle principal, se espera a que algún sensor tenga datos y se procesan.
+         */
+        @Override
+        public void run() {
+            try {
+                while (activo) {
+                    selector.select();
+                    registrarNuevos();
+                    // Se escriben los mensajes enviados desde otros hilos
+                    SensorNio pendiente;
+                    while ((pendiente = conMensajes.poll()) != null) {
+                        escribir(pendiente);
+                    }
+                    // Se atienden los sensores con datos o que ya pueden recibir
+                    Iterator<SelectionKey> claves = selector.selectedKeys().iterator();
+                    while (claves.hasNext()) {
+                        SelectionKey clave = claves.next();
+                        claves.remove();
+                        SensorNio sensor = (SensorNio) clave.attachment();
+                        if (clave.isValid() && clave.isReadable()) {
+                            leer(sensor);
+                        }
+                        if (clave.isValid() && clave.isWritable()) {
+                            escribir(sensor);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Mensaje de error
+                String mensaje = "Error en el bucle " + hilo.getName() + ":-> " + e.getMessage();
+                // Se registra el error
+                logger.alertServer(mensaje);
+                System.err.println(mensaje);
+            } finally {
+                // Se cierran los sensores del bucle
+                for (SelectionKey clave : new ArrayList<>(selector.keys())) {
+                    cerrar((SensorNio) clave.attachment());
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // El bucle ya ha terminado
+                }
+            }
+        }
+
+        /**
+         * Método que registra en el selector los canales aceptados.
+         */
+        private void registrarNuevos() {
+            SocketChannel canal;
+            while ((canal = nuevos.poll()) != null) {
+                try {
+                    SensorNio sensor = new SensorNio(canal, this);
+                    sensor.clave = canal.register(selector, SelectionKey.OP_READ, sensor);
+                    listaClientes.addClient(sensor);
+                    // La conexión se cuenta para la línea de estado
+                    conexiones.increment();
+                } catch (IOException e) {
+                    errorConexion("Error al registrar el sensor:-> " + e.getMessage());
+                    cerrarCanal(canal);
+                }
+            }
+        }
+
+        /**
+         * Método que lee los datos del sensor y procesa las líneas completas.
+         *
+         * @param sensor sensor con datos
+         */
+        private void leer(SensorNio sensor) {
+            int leidos;
+            try {
+                lectura.clear();
+                leidos = sensor.canal.read(lectura);
+            } catch (IOException e) {
+                // Mensaje del error
+                String mensaje = "Error en la lectura del sensor " + sensor.getIdSensor() + ": ->" + e.getMessage();
+                logger.alertServer(mensaje);
+                System.out.println(mensaje);
+                cerrar(sensor);
+                return;
+            }
+            // Si el sensor ha cerrado la conexión
+            if (leidos < 0) {
+                cerrar(sensor);
+                return;
+            }
+            lectura.flip();
+            if (!lectura.hasRemaining()) {
+                return;
+            }
+            // Con el primer byte se sabe si el sensor utiliza el protocolo binario
+            if (sensor.protocolo == Protocolo.DESCONOCIDO) {
+                sensor.protocolo = ProtocoloBinario.esInicioCabecera(lectura.get(lectura.position()))
+                        ? Protocolo.BINARIO
+                        : Protocolo.TEXTO;
+            }
+            if (sensor.protocolo == Protocolo.BINARIO) {
+                leerTramas(sensor);
+                return;
+            }
+            while (lectura.hasRemaining()) {
+                byte b = lectura.get();
+                if (b == '\n') {
+                    sensor.finLinea();
+                } else if (b != '\r') {
+                    sensor.anadir(b);
+                }
+            }
+        }
+
+        /**
+         * Método que procesa la cabecera y las tramas del protocolo binario que hay en
+         * el buffer de lectura. Las tramas completas se procesan directamente desde el
+         * buffer de lectura, solo se copian los bytes de una trama que llega partida
+         * entre dos lecturas.
+         *
+         * @param sensor sensor con datos
+         */
+        private void leerTramas(SensorNio sensor) {
+            ByteBuffer parcial = sensor.parcial;
+            while (lectura.hasRemaining() && sensor.canal.isOpen()) {
+                int necesario = sensor.getNecesario();
+                if (necesario > parcial.capacity()) {
+                    // El buffer de la trama partida crece hasta el tamaño de un lote completo
+                    parcial = ByteBuffer.allocate(ProtocoloBinario.MAX_LOTE * ProtocoloBinario.TAM_TRAMA)
+                            .put(parcial.flip());
+                    sensor.parcial = parcial;
+                }
+                if (parcial.position() == 0 && lectura.remaining() >= necesario) {
+                    // La trama está completa en el buffer de lectura
+                    sensor.procesarBinario(lectura);
+                    lectura.position(lectura.position() + necesario);
+                } else {
+                    // Se copia el trozo de la trama hasta que esté completa
+                    parcial.limit(necesario);
+                    int limite = lectura.limit();
+                    lectura.limit(lectura.position() + Math.min(lectura.remaining(), parcial.remaining()));
+                    parcial.put(lectura);
+                    lectura.limit(limite);
+                    if (!parcial.hasRemaining()) {
+                        parcial.flip();
+                        sensor.procesarBinario(parcial);
+                        parcial.clear();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Método que escribe los mensajes pendientes del sensor sin bloquear. Si no se pueden
+         * escribir todos, se espera a que el canal esté disponible.
+         *
+         * @param sensor sensor con mensajes pendientes
+         */
+        private void escribir(SensorNio sensor) {
+            if (!sensor.clave.isValid()) {
+                return;
+            }
+            try {
+                ByteBuffer mensaje;
+                while ((mensaje = sensor.salida.peek()) != null) {
+                    sensor.canal.write(mensaje);
+                    if (mensaje.hasRemaining()) {
+                        break;
+                    }
+                    sensor.salida.poll();
+                    sensor.numSalida.decrementAndGet();
+                }
+                sensor.clave.interestOps(sensor.salida.isEmpty() ? SelectionKey.OP_READ
+                        : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                cerrar(sensor);
+            }
+        }
+
+        /**
+         * Método que cierra la conexión del sensor y lo elimina de la lista de clientes.
+         *
+         * @param sensor sensor que se desconecta
+         */
+        private void cerrar(SensorNio sensor) {
+            if (sensor == null || !sensor.canal.isOpen()) {
+                return;
+            }
+            sensor.clave.cancel();
+            try {
+                sensor.canal.close();
+            } catch (IOException e) {
+                // El canal ya no se puede usar
+            }
+            listaClientes.removeClient(sensor);
+            // La desconexión se cuenta para la línea de estado
+            desconexiones.increment();
+        }
+    }
+
+    /**
+     * Protocolo que utiliza un sensor, se conoce con el primer byte que envía.
+     */
+    private enum Protocolo {
+        DESCONOCIDO, TEXTO, BINARIO
+    }
+
+    /**
+     * Clase interna con la conexión de un sensor en modo NIO.
+     */
+    private class SensorNio implements ConexionSensor {
+        private final SocketChannel canal;
+        private final BucleSelector bucle;
+        private final String idConexion;
+        private volatile String idSensor;
+        private volatile String idSerie;
+        private SelectionKey clave;
+        private Protocolo protocolo = Protocolo.DESCONOCIDO;
+        // Id y versión de la cabecera del protocolo binario, null hasta recibir la cabecera
+        private Integer idBinario;
+        private int version;
+        // Tramas del lote que se está recibiendo, 0 si se espera el inicio de un lote
+        private int tramasLote = 0;
+        // Trama del protocolo binario que llega partida entre dos lecturas
+        private ByteBuffer parcial = ByteBuffer.allocate(ProtocoloBinario.TAM_TRAMA);
+        // Línea que se está recibiendo
+        private byte[] linea = new byte[32];
+        private int longitud = 0;
+        private boolean descartando = false;
+        // Mensajes pendientes de enviar
+        private final Queue<ByteBuffer> salida = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger numSalida = new AtomicInteger();
+        // Estadísticas de las temperaturas recientes del sensor, solo las registra el bucle
+        private final VentanasTemperatura ventanas = new VentanasTemperatura(1);
+        private final DecimalFormat df = new DecimalFormat("#.##");
+
+        /**
+         * Constructor del sensor
+         *
+         * @param canal canal del sensor
+         * @param bucle bucle que atiende al sensor
+         * @throws IOException si no se puede obtener la dirección del sensor
+         */
+        SensorNio(SocketChannel canal, BucleSelector bucle) throws IOException {
+            this.canal = canal;
+            this.bucle = bucle;
+            InetSocketAddress direccion = (InetSocketAddress) canal.getRemoteAddress();
+            this.idConexion = "sensorIP:_" + direccion.getAddress().getHostAddress() + "_" + direccion.getPort();
+            this.idSensor = idConexion;
+            this.idSerie = "IP:_" + direccion.getAddress().getHostAddress();
+        }
+
+        /**
+         * Método que añade un byte a la línea que se está recibiendo.
+         *
+         * @param b byte recibido
+         */
+        void anadir(byte b) {
+            if (descartando) {
+                return;
+            }
+            if (longitud == MAX_LINEA) {
+                // La línea es demasiado larga y se descarta hasta el salto de línea
+                descartando = true;
+                return;
+            }
+            if (longitud == linea.length) {
+                linea = Arrays.copyOf(linea, Math.min(MAX_LINEA, linea.length * 2));
+            }
+            linea[longitud++] = b;
+        }
+
+        /**
+         * Método que procesa la línea completa y empieza una nueva.
+         */
+        void finLinea() {
+            if (descartando) {
+                System.out.println("Error: el valor recibido del sensor " + idSensor + " es demasiado largo");
+            } else {
+                server.procesarLinea(new String(linea, 0, longitud, CHARSET), this);
+            }
+            longitud = 0;
+            descartando = false;
+        }
+
+        /**
+         * Método que devuelve los bytes que se necesitan para lo siguiente que envía el
+         * sensor: la cabecera, una trama, el inicio de un lote o las tramas del lote.
+         *
+         * @return se devuelve un valor de tipo int
+         */
+        int getNecesario() {
+            if (idBinario == null) {
+                return ProtocoloBinario.TAM_CABECERA;
+            }
+            if (version == ProtocoloBinario.VERSION) {
+                return ProtocoloBinario.TAM_TRAMA;
+            }
+            return tramasLote == 0 ? ProtocoloBinario.TAM_INICIO_LOTE : tramasLote * ProtocoloBinario.TAM_TRAMA;
+        }
+
+        /**
+         * Método que procesa la cabecera, una trama, el inicio de un lote o las tramas
+         * de un lote del protocolo binario, según lo que se espera del sensor.
+         *
+         * @param buffer buffer con los bytes en su posición actual, no se mueve
+         */
+        void procesarBinario(ByteBuffer buffer) {
+            if (idBinario != null && version == ProtocoloBinario.VERSION) {
+                server.procesarTrama(buffer, idBinario, this);
+            } else if (idBinario != null && tramasLote > 0) {
+                server.procesarLote(buffer, tramasLote, idBinario, this);
+                tramasLote = 0;
+            } else if (idBinario != null) {
+                tramasLote = ProtocoloBinario.getNumTramas(buffer);
+                if (tramasLote < 1 || tramasLote > ProtocoloBinario.MAX_LOTE) {
+                    // Si el lote no es válido no se puede saber dónde empieza el siguiente
+                    System.out.println("Error: el lote recibido del sensor " + idSensor + " tiene " + tramasLote
+                            + " tramas, se cierra la conexión");
+                    bucle.cerrar(this);
+                }
+            } else if (ProtocoloBinario.cabeceraValida(buffer)) {
+                idBinario = ProtocoloBinario.getIdCabecera(buffer);
+                version = ProtocoloBinario.getVersion(buffer);
+                idSensor = idSensor + "_ID:_" + idBinario;
+                idSerie = "ID:_" + idBinario;
+                System.out.println("El sensor " + idSensor + " utiliza el protocolo binario " + version);
+                sendMessage(ProtocoloBinario.getRespuestaAceptado(version));
+            } else {
+                // Si no se acepta la cabecera se cierra la conexión
+                System.out.println("Error: el sensor " + idSensor + " utiliza un protocolo binario no soportado");
+                sendMessage(ProtocoloBinario.RESPUESTA_RECHAZADO);
+                bucle.cerrar(this);
+            }
+        }
+
+        @Override
+        public String getIdSensor() {
+            return idSensor;
+        }
+
+        @Override
+        public String getIdSerie() {
+            return idSerie;
+        }
+
+        @Override
+        public String getIdConexion() {
+            return idConexion;
+        }
+
+        @Override
+        public void sendMessage(String message) {
+            encolarMensaje(message);
+        }
+
+        @Override
+        public boolean encolarMensaje(String mensaje) {
+            // Si el sensor no lee sus mensajes se descartan los nuevos
+            if (numSalida.incrementAndGet() > ClientRegistry.MAX_PENDIENTES) {
+                numSalida.decrementAndGet();
+                return false;
+            }
+            salida.add(ByteBuffer.wrap((mensaje + System.lineSeparator()).getBytes(CHARSET)));
+            // Si se envía desde el bucle se escribe directamente, si no se avisa al bucle
+            if (Thread.currentThread() == bucle.hilo) {
+                bucle.escribir(this);
+            } else {
+                bucle.avisarEscritura(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void registrarTemperatura(double temperatura) {
+            ventanas.registrar(temperatura);
+        }
+
+        @Override
+        public String calcTemMedia() {
+            return "Temperatura media del sensor (" + ventanas.textoMedias(df) + ")";
+        }
+
+        @Override
+        public VentanasTemperatura getVentanas() {
+            return ventanas;
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/**
+ * Clase ProtocoloBinario
+ *
+ * Protocolo binario opcional para que los sensores envíen las temperaturas sin texto. Con el protocolo de texto
+ * cada temperatura es una línea que el servidor convierte en String, comprueba con una expresión regular y
+ * convierte en double, con miles de sensores ese trabajo ocupa la mayor parte de la CPU del servidor. Con el
+ * protocolo binario cada temperatura es una trama de tamaño fijo que se lee directamente de un ByteBuffer.
+ *
+ * Negociación: nada más conectarse, el sensor envía una cabecera de 8 bytes:
+ *  - 3 bytes con la marca del protocolo (0xB1 'M' 'T'), el primer byte nunca puede empezar una línea de texto.
+ *  - 1 byte con la versión del protocolo: VERSION (tramas sueltas) o VERSION_LOTES (lotes de tramas).
+ *  - 4 bytes (int) con el id del sensor.
+ * Si el servidor acepta la versión responde con la línea getRespuestaAceptado(version), si no responde con
+ * RESPUESTA_RECHAZADO y cierra la conexión. Si el primer byte no es la marca, la conexión utiliza el
+ * protocolo de texto como hasta ahora.
+ *
+ * Tramas: cada temperatura se envía en una trama de 16 bytes (orden de red, big-endian):
+ *  - 4 bytes (int) con el id del sensor, con tramas sueltas el mismo de la cabecera.
+ *  - 8 bytes (long) con la marca de tiempo de la lectura, en milisegundos desde la época.
+ *  - 4 bytes (float) con la temperatura.
+ *
+ * Lotes (VERSION_LOTES): para las pasarelas que reúnen las lecturas de muchos sensores, cada mensaje es un lote
+ * con 2 bytes (unsigned short) con el número de tramas, de 1 a MAX_LOTE, seguidos de las tramas. Las tramas de un
+ * lote pueden ser de sensores distintos, cada una lleva su id. El servidor procesa el lote de una vez y responde
+ * con un único mensaje.
+ *
+ * Las respuestas del servidor al sensor siguen siendo líneas de texto en los dos protocolos.
+ *
+ * La clase también tiene las constantes del protocolo de texto que comparten el servidor y los clientes, como el
+ * separador de las temperaturas de un lote (SEPARADOR_LOTE), así los clientes no dependen del ServerManager.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.nio.ByteBuffer;
+
+public final class ProtocoloBinario {
+
+    // Marca del protocolo, primeros bytes de la cabecera
+    public static final byte MARCA_0 = (byte) 0xB1;
+    public static final byte MARCA_1 = 'M';
+    public static final byte MARCA_2 = 'T';
+    // Versiones del protocolo, con tramas sueltas o con lotes de tramas
+    public static final byte VERSION = 1;
+    public static final byte VERSION_LOTES = 2;
+    // Tamaño de la cabecera, de las tramas y del inicio de un lote en bytes
+    public static final int TAM_CABECERA = 8;
+    public static final int TAM_TRAMA = 16;
+    public static final int TAM_INICIO_LOTE = 2;
+    // Número máximo de tramas de un lote, un lote completo cabe en el buffer de lectura del NioServer
+    public static final int MAX_LOTE = 512;
+    // Respuesta del servidor si no acepta la cabecera
+    public static final String RESPUESTA_RECHAZADO = "PROTOCOLO BINARIO NO SOPORTADO";
+    // Separador de las temperaturas de un lote en el protocolo de texto
+    public static final char SEPARADOR_LOTE = ';';
+
+    /**
+     * Constructor privado, la clase solo tiene métodos estáticos
+     */
+    private ProtocoloBinario() {
+    }
+
+    /**
+     * Método que comprueba si el primer byte de la conexión es el de la cabecera
+     * binaria.
+     *
+     * @param primero primer byte recibido
+     * @return se devuelve true si el sensor utiliza el protocolo binario
+     */
+    public static boolean esInicioCabecera(int primero) {
+        return (byte) primero == MARCA_0;
+    }
+
+    /**
+     * Método que comprueba la cabecera que hay en la posición actual del buffer,
+     * sin mover la posición.
+     *
+     * @param cabecera buffer con al menos TAM_CABECERA bytes
+     * @return se devuelve true si la marca y la versión son válidas
+     */
+    public static boolean cabeceraValida(ByteBuffer cabecera) {
+        int p = cabecera.position();
+        byte version = cabecera.get(p + 3);
+        return cabecera.get(p) == MARCA_0 && cabecera.get(p + 1) == MARCA_1 && cabecera.get(p + 2) == MARCA_2
+                && (version == VERSION || version == VERSION_LOTES);
+    }
+
+    /**
+     * Getter para devolver la versión de la cabecera que hay en la posición actual
+     * del buffer, sin mover la posición.
+     *
+     * @param cabecera buffer con al menos TAM_CABECERA bytes
+     * @return se devuelve un valor de tipo int
+     */
+    public static int getVersion(ByteBuffer cabecera) {
+        return cabecera.get(cabecera.position() + 3);
+    }
+
+    /**
+     * Getter para devolver la respuesta del servidor si acepta la cabecera
+     *
+     * @param version versión aceptada
+     * @return se devuelve un string
+     */
+    public static String getRespuestaAceptado(int version) {
+        return "PROTOCOLO BINARIO " + version + " ACEPTADO";
+    }
+
+    /**
+     * Getter para devolver el id del sensor de la cabecera que hay en la posición
+     * actual del buffer, sin mover la posición.
+     *
+     * @param cabecera buffer con al menos TAM_CABECERA bytes
+     * @return se devuelve un valor de tipo int
+     */
+    public static int getIdCabecera(ByteBuffer cabecera) {
+        return cabecera.getInt(cabecera.position() + 4);
+    }
+
+    /**
+     * Getter para devolver el número de tramas del lote que empieza en la posición
+     * actual del buffer, sin mover la posición.
+     *
+     * @param lote buffer con al menos TAM_INICIO_LOTE bytes
+     * @return se devuelve un valor de tipo int, se debe comprobar que está entre 1
+     *         y MAX_LOTE
+     */
+    public static int getNumTramas(ByteBuffer lote) {
+        return Short.toUnsignedInt(lote.getShort(lote.position()));
+    }
+
+    /**
+     * Getter para devolver el id del sensor de la trama que hay en la posición
+     * actual del buffer, sin mover la posición.
+     *
+     * @param trama buffer con al menos TAM_TRAMA bytes
+     * @return se devuelve un valor de tipo int
+     */
+    public static int getIdSensor(ByteBuffer trama) {
+        return trama.getInt(trama.position());
+    }
+
+    /**
+     * Getter para devolver la marca de tiempo de la trama que hay en la posición
+     * actual del buffer, sin mover la posición.
+     *
+     * @param trama buffer con al menos TAM_TRAMA bytes
+     * @return se devuelve un valor de tipo long, milisegundos desde la época
+     */
+    public static long getMarcaTiempo(ByteBuffer trama) {
+        return trama.getLong(trama.position() + 4);
+    }
+
+    /**
+     * Getter para devolver la temperatura de la trama que hay en la posición
+     * actual del buffer, sin mover la posición.
+     *
+     * @param trama buffer con al menos TAM_TRAMA bytes
+     * @return se devuelve un valor de tipo float
+     */
+    public static float getTemperatura(ByteBuffer trama) {
+        return trama.getFloat(trama.position() + 12);
+    }
+
+    /**
+     * Método que escribe la cabecera en el buffer, para los sensores.
+     *
+     * @param buffer   buffer en el que se escribe
+     * @param idSensor id del sensor
+     */
+    public static void escribirCabecera(ByteBuffer buffer, int idSensor) {
+        escribirCabecera(buffer, idSensor, VERSION);
+    }
+
+    /**
+     * Método que escribe la cabecera de la versión indicada en el buffer, para los
+     * sensores.
+     *
+     * @param buffer   buffer en el que se escribe
+     * @param idSensor id del sensor o de la pasarela
+     * @param version  VERSION o VERSION_LOTES
+     */
+    public static void escribirCabecera(ByteBuffer buffer, int idSensor, byte version) {
+        buffer.put(MARCA_0).put(MARCA_1).put(MARCA_2).put(version).putInt(idSensor);
+    }
+
+    /**
+     * Método que escribe el inicio de un lote en el buffer, a continuación se
+     * escriben sus tramas.
+     *
+     * @param buffer    buffer en el que se escribe
+     * @param numTramas número de tramas del lote, de 1 a MAX_LOTE
+     */
+    public static void escribirInicioLote(ByteBuffer buffer, int numTramas) {
+        buffer.putShort((short) numTramas);
+    }
+
+    /**
+     * Método que escribe una trama en el buffer, para los sensores.
+     *
+     * @param buffer      buffer en el que se escribe
+     * @param idSensor    id del sensor
+     * @param marcaTiempo milisegundos desde la época
+     * @param temperatura temperatura leída
+     */
+    public static void escribirTrama(ByteBuffer buffer, int idSensor, long marcaTiempo, float temperatura) {
+        buffer.putInt(idSensor).putLong(marcaTiempo).putFloat(temperatura);
+    }
+}
@@ -18,6 +18,7 @@
  *  - Método para registrar el inicio del servidor.
  *  - Método para registrar los errores que surjan en el servidor
  *  - Método para registrar la alertas de temperatura cuando estás no esten dentro de los valores de configuración.
+ *    Las alertas que escribe el hilo de AlertasTemperatura se registran por lotes, con una única escritura.
  * 
  * @author DMIAPER (Diógenes Miaja Pérez)
  * Fecha: 24-02-2025
@@ -28,8 +29,8 @@ package servidor;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.logging.*;
 
 public class RegistroLogs {
@@ -37,7 +38,12 @@ public class RegistroLogs {
      * Se declara el format de fecha que se va utilizar en los registros, ejemplo:
      * viernes, 27 de diciembre de 2024, con la hora en formato 24 horas.
      */
-    DateTimeFormatter formato = DateTimeFormatter.ofPattern("EEEE, dd 'de' MMMM 'de' yyyy, HH:mm:ss ");
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter
+            .ofPattern("EEEE, dd 'de' MMMM 'de' yyyy, HH:mm:ss ");
+
+    // Reloj compartido que guarda el segundo ya formateado y evita formatear la
+    // fecha en cada registro.
+    private static final RelojRegistro reloj = new RelojRegistro(FORMATO_FECHA);
 
     // Se instancia log para realizar los registros
     private Logger log;
@@ -90,16 +96,6 @@ public class RegistroLogs {
         }
     }
 
-    /**
-     * Devuelve la fecha y hora actuales a ser llamada.
-     * 
-     * @return
-     */
-    public LocalDateTime fechaActual() {
-        // Se devuelve la fecha y hora.
-        return LocalDateTime.now();
-    }
-
     /**
      * Función para registrar el inicio del servidor
      * 
@@ -116,7 +112,7 @@ public class RegistroLogs {
         mensaje = "----------------------------------------------------------";
         log.info(mensaje);
         // Mensaje de inicio del servidor.
-        mensaje = String.format("[%s] - Inicio del servidor en el puerto, %s", fechaActual().format(formato),
+        mensaje = String.format("[%s] - Inicio del servidor en el puerto, %s", reloj.marca(),
                 PORT);
         // se muestra el mensaje
         log.info(mensaje);
@@ -131,7 +127,7 @@ public class RegistroLogs {
      * @param mensaje se recibe un String con el tipo de error
      */
     public void alertServer(String mensaje) {
-        log.warning("Error de proceso: " + fechaActual().format(formato) + " " + mensaje);
+        log.warning("Error de proceso: " + reloj.marca() + " " + mensaje);
     }
 
     /**
@@ -142,7 +138,25 @@ public class RegistroLogs {
      */
     public void regAlertasTemp(String mensaje) {
         // Se registrará el mensaje de advertencia con la fecha del acontecimiento
-        log.warning("-Alerta de temperatura: " + fechaActual().format(formato) + " " + mensaje);
+        log.warning("-Alerta de temperatura: " + reloj.marca() + " " + mensaje);
+    }
+
+    /**
+     * Método que registra un lote de advertencias de temperatura con una única
+     * escritura en el fichero, una línea por advertencia.
+     * 
+     * @param mensajes se recibe una lista con las advertencias
+     */
+    public void regAlertasTemp(List<String> mensajes) {
+        String marca = reloj.marca();
+        StringBuilder lote = new StringBuilder();
+        for (String mensaje : mensajes) {
+            if (lote.length() > 0) {
+                lote.append(System.lineSeparator());
+            }
+            lote.append("-Alerta de temperatura: ").append(marca).append(' ').append(mensaje);
+        }
+        log.warning(lote.toString());
     }
 
 }
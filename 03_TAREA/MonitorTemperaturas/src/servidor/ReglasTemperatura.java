@@ -0,0 +1,214 @@
+/**
+ * Clase ReglasTemperatura
+ *
+ * Tabla de reglas con las temperaturas de control de cada sensor. Los sensores se agrupan en zonas, cada zona con
+ * sus UmbralesTemperatura, y los sensores que no están en ninguna zona utilizan los umbrales globales (temp_min y
+ * temp_max). En config.properties:
+ *
+ *   zona.camaras=2,8
+ *   zona.camaras.sensores=ID:_100*,ID:_2001,IP:_10.0.5.*
+ *
+ * Los sensores de una zona se indican por su id de serie (IP:_ip con el protocolo de texto, ID:_n con el binario):
+ * un id exacto o un prefijo terminado en '*'. Si un sensor encaja con varias reglas se utiliza el id exacto y si no
+ * el prefijo más largo.
+ *
+ * Las reglas se compilan al leer la configuración: los ids exactos en un HashMap y los prefijos en un árbol de
+ * prefijos (trie) por caracteres, por lo que buscar la regla de un sensor cuesta lo que mide su id y no depende del
+ * número de reglas. Además, el resultado de cada búsqueda se guarda, así las siguientes lecturas del mismo sensor
+ * solo consultan un mapa. Las reglas no cambian una vez compiladas: al actualizar config.properties se compilan unas
+ * reglas nuevas y se cambian de una vez, junto a su memoria de búsquedas.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class ReglasTemperatura {
+
+    // Prefijo de las claves de las zonas en config.properties
+    public static final String PREFIJO_ZONA = "zona.";
+    // Sufijo de la clave con los sensores de una zona
+    public static final String SUFIJO_SENSORES = ".sensores";
+    // Comodín de los prefijos
+    private static final char COMODIN = '*';
+    // Número máximo de búsquedas que se guardan
+    private static final int MAX_RESUELTOS = 100_000;
+
+    // Umbrales de los sensores que no están en ninguna zona
+    private final UmbralesTemperatura globales;
+    // Umbrales de los ids exactos
+    private final Map<String, UmbralesTemperatura> exactos = new HashMap<>();
+    // Raíz del árbol de prefijos
+    private final Nodo raiz = new Nodo();
+    // Número de zonas
+    private final int numZonas;
+    // Resultado de las búsquedas ya realizadas
+    private final Map<String, UmbralesTemperatura> resueltos = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor privado, las reglas se crean con compilar() o sinZonas()
+     */
+    private ReglasTemperatura(UmbralesTemperatura globales, int numZonas) {
+        this.globales = globales;
+        this.numZonas = numZonas;
+    }
+
+    /**
+     * Método que crea unas reglas sin zonas, todos los sensores utilizan los
+     * umbrales globales.
+     *
+     * @param globales umbrales globales
+     * @return se devuelven las ReglasTemperatura
+     */
+    public static ReglasTemperatura sinZonas(UmbralesTemperatura globales) {
+        return new ReglasTemperatura(globales, 0);
+    }
+
+    /**
+     * Método que compila las zonas de la configuración.
+     *
+     * @param globales    umbrales globales
+     * @param propiedades propiedades de config.properties
+     * @return se devuelven las ReglasTemperatura
+     * @throws IllegalArgumentException si una zona no es válida o un sensor está
+     *                                  en dos zonas
+     */
+    public static ReglasTemperatura compilar(UmbralesTemperatura globales, Properties propiedades) {
+        // Se buscan las zonas, las claves zona.<nombre> sin el sufijo
+        Map<String, UmbralesTemperatura> zonas = new HashMap<>();
+        for (String clave : propiedades.stringPropertyNames()) {
+            if (clave.startsWith(PREFIJO_ZONA) && !clave.endsWith(SUFIJO_SENSORES)) {
+                zonas.put(clave.substring(PREFIJO_ZONA.length()), leerUmbrales(clave, propiedades.getProperty(clave)));
+            }
+        }
+        ReglasTemperatura reglas = new ReglasTemperatura(globales, zonas.size());
+        for (Map.Entry<String, UmbralesTemperatura> zona : zonas.entrySet()) {
+            String sensores = propiedades.getProperty(PREFIJO_ZONA + zona.getKey() + SUFIJO_SENSORES, "");
+            for (String patron : sensores.split(",")) {
+                patron = patron.trim();
+                if (!patron.isEmpty()) {
+                    reglas.anadir(patron, zona.getValue(), zona.getKey());
+                }
+            }
+        }
+        return reglas;
+    }
+
+    /**
+     * Método que convierte el valor "mínima,máxima" de una zona en umbrales.
+     *
+     * @param clave clave de la zona
+     * @param valor valor de la zona
+     * @return se devuelven los UmbralesTemperatura
+     */
+    private static UmbralesTemperatura leerUmbrales(String clave, String valor) {
+        String[] partes = valor.split(",");
+        if (partes.length != 2) {
+            throw new IllegalArgumentException(clave + " debe ser temp_min,temp_max: " + valor);
+        }
+        return new UmbralesTemperatura(Double.parseDouble(partes[0].trim()), Double.parseDouble(partes[1].trim()));
+    }
+
+    /**
+     * Método que añade un patrón a las reglas, un id exacto o un prefijo terminado
+     * en COMODIN.
+     *
+     * @param patron   patrón de los sensores
+     * @param umbrales umbrales de la zona
+     * @param zona     nombre de la zona
+     */
+    private void anadir(String patron, UmbralesTemperatura umbrales, String zona) {
+        UmbralesTemperatura anterior;
+        if (patron.indexOf(COMODIN) == patron.length() - 1) {
+            // Se recorre el árbol creando los nodos del prefijo
+            Nodo nodo = raiz;
+            for (int i = 0; i < patron.length() - 1; i++) {
+                nodo = nodo.hijos.computeIfAbsent(patron.charAt(i), c -> new Nodo());
+            }
+            anterior = nodo.umbrales;
+            nodo.umbrales = umbrales;
+        } else if (patron.indexOf(COMODIN) < 0) {
+            anterior = exactos.put(patron, umbrales);
+        } else {
+            throw new IllegalArgumentException("zona " + zona + ": el comodín solo puede ir al final, " + patron);
+        }
+        if (anterior != null) {
+            throw new IllegalArgumentException("zona " + zona + ": los sensores " + patron + " ya están en otra zona");
+        }
+    }
+
+    /**
+     * Método que devuelve los umbrales de un sensor.
+     *
+     * @param serie id de serie del sensor
+     * @return se devuelven los UmbralesTemperatura de su zona, o los globales
+     */
+    public UmbralesTemperatura buscar(String serie) {
+        if (numZonas == 0) {
+            return globales;
+        }
+        UmbralesTemperatura umbrales = resueltos.get(serie);
+        if (umbrales == null) {
+            umbrales = resolver(serie);
+            if (resueltos.size() < MAX_RESUELTOS) {
+                resueltos.put(serie, umbrales);
+            }
+        }
+        return umbrales;
+    }
+
+    /**
+     * Método que busca la regla de un sensor: el id exacto o el prefijo más largo.
+     *
+     * @param serie id de serie del sensor
+     * @return se devuelven los UmbralesTemperatura
+     */
+    private UmbralesTemperatura resolver(String serie) {
+        UmbralesTemperatura umbrales = exactos.get(serie);
+        if (umbrales != null) {
+            return umbrales;
+        }
+        umbrales = globales;
+        Nodo nodo = raiz;
+        for (int i = 0; nodo != null; i++) {
+            if (nodo.umbrales != null) {
+                umbrales = nodo.umbrales;
+            }
+            nodo = i < serie.length() ? nodo.hijos.get(serie.charAt(i)) : null;
+        }
+        return umbrales;
+    }
+
+    /**
+     * Getter para devolver los umbrales globales
+     *
+     * @return se devuelven los UmbralesTemperatura
+     */
+    public UmbralesTemperatura getGlobales() {
+        return globales;
+    }
+
+    /**
+     * Getter para devolver el número de zonas
+     *
+     * @return se devuelve un valor de tipo int
+     */
+    public int getNumZonas() {
+        return numZonas;
+    }
+
+    /**
+     * Clase interna con un nodo del árbol de prefijos.
+     */
+    private static final class Nodo {
+        private final Map<Character, Nodo> hijos = new HashMap<>();
+        private UmbralesTemperatura umbrales;
+    }
+}
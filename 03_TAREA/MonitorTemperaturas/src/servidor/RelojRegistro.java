@@ -0,0 +1,99 @@
+/**
+ * Clase RelojRegistro
+ *
+ * Reloj compartido por el registro del servidor para obtener la marca de tiempo de cada
+ * mensaje sin tener que formatear la fecha en cada llamada.
+ *
+ * El formato de fecha que se usa en los registros es muy largo (día de la semana,
+ * mes en texto, etc.) y formatearlo con LocalDateTime.now().format() en cada
+ * mensaje genera muchos objetos cuando hay mucha carga. Como el formato solo
+ * tiene resolución de segundos, se guarda el texto ya formateado del segundo
+ * actual y solo se vuelve a generar cuando cambia el segundo.
+ *
+ * Además, cada marca lleva un campo de nanosegundos monotónico (System.nanoTime)
+ * contados desde que se creó el reloj, que permite medir latencias entre
+ * mensajes aunque estén dentro del mismo segundo.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+package servidor;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+public class RelojRegistro {
+
+    /**
+     * Clase interna inmutable con el segundo y su texto formateado, se sustituye
+     * entera para que los hilos siempre lean un par coherente.
+     */
+    private static final class SegundoFormateado {
+        private final long segundo;
+        private final String texto;
+
+        private SegundoFormateado(long segundo, String texto) {
+            this.segundo = segundo;
+            this.texto = texto;
+        }
+    }
+
+    //formato de fecha que se va a utilizar
+    private final DateTimeFormatter formato;
+    //zona horaria con la que se convierte el instante a fecha local
+    private final ZoneId zona;
+    //origen de los nanosegundos monotónicos
+    private final long origenNanos;
+    //último segundo formateado, volatile para que sea visible entre hilos
+    private volatile SegundoFormateado cache;
+
+    /**
+     * Constructor del reloj, recibe el formato de fecha que se va a utilizar.
+     * @param formato
+     */
+    public RelojRegistro(DateTimeFormatter formato) {
+        this.formato = formato;
+        this.zona = ZoneId.systemDefault();
+        this.origenNanos = System.nanoTime();
+        this.cache = new SegundoFormateado(-1, "");
+    }
+
+    /**
+     * Devuelve la fecha actual formateada, solo se formatea de nuevo cuando
+     * ha cambiado el segundo.
+     * @return
+     */
+    public String fecha() {
+        //se obtiene el segundo actual
+        long ahora = System.currentTimeMillis();
+        long segundo = Math.floorDiv(ahora, 1000L);
+        SegundoFormateado actual = cache;
+        //si el segundo no coincide se vuelve a formatear
+        if (actual.segundo != segundo) {
+            String texto = LocalDateTime.ofInstant(Instant.ofEpochSecond(segundo), zona).format(formato);
+            actual = new SegundoFormateado(segundo, texto);
+            cache = actual;
+        }
+        return actual.texto;
+    }
+
+    /**
+     * Devuelve los nanosegundos transcurridos desde que se creó el reloj.
+     * @return
+     */
+    public long nanos() {
+        return System.nanoTime() - origenNanos;
+    }
+
+    /**
+     * Devuelve la marca completa que se escribe en los registros:
+     * la fecha formateada y los nanosegundos monotónicos.
+     * @return
+     */
+    public String marca() {
+        return fecha() + " | " + nanos() + " ns";
+    }
+}
@@ -0,0 +1,388 @@
+/**
+ * Clase SegmentoDia
+ *
+ * Fichero con los bloques de temperaturas de un día, solo se añaden bloques al final (append-only). El fichero se
+ * proyecta en memoria (MappedByteBuffer), por lo que escribir o leer un bloque es copiar bytes en memoria y el
+ * sistema operativo se encarga de llevarlos al disco. Si el fichero se llena se vuelve a proyectar con el doble de
+ * tamaño, y al cerrarlo se recorta al tamaño de los datos.
+ *
+ * Formato del fichero:
+ *  - Cabecera: MAGIA (int) y VERSION (int).
+ *  - Bloques: tipo (byte), longitud de la serie (short), serie (UTF-8), inicio y fin (long), número de lecturas
+ *    (int), mínima y máxima (float), suma (double), longitud de los datos (int) y los datos.
+ * El tipo de un bloque es BRUTO (lecturas comprimidas con BloqueGorilla) o RESUMEN (intervalos del resumen). El
+ * tipo se escribe el último, y un tipo 0 indica el final de los datos, por lo que si el servidor se detiene a
+ * mitad de escribir un bloque ese bloque se ignora al volver a abrir el fichero.
+ *
+ * Los días compactados (reducidos a sus resúmenes) se guardan en un fichero con la extensión EXT_RESUMEN.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SegmentoDia {
+
+    // Cabecera del fichero
+    private static final int MAGIA = 0x4D545344; // "MTSD"
+    private static final int VERSION = 2; // 2: intervalos del resumen con histograma
+    private static final int TAM_CABECERA = 8;
+    // Tamaño de la cabecera de un bloque sin la serie
+    private static final int TAM_CABECERA_BLOQUE = 1 + 2 + 8 + 8 + 4 + 4 + 4 + 8 + 4;
+    // Tamaño con el que se proyecta un fichero nuevo
+    private static final int TAM_INICIAL = 1024 * 1024;
+    // Tipos de bloque
+    public static final byte BRUTO = 1;
+    public static final byte RESUMEN = 2;
+    // Extensiones de los ficheros
+    public static final String EXT_BRUTO = ".seg";
+    public static final String EXT_RESUMEN = ".res";
+
+    // Se instancian los atributos de la clase
+    private final Path ruta;
+    private final long dia;
+    private final boolean compactado;
+    private FileChannel canal;
+    private volatile MappedByteBuffer mapa;
+    private int fin;
+
+    /**
+     * Constructor privado, los segmentos se abren con abrir()
+     */
+    private SegmentoDia(Path ruta, long dia, boolean compactado) {
+        this.ruta = ruta;
+        this.dia = dia;
+        this.compactado = compactado;
+    }
+
+    /**
+     * Método que abre o crea el fichero de un día y recorre sus bloques para saber
+     * dónde termina.
+     *
+     * @param ruta       ruta del fichero
+     * @param dia        día del segmento, en días desde la época
+     * @param compactado true si el fichero solo tiene resúmenes
+     * @return se devuelve el SegmentoDia abierto
+     * @throws IOException si no se puede abrir el fichero o no es un segmento
+     */
+    public static SegmentoDia abrir(Path ruta, long dia, boolean compactado) throws IOException {
+        SegmentoDia segmento = new SegmentoDia(ruta, dia, compactado);
+        segmento.canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long tamano = segmento.canal.size();
+        segmento.mapa = segmento.canal.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(tamano, TAM_INICIAL));
+        if (tamano == 0) {
+            segmento.mapa.putInt(0, MAGIA).putInt(4, VERSION);
+        } else if (segmento.mapa.getInt(0) != MAGIA) {
+            segmento.canal.close();
+            throw new IOException("El fichero " + ruta + " no es un segmento de temperaturas");
+        } else if (segmento.mapa.getInt(4) != VERSION) {
+            int version = segmento.mapa.getInt(4);
+            segmento.canal.close();
+            throw new IOException("El segmento " + ruta + " es de la versión " + version + ", no de la " + VERSION);
+        }
+        segmento.fin = TAM_CABECERA;
+        segmento.recorrer(bloque -> segmento.fin = bloque.offsetDatos + bloque.longitud);
+        return segmento;
+    }
+
+    /**
+     * Interfaz para recibir los bloques al recorrer el segmento.
+     */
+    public interface ConsumidorBloque {
+        /**
+         * Método que recibe un bloque
+         *
+         * @param bloque bloque del segmento
+         */
+        void aceptar(Bloque bloque);
+    }
+
+    /**
+     * Método que recorre los bloques completos del segmento.
+     *
+     * @param consumidor recibe cada bloque
+     */
+    public synchronized void recorrer(ConsumidorBloque consumidor) {
+        MappedByteBuffer m = mapa;
+        int p = TAM_CABECERA;
+        while (p + TAM_CABECERA_BLOQUE <= m.capacity()) {
+            byte tipo = m.get(p);
+            if (tipo != BRUTO && tipo != RESUMEN) {
+                break;
+            }
+            int longitudSerie = Short.toUnsignedInt(m.getShort(p + 1));
+            int c = p + 3 + longitudSerie;
+            if (c + TAM_CABECERA_BLOQUE - 3 > m.capacity()) {
+                break;
+            }
+            byte[] serie = new byte[longitudSerie];
+            m.get(p + 3, serie);
+            int longitud = m.getInt(c + 36);
+            if (longitud < 0 || c + 40 + longitud > m.capacity()) {
+                break;
+            }
+            consumidor.aceptar(new Bloque(this, tipo, new String(serie, StandardCharsets.UTF_8), m.getLong(c),
+                    m.getLong(c + 8), m.getInt(c + 16), m.getFloat(c + 20), m.getFloat(c + 24), m.getDouble(c + 28),
+                    c + 40, longitud));
+            p = c + 40 + longitud;
+        }
+    }
+
+    /**
+     * Método que añade un bloque al final del segmento.
+     *
+     * @param tipo    BRUTO o RESUMEN
+     * @param serie   serie (sensor) del bloque
+     * @param inicio  marca de tiempo de la primera lectura, o inicio del periodo
+     * @param fin     marca de tiempo de la última lectura
+     * @param cuenta  número de lecturas
+     * @param minimo  temperatura mínima
+     * @param maximo  temperatura máxima
+     * @param suma    suma de las temperaturas
+     * @param datos   datos del bloque
+     * @return se devuelve el Bloque añadido
+     * @throws IOException si no se puede ampliar el fichero
+     */
+    public synchronized Bloque anadir(byte tipo, String serie, long inicio, long fin, int cuenta, double minimo,
+            double maximo, double suma, byte[] datos) throws IOException {
+        byte[] bytesSerie = serie.getBytes(StandardCharsets.UTF_8);
+        int tamano = TAM_CABECERA_BLOQUE + bytesSerie.length + datos.length;
+        // Se amplía el fichero si el bloque no cabe, sin contar el tipo del siguiente
+        if (this.fin + tamano + 1 > mapa.capacity()) {
+            long nuevo = Math.max((long) mapa.capacity() * 2, this.fin + tamano + 1L);
+            if (nuevo > Integer.MAX_VALUE) {
+                throw new IOException("El segmento " + ruta + " está lleno");
+            }
+            mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, nuevo);
+        }
+        MappedByteBuffer m = mapa;
+        int p = this.fin;
+        m.putShort(p + 1, (short) bytesSerie.length);
+        m.put(p + 3, bytesSerie);
+        int c = p + 3 + bytesSerie.length;
+        m.putLong(c, inicio).putLong(c + 8, fin).putInt(c + 16, cuenta).putFloat(c + 20, (float) minimo)
+                .putFloat(c + 24, (float) maximo).putDouble(c + 28, suma).putInt(c + 36, datos.length);
+        m.put(c + 40, datos);
+        // El tipo se escribe el último para que el bloque solo sea válido si está completo
+        m.put(p, tipo);
+        this.fin = c + 40 + datos.length;
+        return new Bloque(this, tipo, serie, inicio, fin, cuenta, (float) minimo, (float) maximo, suma, c + 40,
+                datos.length);
+    }
+
+    /**
+     * Método que devuelve los bloques del segmento, para compactarlo.
+     *
+     * @return se devuelve una lista con los bloques
+     */
+    public List<Bloque> getBloques() {
+        List<Bloque> bloques = new ArrayList<>();
+        recorrer(bloques::add);
+        return bloques;
+    }
+
+    /**
+     * Método que guarda los datos en el disco y cierra el fichero, recortándolo al
+     * tamaño de los datos.
+     */
+    public synchronized void cerrar() {
+        try {
+            mapa.force();
+            // En algunos sistemas no se puede recortar un fichero proyectado, el resto
+            // del fichero son ceros y se ignoran al abrirlo
+            try {
+                canal.truncate(fin);
+            } catch (IOException e) {
+                // Se mantiene el tamaño del fichero
+            }
+            canal.close();
+        } catch (IOException e) {
+            System.err.println("Error al cerrar el segmento " + ruta + ":-> " + e.getMessage());
+        }
+    }
+
+    /**
+     * Getter para devolver la ruta del fichero
+     *
+     * @return se devuelve un Path
+     */
+    public Path getRuta() {
+        return ruta;
+    }
+
+    /**
+     * Getter para devolver el día del segmento
+     *
+     * @return se devuelve un valor de tipo long, días desde la época
+     */
+    public long getDia() {
+        return dia;
+    }
+
+    /**
+     * Getter para saber si el segmento solo tiene resúmenes
+     *
+     * @return se devuelve un valor de tipo boolean
+     */
+    public boolean isCompactado() {
+        return compactado;
+    }
+
+    /**
+     * Getter para devolver los bytes ocupados por los datos
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public synchronized long getTamano() {
+        return fin;
+    }
+
+    /**
+     * Clase interna con la cabecera de un bloque del segmento, es el índice que se
+     * guarda en memoria para cada bloque.
+     */
+    public static final class Bloque {
+        private final SegmentoDia segmento;
+        private final byte tipo;
+        private final String serie;
+        private final long inicio;
+        private final long fin;
+        private final int cuenta;
+        private final float minimo;
+        private final float maximo;
+        private final double suma;
+        private final int offsetDatos;
+        private final int longitud;
+
+        /**
+         * Constructor del bloque
+         */
+        private Bloque(SegmentoDia segmento, byte tipo, String serie, long inicio, long fin, int cuenta,
+                float minimo, float maximo, double suma, int offsetDatos, int longitud) {
+            this.segmento = segmento;
+            this.tipo = tipo;
+            this.serie = serie;
+            this.inicio = inicio;
+            this.fin = fin;
+            this.cuenta = cuenta;
+            this.minimo = minimo;
+            this.maximo = maximo;
+            this.suma = suma;
+            this.offsetDatos = offsetDatos;
+            this.longitud = longitud;
+        }
+
+        /**
+         * Método que devuelve los datos del bloque, sin copiarlos del fichero
+         *
+         * @return se devuelve un ByteBuffer de solo lectura con los datos
+         */
+        public ByteBuffer getDatos() {
+            return segmento.mapa.asReadOnlyBuffer().slice(offsetDatos, longitud);
+        }
+
+        /**
+         * Getter para devolver el segmento del bloque
+         *
+         * @return se devuelve un SegmentoDia
+         */
+        public SegmentoDia getSegmento() {
+            return segmento;
+        }
+
+        /**
+         * Getter para devolver el tipo del bloque
+         *
+         * @return se devuelve BRUTO o RESUMEN
+         */
+        public byte getTipo() {
+            return tipo;
+        }
+
+        /**
+         * Getter para devolver la serie del bloque
+         *
+         * @return se devuelve un string
+         */
+        public String getSerie() {
+            return serie;
+        }
+
+        /**
+         * Getter para devolver la primera marca de tiempo, o el inicio del periodo de
+         * un resumen
+         *
+         * @return se devuelve un valor de tipo long
+         */
+        public long getInicio() {
+            return inicio;
+        }
+
+        /**
+         * Getter para devolver la última marca de tiempo
+         *
+         * @return se devuelve un valor de tipo long
+         */
+        public long getFin() {
+            return fin;
+        }
+
+        /**
+         * Getter para devolver el número de lecturas
+         *
+         * @return se devuelve un valor de tipo int
+         */
+        public int getCuenta() {
+            return cuenta;
+        }
+
+        /**
+         * Getter para devolver la temperatura mínima
+         *
+         * @return se devuelve un valor de tipo float
+         */
+        public float getMinimo() {
+            return minimo;
+        }
+
+        /**
+         * Getter para devolver la temperatura máxima
+         *
+         * @return se devuelve un valor de tipo float
+         */
+        public float getMaximo() {
+            return maximo;
+        }
+
+        /**
+         * Getter para devolver la suma de las temperaturas
+         *
+         * @return se devuelve un valor de tipo double
+         */
+        public double getSuma() {
+            return suma;
+        }
+
+        /**
+         * Getter para devolver la longitud de los datos
+         *
+         * @return se devuelve un valor de tipo int
+         */
+        public int getLongitud() {
+            return longitud;
+        }
+    }
+}
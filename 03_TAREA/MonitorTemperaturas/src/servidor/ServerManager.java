@@ -9,15 +9,55 @@
  * El método start() ejecutará el servidor y se mantendrá a la escucha del acceso de los clientes. Cuando un cliente se conecte 
  * el servidor lo registrará. En caso que se cambie el config.properties se actualizarán los datos.
  * 
+ * Si en config.properties se indica modo_servidor=VIRTUALES, cada ClientHandler se ejecuta en un hilo virtual en lugar
+ * del pool de hilos de plataforma. El código bloqueante de readLine() no cambia, pero un hilo virtual bloqueado no
+ * ocupa un hilo del sistema operativo, por lo que se pueden atender decenas de miles de sensores.
+ * 
+ * Si en config.properties se indica modo_servidor=NIO, el método start() no crea un hilo por cliente sino que
+ * utiliza un NioServer, que atiende a todos los sensores desde unos pocos bucles Selector.
+ * 
+ * El método procesarLinea() recibe cada línea que envía un sensor, en cualquiera de los modos, y si es una
+ * temperatura (o un lote de temperaturas separadas por ';') la comprueba y responde al sensor con un único mensaje. Los sensores que negocian el protocolo binario (ProtocoloBinario)
+ * envían tramas de tamaño fijo que se procesan con procesarTrama(), sin expresión regular ni cadenas, o lotes de
+ * tramas de las pasarelas que se procesan con procesarLote().
+ * 
  * El método comprobación() recibirá un parámetro de tipo double que será la temperatura generada por el clietnes (sensor). Según la 
- * configuración del servidor y la temperatura recibida del cliente se enviará un mensaje u otro.
+ * configuración del servidor y la temperatura recibida del cliente se enviará un mensaje u otro. Las alertas no se escriben
+ * desde el hilo del sensor, se pasan a AlertasTemperatura, que solo registra los cambios de estado de cada sensor (con
+ * histéresis y un límite por minuto) desde su propio hilo y por lotes.
  * 
- * Método calcTemMedia() realizará el calculo medio de todas las temperaturas recibidas de los sensores.
+ * Método calcTemMedia() realizará el calculo medio de todas las temperaturas recibidas de los sensores. Las temperaturas no
+ * se almacenan, se acumulan en un EstadisticasTemperatura con un coste fijo por temperatura. Además, se acumulan en unas
+ * VentanasTemperatura globales para conocer la media del último minuto, los últimos cinco minutos y la última hora.
+ * La media general no se calcula con cada mensaje de un sensor (el resumen bloquea todas las franjas de las
+ * estadísticas), se calcula y se muestra desde el hilo de estado cada intervalo_estado segundos, o cada
+ * INTERVALO_MEDIA segundos si no se ha configurado, cuando se han recibido temperaturas nuevas.
+ * 
+ * Si se configura ventana_alertas (UN_MINUTO, CINCO_MINUTOS o UNA_HORA), las alertas no se comprueban con cada
+ * temperatura sino con la media de esa ventana del sensor, así una lectura aislada no genera una alerta.
  * 
  * Método ServiceWathc() construye un único hilo que estará a la escucha de los cambios que se puedan producir en el fichero 
  * config.properties. En el caso de haberse producido se realizará el cambio de los parámetros de control de temperatura.
  * 
  * Método actualizarTemperatura() actualizará las temperaturas de control de la clase, tambien mostrará un mensaje informado de ello.
+ * Las temperaturas de control son unas ReglasTemperatura inmutables, con los umbrales globales y los de cada zona de
+ * sensores, que se cambian de una vez, los hilos de los sensores las leen sin bloqueos y siempre con la mínima y la
+ * máxima de la misma configuración.
+ * 
+ * Si se configura tsdb_directorio, todas las temperaturas se guardan en un AlmacenTemperaturas en el disco para
+ * poder consultar el histórico de cada sensor. Las lecturas de los días con más de tsdb_dias_brutos días se reducen
+ * a resúmenes de cinco minutos, y los días con más de tsdb_dias_resumen días se eliminan (0 para no eliminarlos).
+ * El histórico se consulta con el comando de texto CONSULTA (ConsultaTemperaturas), que responde con la mínima, la
+ * máxima, la media y los percentiles calculados con los resúmenes. Las consultas no se responden desde el hilo del
+ * sensor (en el modo NIO el bucle Selector, que atiende a muchos sensores) sino desde un pool de HILOS_CONSULTAS
+ * hilos, con como mucho MAX_CONSULTAS_PENDIENTES consultas en espera, las demás se rechazan.
+ * 
+ * Los clientes se pueden suscribir a temas del ClientRegistry (SUSCRIBIR <tema>). Al actualizar las temperaturas de
+ * control se publican a los suscritos al tema UMBRALES las temperaturas de la zona de cada uno, sin bloquear.
+ * 
+ * Si se configura intervalo_estado (segundos), se muestra también cada cierto tiempo el número de sensores
+ * conectados, la memoria utilizada y los hilos de plataforma del servidor. En el modo NIO también se muestran las conexiones y
+ * desconexiones de los sensores, que no se muestran una a una.
  * 
  * Método shutdown() finalizará el serividor y el finalizará también el poll de los hilos.
  * 
@@ -29,8 +69,10 @@
 package servidor;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -39,10 +81,14 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ServerManager {
 
@@ -60,12 +106,35 @@ public class ServerManager {
     private RegistroLogs logger;
     // Se instancia una cola
     private final ExecutorService threadPool;
-    // Lista para almacenar todas las temperaturas que se reciban de los sensores.
-    private List<Double> listaTemp;
-    // Se instancian los parámetros de las temperaturas
-    private double temp_max;
-    private double temp_min;
+    // Servidor no bloqueante, solo en el modo NIO
+    private volatile NioServer nioServer;
+    // Estadísticas de todas las temperaturas que se reciban de los sensores.
+    private final EstadisticasTemperatura estadisticas;
+    // Estadísticas de las temperaturas recientes de todos los sensores.
+    private final VentanasTemperatura ventanasGlobales;
+    // Almacén con el histórico de temperaturas, null si no se guardan
+    private AlmacenTemperaturas almacen;
+    // Hilo que cierra el almacén al finalizar el proceso, se registra una sola vez
+    private Thread cierreAlmacen;
+    // Pool que responde las consultas del histórico, fuera de los hilos de los sensores
+    private final ExecutorService consultas;
+    // Hilos del pool de consultas y consultas que pueden esperar en su cola
+    private static final int HILOS_CONSULTAS = 2;
+    private static final int MAX_CONSULTAS_PENDIENTES = 32;
+    // Diferencia máxima entre la marca de tiempo de una trama y la hora del servidor
+    private static final long MAX_DESFASE = 24 * 60 * 60 * 1000L;
+    // Etapa asíncrona que registra las alertas de temperatura
+    private final AlertasTemperatura alertasTemp;
+    // Ventana con la que se comprueban las alertas, null para cada temperatura
+    private final VentanaTiempo ventanaAlertas;
+    // Se instancian los parámetros de las temperaturas, el hilo que vigila
+    // config.properties los cambia de una vez por unas reglas nuevas
+    private final AtomicReference<ReglasTemperatura> reglas;
     private double tempMedia;
+    // Número de temperaturas cuando se mostró la media general por última vez
+    private long cuentaMedia = 0;
+    // Segundos entre cada media general si no se ha configurado intervalo_estado
+    private static final long INTERVALO_MEDIA = 5;
     private boolean actuliza;
     // Variable para evitar que se realice dos veces la actulización.
     private static long ultimaActualización = 0;
@@ -84,19 +153,38 @@ public class ServerManager {
         config.configurar();
         // Se le asigna el puerto que se va a usar
         this.PORT = config.getPort();
-        // Se instancia un pool para ejecutar los hilos
-        this.threadPool = Executors.newCachedThreadPool();
+        // Se instancia un pool para ejecutar los hilos, en el modo VIRTUALES un hilo
+        // virtual por cliente
+        this.threadPool = "VIRTUALES".equals(config.getModoServidor()) ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
         // Se instnacia una lista de clientes
         this.listaClientes = new ClientRegistry();
-        // Se instancia una lista para almacenar las temperaturas de los sensores
-        this.listaTemp = new ArrayList<>();
+        // Se instancian las estadísticas de las temperaturas de los sensores
+        this.estadisticas = new EstadisticasTemperatura();
+        this.ventanasGlobales = new VentanasTemperatura();
+        this.ventanaAlertas = config.getVentanaAlertas();
+        this.alertasTemp = new AlertasTemperatura(config.getHisteresis(), config.getAlertasPorMinuto(), logger);
+        // Se crea el pool de las consultas, sus hilos no impiden finalizar el servidor
+        this.consultas = new ThreadPoolExecutor(HILOS_CONSULTAS, HILOS_CONSULTAS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_CONSULTAS_PENDIENTES), tarea -> {
+                    Thread hilo = new Thread(tarea, "consultas");
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+        // Si se ha configurado, se abre el almacén con el histórico de temperaturas
+        if (!config.getDirectorioAlmacen().isEmpty()) {
+            iniciarAlmacen();
+        }
 
         // Se configuran las temperaturas de control
-        this.temp_max = config.getTempMax();
-        this.temp_min = config.getTempMin();
+        this.reglas = new AtomicReference<>(config.getReglas());
         // Se ejecuta un hilo para controlar los cambios dinámicos de las temperaturas
         // de control.
         serviceWatch();
+        // Se muestra la media general cada cierto tiempo y, si se ha configurado, el
+        // estado del servidor
+        boolean conEstado = config.getIntervaloEstado() > 0;
+        mostrarEstado(conEstado ? config.getIntervaloEstado() : INTERVALO_MEDIA, conEstado);
     }
 
     /**
@@ -105,8 +193,14 @@ public class ServerManager {
     public void start() {
         // Se capturan los errores
         try {
-            // Se inicia el serividor
-            serversocket = new ServerSocket(PORT);
+            // En el modo NIO los sensores se atienden desde los bucles Selector
+            if ("NIO".equals(config.getModoServidor())) {
+                startNio();
+                return;
+            }
+            // Se inicia el serividor, con una cola de conexiones pendientes amplia para
+            // cuando se conectan muchos sensores a la vez
+            serversocket = new ServerSocket(PORT, 1024);
             // Se informa por pantall aque se ha ejecutado el servidor y el puerto.
             logger.regInicioServidor(PORT);
             System.out.println("El servidor esta a inciado en el puerto " + PORT);
@@ -152,68 +246,309 @@ public class ServerManager {
     }
 
     /**
-     * Método para comprobar que la temperatura esta dentro de los valores.
+     * Método para ejecutar el servidor en modo NIO.
+     * 
+     * @throws IOException si no se puede iniciar el servidor
+     */
+    private void startNio() throws IOException {
+        nioServer = new NioServer(PORT, config.getNumSelectores(), this, listaClientes, logger);
+        // Se informa por pantall aque se ha ejecutado el servidor y el puerto.
+        logger.regInicioServidor(PORT);
+        System.out.println("El servidor esta a inciado en el puerto " + PORT);
+        // Se aceptan los sensores hasta que se finalice el servidor
+        nioServer.start();
+    }
+
+    /**
+     * Método que procesa una línea recibida de un sensor con el protocolo de
+     * texto. La línea puede tener una temperatura o un lote de temperaturas
+     * separadas por ProtocoloBinario.SEPARADOR_LOTE, el lote se procesa de una vez y se responde al
+     * sensor con un único mensaje. Si la línea es una consulta (ConsultaTemperaturas)
+     * se responde con el resumen del histórico, y si es una suscripción a un tema
+     * (SUSCRIBIR o CANCELAR) se registra en el ClientRegistry.
+     * 
+     * @param linea  línea recibida del sensor
+     * @param sensor sensor que ha enviado la línea
+     */
+    public void procesarLinea(String linea, ConexionSensor sensor) {
+        if (ConsultaTemperaturas.esConsulta(linea)) {
+            // La consulta se responde desde el pool de consultas, no se bloquea el hilo del sensor.
+            // La respuesta se deja en la cola de salida del sensor, así un sensor que no lee
+            // sus mensajes no bloquea el hilo del pool
+            try {
+                consultas.execute(() -> sensor.encolarMensaje(ConsultaTemperaturas.responder(linea, almacen)));
+            } catch (RejectedExecutionException e) {
+                listaClientes.responderCliente(
+                        ConsultaTemperaturas.COMANDO + " ERROR demasiadas consultas pendientes, vuelva a intentarlo",
+                        sensor);
+            }
+            return;
+        }
+        // Si la línea es una suscripción a un tema se responde al sensor
+        String suscripcion = listaClientes.procesarComando(linea, sensor);
+        if (suscripcion != null) {
+            listaClientes.responderCliente(suscripcion, sensor);
+            return;
+        }
+        StringBuilder alertas = new StringBuilder();
+        long marcaTiempo = System.currentTimeMillis();
+        int procesadas = 0;
+        int inicio = 0;
+        // Se recorren los valores de la línea
+        while (inicio <= linea.length()) {
+            int fin = linea.indexOf(ProtocoloBinario.SEPARADOR_LOTE, inicio);
+            if (fin < 0) {
+                fin = linea.length();
+            }
+            String valor = linea.substring(inicio, fin);
+            // Se comprueba que el valor recibido se puede convertir en un valor de tipo
+            // Double
+            if (valor.matches("-?\\d+(\\d.\\d+)?")) {
+                // Se procesa la temperatura que se ha recibido
+                procesarTemperatura(Double.parseDouble(valor), marcaTiempo, sensor, true, sensor.getIdSerie(),
+                        sensor.getIdSensor(), alertas);
+                procesadas++;
+                // Si no se puede convertir se devolverá un mensaje en el servidor
+            } else {
+                System.out.println("Error: el valor recibido del sensor " + sensor.getIdSensor()
+                        + " no es de tipo númerico");
+            }
+            inicio = fin + 1;
+        }
+        responder(sensor, procesadas, alertas);
+    }
+
+    /**
+     * Método que procesa una trama recibida de un sensor con el protocolo binario
+     * (ProtocoloBinario). La trama se lee directamente del buffer, sin crear
+     * cadenas, y si es válida se procesa su temperatura.
+     * 
+     * @param trama    buffer con la trama en su posición actual, no se mueve
+     * @param idSensor id del sensor que se recibió en la cabecera
+     * @param sensor   sensor que ha enviado la trama
+     */
+    public void procesarTrama(ByteBuffer trama, int idSensor, ConexionSensor sensor) {
+        StringBuilder alertas = new StringBuilder();
+        float temperatura = ProtocoloBinario.getTemperatura(trama);
+        // Se comprueba que la trama es del sensor de la conexión
+        if (ProtocoloBinario.getIdSensor(trama) != idSensor) {
+            System.out.println("Error: la trama recibida del sensor " + sensor.getIdSensor()
+                    + " es de otro sensor (" + ProtocoloBinario.getIdSensor(trama) + ")");
+            // Se comprueba que la temperatura es un número
+        } else if (!Float.isFinite(temperatura)) {
+            System.out.println("Error: el valor recibido del sensor " + sensor.getIdSensor()
+                    + " no es de tipo númerico");
+        } else {
+            long marcaTiempo = marcaTiempo(ProtocoloBinario.getMarcaTiempo(trama));
+            procesarTemperatura(temperatura, marcaTiempo, sensor, true, sensor.getIdSerie(), sensor.getIdSensor(),
+                    alertas);
+            responder(sensor, 1, alertas);
+        }
+    }
+
+    /**
+     * Método que procesa un lote de tramas recibido de una pasarela con el
+     * protocolo binario (VERSION_LOTES). Las tramas se leen directamente del
+     * buffer, pueden ser de sensores distintos, y se responde a la pasarela con un
+     * único mensaje.
+     * 
+     * Las ventanas de la conexión son solo de la pasarela: las temperaturas de los
+     * otros sensores del lote no se registran en ellas y sus alertas se comprueban
+     * con la temperatura recibida, no con la media de la ventana.
+     * 
+     * @param lote      buffer con la primera trama del lote en su posición actual,
+     *                  no se mueve
+     * @param numTramas número de tramas del lote
+     * @param idSensor  id de la pasarela que se recibió en la cabecera
+     * @param sensor    conexión de la pasarela
+     */
+    public void procesarLote(ByteBuffer lote, int numTramas, int idSensor, ConexionSensor sensor) {
+        StringBuilder alertas = new StringBuilder();
+        int procesadas = 0;
+        int inicio = lote.position();
+        for (int i = 0; i < numTramas; i++) {
+            lote.position(inicio + i * ProtocoloBinario.TAM_TRAMA);
+            float temperatura = ProtocoloBinario.getTemperatura(lote);
+            int id = ProtocoloBinario.getIdSensor(lote);
+            if (!Float.isFinite(temperatura)) {
+                System.out.println("Error: el valor recibido del sensor " + sensor.getIdSensor() + " (" + id
+                        + ") no es de tipo númerico");
+                continue;
+            }
+            // Si la trama es de otro sensor de la pasarela se indica en las alertas y se
+            // guarda en su propia serie
+            boolean propia = id == idSensor;
+            String serie = propia ? sensor.getIdSerie() : "ID:_" + id;
+            String origen = propia ? sensor.getIdSensor() : sensor.getIdSensor() + "_SENSOR:_" + id;
+            procesarTemperatura(temperatura, marcaTiempo(ProtocoloBinario.getMarcaTiempo(lote)), sensor, propia,
+                    serie, origen, alertas);
+            procesadas++;
+        }
+        lote.position(inicio);
+        responder(sensor, procesadas, alertas);
+    }
+
+    /**
+     * Método que procesa una temperatura recibida de un sensor. Se almacena en el
+     * sensor, en las estadísticas y en el almacén y se comprueba, si está fuera de
+     * los valores se añade el mensaje a las alertas de la respuesta.
+     * 
+     * @param temperatura temperatura recibida del sensor
+     * @param marcaTiempo milisegundos desde la época de la lectura
+     * @param sensor      sensor que ha enviado la temperatura
+     * @param propia      true si la temperatura es del sensor de la conexión, false
+     *                    si es de otro sensor de una pasarela, en ese caso no se
+     *                    registra en las ventanas de la conexión
+     * @param serie       serie del almacén en la que se guarda la temperatura
+     * @param origen      id con el que se registran las alertas
+     * @param alertas     mensajes de alerta para la respuesta al sensor
+     */
+    private void procesarTemperatura(double temperatura, long marcaTiempo, ConexionSensor sensor, boolean propia,
+            String serie, String origen, StringBuilder alertas) {
+        // Se almacena la temperatura recibida en el sensor y en las estadísticas globales
+        if (propia) {
+            sensor.registrarTemperatura(temperatura);
+        }
+        estadisticas.registrar(temperatura);
+        ventanasGlobales.registrar(temperatura);
+        // Se guarda la temperatura en el histórico
+        if (almacen != null) {
+            almacen.registrar(serie, marcaTiempo, temperatura);
+        }
+        // Se comprueba la temperatura, o la media de la ventana configurada del sensor
+        double valor = temperatura;
+        if (ventanaAlertas != null && propia) {
+            valor = sensor.getVentanas().deslizante(ventanaAlertas).getMedia();
+            origen += " (media de " + ventanaAlertas + ")";
+        }
+        String mensaje;
+        // Se comprueba la temperatura y si no se devuele un mensaje vacío
+        if ((mensaje = comprobación(valor, serie, origen)) != null) {
+            alertas.append(System.lineSeparator()).append(mensaje);
+        }
+    }
+
+    /**
+     * Método que devuelve la marca de tiempo con la que se guarda la lectura de una
+     * trama: la de la trama, o la hora del servidor si la trama no tiene marca de
+     * tiempo (0) o se aleja más de un día de la hora del servidor.
+     * 
+     * @param deTrama marca de tiempo de la trama
+     * @return se devuelve un valor de tipo long, milisegundos desde la época
+     */
+    private static long marcaTiempo(long deTrama) {
+        long ahora = System.currentTimeMillis();
+        return Math.abs(deTrama - ahora) <= MAX_DESFASE ? deTrama : ahora;
+    }
+
+    /**
+     * Método que abre el almacén con el histórico de temperaturas. Se inicia un
+     * hilo que cada minuto sella los bloques terminados y compacta los días
+     * antiguos, y al finalizar el proceso se cierra el almacén para guardar los
+     * bloques abiertos.
+     */
+    private void iniciarAlmacen() {
+        try {
+            almacen = new AlmacenTemperaturas(Paths.get(config.getDirectorioAlmacen()), config.getDiasBrutos(),
+                    config.getDiasResumen(), logger);
+        } catch (IOException e) {
+            // Mensaje de error
+            String mensaje = "Error al abrir el almacén de temperaturas:-> " + e.getMessage();
+            // Se registra el error
+            logger.alertServer(mensaje);
+            System.err.println(mensaje);
+            return;
+        }
+        System.out.println("Se guardan las temperaturas en " + config.getDirectorioAlmacen() + " ("
+                + almacen.getEstado() + ")");
+        // Se crea un pool para un único hilo que no impide finalizar el servidor
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "almacen");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        executor.scheduleWithFixedDelay(almacen::mantenimiento, 0, 1, TimeUnit.MINUTES);
+        // Al finalizar el proceso (también con Ctrl+C) se cierra el almacén, si no se ha cerrado antes con shutdown()
+        cierreAlmacen = new Thread(almacen::cerrar, "cierre-almacen");
+        Runtime.getRuntime().addShutdownHook(cierreAlmacen);
+    }
+
+    /**
+     * Método que envía al sensor, en un único mensaje, su temperatura media y las
+     * alertas de las temperaturas procesadas. La media general se muestra desde el
+     * hilo de estado (mostrarEstado).
+     * 
+     * @param sensor     sensor al que se responde
+     * @param procesadas número de temperaturas procesadas, si es 0 no se responde
+     * @param alertas    mensajes de alerta
+     */
+    private void responder(ConexionSensor sensor, int procesadas, StringBuilder alertas) {
+        if (procesadas == 0) {
+            return;
+        }
+        // Se llama al método responderCliente de la clase ClientRegistry
+        listaClientes.responderCliente(sensor.calcTemMedia() + alertas, sensor);
+    }
+
+    /**
+     * Método para comprobar que la temperatura esta dentro de los valores de la
+     * zona del sensor, o de los globales si no está en ninguna zona.
      * 
      * @param temperatura se recibe la temperatura que ha enviado el servidor.
+     * @param serie       id de serie del sensor, con el que se busca su zona
+     * @param sensor      id con el que se registran las alertas
      * @return se devuelve un mensaje de tipo String
      * 
      */
-    public String comprobación(double temperatura, String sensor) {
-        // Se agrega la temperatura recibida a la lista
-        listaTemp.add(temperatura);
+    public String comprobación(double temperatura, String serie, String sensor) {
         String mensaje = null; // Variable inicializada con null, para devolver el mensaje.
-        String alert; // variable para almacenar los mensajes de registro
+        // Se leen una vez las temperaturas de control, así la mínima y la máxima son de
+        // la misma configuración aunque se cambien desde otro hilo
+        UmbralesTemperatura actuales = reglas.get().buscar(serie);
+        double minima = actuales.getMinimo();
+        double maxima = actuales.getMaximo();
+        // Se pasa la temperatura a la etapa de alertas, que registra los cambios de
+        // estado del sensor sin bloquear este hilo
+        alertasTemp.comprobar(serie, sensor, temperatura, actuales);
         // Si la temperatura es menor a la configurada
-        if (temperatura < temp_min) {
-            // Mensaje que se muestra para cuando la temperatura es menor a la establecida
-            alert = "El sensor " + sensor + " esta por debajo de la temperatura mínima establecida en "
-                    + df.format(temp_min)
-                    + " ºC";
-            // Se muestra el mensaje de la alerta
-            System.err.println(alert);
-            // Se registrran las alertas de temperaturas con error.
-            logger.regAlertasTemp(alert);
+        if (temperatura < minima) {
             // se devuelve al servidor el mensaje informado que la temperatura esta por
             // debajo de los parámetros
-            mensaje = "la temperatura es menor a la temperatura mínima establecida en " + df.format(temp_min) + " ºC";
+            mensaje = "la temperatura es menor a la temperatura mínima establecida en " + df.format(minima) + " ºC";
             // Si la temperatura es mayor a la configurada
-        } else if (temperatura > temp_max) {
-            // Mensaje que se muestra para cuando la temperatura es mayor a la establecida
-            alert = "El sensor " + sensor + " ha superado la temperatura máxima establecida en " + df.format(temp_max)
-                    + " ºC";
-            // Se muestra el mensaje de la alerta
-            System.err.println(alert);
-            // Se registrran las alertas de temperaturas con error.
-            logger.regAlertasTemp(alert);
+        } else if (temperatura > maxima) {
             // se devuelve al servidor el mensaje informado que la temperatura esta por
             // encima de los parámetros
-            mensaje = "la temperatura es mayor a la temperatura máxima establecida en " + df.format(temp_max) + " ºC";
+            mensaje = "la temperatura es mayor a la temperatura máxima establecida en " + df.format(maxima) + " ºC";
         }
 
-        // Se calcula la media global de temperaturas de todos los sensores.
-        calcTemMedia();
         // Se devuelve el mensaje.
         return mensaje;
     }
 
     /**
      * Método se calcula la media general de las temeperaturas recibidas de todos
-     * los sensores
+     * los sensores. Solo se muestra si se han recibido temperaturas desde la
+     * última vez.
      */
     public void calcTemMedia() {
-        // Si la lista esta vacía se finaliza el método
-        if (listaTemp.isEmpty()) {
+        calcTemMedia(estadisticas.resumen());
+    }
+
+    /**
+     * Método que muestra la media general de un resumen de las estadísticas, si se
+     * han recibido temperaturas desde la última vez.
+     * 
+     * @param resumen resumen de las estadísticas de todos los sensores
+     */
+    private synchronized void calcTemMedia(EstadisticasTemperatura.Resumen resumen) {
+        // Si no hay temperaturas nuevas se finaliza el método
+        if (resumen.getCuenta() == cuentaMedia) {
             return;
         }
-        // Se instancia una variable auxiliar para sumar el total de las temperaturas
-        double sumTotal = 0;
-        // Se itera la lista de temperaturas almacenadas
-        for (double temp : listaTemp) {
-            // Se suman las temperaturas
-            sumTotal += temp;
-        }
-        // Se calucla la media de temperaturas.
-        tempMedia = sumTotal / listaTemp.size();
+        cuentaMedia = resumen.getCuenta();
+        // Se obtiene la media de temperaturas.
+        tempMedia = resumen.getMedia();
         // Se muestra un mensaje para informar de la temperatura media
         System.out.println("La temperatura media general actual es de: " + df.format(tempMedia) + " ºC");
     }
@@ -264,12 +599,13 @@ public class ServerManager {
                                 // Se informa de que se ha cambiado el fichero.
                                 System.out.println("Se ha modificado :" + event.kind() + " Archivo " + event.context());
                                 // Se llama al método que actualiza la temperaturas de configuración del
-                                // ConfigServer.
-                                config.updateTemp();
-                                // Se actualizan las temperaturas del servidor.
-                                actualizarTemperatura();
-                                // Se informa que se han actualizado las temperaturas
-                                System.out.println("Se han actualizado los intervalos de temperaturas");
+                                // ConfigServer, si no son válidas se mantienen las anteriores.
+                                if (config.updateTemp()) {
+                                    // Se actualizan las temperaturas del servidor.
+                                    actualizarTemperatura();
+                                    // Se informa que se han actualizado las temperaturas
+                                    System.out.println("Se han actualizado los intervalos de temperaturas");
+                                }
                             }
 
                         }
@@ -297,17 +633,65 @@ public class ServerManager {
         });
     }
 
+    /**
+     * Método que inicia un hilo que muestra cada cierto tiempo la temperatura media
+     * general y, si se indica, el número de sensores conectados, la memoria
+     * utilizada y los hilos de plataforma del servidor.
+     * 
+     * @param intervalo segundos entre cada estado
+     * @param completo  true para mostrar el estado completo del servidor
+     */
+    public void mostrarEstado(long intervalo, boolean completo) {
+        // Se crea un pool para un único hilo que no impide finalizar el servidor
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "estado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            // Se calcula el resumen una vez para la media general y el estado
+            EstadisticasTemperatura.Resumen resumen = estadisticas.resumen();
+            calcTemMedia(resumen);
+            if (!completo) {
+                return;
+            }
+            Runtime runtime = Runtime.getRuntime();
+            long memoria = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+            System.out.println("Estado del servidor: " + listaClientes.getClientsCount() + " sensores ("
+                    + listaClientes.getDescartados() + " mensajes descartados), memoria "
+                    + memoria + " MB, hilos de plataforma " + ManagementFactory.getThreadMXBean().getThreadCount()
+                    + ", " + resumen.getCuenta() + " temperaturas (media " + df.format(resumen.getMedia())
+                    + " ºC, mín " + df.format(resumen.getMinimo()) + " ºC, máx " + df.format(resumen.getMaximo())
+                    + " ºC, desviación " + df.format(resumen.getDesviacion()) + " ºC), medias recientes ("
+                    + ventanasGlobales.textoMedias(df) + ")"
+                    + (nioServer != null ? ", conexiones (" + nioServer.getConexiones() + " nuevas, "
+                            + nioServer.getDesconexiones() + " cerradas)" : "")
+                    + ", alertas (" + alertasTemp.getEstado() + ")"
+                    + (almacen != null ? ", almacén (" + almacen.getEstado() + ")" : ""));
+        }, intervalo, intervalo, TimeUnit.SECONDS);
+    }
+
     /**
      * Método para actualizar la temperatura cuando se haya realizado un cambio en
      * config.properties.
      */
     public void actualizarTemperatura() {
-        // Se cambia el nuevo valor de las temperaturas de control.
-        this.temp_max = config.getTempMax();
-        this.temp_min = config.getTempMin();
+        // Se cambian de una vez las temperaturas de control.
+        ReglasTemperatura nuevas = config.getReglas();
+        reglas.set(nuevas);
         // Mensaje de infromando de la nuevas temperaturas.
-        System.out.println("La nueva temp_max :" + df.format(temp_max) + " ºC");
-        System.out.println("La nueva temp_min :" + df.format(temp_min) + " ºC");
+        System.out.println("La nueva temp_max :" + df.format(nuevas.getGlobales().getMaximo()) + " ºC");
+        System.out.println("La nueva temp_min :" + df.format(nuevas.getGlobales().getMinimo()) + " ºC");
+        System.out.println("Zonas con temperaturas propias: " + nuevas.getNumZonas());
+        // Se publican las temperaturas de control de cada cliente suscrito, sin esperar
+        // a los clientes lentos
+        int enviados = listaClientes.publicar(ClientRegistry.TEMA_UMBRALES, cliente -> {
+            UmbralesTemperatura umbrales = nuevas.buscar(cliente.getIdSerie());
+            return "temp_min=" + umbrales.getMinimo() + " temp_max=" + umbrales.getMaximo();
+        });
+        if (enviados > 0) {
+            System.out.println("Se han enviado las temperaturas de control a " + enviados + " clientes suscritos");
+        }
     }
 
     /**
@@ -321,8 +705,25 @@ public class ServerManager {
                 // Se finaliza el servidor.
                 serversocket.close();
             }
+            // En el modo NIO se finalizan los bucles Selector
+            if (nioServer != null) {
+                nioServer.shutdown();
+            }
             // Se vinaliza el pool de hilos
             threadPool.shutdown();
+            consultas.shutdown();
+            // Se escriben las alertas pendientes
+            alertasTemp.cerrar();
+            // Se guardan los bloques abiertos del almacén
+            if (almacen != null) {
+                almacen.cerrar();
+                // Ya no hace falta cerrarlo al finalizar el proceso
+                try {
+                    Runtime.getRuntime().removeShutdownHook(cierreAlmacen);
+                } catch (IllegalStateException e) {
+                    // El proceso ya está finalizando, el hilo de cierre no vuelve a cerrar el almacén
+                }
+            }
             // En caso de error
         } catch (IOException e) {
             // Mensaje de error
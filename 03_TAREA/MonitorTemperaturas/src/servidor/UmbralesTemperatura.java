@@ -0,0 +1,56 @@
+/**
+ * Clase UmbralesTemperatura
+ *
+ * Temperaturas de control (temp_min y temp_max) como un único objeto inmutable. El hilo que vigila
+ * config.properties crea unos umbrales nuevos y los cambia de una vez (dentro de unas ReglasTemperatura, en una
+ * AtomicReference del ServerManager), por lo que los hilos de los sensores siempre leen una pareja mínima/máxima
+ * coherente, sin bloqueos, y nunca la mínima nueva con la máxima antigua.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+public final class UmbralesTemperatura {
+
+    // Se instancian los atributos de la clase, no cambian
+    private final double minimo;
+    private final double maximo;
+
+    /**
+     * Constructor de la clase
+     *
+     * @param minimo temperatura mínima
+     * @param maximo temperatura máxima
+     * @throws IllegalArgumentException si la mínima es mayor que la máxima o no
+     *                                  son números
+     */
+    public UmbralesTemperatura(double minimo, double maximo) {
+        if (!(minimo <= maximo)) {
+            throw new IllegalArgumentException("temp_min (" + minimo + ") debe ser menor o igual que temp_max ("
+                    + maximo + ")");
+        }
+        this.minimo = minimo;
+        this.maximo = maximo;
+    }
+
+    /**
+     * Getter para devolver la temperatura mínima
+     *
+     * @return se devuelve un valor de tipo double
+     */
+    public double getMinimo() {
+        return minimo;
+    }
+
+    /**
+     * Getter para devolver la temperatura máxima
+     *
+     * @return se devuelve un valor de tipo double
+     */
+    public double getMaximo() {
+        return maximo;
+    }
+}
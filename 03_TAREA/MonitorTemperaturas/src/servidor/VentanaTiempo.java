@@ -0,0 +1,67 @@
+/**
+ * Enumeración VentanaTiempo
+ *
+ * Ventanas de tiempo de las estadísticas de temperatura (VentanasTemperatura). Cada ventana se divide en un número fijo
+ * de intervalos (buckets) con las temperaturas ya agregadas, la ventana deslizante avanza de intervalo en intervalo.
+ *  - UN_MINUTO: 12 intervalos de 5 segundos.
+ *  - CINCO_MINUTOS: 10 intervalos de 30 segundos.
+ *  - UNA_HORA: 12 intervalos de 5 minutos.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+public enum VentanaTiempo {
+    UN_MINUTO("1 min", 5_000, 12),
+    CINCO_MINUTOS("5 min", 30_000, 10),
+    UNA_HORA("1 h", 300_000, 12);
+
+    // Se instancian los atributos de la ventana
+    private final String nombre;
+    private final long anchoIntervalo; // milisegundos de cada intervalo
+    private final int numIntervalos;
+
+    /**
+     * Constructor de la ventana
+     */
+    VentanaTiempo(String nombre, long anchoIntervalo, int numIntervalos) {
+        this.nombre = nombre;
+        this.anchoIntervalo = anchoIntervalo;
+        this.numIntervalos = numIntervalos;
+    }
+
+    /**
+     * Getter para devolver los milisegundos de cada intervalo
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getAnchoIntervalo() {
+        return anchoIntervalo;
+    }
+
+    /**
+     * Getter para devolver el número de intervalos de la ventana
+     *
+     * @return se devuelve un valor de tipo entero
+     */
+    public int getNumIntervalos() {
+        return numIntervalos;
+    }
+
+    /**
+     * Getter para devolver la duración de la ventana en milisegundos
+     *
+     * @return se devuelve un valor de tipo long
+     */
+    public long getDuracion() {
+        return anchoIntervalo * numIntervalos;
+    }
+
+    @Override
+    public String toString() {
+        return nombre;
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Clase VentanasTemperatura
+ *
+ * Estadísticas de las temperaturas de los últimos minutos (1 min, 5 min y 1 h, ver VentanaTiempo). A diferencia de
+ * EstadisticasTemperatura, que acumula desde que se inicia el servidor, estas estadísticas solo tienen en cuenta las
+ * temperaturas recientes, por lo que siguen teniendo sentido después de días en marcha.
+ *
+ * Cada ventana es un buffer circular de tamaño fijo con intervalos (buckets) ya agregados: número, suma, mínima y
+ * máxima de las temperaturas del intervalo. Al registrar una temperatura se actualiza el intervalo actual de cada
+ * ventana, y si el hueco del buffer tiene un intervalo antiguo se reinicia. Así la memoria es fija por sensor y
+ * registrar una temperatura tiene un coste fijo.
+ *
+ * Las ventanas son deslizantes: las temperaturas de los últimos intervalos hasta completar la duración de la ventana.
+ * Las estadísticas de periodos completos alineados con el reloj se consultan en el AlmacenTemperaturas.
+ *
+ * Igual que EstadisticasTemperatura, las estadísticas que registran muchos hilos a la vez se reparten en varias
+ * celdas según el id del hilo y se combinan al consultarlas. Las de un único sensor utilizan una sola celda.
+ *
+ * @author DMIAPER (Diógenes Miaja Pérez)
+ * Fecha: 24-02-2025
+ * Version: 1.0.0
+ */
+
+package servidor;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+public class VentanasTemperatura {
+
+    // Ventanas que se calculan
+    private static final VentanaTiempo[] VENTANAS = VentanaTiempo.values();
+
+    // Se instancian las celdas, cada una con un buffer circular por ventana
+    private final Anillo[][] celdas;
+    private final int mascara;
+
+    /**
+     * Constructor con una celda por cada dos procesadores, para las estadísticas
+     * que registran muchos hilos a la vez.
+     */
+    public VentanasTemperatura() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Constructor con el número de celdas indicado (se redondea a una potencia de
+     * dos).
+     *
+     * @param numCeldas número de celdas, 1 si solo registra un hilo
+     */
+    public VentanasTemperatura(int numCeldas) {
+        int tamano = 1;
+        while (tamano < numCeldas) {
+            tamano <<= 1;
+        }
+        this.celdas = new Anillo[tamano][VENTANAS.length];
+        for (Anillo[] celda : celdas) {
+            for (int v = 0; v < VENTANAS.length; v++) {
+                celda[v] = new Anillo(VENTANAS[v]);
+            }
+        }
+        this.mascara = tamano - 1;
+    }
+
+    /**
+     * Método para registrar una temperatura en este momento.
+     *
+     * @param temperatura temperatura recibida
+     */
+    public void registrar(double temperatura) {
+        registrar(temperatura, System.currentTimeMillis());
+    }
+
+    /**
+     * Método para registrar una temperatura en el momento indicado.
+     *
+     * @param temperatura temperatura recibida
+     * @param ahora       milisegundos desde la época
+     */
+    public void registrar(double temperatura, long ahora) {
+        Anillo[] celda = celdas[0];
+        if (mascara != 0) {
+            // Se reparten los hilos entre las celdas mezclando los bits del id
+            long id = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+            celda = celdas[(int) (id >>> 32) & mascara];
+        }
+        synchronized (celda) {
+            for (Anillo anillo : celda) {
+                anillo.registrar(temperatura, ahora);
+            }
+        }
+    }
+
+    /**
+     * Método que devuelve las temperaturas de la ventana deslizante que termina en
+     * este momento.
+     *
+     * @param ventana ventana de tiempo
+     * @return se devuelve un Agregado con las temperaturas de la ventana
+     */
+    public Agregado deslizante(VentanaTiempo ventana) {
+        return deslizante(ventana, System.currentTimeMillis());
+    }
+
+    /**
+     * Método que devuelve las temperaturas de la ventana deslizante que termina en
+     * el momento indicado.
+     *
+     * @param ventana ventana de tiempo
+     * @param ahora   milisegundos desde la época
+     * @return se devuelve un Agregado con las temperaturas de la ventana
+     */
+    public Agregado deslizante(VentanaTiempo ventana, long ahora) {
+        Agregado total = Agregado.VACIO;
+        for (Anillo[] celda : celdas) {
+            synchronized (celda) {
+                total = total.combinar(celda[ventana.ordinal()].deslizante(ahora));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Método que devuelve un texto con la media de cada ventana deslizante, por
+     * ejemplo "1 min: 21,5 ºC, 5 min: 20 ºC, 1 h: 19,8 ºC".
+     *
+     * @param df formato de las temperaturas
+     * @return se devuelve un String
+     */
+    public String textoMedias(DecimalFormat df) {
+        long ahora = System.currentTimeMillis();
+        StringBuilder texto = new StringBuilder();
+        for (VentanaTiempo ventana : VENTANAS) {
+            Agregado agregado = deslizante(ventana, ahora);
+            if (texto.length() > 0) {
+                texto.append(", ");
+            }
+            texto.append(ventana).append(": ")
+                    .append(agregado.getCuenta() == 0 ? "-" : df.format(agregado.getMedia())).append(" ºC");
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Clase interna con el buffer circular de una ventana, se sincroniza desde
+     * fuera.
+     */
+    private static final class Anillo {
+        private final long ancho; // milisegundos de cada intervalo
+        private final int n; // número de intervalos
+        // Intervalos del buffer, epocas[i] es el número de intervalo desde la época
+        private final long[] epocas;
+        private final int[] cuentas;
+        private final double[] sumas;
+        private final double[] minimos;
+        private final double[] maximos;
+
+        /**
+         * Constructor del buffer
+         *
+         * @param ventana ventana de tiempo
+         */
+        private Anillo(VentanaTiempo ventana) {
+            this.ancho = ventana.getAnchoIntervalo();
+            this.n = ventana.getNumIntervalos();
+            this.epocas = new long[n];
+            this.cuentas = new int[n];
+            this.sumas = new double[n];
+            this.minimos = new double[n];
+            this.maximos = new double[n];
+            Arrays.fill(epocas, Long.MIN_VALUE);
+        }
+
+        /**
+         * Método que registra la temperatura en el intervalo actual.
+         */
+        private void registrar(double temperatura, long ahora) {
+            long epoca = Math.floorDiv(ahora, ancho);
+            int i = (int) Math.floorMod(epoca, (long) n);
+            // Si el hueco tiene un intervalo antiguo se reinicia
+            if (epocas[i] != epoca) {
+                epocas[i] = epoca;
+                cuentas[i] = 0;
+                sumas[i] = 0;
+                minimos[i] = Double.POSITIVE_INFINITY;
+                maximos[i] = Double.NEGATIVE_INFINITY;
+            }
+            cuentas[i]++;
+            sumas[i] += temperatura;
+            minimos[i] = Math.min(minimos[i], temperatura);
+            maximos[i] = Math.max(maximos[i], temperatura);
+        }
+
+        /**
+         * Método que suma los intervalos de la ventana deslizante.
+         */
+        private Agregado deslizante(long ahora) {
+            long epoca = Math.floorDiv(ahora, ancho);
+            long cuenta = 0;
+            double suma = 0;
+            double minimo = Double.POSITIVE_INFINITY;
+            double maximo = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                // Solo se suman los intervalos que están dentro de la ventana
+                if (epocas[i] <= epoca && epocas[i] > epoca - n) {
+                    cuenta += cuentas[i];
+                    suma += sumas[i];
+                    minimo = Math.min(minimo, minimos[i]);
+                    maximo = Math.max(maximo, maximos[i]);
+                }
+            }
+            return cuenta == 0 ? Agregado.VACIO : new Agregado(cuenta, suma, minimo, maximo);
+        }
+    }
+
+    /**
+     * Clase interna con las temperaturas agregadas de una ventana, no cambia una
+     * vez creada.
+     */
+    public static final class Agregado {
+        // Agregado sin temperaturas
+        public static final Agregado VACIO = new Agregado(0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+        private final long cuenta;
+        private final double suma;
+        private final double minimo;
+        private final double maximo;
+
+        /**
+         * Constructor del agregado
+         */
+        private Agregado(long cuenta, double suma, double minimo, double maximo) {
+            this.cuenta = cuenta;
+            this.suma = suma;
+            this.minimo = minimo;
+            this.maximo = maximo;
+        }
+
+        /**
+         * Método que combina dos agregados.
+         *
+         * @param otro agregado que se suma a este
+         * @return se devuelve un nuevo Agregado
+         */
+        private Agregado combinar(Agregado otro) {
+            if (otro.cuenta == 0) {
+                return this;
+            }
+            if (cuenta == 0) {
+                return otro;
+            }
+            return new Agregado(cuenta + otro.cuenta, suma + otro.suma, Math.min(minimo, otro.minimo),
+                    Math.max(maximo, otro.maximo));
+        }
+
+        /**
+         * Getter para devolver el número de temperaturas
+         *
+         * @return se devuelve un valor de tipo long
+         */
+        public long getCuenta() {
+            return cuenta;
+        }
+
+        /**
+         * Getter para devolver la media de las temperaturas
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay temperaturas
+         */
+        public double getMedia() {
+            return cuenta == 0 ? Double.NaN : suma / cuenta;
+        }
+
+        /**
+         * Getter para devolver la temperatura mínima
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay temperaturas
+         */
+        public double getMinimo() {
+            return cuenta == 0 ? Double.NaN : minimo;
+        }
+
+        /**
+         * Getter para devolver la temperatura máxima
+         *
+         * @return se devuelve un valor de tipo double, NaN si no hay temperaturas
+         */
+        public double getMaximo() {
+            return cuenta == 0 ? Double.NaN : maximo;
+        }
+    }
+
+}
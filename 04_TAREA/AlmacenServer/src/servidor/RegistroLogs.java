@@ -25,7 +25,6 @@ package servidor;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.logging.*;
 
@@ -34,7 +33,12 @@ public class RegistroLogs {
      * Se declara el format de fecha que se va utilizar en los registros, ejemplo:
      * viernes, 27 de diciembre de 2024, con la hora en formato 24 horas.
      */
-    DateTimeFormatter formato = DateTimeFormatter.ofPattern("EEEE, dd 'de' MMMM 'de' yyyy, HH:mm:ss ");
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter
+            .ofPattern("EEEE, dd 'de' MMMM 'de' yyyy, HH:mm:ss ");
+
+    // Reloj compartido que guarda el segundo ya formateado y evita formatear la
+    // fecha en cada registro.
+    private static final RelojRegistro reloj = new RelojRegistro(FORMATO_FECHA);
 
     // Se instancia log para realizar los registros
     private Logger log;
@@ -87,16 +91,6 @@ public class RegistroLogs {
         }
     }
 
-    /**
-     * Devuelve la fecha y hora actuales a ser llamada.
-     * 
-     * @return
-     */
-    public LocalDateTime fechaActual() {
-        // Se devuelve la fecha y hora.
-        return LocalDateTime.now();
-    }
-
     /**
      * Función para registrar el inicio del servidor
      * 
@@ -113,7 +107,7 @@ public class RegistroLogs {
         mensaje = "----------------------------------------------------------";
         log.info(mensaje);
         // Mensaje de inicio del servidor.
-        mensaje = String.format("[%s] - Inicio del servidor en el puerto, %s", fechaActual().format(formato),
+        mensaje = String.format("[%s] - Inicio del servidor en el puerto, %s", reloj.marca(),
                 PORT);
         // se muestra el mensaje
         log.info(mensaje);
@@ -128,7 +122,7 @@ public class RegistroLogs {
      * @param mensaje se recibe un String con el tipo de error
      */
     public void alertServer(String mensaje) {
-        log.warning("Error de proceso: " + fechaActual().format(formato) + " " + mensaje);
+        log.warning("Error de proceso: " + reloj.marca() + " " + mensaje);
     }
 
     /**
@@ -141,17 +135,17 @@ public class RegistroLogs {
      */
     public void regPedidos(String idalmacen, String producto, int cantidad, String mensaje) {
         // Se registrará el mensaje de información del pedido.
-        log.info("[" + fechaActual().format(formato) + "] Pedido realizado por Almacén:  " + idalmacen
+        log.info("[" + reloj.marca() + "] Pedido realizado por Almacén:  " + idalmacen
                 + " - Producto solicitado: " + producto + " - Cantidad solicitada: " + cantidad + " - " + mensaje);
     }
 
     public void regAlmacen(String idAlmacen) {
         // Se registrará el almacén que se ha conectado
-        log.info("[" + fechaActual().format(formato) + "] - Almacén " + idAlmacen + "se ha conectado.");
+        log.info("[" + reloj.marca() + "] - Almacén " + idAlmacen + "se ha conectado.");
     }
 
     public void pedidoErroneo(String idAlmacen, String mensaje) {
         // Se registrará el erro de pedidio
-        log.warning("[" + fechaActual().format(formato) + "] - Almacén " + idAlmacen + " " + mensaje);
+        log.warning("[" + reloj.marca() + "] - Almacén " + idAlmacen + " " + mensaje);
     }
 }